@@ -34,6 +34,7 @@ public class Activator implements BundleActivator {
     private static final String OBR_RESOLVE_OPTIONAL_IMPORTS = "obr.resolve.optional.imports";
     private static final String RESOLVE_OPTIONAL_IMPORTS = "resolve.optional.imports";
     private static final String URL_HANDLERS_TIMEOUT = "url.handlers.timeout";
+    private static final String RESOLVE_FORCE = "resolve.force";
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(Activator.class);
 
     private DeploymentAgent agent;
@@ -44,6 +45,7 @@ public class Activator implements BundleActivator {
         Dictionary<String, Object> config = getConfig(context);
         agent.setResolveOptionalImports(getResolveOptionalImports(config));
         agent.setUrlHandlersTimeout(getUrlHandlersTimeout(config));
+        agent.setForceResolution(getForceResolution(config));
         agent.start();
         Hashtable<String, String> props = new Hashtable<String, String>();
         props.put(org.osgi.framework.Constants.SERVICE_PID, Constants.AGENT_PID);
@@ -68,6 +70,16 @@ public class Activator implements BundleActivator {
         return false;
     }
 
+    private boolean getForceResolution(Dictionary<String, Object> config) {
+        if (config != null) {
+            Object force = config.get(RESOLVE_FORCE);
+            if (force != null) {
+                return Boolean.parseBoolean(force.toString());
+            }
+        }
+        return false;
+    }
+
     private long getUrlHandlersTimeout(Dictionary<String, Object> config) {
         if (config != null) {
             Object timeout = config.get(URL_HANDLERS_TIMEOUT);
@@ -32,6 +32,9 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -39,11 +42,14 @@ import java.util.TreeMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
+import io.fabric8.agent.download.DownloadFuture;
 import io.fabric8.agent.download.DownloadManager;
+import io.fabric8.agent.download.FutureListener;
 import io.fabric8.agent.mvn.DictionaryPropertyResolver;
 import io.fabric8.agent.mvn.MavenConfigurationImpl;
 import io.fabric8.agent.mvn.MavenRepositoryURL;
@@ -53,6 +59,7 @@ import io.fabric8.agent.mvn.PropertyStore;
 import io.fabric8.agent.repository.HttpMetadataProvider;
 import io.fabric8.agent.repository.MetadataRepository;
 import io.fabric8.agent.resolver.FeatureResource;
+import io.fabric8.agent.resolver.ResolutionCache;
 import io.fabric8.agent.sort.RequirementSort;
 import io.fabric8.api.Container;
 import io.fabric8.api.FabricService;
@@ -117,6 +124,9 @@ public class DeploymentAgent implements ManagedService {
 
     private static final String AGENT_DOWNLOAD_PATH = KARAF_DATA + File.separator + "maven" + File.separator + "agent";
 
+    private static final String[] LIB_PREFIXES = {"lib.", "endorsed.", "extension."};
+    private static final int MAX_PARALLEL_LIB_DOWNLOADS = 8;
+
     private static final Pattern SNAPSHOT_PATTERN = Pattern.compile(".*-SNAPSHOT((\\.\\w{3})?|\\$.*|\\?.*|\\#.*|\\&.*)");
 
     private ServiceTracker<FabricService, FabricService> fabricService;
@@ -126,6 +136,7 @@ public class DeploymentAgent implements ManagedService {
     private volatile boolean shutdownDownloadExecutor;
     private DownloadManager manager;
     private boolean resolveOptionalImports = false;
+    private boolean forceResolution = false;
     private long urlHandlersTimeout;
 
     private final RequirementSort requirementSort = new RequirementSort();
@@ -144,6 +155,9 @@ public class DeploymentAgent implements ManagedService {
     private volatile String provisioningStatus;
     private volatile Throwable provisioningError;
     private volatile Collection<Resource> provisionList;
+    private final Map<String, Long> provisionTimings = new LinkedHashMap<String, Long>();
+    private String provisionPhase;
+    private long provisionPhaseStart;
 
     public DeploymentAgent(BundleContext bundleContext) throws IOException {
         this.bundleContext = bundleContext;
@@ -193,6 +207,14 @@ public class DeploymentAgent implements ManagedService {
         this.resolveOptionalImports = resolveOptionalImports;
     }
 
+    public boolean isForceResolution() {
+        return forceResolution;
+    }
+
+    public void setForceResolution(boolean forceResolution) {
+        this.forceResolution = forceResolution;
+    }
+
     public long getUrlHandlersTimeout() {
         return urlHandlersTimeout;
     }
@@ -233,12 +255,12 @@ public class DeploymentAgent implements ManagedService {
                     long systemChecksum = 0;
                     long agentChecksum = 0;
                     try {
-                        systemChecksum = ChecksumUtils.checksum(new FileInputStream(systemPath));
+                        systemChecksum = manager.getChecksumIndex().getChecksum(new File(systemPath));
                     } catch (Exception e) {
                         LOGGER.debug("Error calculating checksum for file: %s", systemPath, e);
                     }
                     try {
-                        agentChecksum = ChecksumUtils.checksum(new FileInputStream(agentDownloadsPath));
+                        agentChecksum = manager.getChecksumIndex().getChecksum(new File(agentDownloadsPath));
                     } catch (Exception e) {
                         LOGGER.debug("Error calculating checksum for file: %s", agentDownloadsPath, e);
                     }
@@ -296,6 +318,7 @@ public class DeploymentAgent implements ManagedService {
     }
 
     private void updateStatus(String status, Throwable result, Collection<Resource> resources, boolean force) {
+        recordProvisionPhase(status);
         try {
             FabricService fs;
             if (force) {
@@ -343,6 +366,7 @@ public class DeploymentAgent implements ManagedService {
                 putAllProperties(provisionChecksums, extensionChecksums);
 */
                 container.setProvisionChecksums(provisionChecksums);
+                container.setProvisionTimings(getProvisionTimings());
             } else {
                 LOGGER.info("FabricService not available");
             }
@@ -351,6 +375,42 @@ public class DeploymentAgent implements ManagedService {
         }
     }
 
+    /**
+     * Records the time spent in the current provisioning phase, each status starts a new one
+     */
+    private void recordProvisionPhase(String status) {
+        synchronized (provisionTimings) {
+            long now = System.currentTimeMillis();
+            if (provisionPhase != null) {
+                Long time = provisionTimings.get(provisionPhase);
+                provisionTimings.put(provisionPhase, (time != null ? time : 0L) + now - provisionPhaseStart);
+            }
+            provisionPhase = status;
+            provisionPhaseStart = now;
+        }
+    }
+
+    private void resetProvisionTimings() {
+        synchronized (provisionTimings) {
+            provisionTimings.clear();
+            provisionPhase = null;
+        }
+    }
+
+    private java.util.Properties getProvisionTimings() {
+        java.util.Properties answer = new java.util.Properties();
+        synchronized (provisionTimings) {
+            for (Map.Entry<String, Long> entry : provisionTimings.entrySet()) {
+                answer.put(entry.getKey(), Long.toString(entry.getValue()));
+            }
+        }
+        for (Map.Entry<String, long[]> entry : manager.getTransfers().entrySet()) {
+            answer.put("download." + entry.getKey() + ".bytes", Long.toString(entry.getValue()[0]));
+            answer.put("download." + entry.getKey() + ".time", Long.toString(entry.getValue()[1]));
+        }
+        return answer;
+    }
+
     protected static void putAllProperties(java.util.Properties answer, Properties properties) {
         Set<Map.Entry<String, String>> entries = properties.entrySet();
         for (Map.Entry<String, String> entry : entries) {
@@ -369,6 +429,7 @@ public class DeploymentAgent implements ManagedService {
         // Adding the maven proxy URL to the list of repositories.
         addMavenProxies(props, fabricService.getService());
 
+        resetProvisionTimings();
         updateStatus("analyzing", null);
 
         // Building configuration
@@ -394,6 +455,7 @@ public class DeploymentAgent implements ManagedService {
         Set<String> configPropsToRemove = new HashSet<String>(managedConfigProps.keySet());
         Properties configProps = new Properties(new File(KARAF_BASE + File.separator + "etc" + File.separator + "config.properties"));
         Properties systemProps = new Properties(new File(KARAF_BASE + File.separator + "etc" + File.separator + "system.properties"));
+        Map<String, DownloadFuture> libDownloads = downloadLibs(properties);
         for (String key : properties.keySet()) {
             if (key.equals("framework")) {
                 String url = properties.get(key);
@@ -417,10 +479,10 @@ public class DeploymentAgent implements ManagedService {
                     restart = true;
                 }
             } else if (key.startsWith("lib.")) {
-                String value = properties.get(key);
-                File libFile = manager.download(value).await().getFile();
+                DownloadFuture download = libDownloads.get(key);
+                File libFile = download.getFile();
                 String libName = libFile.getName();
-                Long checksum = ChecksumUtils.checksum(new FileInputStream(libFile));
+                long checksum = download.getChecksum();
                 managedLibs.put(libName, "true");
                 libsToRemove.remove(libName);
                 if (!Long.toString(checksum).equals(libChecksums.getProperty(libName))) {
@@ -428,10 +490,10 @@ public class DeploymentAgent implements ManagedService {
                     restart = true;
                 }
             } else if (key.startsWith("endorsed.")) {
-                String value = properties.get(key);
-                File libFile = manager.download(value).await().getFile();
+                DownloadFuture download = libDownloads.get(key);
+                File libFile = download.getFile();
                 String libName = libFile.getName();
-                Long checksum = ChecksumUtils.checksum(new FileInputStream(libFile));
+                long checksum = download.getChecksum();
                 managedEndorsedLibs.put(libName, "true");
                 endorsedLibsToRemove.remove(libName);
                 if (!Long.toString(checksum).equals(endorsedChecksums.getProperty(libName))) {
@@ -439,10 +501,10 @@ public class DeploymentAgent implements ManagedService {
                     restart = true;
                 }
             } else if (key.startsWith("extension.")) {
-                String value = properties.get(key);
-                File libFile = manager.download(value).await().getFile();
+                DownloadFuture download = libDownloads.get(key);
+                File libFile = download.getFile();
                 String libName = libFile.getName();
-                Long checksum = ChecksumUtils.checksum(new FileInputStream(libFile));
+                long checksum = download.getChecksum();
                 managedExtensionLibs.put(libName, "true");
                 extensionLibsToRemove.remove(libName);
                 if (!Long.toString(checksum).equals(extensionChecksums.getProperty(libName))) {
@@ -547,6 +609,7 @@ public class DeploymentAgent implements ManagedService {
 
         updateStatus("resolving", null);
         Resource systemBundle = systemBundleContext.getBundle(0).adapt(BundleRevision.class);
+        builder.setResolutionCache(new ResolutionCache(bundleContext.getDataFile("resolution.properties")), forceResolution);
         Collection<Resource> allResources = builder.resolve(systemBundle, resolveOptionalImports);
 
         Set<String> ignoredBundles = getPrefixedProperties(properties, "ignore.");
@@ -556,6 +619,40 @@ public class DeploymentAgent implements ManagedService {
         return true;
     }
 
+    /**
+     * Downloads the lib, endorsed and extension libraries in parallel and waits for all of them
+     *
+     * @return the completed downloads by property key
+     */
+    private Map<String, DownloadFuture> downloadLibs(Map<String, String> properties) throws Exception {
+        long start = System.currentTimeMillis();
+        final Semaphore permits = new Semaphore(MAX_PARALLEL_LIB_DOWNLOADS);
+        Map<String, DownloadFuture> downloads = new HashMap<String, DownloadFuture>();
+        for (String key : properties.keySet()) {
+            for (String prefix : LIB_PREFIXES) {
+                if (key.startsWith(prefix)) {
+                    permits.acquire();
+                    DownloadFuture download = manager.download(properties.get(key));
+                    download.addListener(new FutureListener<DownloadFuture>() {
+                        @Override
+                        public void operationComplete(DownloadFuture future) {
+                            permits.release();
+                        }
+                    });
+                    downloads.put(key, download);
+                    break;
+                }
+            }
+        }
+        for (DownloadFuture download : downloads.values()) {
+            download.await();
+        }
+        if (!downloads.isEmpty()) {
+            LOGGER.info("Downloaded {} libraries in {} ms", downloads.size(), System.currentTimeMillis() - start);
+        }
+        return downloads;
+    }
+
     private Set<String> getPrefixedProperties(Map<String, String> properties, String prefix) {
         Set<String> result = new HashSet<String>();
         for (String key : properties.keySet()) {
@@ -595,38 +692,38 @@ public class DeploymentAgent implements ManagedService {
         File file = bundleContext.getDataFile("bundle-checksums.properties");
         bundleChecksums.load(file);
 
+        // Index the resources by symbolic name and version so that installed bundles are matched in one lookup
+        Map<String, List<Resource>> deployable = new HashMap<String, List<Resource>>();
+        for (Resource res : toDeploy) {
+            String key = getSymbolicName(res) + "/" + getVersion(res);
+            List<Resource> resources = deployable.get(key);
+            if (resources == null) {
+                resources = new LinkedList<Resource>();
+                deployable.put(key, resources);
+            }
+            resources.add(res);
+        }
+        Map<Resource, Long> resChecksums = new HashMap<Resource, Long>();
         for (Bundle bundle : systemBundleContext.getBundles()) {
             if (bundle.getSymbolicName() != null && bundle.getBundleId() != 0) {
                 Resource resource = null;
                 boolean update = false;
-                for (Resource res : toDeploy) {
-                    if (bundle.getSymbolicName().equals(getSymbolicName(res))) {
-                        if (bundle.getVersion().equals(getVersion(res))) {
-                            if (isUpdateable(res)) {
-                                // if the checksum are different
-                                InputStream is = null;
-                                try {
-                                    is = getBundleInputStream(res, providers);
-                                    long newCrc = ChecksumUtils.checksum(is);
-                                    long oldCrc = bundleChecksums.containsKey(bundle.getLocation()) ? Long.parseLong(bundleChecksums.get(bundle.getLocation())) : 0l;
-                                    if (newCrc != oldCrc) {
-                                        LOGGER.debug("New snapshot available for " + bundle.getLocation());
-                                        update = true;
-                                        newCheckums.put(bundle.getLocation(), Long.toString(newCrc));
-                                    }
-                                } finally {
-                                    if (is != null) {
-                                        is.close();
-                                    }
-                                }
-                            }
-                            resource = res;
-                            break;
+                List<Resource> resources = deployable.get(bundle.getSymbolicName() + "/" + bundle.getVersion());
+                if (resources != null && !resources.isEmpty()) {
+                    resource = resources.remove(0);
+                    if (isUpdateable(resource)) {
+                        // if the checksum are different
+                        long newCrc = getBundleChecksum(resource, providers);
+                        resChecksums.put(resource, newCrc);
+                        long oldCrc = bundleChecksums.containsKey(bundle.getLocation()) ? Long.parseLong(bundleChecksums.get(bundle.getLocation())) : 0l;
+                        if (newCrc != oldCrc) {
+                            LOGGER.debug("New snapshot available for " + bundle.getLocation());
+                            update = true;
+                            newCheckums.put(bundle.getLocation(), Long.toString(newCrc));
                         }
                     }
                 }
                 if (resource != null) {
-                    toDeploy.remove(resource);
                     resToBnd.put(resource, bundle);
                     if (update) {
                         toUpdate.put(bundle, resource);
@@ -638,20 +735,38 @@ public class DeploymentAgent implements ManagedService {
                 }
             }
         }
+        for (Iterator<Resource> iterator = toDeploy.iterator(); iterator.hasNext();) {
+            if (resToBnd.containsKey(iterator.next())) {
+                iterator.remove();
+            }
+        }
 
         // Second pass on remaining resources
+        Map<String, List<Bundle>> deletable = new HashMap<String, List<Bundle>>();
+        for (Bundle bundle : toDelete) {
+            List<Bundle> bundles = deletable.get(bundle.getSymbolicName());
+            if (bundles == null) {
+                bundles = new ArrayList<Bundle>();
+                deletable.put(bundle.getSymbolicName(), bundles);
+            }
+            bundles.add(bundle);
+        }
         for (Resource resource : toDeploy) {
             TreeMap<Version, Bundle> matching = new TreeMap<Version, Bundle>();
-            VersionRange range = getMicroVersionRange(getVersion(resource));
-            for (Bundle bundle : toDelete) {
-                if (bundle.getSymbolicName().equals(getSymbolicName(resource)) && range.contains(bundle.getVersion())) {
-                    matching.put(bundle.getVersion(), bundle);
+            List<Bundle> bundles = deletable.get(getSymbolicName(resource));
+            if (bundles != null) {
+                VersionRange range = getMicroVersionRange(getVersion(resource));
+                for (Bundle bundle : bundles) {
+                    if (range.contains(bundle.getVersion())) {
+                        matching.put(bundle.getVersion(), bundle);
+                    }
                 }
             }
             if (!matching.isEmpty()) {
                 Bundle bundle = matching.lastEntry().getValue();
                 toUpdate.put(bundle, resource);
                 toDelete.remove(bundle);
+                bundles.remove(bundle);
                 resToBnd.put(resource, bundle);
             } else {
                 toInstall.add(resource);
@@ -731,7 +846,11 @@ public class DeploymentAgent implements ManagedService {
             resToBnd.put(resource, bundle);
             // save a checksum of installed snapshot bundle
             if (bundle.getVersion().getQualifier().endsWith(SNAPSHOT) && !newCheckums.containsKey(bundle.getLocation())) {
-                newCheckums.put(bundle.getLocation(), Long.toString(ChecksumUtils.checksum(getBundleInputStream(resource, providers))));
+                Long checksum = resChecksums.get(resource);
+                if (checksum == null) {
+                    checksum = getBundleChecksum(resource, providers);
+                }
+                newCheckums.put(bundle.getLocation(), Long.toString(checksum));
             }
         }
 
@@ -748,6 +867,11 @@ public class DeploymentAgent implements ManagedService {
                 LOGGER.warn("We failed to write the agent checksums which is probably due to the fabric-agent bundle being uninstalled so it can be replaced with a different version. Exception: " + e, e);
             }
         }
+        try {
+            manager.getChecksumIndex().save();
+        } catch (IOException e) {
+            LOGGER.debug("Error saving the download checksums", e);
+        }
 
         findBundlesWithOptionalPackagesToRefresh(toRefresh);
         findBundlesWithFragmentsToRefresh(toRefresh);
@@ -805,6 +929,28 @@ public class DeploymentAgent implements ManagedService {
         return provider.open();
     }
 
+    /**
+     * Computes the checksum of the bundle of a resource, downloaded files are looked up in the checksum index
+     * of the download manager so that they are only read again when they changed.
+     */
+    protected long getBundleChecksum(Resource resource, Map<String, StreamProvider> providers) throws IOException {
+        String uri = getUri(resource);
+        if (uri == null) {
+            throw new IllegalStateException("Resource has no uri");
+        }
+        StreamProvider provider = providers.get(uri);
+        if (provider == null) {
+            try {
+                return manager.download(uri).await().getChecksum();
+            } catch (InterruptedException e) {
+                throw (IOException) new InterruptedIOException().initCause(e);
+            }
+        } else if (provider instanceof StreamProvider.File) {
+            return manager.getChecksumIndex().getChecksum(((StreamProvider.File) provider).getFile());
+        }
+        return ChecksumUtils.checksum(provider.open());
+    }
+
     private List<Bundle> getBundlesToDestroy(List<Bundle> bundles) {
         List<Bundle> bundlesToDestroy = new ArrayList<Bundle>();
         for (Bundle bundle : bundles) {
@@ -39,6 +39,7 @@ import io.fabric8.agent.repository.StaticRepository;
 import io.fabric8.agent.resolver.FeatureNamespace;
 import io.fabric8.agent.resolver.FeatureResource;
 import io.fabric8.agent.resolver.RequirementImpl;
+import io.fabric8.agent.resolver.ResolutionCache;
 import io.fabric8.agent.resolver.ResolveContextImpl;
 import io.fabric8.agent.resolver.ResourceBuilder;
 import io.fabric8.agent.resolver.ResourceImpl;
@@ -102,6 +103,8 @@ public class DeploymentBuilder {
     Map<String, Resource> resources;
     Map<String, StreamProvider> providers;
     long urlHandlersTimeout;
+    ResolutionCache resolutionCache;
+    boolean forceResolution;
 
     Set<Feature> featuresToRegister = new HashSet<Feature>();
 
@@ -124,6 +127,17 @@ public class DeploymentBuilder {
         return providers;
     }
 
+    /**
+     * Sets the cache used to reuse the previous resolution when the resolved resources did not change.
+     *
+     * @param resolutionCache the cache, or <code>null</code> to always resolve
+     * @param forceResolution whether to run the resolver even if the cache has a resolution for the same inputs
+     */
+    public void setResolutionCache(ResolutionCache resolutionCache, boolean forceResolution) {
+        this.resolutionCache = resolutionCache;
+        this.forceResolution = forceResolution;
+    }
+
     public Map<String, Resource> download(Set<String> features,
                          Set<String> bundles,
                          Set<String> fabs,
@@ -207,9 +221,26 @@ public class DeploymentBuilder {
 
     public Collection<Resource> resolve(Resource systemBundle,
                                         boolean resolveOptionalImports) throws ResolutionException {
+        long start = System.currentTimeMillis();
         // Resolve
         resources.put("system-bundle", systemBundle);
 
+        // The resources of the remote repositories can change without us knowing, so only cache
+        // the resolution when all the resources are known
+        String key = null;
+        Set<String> previous = Collections.emptySet();
+        if (resolutionCache != null && resourceRepos.isEmpty()) {
+            key = ResolutionCache.getKey(resources, requirements, resolveOptionalImports);
+            if (!forceResolution) {
+                Collection<Resource> cached = getCachedResolution(key);
+                if (cached != null) {
+                    LOGGER.info("Reused the previous resolution of {} resources in {} ms", cached.size(), System.currentTimeMillis() - start);
+                    return cached;
+                }
+            }
+            previous = resolutionCache.getPreviousSolution();
+        }
+
         List<org.osgi.service.repository.Repository> repos = new ArrayList<org.osgi.service.repository.Repository>();
         repos.add(new StaticRepository(resources.values()));
         repos.addAll(resourceRepos);
@@ -219,7 +250,8 @@ public class DeploymentBuilder {
                 Collections.<Resource>singleton(requirements),
                 Collections.<Resource>emptySet(),
                 new AggregateRepository(repos),
-                resolveOptionalImports);
+                resolveOptionalImports,
+                previous);
 
         Map<Resource, List<Wire>> wiring = resolver.resolve(context);
         Map<String, Resource> deploy = new TreeMap<String, Resource>();
@@ -229,6 +261,41 @@ public class DeploymentBuilder {
                 deploy.put(uri, res);
             }
         }
+        if (key != null) {
+            try {
+                resolutionCache.put(key, deploy.keySet());
+            } catch (IOException e) {
+                LOGGER.warn("Unable to save the resolution: " + e, e);
+            }
+        }
+        LOGGER.info("Resolved {} resources in {} ms", deploy.size(), System.currentTimeMillis() - start);
+        return deploy.values();
+    }
+
+    /**
+     * Returns the resources of the cached resolution for the given key, or <code>null</code> if there is no such
+     * resolution or if one of its resources is not available anymore.
+     */
+    private Collection<Resource> getCachedResolution(String key) {
+        List<String> uris = resolutionCache.get(key);
+        if (uris == null) {
+            return null;
+        }
+        Map<String, Resource> available = new HashMap<String, Resource>();
+        for (Resource res : resources.values()) {
+            String uri = getUri(res);
+            if (uri != null) {
+                available.put(uri, res);
+            }
+        }
+        Map<String, Resource> deploy = new TreeMap<String, Resource>();
+        for (String uri : uris) {
+            Resource res = available.get(uri);
+            if (res == null) {
+                return null;
+            }
+            deploy.put(uri, res);
+        }
         return deploy.values();
     }
 
@@ -34,6 +34,10 @@ public interface StreamProvider {
             this.file = file;
         }
 
+        public java.io.File getFile() {
+            return file;
+        }
+
         @Override
         public InputStream open() throws IOException {
             return new FileInputStream(file);
@@ -16,11 +16,15 @@
 package io.fabric8.agent.download;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.concurrent.ExecutorService;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
+import io.fabric8.common.util.ChecksumUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +36,10 @@ public abstract class AbstractDownloadTask extends DefaultFuture<DownloadFuture>
     protected final ExecutorService executor;
     private long scheduleDelay = 250;
     private int scheduleNbRun = 0;
+    private volatile long checksum = -1;
+    private ChecksumIndex checksumIndex;
+    private volatile long transferredBytes;
+    private volatile long transferTime;
 
     public AbstractDownloadTask(String url, ExecutorService executor) {
         super(null);
@@ -61,6 +69,50 @@ public abstract class AbstractDownloadTask extends DefaultFuture<DownloadFuture>
         setValue(file);
     }
 
+    public long getChecksum() throws IOException {
+        if (checksum < 0) {
+            File file = getFile();
+            if (file != null) {
+                checksum = checksumIndex != null ? checksumIndex.getChecksum(file) : ChecksumUtils.checksum(new FileInputStream(file));
+            }
+        }
+        return checksum;
+    }
+
+    /**
+     * Sets the index used to look up the checksum of files that were already in the cache and where the
+     * checksum of downloaded files is recorded.
+     */
+    public void setChecksumIndex(ChecksumIndex checksumIndex) {
+        this.checksumIndex = checksumIndex;
+    }
+
+    /**
+     * Sets the checksum of the file being downloaded, see {@link #copyWithChecksum(InputStream, OutputStream)}
+     */
+    protected void setChecksum(long checksum) {
+        this.checksum = checksum;
+    }
+
+    /**
+     * Returns the number of bytes transferred from a remote location, 0 if the file was already available.
+     */
+    public long getTransferredBytes() {
+        return transferredBytes;
+    }
+
+    /**
+     * Returns the time spent transferring the file, in milliseconds.
+     */
+    public long getTransferTime() {
+        return transferTime;
+    }
+
+    protected void setTransfer(long bytes, long millis) {
+        this.transferredBytes = bytes;
+        this.transferTime = millis;
+    }
+
     public void setException(IOException exception) {
         if (exception == null) {
             throw new NullPointerException("exception");
@@ -73,7 +125,12 @@ public abstract class AbstractDownloadTask extends DefaultFuture<DownloadFuture>
         try {
             while (!done) {
                 try {
+                    checksum = -1;
+                    setTransfer(0, 0);
                     File file = download();
+                    if (checksum >= 0 && checksumIndex != null) {
+                        checksumIndex.put(file, checksum);
+                    }
                     setFile(file);
                     done = true;
                     return;
@@ -109,6 +166,15 @@ public abstract class AbstractDownloadTask extends DefaultFuture<DownloadFuture>
         return exception;
     }
 
+    /**
+     * Copy the input stream to the output and return the CRC32 checksum of the copied bytes
+     */
+    static long copyWithChecksum(InputStream inputStream, OutputStream outputStream) throws IOException {
+        CheckedInputStream checkedInputStream = new CheckedInputStream(inputStream, new CRC32());
+        copy(checkedInputStream, outputStream);
+        return checkedInputStream.getChecksum().getValue();
+    }
+
     /**
      * Copy the input stream to the output
      */
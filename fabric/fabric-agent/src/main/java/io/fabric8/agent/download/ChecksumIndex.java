@@ -0,0 +1,197 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.download;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.fabric8.common.util.ChecksumUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent index of the CRC32 checksums of the files of the agent cache.
+ * <p/>
+ * Entries are keyed by the absolute path of the file and only trusted while the size and last modification
+ * time of the file are the ones recorded with the checksum, so that a file that changed on disk is read again.
+ */
+public class ChecksumIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChecksumIndex.class);
+
+    private final File file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private volatile boolean loaded;
+    private volatile boolean dirty;
+
+    public ChecksumIndex(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the checksum of the given file, reading the file only if the index has no checksum for its current
+     * size and modification time.
+     */
+    public long getChecksum(File f) throws IOException {
+        load();
+        String key = f.getAbsolutePath();
+        long size = f.length();
+        long lastModified = f.lastModified();
+        Entry entry = entries.get(key);
+        if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+            return entry.checksum;
+        }
+        long checksum = ChecksumUtils.checksum(new FileInputStream(f));
+        put(key, new Entry(size, lastModified, checksum));
+        return checksum;
+    }
+
+    /**
+     * Records the checksum of a file that has just been written.
+     */
+    public void put(File f, long checksum) {
+        load();
+        put(f.getAbsolutePath(), new Entry(f.length(), f.lastModified(), checksum));
+    }
+
+    private void put(String key, Entry entry) {
+        if (!entry.equals(entries.put(key, entry))) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Writes the index back to disk if it has been changed since it was loaded or last saved.
+     */
+    public synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        Properties props = new Properties();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            props.setProperty(entry.getKey(), entry.getValue().toString());
+        }
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir.toString());
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        OutputStream os = new FileOutputStream(tmp);
+        try {
+            props.store(os, "Agent cache checksums: size,lastModified,crc32");
+        } finally {
+            os.close();
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete file: " + file.toString());
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Unable to rename file " + tmp.toString() + " to " + file.toString());
+        }
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            if (file.isFile()) {
+                Properties props = new Properties();
+                try {
+                    InputStream is = new FileInputStream(file);
+                    try {
+                        props.load(is);
+                    } finally {
+                        is.close();
+                    }
+                } catch (IOException e) {
+                    LOGGER.debug("Error loading checksum index " + file, e);
+                }
+                for (String key : props.stringPropertyNames()) {
+                    Entry entry = Entry.parse(props.getProperty(key));
+                    if (entry != null && !entries.containsKey(key)) {
+                        entries.put(key, entry);
+                    }
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    static class Entry {
+        final long size;
+        final long lastModified;
+        final long checksum;
+
+        Entry(long size, long lastModified, long checksum) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+        }
+
+        static Entry parse(String value) {
+            String[] parts = value.split(",");
+            if (parts.length != 3) {
+                return null;
+            }
+            try {
+                return new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry entry = (Entry) o;
+            return size == entry.size && lastModified == entry.lastModified && checksum == entry.checksum;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (size ^ (size >>> 32));
+            result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+            result = 31 * result + (int) (checksum ^ (checksum >>> 32));
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return size + "," + lastModified + "," + checksum;
+        }
+    }
+}
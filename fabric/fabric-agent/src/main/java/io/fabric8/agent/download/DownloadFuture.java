@@ -35,6 +35,14 @@ public interface DownloadFuture extends Future<DownloadFuture> {
      */
     File getFile() throws IOException;
 
+    /**
+     * Returns the CRC32 checksum of the downloaded file, computed while downloading it
+     * unless the file was already available locally
+     *
+     * @return the checksum or <code>-1</code> if the operation has not completed yet
+     */
+    long getChecksum() throws IOException;
+
     /**
      * Returns {@code true} if the download operation has been canceled by
      * {@link #cancel()} method.
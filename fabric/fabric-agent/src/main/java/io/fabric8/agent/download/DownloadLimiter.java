@@ -0,0 +1,95 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.download;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of concurrent transfers and the overall rate of the downloads of a {@link DownloadManager}.
+ * <p/>
+ * The rate is shared by all the transfers: each chunk of data that is read reserves the time it takes at the
+ * maximum rate, and the transfer waits until its reservation starts.
+ */
+public class DownloadLimiter {
+
+    private final Semaphore transfers;
+    private final long nanosPerByte;
+    private long next;
+
+    /**
+     * @param maxConcurrentTransfers the maximum number of concurrent transfers, 0 for no limit
+     * @param maxBytesPerSecond      the maximum overall rate, 0 for no limit
+     */
+    public DownloadLimiter(int maxConcurrentTransfers, long maxBytesPerSecond) {
+        this.transfers = maxConcurrentTransfers > 0 ? new Semaphore(maxConcurrentTransfers, true) : null;
+        this.nanosPerByte = maxBytesPerSecond > 0 ? Math.max(1, TimeUnit.SECONDS.toNanos(1) / maxBytesPerSecond) : 0;
+        this.next = System.nanoTime();
+    }
+
+    /**
+     * Waits until a new transfer can start, each call must be followed by a call to {@link #release()}.
+     */
+    public void acquire() throws InterruptedIOException {
+        if (transfers != null) {
+            try {
+                transfers.acquire();
+            } catch (InterruptedException e) {
+                throw interrupted(e);
+            }
+        }
+    }
+
+    public void release() {
+        if (transfers != null) {
+            transfers.release();
+        }
+    }
+
+    /**
+     * Waits until the given number of bytes can be transferred.
+     */
+    public void consume(int bytes) throws InterruptedIOException {
+        if (nanosPerByte == 0 || bytes <= 0) {
+            return;
+        }
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (next - now < 0) {
+                next = now;
+            }
+            wait = next - now;
+            next += bytes * nanosPerByte;
+        }
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                throw interrupted(e);
+            }
+        }
+    }
+
+    /**
+     * Restores the interrupt status so the callers of the download also see the interruption
+     */
+    private static InterruptedIOException interrupted(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return (InterruptedIOException) new InterruptedIOException().initCause(e);
+    }
+}
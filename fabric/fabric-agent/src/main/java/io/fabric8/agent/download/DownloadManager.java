@@ -18,6 +18,9 @@ package io.fabric8.agent.download;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 
 import io.fabric8.agent.mvn.MavenConfiguration;
@@ -41,6 +44,21 @@ public class DownloadManager {
 
     private final MavenRepositoryURL system;
 
+    /**
+     * Checksums of the downloaded files
+     */
+    private final ChecksumIndex checksums;
+
+    /**
+     * Limits the transfers from remote repositories
+     */
+    private final DownloadLimiter limiter;
+
+    /**
+     * Bytes and milliseconds of each transfer
+     */
+    private final Map<String, long[]> transfers = new ConcurrentHashMap<String, long[]>();
+
     public DownloadManager(MavenConfiguration configuration) throws MalformedURLException {
         this(configuration, null);
     }
@@ -52,24 +70,55 @@ public class DownloadManager {
         String karafData = System.getProperty("karaf.data", karafRoot + "/data");
         this.cache = new MavenRepositoryURL("file:" + karafData + File.separator + "maven" + File.separator + "agent" + "@snapshots");
         this.system = new MavenRepositoryURL("file:" + karafRoot + File.separator + "system" + "@snapshots");
+        Integer maxConcurrentDownloads = configuration.getMaxConcurrentDownloads();
+        Integer maxDownloadRate = configuration.getMaxDownloadRate();
+        this.limiter = new DownloadLimiter(maxConcurrentDownloads != null ? maxConcurrentDownloads : 0,
+                maxDownloadRate != null ? maxDownloadRate * 1024L : 0);
+        this.checksums = new ChecksumIndex(new File(karafData + File.separator + "fabric-agent" + File.separator + "checksums.properties"));
     }
 
     public ExecutorService getExecutor() {
         return executor;
     }
 
+    public ChecksumIndex getChecksumIndex() {
+        return checksums;
+    }
+
+    /**
+     * Returns the number of bytes and the time in milliseconds of each artifact transferred from a remote
+     * repository, keyed by url.
+     */
+    public Map<String, long[]> getTransfers() {
+        return Collections.unmodifiableMap(transfers);
+    }
+
     public void shutdown() {
-        // noop
+        try {
+            checksums.save();
+        } catch (IOException e) {
+            // the checksums will be computed again
+        }
     }
 
     public DownloadFuture download(final String url) throws MalformedURLException {
         String mvnUrl = stripUrl(url);
 
         if (mvnUrl.startsWith("mvn:")) {
-            MavenDownloadTask task = new MavenDownloadTask(mvnUrl, cache, system, configuration, executor);
+            final MavenDownloadTask task = new MavenDownloadTask(mvnUrl, cache, system, configuration, executor, limiter);
+            task.setChecksumIndex(checksums);
+            task.addListener(new FutureListener<DownloadFuture>() {
+                @Override
+                public void operationComplete(DownloadFuture future) {
+                    if (task.getTransferredBytes() > 0) {
+                        transfers.put(task.getUrl(), new long[] { task.getTransferredBytes(), task.getTransferTime() });
+                    }
+                }
+            });
             executor.submit(task);
             if (!mvnUrl.equals(url)) {
                 final DummyDownloadTask download = new DummyDownloadTask(url, executor);
+                download.setChecksumIndex(checksums);
                 task.addListener(new FutureListener<DownloadFuture>() {
                     @Override
                     public void operationComplete(DownloadFuture future) {
@@ -78,6 +127,7 @@ public class DownloadManager {
                             String file = future.getFile().toURI().toURL().toString();
                             String real = url.replace(mvn, file);
                             SimpleDownloadTask task = new SimpleDownloadTask(real, executor);
+                            task.setChecksumIndex(checksums);
                             executor.submit(task);
                             task.addListener(new FutureListener<DownloadFuture>() {
                                 @Override
@@ -100,6 +150,7 @@ public class DownloadManager {
             }
         } else {
             final SimpleDownloadTask download = new SimpleDownloadTask(url, executor);
+            download.setChecksumIndex(checksums);
             executor.submit(download);
             return download;
         }
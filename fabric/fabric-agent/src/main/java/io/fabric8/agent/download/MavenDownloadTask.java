@@ -16,23 +16,33 @@
 package io.fabric8.agent.download;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
+import java.util.zip.CRC32;
 import javax.xml.parsers.ParserConfigurationException;
 
 import io.fabric8.agent.mvn.DownloadableArtifact;
 import io.fabric8.agent.mvn.MavenConfiguration;
+import io.fabric8.agent.mvn.MavenConstants;
 import io.fabric8.agent.mvn.MavenRepositoryURL;
 import io.fabric8.agent.mvn.Parser;
 import io.fabric8.agent.mvn.Version;
@@ -60,15 +70,28 @@ public class MavenDownloadTask extends AbstractDownloadTask implements Runnable
      */
     private static final String Ix4 = "    ";
 
+    /**
+     * Partial files being written, a partial file is only resumed by the task that owns it.
+     */
+    private static final ConcurrentMap<File, Boolean> PARTIAL_FILES = new ConcurrentHashMap<File, Boolean>();
+
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
     private final MavenRepositoryURL cache;
     private final MavenRepositoryURL system;
     private final MavenConfiguration configuration;
+    private final DownloadLimiter limiter;
 
     public MavenDownloadTask(String url, MavenRepositoryURL cache, MavenRepositoryURL system, MavenConfiguration configuration, ExecutorService executor) {
+        this(url, cache, system, configuration, executor, new DownloadLimiter(0, 0));
+    }
+
+    public MavenDownloadTask(String url, MavenRepositoryURL cache, MavenRepositoryURL system, MavenConfiguration configuration, ExecutorService executor, DownloadLimiter limiter) {
         super(url, executor);
         this.cache = cache;
         this.system = system;
         this.configuration = configuration;
+        this.limiter = limiter;
     }
 
     protected File download() throws Exception {
@@ -99,34 +122,216 @@ public class MavenDownloadTask extends AbstractDownloadTask implements Runnable
                 if (!repository.endsWith(File.separator)) {
                     repository = repository + File.separator;
                 }
-                InputStream is = artifact.getInputStream();
                 File file = new File(repository + parser.getArtifactPath());
                 file.getParentFile().mkdirs();
                 if (!file.getParentFile().isDirectory()) {
                     throw new IOException("Unable to create directory " + file.getParentFile().toString());
                 }
-                File tmp = File.createTempFile("fabric-agent-", null, file.getParentFile());
-                OutputStream os = new FileOutputStream(tmp);
-                copy(is, os);
-                is.close();
-                os.close();
-                if (file.exists() && !file.delete()) {
-                    throw new IOException("Unable to delete file: " + file.toString());
-                }
-                if (!tmp.renameTo(file)) {
-                    throw new IOException("Unable to rename file " + tmp.toString() + " to " + file.toString());
-                }
+                transfer(artifact, file, !parser.getVersion().contains("SNAPSHOT"));
                 return file;
-            } catch (IOException ignore) {
+            } catch (IOException e) {
+                if (e instanceof InterruptedIOException && Thread.currentThread().isInterrupted()) {
+                    // the download has been cancelled, unlike a socket timeout
+                    throw e;
+                }
                 // go on with next repository
                 LOG.debug(Ix2 + "Could not download [" + artifact + "]");
-                LOG.trace(Ix2 + "Reason [" + ignore.getClass().getName() + ": " + ignore.getMessage() + "]");
+                LOG.trace(Ix2 + "Reason [" + e.getClass().getName() + ": " + e.getMessage() + "]");
             }
         }
         // no artifact found
         throw new IOException("URL [" + url + "] could not be resolved.");
     }
 
+    /**
+     * Transfers the artifact into the given file.
+     * <p/>
+     * The data is first written to a partial file next to the target. When the connection drops, the partial
+     * file is kept so that the next attempt asks an http repository for the remaining bytes only. Releases are
+     * verified against the SHA-1 checksum of the repository, computed while the data is transferred.
+     *
+     * @param resumable whether a partial file left by a previous attempt can be resumed
+     */
+    private void transfer(DownloadableArtifact artifact, File file, boolean resumable) throws IOException {
+        File partial = new File(file.getPath() + ".part");
+        boolean owner = PARTIAL_FILES.putIfAbsent(partial, Boolean.TRUE) == null;
+        File part = null;
+        // the partial file is kept for the next attempt, unless it is known to be useless
+        boolean keep = false;
+        boolean acquired = false;
+        try {
+            if (owner) {
+                part = partial;
+            } else {
+                // another task downloads the same artifact, do not share its partial file
+                part = File.createTempFile("fabric-agent-", null, file.getParentFile());
+                resumable = false;
+            }
+            keep = resumable;
+            limiter.acquire();
+            acquired = true;
+            long start = System.currentTimeMillis();
+            long offset = resumable && part.isFile() ? part.length() : 0;
+            URLConnection connection = artifact.openConnection();
+            if (offset > 0) {
+                if (connection instanceof HttpURLConnection) {
+                    connection.setRequestProperty("Range", "bytes=" + offset + "-");
+                } else {
+                    offset = 0;
+                }
+            }
+            InputStream is;
+            try {
+                is = connection.getInputStream();
+            } catch (IOException e) {
+                if (offset > 0 && ((HttpURLConnection) connection).getResponseCode() == HTTP_RANGE_NOT_SATISFIABLE) {
+                    // the partial file is not a prefix of the artifact
+                    keep = false;
+                }
+                throw e;
+            }
+            if (offset > 0 && ((HttpURLConnection) connection).getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                LOG.debug(Ix2 + "Repository does not support resuming [" + artifact + "], restarting");
+                offset = 0;
+            } else if (offset > 0 && getRangeStart(connection) != offset) {
+                // the partial content does not follow the partial file, start again without a range
+                is.close();
+                keep = false;
+                throw new IOException("Unexpected Content-Range [" + connection.getHeaderField("Content-Range")
+                        + "] when resuming [" + artifact + "] at " + offset + " bytes");
+            }
+            CRC32 crc = new CRC32();
+            MessageDigest sha1 = newSha1();
+            if (offset > 0) {
+                LOG.debug(Ix2 + "Resuming [" + artifact + "] at " + offset + " bytes");
+                update(part, crc, sha1);
+            }
+            long transferred;
+            OutputStream os = new FileOutputStream(part, offset > 0);
+            try {
+                transferred = copy(is, os, crc, sha1);
+            } finally {
+                is.close();
+                os.close();
+            }
+            int length = connection.getContentLength();
+            if (length >= 0 && transferred != length) {
+                // the connection was closed early, the partial file can be resumed
+                throw new IOException("Premature end of stream: received " + transferred + " of " + length + " bytes");
+            }
+            keep = false;
+            verify(artifact, sha1);
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Unable to delete file: " + file.toString());
+            }
+            if (!part.renameTo(file)) {
+                throw new IOException("Unable to rename file " + part.toString() + " to " + file.toString());
+            }
+            setChecksum(crc.getValue());
+            long time = System.currentTimeMillis() - start;
+            setTransfer(transferred, time);
+            LOG.debug(Ix2 + "Downloaded [" + artifact + "]: " + transferred + " bytes in " + time + " ms");
+        } finally {
+            if (part != null && !keep) {
+                part.delete();
+            }
+            if (acquired) {
+                limiter.release();
+            }
+            if (owner) {
+                PARTIAL_FILES.remove(partial);
+            }
+        }
+    }
+
+    private long copy(InputStream is, OutputStream os, CRC32 crc, MessageDigest sha1) throws IOException {
+        long transferred = 0;
+        byte[] buffer = new byte[8192];
+        int len;
+        while ((len = is.read(buffer)) > 0) {
+            limiter.consume(len);
+            os.write(buffer, 0, len);
+            crc.update(buffer, 0, len);
+            if (sha1 != null) {
+                sha1.update(buffer, 0, len);
+            }
+            transferred += len;
+        }
+        return transferred;
+    }
+
+    private static void update(File part, CRC32 crc, MessageDigest sha1) throws IOException {
+        InputStream is = new FileInputStream(part);
+        try {
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = is.read(buffer)) > 0) {
+                crc.update(buffer, 0, len);
+                if (sha1 != null) {
+                    sha1.update(buffer, 0, len);
+                }
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Compares the SHA-1 of the downloaded data with the one published by the repository, according to the
+     * checksum policy.  Artifacts of local repositories are not verified.
+     */
+    private void verify(DownloadableArtifact artifact, MessageDigest sha1) throws IOException {
+        String policy = configuration.getChecksumPolicy();
+        if (sha1 == null || MavenConstants.CHECKSUM_POLICY_IGNORE.equals(policy)
+                || "file".equals(artifact.getArtifactURL().getProtocol())) {
+            return;
+        }
+        String expected = artifact.getSha1();
+        if (expected == null) {
+            LOG.debug(Ix2 + "No checksum available for [" + artifact + "]");
+            return;
+        }
+        StringBuilder actual = new StringBuilder();
+        for (byte b : sha1.digest()) {
+            actual.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        if (!expected.equals(actual.toString())) {
+            String message = "Checksum mismatch for [" + artifact + "]: expected " + expected + " but was " + actual;
+            if (MavenConstants.CHECKSUM_POLICY_FAIL.equals(policy)) {
+                throw new IOException(message);
+            }
+            LOG.warn(message);
+        }
+    }
+
+    private static MessageDigest newSha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the first byte of a partial http response, or 0 if the whole content is sent.
+     */
+    static long getRangeStart(URLConnection connection) throws IOException {
+        if (!(connection instanceof HttpURLConnection)
+                || ((HttpURLConnection) connection).getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+            return 0;
+        }
+        // Content-Range: bytes <first>-<last>/<length>
+        String range = connection.getHeaderField("Content-Range");
+        if (range != null && range.startsWith("bytes ") && range.indexOf('-') > 0) {
+            try {
+                return Long.parseLong(range.substring("bytes ".length(), range.indexOf('-')).trim());
+            } catch (NumberFormatException e) {
+                // unknown format
+            }
+        }
+        return -1;
+    }
+
     /**
      * Searches all available repositories for possible artifacts to download. The returned set of downloadable
      * artifacts (never null, but maybe empty) will be sorted descending by version of the artifact and by positon of
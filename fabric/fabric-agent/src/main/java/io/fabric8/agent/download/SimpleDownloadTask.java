@@ -75,7 +75,7 @@ public class SimpleDownloadTask extends AbstractDownloadTask {
             try {
                 OutputStream os = new FileOutputStream(tmpFile);
                 try {
-                    copy(is, os);
+                    setChecksum(copyWithChecksum(is, os));
                 } finally {
                     os.close();
                 }
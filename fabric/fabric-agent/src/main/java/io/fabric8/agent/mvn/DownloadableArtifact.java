@@ -15,9 +15,13 @@
  */
 package io.fabric8.agent.mvn;
 
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URL;
+import java.net.URLConnection;
 
 import io.fabric8.common.util.NullArgumentException;
 import io.fabric8.common.util.URLUtils;
@@ -96,6 +100,49 @@ public class DownloadableArtifact {
         return URLUtils.prepareInputStream(m_artifactURL, !m_checkCertificate);
     }
 
+    /**
+     * Opens a connection to the artifact url, prepared for authentication and ssl, so that request headers can
+     * be set before reading.
+     *
+     * @return the connection
+     * @throws IOException re-thrown
+     */
+    public URLConnection openConnection()
+            throws IOException {
+        final URLConnection conn = m_artifactURL.openConnection();
+        URLUtils.prepareForAuthentication(conn);
+        if (!m_checkCertificate) {
+            URLUtils.prepareForSSL(conn);
+        }
+        return conn;
+    }
+
+    /**
+     * Reads the SHA-1 checksum the repository publishes next to the artifact.
+     *
+     * @return the hexadecimal checksum, or null if the repository has none
+     * @throws IOException re-thrown
+     */
+    public String getSha1()
+            throws IOException {
+        InputStream is;
+        try {
+            is = URLUtils.prepareInputStream(new URL(m_artifactURL.toExternalForm() + ".sha1"), !m_checkCertificate);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            String line = new BufferedReader(new InputStreamReader(is, "US-ASCII")).readLine();
+            if (line == null || line.trim().length() == 0) {
+                return null;
+            }
+            // some repositories append the file name after the checksum
+            return line.trim().split("\\s+")[0].toLowerCase();
+        } finally {
+            is.close();
+        }
+    }
+
     /**
      * Getter.
      *
@@ -82,4 +82,25 @@ public interface MavenConfiguration {
      * @return true if aether should be disabled
      */
     Boolean isAetherDisabled();
+
+    /**
+     * Returns the maximum number of artifacts downloaded from remote repositories at the same time.
+     *
+     * @return the maximum number of downloads, 0 for no limit
+     */
+    Integer getMaxConcurrentDownloads();
+
+    /**
+     * Returns the maximum rate of all the downloads from remote repositories.
+     *
+     * @return the maximum rate in kilobytes per second, 0 for no limit
+     */
+    Integer getMaxDownloadRate();
+
+    /**
+     * Returns what to do when a downloaded artifact does not match the checksum of the repository.
+     *
+     * @return fail, warn or ignore
+     */
+    String getChecksumPolicy();
 }
@@ -327,4 +327,55 @@ public class MavenConfigurationImpl
         return get(m_pid + MavenConstants.PROPERTY_DISABLE_AETHER);
     }
 
+    /**
+     * @see MavenConfiguration#getMaxConcurrentDownloads()
+     */
+    public Integer getMaxConcurrentDownloads() {
+        if (!contains(m_pid + MavenConstants.PROPERTY_MAX_CONCURRENT_DOWNLOADS)) {
+            return set(m_pid + MavenConstants.PROPERTY_MAX_CONCURRENT_DOWNLOADS,
+                    getInteger(m_pid + MavenConstants.PROPERTY_MAX_CONCURRENT_DOWNLOADS)
+            );
+        }
+        return get(m_pid + MavenConstants.PROPERTY_MAX_CONCURRENT_DOWNLOADS);
+    }
+
+    /**
+     * @see MavenConfiguration#getMaxDownloadRate()
+     */
+    public Integer getMaxDownloadRate() {
+        if (!contains(m_pid + MavenConstants.PROPERTY_MAX_DOWNLOAD_RATE)) {
+            return set(m_pid + MavenConstants.PROPERTY_MAX_DOWNLOAD_RATE,
+                    getInteger(m_pid + MavenConstants.PROPERTY_MAX_DOWNLOAD_RATE)
+            );
+        }
+        return get(m_pid + MavenConstants.PROPERTY_MAX_DOWNLOAD_RATE);
+    }
+
+    /**
+     * Returns the checksum policy, defaults to warn like maven.
+     *
+     * @see MavenConfiguration#getChecksumPolicy()
+     */
+    public String getChecksumPolicy() {
+        if (!contains(m_pid + MavenConstants.PROPERTY_CHECKSUM_POLICY)) {
+            String policy = m_propertyResolver.get(m_pid + MavenConstants.PROPERTY_CHECKSUM_POLICY);
+            return set(m_pid + MavenConstants.PROPERTY_CHECKSUM_POLICY,
+                    policy != null && policy.trim().length() > 0 ? policy.trim().toLowerCase() : MavenConstants.CHECKSUM_POLICY_WARN
+            );
+        }
+        return get(m_pid + MavenConstants.PROPERTY_CHECKSUM_POLICY);
+    }
+
+    private Integer getInteger(String name) {
+        String value = m_propertyResolver.get(name);
+        if (value != null && value.trim().length() > 0) {
+            try {
+                return Integer.valueOf(value.trim());
+            } catch (NumberFormatException e) {
+                // ignore invalid values
+            }
+        }
+        return 0;
+    }
+
 }
@@ -54,6 +54,24 @@ public interface MavenConstants {
      * Use fallback repositories switch configuration property name.
      */
     static final String PROPERTY_DISABLE_AETHER = ".disableAether";
+    /**
+     * Maximum number of concurrent remote downloads configuration property name.
+     */
+    static final String PROPERTY_MAX_CONCURRENT_DOWNLOADS = ".maxConcurrentDownloads";
+    /**
+     * Maximum download rate, in kilobytes per second, configuration property name.
+     */
+    static final String PROPERTY_MAX_DOWNLOAD_RATE = ".maxDownloadRate";
+    /**
+     * Checksum policy (fail, warn or ignore) configuration property name.
+     */
+    static final String PROPERTY_CHECKSUM_POLICY = ".checksumPolicy";
+    /**
+     * Checksum policies.
+     */
+    String CHECKSUM_POLICY_FAIL = "fail";
+    String CHECKSUM_POLICY_WARN = "warn";
+    String CHECKSUM_POLICY_IGNORE = "ignore";
     /**
      * Option to mark repository as allowing snapshots.
      */
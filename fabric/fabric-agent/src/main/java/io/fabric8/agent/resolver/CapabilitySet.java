@@ -16,24 +16,44 @@
 package io.fabric8.agent.resolver;
 
 import org.osgi.framework.Constants;
+import org.osgi.framework.Version;
 import org.osgi.resource.Capability;
 
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NavigableMap;
 import java.util.Set;
 import java.util.TreeMap;
 
 public class CapabilitySet
 {
+    /**
+     * The version attributes kept in sorted indexes, so that the range
+     * clauses of the filters are answered by sub-map views.
+     */
+    private static final List<String> SORTED_INDEX_PROPS = Arrays.asList(
+        Constants.VERSION_ATTRIBUTE, Constants.BUNDLE_VERSION_ATTRIBUTE);
+
+    /**
+     * A sorted index is walked over the whole set, so it is only used when
+     * the remaining capabilities are at least this fraction of the set.
+     * Otherwise, checking each remaining capability is cheaper.
+     */
+    private static final int SORTED_INDEX_RATIO = 4;
+
     private final Map<String, Map<Object, Set<Capability>>> m_indices;
+    private final Map<String, SortedIndex> m_sortedIndices;
     private final Set<Capability> m_capSet = new HashSet<Capability>();
 
 public void dump()
@@ -70,6 +90,14 @@ public void dump()
             m_indices.put(
                 indexProps.get(i), new HashMap<Object, Set<Capability>>());
         }
+        m_sortedIndices = new HashMap<String, SortedIndex>();
+        for (String prop : SORTED_INDEX_PROPS)
+        {
+            if (!m_indices.containsKey(prop))
+            {
+                m_sortedIndices.put(prop, new SortedIndex());
+            }
+        }
     }
 
     public void addCapability(Capability cap)
@@ -103,6 +131,14 @@ public void dump()
                 }
             }
         }
+        for (Entry<String, SortedIndex> entry : m_sortedIndices.entrySet())
+        {
+            Object value = cap.getAttributes().get(entry.getKey());
+            if (value != null)
+            {
+                entry.getValue().add(cap, value);
+            }
+        }
     }
 
     private void indexCapability(
@@ -147,6 +183,14 @@ public void dump()
                     }
                 }
             }
+            for (Entry<String, SortedIndex> entry : m_sortedIndices.entrySet())
+            {
+                Object value = cap.getAttributes().get(entry.getKey());
+                if (value != null)
+                {
+                    entry.getValue().remove(cap, value);
+                }
+            }
         }
     }
 
@@ -186,7 +230,8 @@ public void dump()
             // For AND we calculate the intersection of each subfilter.
             // We can short-circuit the AND operation if there are no
             // remaining capabilities.
-            List<SimpleFilter> sfs = (List<SimpleFilter>) sf.getValue();
+            List<SimpleFilter> sfs = sortBySelectivity(
+                (List<SimpleFilter>) sf.getValue(), caps.size());
             for (int i = 0; (caps.size() > 0) && (i < sfs.size()); i++)
             {
                 matches = match(caps, sfs.get(i));
@@ -217,6 +262,7 @@ public void dump()
         else
         {
             Map<Object, Set<Capability>> index = m_indices.get(sf.getName());
+            SortedIndex sortedIndex = m_sortedIndices.get(sf.getName());
             if ((sf.getOperation() == SimpleFilter.EQ) && (index != null))
             {
                 Set<Capability> existingCaps = index.get(sf.getValue());
@@ -226,15 +272,42 @@ public void dump()
                     matches.retainAll(caps);
                 }
             }
+            else if ((sortedIndex != null)
+                && (caps.size() * SORTED_INDEX_RATIO >= m_capSet.size())
+                && sortedIndex.match(caps, sf, matches))
+            {
+                // Answered by the sorted index.
+            }
             else
             {
+                // Versions are compared without going through the string
+                // constructor for each capability.
+                Version version = null;
+                if ((sortedIndex != null) && isVersionComparison(sf.getOperation()))
+                {
+                    try
+                    {
+                        version = new Version((String) sf.getValue());
+                    }
+                    catch (Exception ex)
+                    {
+                        // Let compare() deal with it.
+                    }
+                }
                 for (Iterator<Capability> it = caps.iterator(); it.hasNext(); )
                 {
                     Capability cap = it.next();
                     Object lhs = cap.getAttributes().get(sf.getName());
                     if (lhs != null)
                     {
-                        if (compare(lhs, sf.getValue(), sf.getOperation()))
+                        if ((version != null) && (lhs instanceof Version))
+                        {
+                            if (compareVersion((Version) lhs, version, sf.getOperation()))
+                            {
+                                matches.add(cap);
+                            }
+                        }
+                        else if (compare(lhs, sf.getValue(), sf.getOperation()))
                         {
                             matches.add(cap);
                         }
@@ -246,6 +319,69 @@ public void dump()
         return matches;
     }
 
+    /**
+     * Orders the subfilters of an AND so that the most selective ones are
+     * evaluated first: equality on an indexed attribute by the number of
+     * capabilities with that value, then the ranges answered by a sorted
+     * index, then the subfilters that need a scan.
+     */
+    private List<SimpleFilter> sortBySelectivity(List<SimpleFilter> sfs, int size)
+    {
+        if (sfs.size() < 2)
+        {
+            return sfs;
+        }
+        final Map<SimpleFilter, Integer> estimates = new HashMap<SimpleFilter, Integer>();
+        for (SimpleFilter sf : sfs)
+        {
+            estimates.put(sf, estimate(sf, size));
+        }
+        List<SimpleFilter> sorted = new ArrayList<SimpleFilter>(sfs);
+        Collections.sort(sorted, new Comparator<SimpleFilter>()
+        {
+            public int compare(SimpleFilter sf1, SimpleFilter sf2)
+            {
+                return estimates.get(sf1).compareTo(estimates.get(sf2));
+            }
+        });
+        return sorted;
+    }
+
+    private int estimate(SimpleFilter sf, int size)
+    {
+        int op = sf.getOperation();
+        if (op == SimpleFilter.EQ)
+        {
+            Map<Object, Set<Capability>> index = m_indices.get(sf.getName());
+            if (index != null)
+            {
+                Set<Capability> caps = index.get(sf.getValue());
+                return (caps != null) ? caps.size() : 0;
+            }
+        }
+        if (isVersionComparison(op))
+        {
+            if (m_sortedIndices.containsKey(sf.getName()))
+            {
+                return size;
+            }
+        }
+        return size + 1;
+    }
+
+    private static boolean isVersionComparison(int op)
+    {
+        return (op == SimpleFilter.EQ) || (op == SimpleFilter.GTE) || (op == SimpleFilter.LTE);
+    }
+
+    private static boolean compareVersion(Version lhs, Version rhs, int op)
+    {
+        int c = lhs.compareTo(rhs);
+        return (op == SimpleFilter.EQ) ? (c == 0)
+            : (op == SimpleFilter.GTE) ? (c >= 0)
+            : (c <= 0);
+    }
+
     public static boolean matches(Capability cap, SimpleFilter sf)
     {
         return matchesInternal(cap, sf) && matchMandatory(cap, sf);
@@ -608,4 +744,114 @@ public void dump()
         }
         return list;
     }
+
+    /**
+     * Capabilities sorted by the version value of one attribute.  The
+     * capabilities with a value that is not a version are kept aside and
+     * compared one by one.
+     */
+    private static class SortedIndex
+    {
+        private final NavigableMap<Version, Set<Capability>> m_versions =
+            new TreeMap<Version, Set<Capability>>();
+        private final Set<Capability> m_others = new HashSet<Capability>();
+
+        void add(Capability cap, Object value)
+        {
+            if (value instanceof Version)
+            {
+                Set<Capability> caps = m_versions.get(value);
+                if (caps == null)
+                {
+                    caps = new HashSet<Capability>();
+                    m_versions.put((Version) value, caps);
+                }
+                caps.add(cap);
+            }
+            else
+            {
+                m_others.add(cap);
+            }
+        }
+
+        void remove(Capability cap, Object value)
+        {
+            if (value instanceof Version)
+            {
+                Set<Capability> caps = m_versions.get(value);
+                if (caps != null)
+                {
+                    caps.remove(cap);
+                    if (caps.isEmpty())
+                    {
+                        m_versions.remove(value);
+                    }
+                }
+            }
+            else
+            {
+                m_others.remove(cap);
+            }
+        }
+
+        /**
+         * Adds the capabilities among the given ones that match the filter
+         * to the matches.
+         *
+         * @return <code>false</code> if the filter can not be answered by
+         * this index
+         */
+        boolean match(Set<Capability> caps, SimpleFilter sf, Set<Capability> matches)
+        {
+            int op = sf.getOperation();
+            if (!isVersionComparison(op))
+            {
+                return false;
+            }
+            Version version;
+            try
+            {
+                version = new Version((String) sf.getValue());
+            }
+            catch (Exception ex)
+            {
+                return false;
+            }
+            Collection<Set<Capability>> found;
+            if (op == SimpleFilter.EQ)
+            {
+                Set<Capability> equal = m_versions.get(version);
+                found = (equal != null)
+                    ? Collections.singleton(equal)
+                    : Collections.<Set<Capability>>emptySet();
+            }
+            else if (op == SimpleFilter.GTE)
+            {
+                found = m_versions.tailMap(version, true).values();
+            }
+            else
+            {
+                found = m_versions.headMap(version, true).values();
+            }
+            for (Set<Capability> set : found)
+            {
+                for (Capability cap : set)
+                {
+                    if (caps.contains(cap))
+                    {
+                        matches.add(cap);
+                    }
+                }
+            }
+            for (Capability cap : m_others)
+            {
+                if (caps.contains(cap)
+                    && compare(cap.getAttributes().get(sf.getName()), sf.getValue(), op))
+                {
+                    matches.add(cap);
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -0,0 +1,146 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.resolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.felix.utils.properties.Properties;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+/**
+ * Remembers the last resolution of the agent.
+ * <p/>
+ * The resolution is stored with a key computed from everything the resolver sees: the capabilities and
+ * requirements of the available resources, of the system bundle and of the required resource. A resolution
+ * with the same key can reuse the resources that were resolved, while a resolution with a different key
+ * can still prefer the resources of the previous solution.
+ */
+public class ResolutionCache {
+
+    private static final String KEY = "key";
+    private static final String RESOURCE_PREFIX = "resource.";
+
+    private final File file;
+    private String key;
+    private List<String> uris = Collections.emptyList();
+
+    public ResolutionCache(File file) throws IOException {
+        this.file = file;
+        if (file.isFile()) {
+            Properties props = new Properties(file);
+            key = props.get(KEY);
+            uris = new ArrayList<String>();
+            for (int i = 0; props.containsKey(RESOURCE_PREFIX + i); i++) {
+                uris.add(props.get(RESOURCE_PREFIX + i));
+            }
+        }
+    }
+
+    /**
+     * Returns the uris of the resources resolved for the given key, or <code>null</code> if the last resolution
+     * was done with other inputs.
+     */
+    public synchronized List<String> get(String key) {
+        return key.equals(this.key) ? uris : null;
+    }
+
+    /**
+     * Returns the uris of the resources of the last resolution, whatever its inputs were.
+     */
+    public synchronized Set<String> getPreviousSolution() {
+        return new LinkedHashSet<String>(uris);
+    }
+
+    public synchronized void put(String key, Collection<String> uris) throws IOException {
+        this.key = key;
+        this.uris = new ArrayList<String>(uris);
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir.toString());
+        }
+        Properties props = new Properties(file);
+        props.clear();
+        props.put(KEY, key);
+        for (int i = 0; i < this.uris.size(); i++) {
+            props.put(RESOURCE_PREFIX + i, this.uris.get(i));
+        }
+        props.save();
+    }
+
+    /**
+     * Computes the key of a resolution from the capabilities and requirements of all its inputs.
+     */
+    public static String getKey(Map<String, Resource> resources, Resource requirements, boolean resolveOptional) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("optional=").append(resolveOptional).append('\n');
+        append(sb, "requirements", requirements);
+        update(digest, sb);
+        for (Map.Entry<String, Resource> entry : new TreeMap<String, Resource>(resources).entrySet()) {
+            append(sb, entry.getKey(), entry.getValue());
+            update(digest, sb);
+        }
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    private static void append(StringBuilder sb, String name, Resource resource) {
+        sb.append("resource=").append(name).append('\n');
+        for (Capability cap : resource.getCapabilities(null)) {
+            sb.append("cap=").append(cap.getNamespace())
+                    .append(new TreeMap<String, Object>(cap.getAttributes()))
+                    .append(new TreeMap<String, String>(cap.getDirectives()))
+                    .append('\n');
+        }
+        for (Requirement req : resource.getRequirements(null)) {
+            sb.append("req=").append(req.getNamespace())
+                    .append(new TreeMap<String, Object>(req.getAttributes()))
+                    .append(new TreeMap<String, String>(req.getDirectives()))
+                    .append('\n');
+        }
+    }
+
+    private static void update(MessageDigest digest, StringBuilder sb) {
+        try {
+            digest.update(sb.toString().getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        sb.setLength(0);
+    }
+}
@@ -18,6 +18,7 @@ package io.fabric8.agent.resolver;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,17 +43,45 @@ public class ResolveContextImpl extends ResolveContext {
     private final Map<Resource, Wiring> wirings;
     private final boolean resolveOptional;
 
-    private final CandidateComparator candidateComparator = new CandidateComparator();
+    private final Comparator<Capability> candidateComparator;
 
     public ResolveContextImpl(Set<Resource> mandatory,
                               Set<Resource> optional,
                               Repository repository,
                               boolean resolveOptional) {
+        this(mandatory, optional, repository, resolveOptional, Collections.<String>emptySet());
+    }
+
+    /**
+     * @param preferred the uris of the resources to prefer among equivalent candidates, usually the ones
+     *                  of a previous resolution, so that the resolver starts from the previous solution
+     */
+    public ResolveContextImpl(Set<Resource> mandatory,
+                              Set<Resource> optional,
+                              Repository repository,
+                              boolean resolveOptional,
+                              final Set<String> preferred) {
         this.mandatory = mandatory;
         this.optional = optional;
         this.repository = repository;
         this.wirings = new HashMap<Resource, Wiring>();
         this.resolveOptional = resolveOptional;
+        if (preferred.isEmpty()) {
+            this.candidateComparator = new CandidateComparator();
+        } else {
+            this.candidateComparator = new CandidateComparator() {
+                @Override
+                public int compare(Capability cap1, Capability cap2) {
+                    int c = super.compare(cap1, cap2);
+                    if (c == 0) {
+                        boolean p1 = preferred.contains(UriNamespace.getUri(cap1.getResource()));
+                        boolean p2 = preferred.contains(UriNamespace.getUri(cap2.getResource()));
+                        c = p1 == p2 ? 0 : p1 ? -1 : 1;
+                    }
+                    return c;
+                }
+            };
+        }
     }
 
     @Override
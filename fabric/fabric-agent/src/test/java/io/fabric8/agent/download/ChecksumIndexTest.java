@@ -0,0 +1,88 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.download;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import io.fabric8.common.util.ChecksumUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChecksumIndexTest {
+
+    private File dir;
+    private File bundle;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = new File("target/checksum-index-" + System.currentTimeMillis());
+        dir.mkdirs();
+        bundle = new File(dir, "bundle.jar");
+        write(bundle, "first");
+    }
+
+    @Test
+    public void testChecksumIsKeptAcrossRestarts() throws Exception {
+        File file = new File(dir, "checksums.properties");
+        ChecksumIndex index = new ChecksumIndex(file);
+        long checksum = index.getChecksum(bundle);
+        assertEquals(ChecksumUtils.checksum(new FileInputStream(bundle)), checksum);
+        index.save();
+        assertTrue(file.isFile());
+
+        // same size and modification time, the file is not read again
+        long lastModified = bundle.lastModified();
+        write(bundle, "other");
+        bundle.setLastModified(lastModified);
+        assertEquals(checksum, new ChecksumIndex(file).getChecksum(bundle));
+    }
+
+    @Test
+    public void testModifiedFileIsReadAgain() throws Exception {
+        ChecksumIndex index = new ChecksumIndex(new File(dir, "checksums.properties"));
+        long checksum = index.getChecksum(bundle);
+        write(bundle, "second");
+        long newChecksum = index.getChecksum(bundle);
+        assertFalse(checksum == newChecksum);
+        assertEquals(ChecksumUtils.checksum(new FileInputStream(bundle)), newChecksum);
+    }
+
+    @Test
+    public void testDownloadedChecksumIsRecorded() throws Exception {
+        File file = new File(dir, "checksums.properties");
+        ChecksumIndex index = new ChecksumIndex(file);
+        index.put(bundle, 42);
+        index.save();
+        assertEquals(42, new ChecksumIndex(file).getChecksum(bundle));
+    }
+
+    private static void write(File file, String content) throws IOException {
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+}
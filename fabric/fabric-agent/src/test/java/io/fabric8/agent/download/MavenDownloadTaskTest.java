@@ -0,0 +1,239 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.download;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.fabric8.agent.mvn.MavenConfigurationImpl;
+import io.fabric8.agent.mvn.MavenRepositoryURL;
+import io.fabric8.agent.mvn.MavenSettingsImpl;
+import io.fabric8.agent.mvn.PropertiesPropertyResolver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MavenDownloadTaskTest {
+
+    private static final String PATH = "/repo/org/acme/demo/1.0/demo-1.0.jar";
+
+    private final byte[] artifact = new byte[256 * 1024];
+    private final List<String> ranges = new CopyOnWriteArrayList<String>();
+    private volatile int dropAfter;
+    private volatile String badContentRange;
+    private volatile String sha1;
+    private HttpServer server;
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        new Random(0).nextBytes(artifact);
+        sha1 = sha1(artifact);
+        dir = new File("target/maven-download-" + System.currentTimeMillis());
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/repo", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                if (path.equals(PATH + ".sha1")) {
+                    send(exchange, 200, (sha1 + "  demo-1.0.jar").getBytes("US-ASCII"), 0, null);
+                } else if (path.equals(PATH)) {
+                    String range = exchange.getRequestHeaders().getFirst("Range");
+                    ranges.add(String.valueOf(range));
+                    int offset = range != null ? Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-'))) : 0;
+                    String contentRange = offset > 0 ? "bytes " + offset + "-" + (artifact.length - 1) + "/" + artifact.length : null;
+                    if (offset > 0 && badContentRange != null) {
+                        contentRange = badContentRange;
+                    }
+                    send(exchange, offset > 0 ? 206 : 200, artifact, offset, contentRange);
+                } else {
+                    exchange.sendResponseHeaders(404, -1);
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testResumeAfterDroppedConnection() throws Exception {
+        dropAfter = 100 * 1024;
+        MavenDownloadTask task = createTask("warn");
+        try {
+            task.download();
+            fail("The connection should have been dropped");
+        } catch (IOException e) {
+            // expected
+        }
+        dropAfter = 0;
+        File file = task.download();
+
+        assertEquals(2, ranges.size());
+        assertEquals("null", ranges.get(0));
+        assertTrue(ranges.get(1), ranges.get(1).startsWith("bytes="));
+        assertArrayEquals(artifact, read(file));
+        assertFalse(new File(file.getPath() + ".part").exists());
+        CRC32 crc = new CRC32();
+        crc.update(artifact);
+        assertEquals(crc.getValue(), task.getChecksum());
+        assertTrue(task.getTransferredBytes() < artifact.length);
+    }
+
+    @Test
+    public void testPartialResponseWithBadContentRange() throws Exception {
+        dropAfter = 100 * 1024;
+        MavenDownloadTask task = createTask("warn");
+        try {
+            task.download();
+            fail("The connection should have been dropped");
+        } catch (IOException e) {
+            // expected
+        }
+        dropAfter = 0;
+        badContentRange = "bytes garbage";
+        try {
+            task.download();
+            fail("The partial response should have been rejected");
+        } catch (IOException e) {
+            // expected
+        }
+        File file = new File(dir, "local/org/acme/demo/1.0/demo-1.0.jar");
+        assertFalse("The partial file should have been deleted", new File(file.getPath() + ".part").exists());
+        assertFalse("The partial range should not have been installed", file.exists());
+
+        assertArrayEquals(artifact, read(task.download()));
+        assertEquals(3, ranges.size());
+        assertEquals("The last attempt should not resume", "null", ranges.get(2));
+    }
+
+    @Test
+    public void testChecksumMismatch() throws Exception {
+        sha1 = "0000000000000000000000000000000000000000";
+        try {
+            createTask("fail").download();
+            fail("The checksum should not match");
+        } catch (IOException e) {
+            // expected
+        }
+        assertArrayEquals(artifact, read(createTask("warn").download()));
+    }
+
+    @Test
+    public void testLimiter() throws Exception {
+        DownloadLimiter limiter = new DownloadLimiter(1, 100 * 1024);
+        long start = System.currentTimeMillis();
+        limiter.acquire();
+        for (int i = 0; i < 4; i++) {
+            limiter.consume(25 * 1024);
+        }
+        limiter.release();
+        assertTrue(System.currentTimeMillis() - start >= 500);
+    }
+
+    @Test
+    public void testInterruptedDownload() throws Exception {
+        DownloadLimiter limiter = new DownloadLimiter(1, 0);
+        limiter.acquire();
+        MavenDownloadTask task = createTask("warn", limiter);
+        Thread.currentThread().interrupt();
+        try {
+            task.download();
+            fail("The download should have been interrupted");
+        } catch (InterruptedIOException e) {
+            // expected
+        }
+        assertTrue("The thread should still be interrupted", Thread.interrupted());
+        assertTrue("No repository should have been tried", ranges.isEmpty());
+
+        limiter.release();
+        assertArrayEquals(artifact, read(task.download()));
+    }
+
+    private MavenDownloadTask createTask(String checksumPolicy) throws Exception {
+        return createTask(checksumPolicy, new DownloadLimiter(0, 0));
+    }
+
+    private MavenDownloadTask createTask(String checksumPolicy, DownloadLimiter limiter) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("test.localRepository", new File(dir, "local").getAbsolutePath());
+        properties.setProperty("test.repositories", "http://localhost:" + server.getAddress().getPort() + "/repo@id=test");
+        properties.setProperty("test.checksumPolicy", checksumPolicy);
+        MavenConfigurationImpl configuration = new MavenConfigurationImpl(new PropertiesPropertyResolver(properties), "test");
+        configuration.setSettings(new MavenSettingsImpl(new File(dir, "settings.xml").toURI().toURL()));
+        return new MavenDownloadTask("mvn:org.acme/demo/1.0",
+                new MavenRepositoryURL(new File(dir, "cache").toURI().toString() + "@snapshots"),
+                new MavenRepositoryURL(new File(dir, "system").toURI().toString() + "@snapshots"),
+                configuration, null, limiter);
+    }
+
+    private void send(HttpExchange exchange, int code, byte[] data, int offset, String contentRange) throws IOException {
+        if (contentRange != null) {
+            exchange.getResponseHeaders().add("Content-Range", contentRange);
+        }
+        exchange.sendResponseHeaders(code, data.length - offset);
+        OutputStream os = exchange.getResponseBody();
+        int end = dropAfter > 0 ? dropAfter : data.length;
+        os.write(data, offset, end - offset);
+        os.flush();
+        exchange.close();
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream is = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                offset += is.read(data, offset, data.length - offset);
+            }
+        } finally {
+            is.close();
+        }
+        return data;
+    }
+
+    private static String sha1(byte[] data) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-1").digest(data)) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.resolver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.fabric8.agent.repository.StaticRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+/**
+ * Measures the matching of requirements against a repository of 2,000 bundles.
+ * <p/>
+ * Each bundle exports its own packages and a version of one of 20 shared packages, and imports shared packages
+ * with version ranges.  The imports benchmark looks up the providers of the import requirements the way the
+ * resolver does, the range benchmark matches a version range without package name against all the packages.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CapabilitySetBenchmark {
+
+    private static final int BUNDLES = 2000;
+    private static final int SHARED_PACKAGES = 20;
+
+    @State(Scope.Benchmark)
+    public static class Repository {
+        StaticRepository repository;
+        CapabilitySet packages;
+        List<Requirement> imports;
+        SimpleFilter range;
+        int next;
+
+        @Setup
+        public void setUp() throws Exception {
+            List<Resource> resources = new ArrayList<Resource>();
+            imports = new ArrayList<Requirement>();
+            packages = new CapabilitySet(Collections.singletonList(PackageNamespace.PACKAGE_NAMESPACE));
+            for (int i = 0; i < BUNDLES; i++) {
+                Map<String, String> headers = new HashMap<String, String>();
+                headers.put("Bundle-ManifestVersion", "2");
+                headers.put("Bundle-SymbolicName", "com.acme.bundle" + i);
+                headers.put("Bundle-Version", "1." + (i % 10) + ".0");
+                headers.put("Export-Package", "com.acme.bundle" + i + ".api;version=1." + (i % 10)
+                        + ",com.acme.bundle" + i + ".impl;version=1." + (i % 10)
+                        + ",com.acme.shared" + (i % SHARED_PACKAGES) + ";version=" + (i % 5) + "." + i);
+                headers.put("Import-Package", "com.acme.shared" + ((i + 1) % SHARED_PACKAGES) + ";version=\"[1,2)\""
+                        + ",com.acme.shared" + ((i + 2) % SHARED_PACKAGES) + ";version=\"[2.100,3)\""
+                        + ",com.acme.bundle" + ((i + 3) % BUNDLES) + ".api;version=\"[1,2)\"");
+                Resource resource = ResourceBuilder.build("mvn:com.acme/bundle" + i + "/1." + (i % 10) + ".0", headers);
+                resources.add(resource);
+                imports.addAll(resource.getRequirements(PackageNamespace.PACKAGE_NAMESPACE));
+                for (Capability cap : resource.getCapabilities(PackageNamespace.PACKAGE_NAMESPACE)) {
+                    packages.addCapability(cap);
+                }
+            }
+            repository = new StaticRepository(resources);
+            range = SimpleFilter.parse("(&(version>=2.500.0)(!(version>=3.0.0)))");
+        }
+    }
+
+    @Benchmark
+    public Map<Requirement, Collection<Capability>> imports(Repository repository) {
+        Requirement requirement = repository.imports.get(repository.next++ % repository.imports.size());
+        return repository.repository.findProviders(Collections.singleton(requirement));
+    }
+
+    @Benchmark
+    public Collection<Capability> range(Repository repository) {
+        return repository.packages.match(repository.range, true);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CapabilitySetBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
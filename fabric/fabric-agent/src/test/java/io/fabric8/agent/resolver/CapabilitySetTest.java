@@ -0,0 +1,101 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.resolver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class CapabilitySetTest {
+
+    private final List<Capability> packages = new ArrayList<Capability>();
+    private CapabilitySet capSet;
+
+    @Before
+    public void setUp() throws Exception {
+        capSet = new CapabilitySet(Collections.singletonList(PackageNamespace.PACKAGE_NAMESPACE));
+        for (int i = 0; i < 100; i++) {
+            Map<String, String> headers = new HashMap<String, String>();
+            headers.put("Bundle-ManifestVersion", "2");
+            headers.put("Bundle-SymbolicName", "bundle" + i);
+            headers.put("Bundle-Version", "1." + i + ".0");
+            headers.put("Export-Package", "pkg" + (i % 10) + ";version=" + (i % 3) + "." + i + ",pkg.unversioned" + i
+                    + ",pkg.custom;version=" + (i % 4) + ";mandatory:=version");
+            Resource resource = ResourceBuilder.build("mvn:acme/bundle" + i + "/1." + i + ".0", headers);
+            for (Capability cap : resource.getCapabilities(PackageNamespace.PACKAGE_NAMESPACE)) {
+                packages.add(cap);
+                capSet.addCapability(cap);
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesAsFilter() throws Exception {
+        String[] filters = {
+                "(&(osgi.wiring.package=pkg3)(version>=1.0.0)(!(version>=2.0.0)))",
+                "(&(version>=1.20.0)(!(version>=2.0.0)))",
+                "(&(version>=0.50.0)(version<=1.70.0))",
+                "(&(bundle-version>=1.10.0)(bundle-version<=1.30.0)(osgi.wiring.package=pkg.unversioned15))",
+                "(version=2.41.0)",
+                "(version>=1.0.0.SNAPSHOT)",
+                "(version>=not-a-version)",
+                "(&(osgi.wiring.package=pkg.custom)(version>=2.0.0))",
+                "(&(osgi.wiring.package=pkg.custom)(bundle-version>=1.0.0))",
+                "(|(osgi.wiring.package=pkg1)(&(version<=0.9.0)(osgi.wiring.package=pkg0)))",
+                "(osgi.wiring.package=pkg*)",
+        };
+        for (String filter : filters) {
+            SimpleFilter sf = SimpleFilter.parse(filter);
+            assertEquals(filter, scan(sf), capSet.match(sf, true));
+        }
+        assertFalse(capSet.match(SimpleFilter.parse("(&(version>=1.20.0)(!(version>=2.0.0)))"), true).isEmpty());
+    }
+
+    @Test
+    public void testRemovedCapabilitiesDoNotMatch() throws Exception {
+        SimpleFilter sf = SimpleFilter.parse("(&(version>=1.0.0)(!(version>=2.0.0)))");
+        Set<Capability> matches = capSet.match(sf, true);
+        for (Capability cap : matches) {
+            capSet.removeCapability(cap);
+            packages.remove(cap);
+        }
+        assertEquals(Collections.<Capability>emptySet(), capSet.match(sf, true));
+        assertEquals(scan(SimpleFilter.parse("(version>=0.0.0)")), capSet.match(SimpleFilter.parse("(version>=0.0.0)"), true));
+    }
+
+    private Set<Capability> scan(SimpleFilter sf) {
+        Set<Capability> matches = new HashSet<Capability>();
+        for (Capability cap : packages) {
+            if (CapabilitySet.matches(cap, sf)) {
+                matches.add(cap);
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.resolver;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.junit.Test;
+import org.osgi.framework.Version;
+import org.osgi.resource.Resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class ResolutionCacheTest {
+
+    @Test
+    public void testKey() throws Exception {
+        ResourceImpl requirements = new ResourceImpl("dummy", "dummy", Version.emptyVersion);
+        String key = ResolutionCache.getKey(resources("1.0.0"), requirements, false);
+        assertEquals(key, ResolutionCache.getKey(resources("1.0.0"), requirements, false));
+        assertFalse(key.equals(ResolutionCache.getKey(resources("1.0.0"), requirements, true)));
+        assertFalse(key.equals(ResolutionCache.getKey(resources("1.1.0"), requirements, false)));
+    }
+
+    @Test
+    public void testResolutionIsKept() throws Exception {
+        File file = new File("target/resolution-" + System.currentTimeMillis() + ".properties");
+        ResolutionCache cache = new ResolutionCache(file);
+        assertNull(cache.get("key"));
+        cache.put("key", Arrays.asList("mvn:acme/api/1.0.0", "mvn:acme/impl/1.0.0"));
+
+        cache = new ResolutionCache(file);
+        assertEquals(Arrays.asList("mvn:acme/api/1.0.0", "mvn:acme/impl/1.0.0"), cache.get("key"));
+        assertNull(cache.get("other"));
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("mvn:acme/api/1.0.0", "mvn:acme/impl/1.0.0")), cache.getPreviousSolution());
+    }
+
+    private static Map<String, Resource> resources(String version) throws Exception {
+        Map<String, Resource> resources = new HashMap<String, Resource>();
+        resources.put("mvn:acme/api/" + version, bundle("acme.api", version, "Export-Package", "acme.api;version=" + version));
+        resources.put("mvn:acme/impl/1.0.0", bundle("acme.impl", "1.0.0", "Import-Package", "acme.api;version=\"[1,2)\""));
+        return resources;
+    }
+
+    private static Resource bundle(String name, String version, String header, String value) throws Exception {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Bundle-ManifestVersion", "2");
+        headers.put("Bundle-SymbolicName", name);
+        headers.put("Bundle-Version", version);
+        headers.put(header, value);
+        return ResourceBuilder.build("mvn:acme/" + name + "/" + version, headers);
+    }
+}
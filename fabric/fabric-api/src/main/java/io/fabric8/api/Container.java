@@ -162,6 +162,14 @@ public interface Container extends HasId {
     Properties getProvisionChecksums();
     void setProvisionChecksums(Properties checksums);
 
+    /**
+     * Returns the time in milliseconds spent in each phase of the last provisioning, by provision status,
+     * along with the <code>download.&lt;url&gt;.bytes</code> and <code>download.&lt;url&gt;.time</code> of each
+     * artifact transferred from a remote repository
+     */
+    Properties getProvisionTimings();
+    void setProvisionTimings(Properties timings);
+
     String getProvisionStatus();
 
     Map<String, String> getProvisionStatusMap();
@@ -49,6 +49,17 @@ public interface DataStore {
     void trackConfiguration(Runnable callback);
     void untrackConfiguration(Runnable callback);
 
+    //
+    // Transactions
+    //
+
+    /**
+     * Runs the given task, applying all the profile and version changes it makes as one unit. Data stores
+     * which support it write the changes with a single commit and publish them with a single remote update
+     * and change notification rather than once per change.
+     */
+    void runInTransaction(Runnable task);
+
     //
     // Container management
     //
@@ -88,6 +99,7 @@ public interface DataStore {
         ProvisionException,
         ProvisionList,
         ProvisionChecksums,
+        ProvisionTimings,
         Location,
         GeoLocation,
         Resolver,
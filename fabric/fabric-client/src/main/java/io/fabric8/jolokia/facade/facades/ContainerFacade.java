@@ -395,6 +395,16 @@ public class ContainerFacade implements Container, HasId {
         throw new UnsupportedOperationException("This cannot be set from a remote process");
     }
 
+    @Override
+    public Properties getProvisionTimings() {
+        throw new UnsupportedOperationException("This cannot be set from a remote process");
+    }
+
+    @Override
+    public void setProvisionTimings(Properties timings) {
+        throw new UnsupportedOperationException("This cannot be set from a remote process");
+    }
+
     @Override
     public String getProvisionStatus() {
         return getFieldValue("provisionStatus");
@@ -23,6 +23,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import jline.Terminal;
 
@@ -149,7 +150,33 @@ public class ProfileEdit extends FabricCommand {
         return null;
     }
 
-    private void editProfile(Profile profile) throws Exception {
+    private void editProfile(final Profile profile) throws Exception {
+        // apply all the inline changes with a single commit and push
+        final AtomicBoolean editInLine = new AtomicBoolean();
+        fabricService.getDataStore().runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                editInLine.set(editInLine(profile));
+            }
+        });
+
+        if (!editInLine.get()) {
+            resource = resource != null ? resource : "io.fabric8.agent.properties";
+            //If a single pid has been selected, but not a key value has been specified or import has been selected,
+            //then open the resource in the editor.
+            if (pidProperties != null && pidProperties.length == 1) {
+                resource = pidProperties[0] + ".properties";
+            }
+            openInEditor(profile, resource);
+        }
+    }
+
+    /**
+     * Applies the changes given on the command line to the profile.
+     * @param profile   The target profile.
+     * @return          True if there were changes to apply, false if the profile should be opened in the editor.
+     */
+    private boolean editInLine(Profile profile) {
         boolean editInLine = false;
 
         if (delete || remove) {
@@ -202,16 +229,7 @@ public class ProfileEdit extends FabricCommand {
             editInLine = true;
             handleConfigProperties(configProperties, profile);
         }
-
-        if (!editInLine) {
-            resource = resource != null ? resource : "io.fabric8.agent.properties";
-            //If a single pid has been selected, but not a key value has been specified or import has been selected,
-            //then open the resource in the editor.
-            if (pidProperties != null && pidProperties.length == 1) {
-                resource = pidProperties[0] + ".properties";
-            }
-            openInEditor(profile, resource);
-        }
+        return editInLine;
     }
 
     /**
@@ -37,14 +37,18 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @ThreadSafe
 @Component(name = "io.fabric8.configadmin.bridge", label = "Fabric8 Config Admin Bridge", metatype = false)
@@ -65,6 +69,17 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
     private final ValidatingReference<URLStreamHandlerService> urlHandler = new ValidatingReference<URLStreamHandlerService>();
 
     private final ExecutorService executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("fabric-configadmin"));
+    private final AtomicBoolean updatePending = new AtomicBoolean();
+    private final AtomicLong reconciliations = new AtomicLong();
+    private final AtomicLong coalescedUpdates = new AtomicLong();
+
+    // the configurations last applied to config admin by fabric zookeeper pid, guarded by this
+    private final Map<String, Hashtable<String, Object>> applied = new HashMap<String, Hashtable<String, Object>>();
+    private boolean reconciled;
+
+    private volatile long lastReconcileTime;
+    private volatile int lastUpdatedCount;
+    private volatile int lastDeletedCount;
 
     @Activate
     void activate() {
@@ -91,10 +106,19 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
         submitUpdateJob();
     }
 
+    /**
+     * Submits a reconciliation unless one is already pending, in which case that one will see this change too
+     */
     private void submitUpdateJob() {
+        if (!updatePending.compareAndSet(false, true)) {
+            coalescedUpdates.incrementAndGet();
+            return;
+        }
         executor.submit(new Runnable() {
             @Override
             public void run() {
+                // changes from now on need another reconciliation
+                updatePending.set(false);
                 if (isValid()) {
                     updateInternal();
                 }
@@ -102,7 +126,13 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
         });
     }
 
+    /**
+     * Applies the configurations of the container overlay profile to config admin. The first time all the
+     * configurations managed by fabric are compared and the ones no longer in the profile are deleted, after
+     * that only the configurations which changed since they were last applied are updated or deleted.
+     */
     private synchronized void updateInternal() {
+        long start = System.nanoTime();
         Profile profile = null;
 
         try {
@@ -112,10 +142,12 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
             return;
         }
 
+        int updated = 0;
+        int deleted = 0;
         try {
-
             final Map<String, Map<String, String>> pidProperties = profile.getConfigurations();
-            List<Configuration> configs = asList(configAdmin.get().listConfigurations("(" + FABRIC_ZOOKEEPER_PID + "=*)"));
+            boolean full = !reconciled;
+            List<Configuration> configs = full ? asList(configAdmin.get().listConfigurations("(" + FABRIC_ZOOKEEPER_PID + "=*)")) : null;
             // FABRIC-803: the agent may use the configuration provided by features definition if not managed
             //   by fabric.  However, in order for this to work, we need to make sure managed configurations
             //   are all registered before the agent kicks in.  Hence, the agent configuration is updated
@@ -125,7 +157,9 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
                 if (!pid.equals(Constants.AGENT_PID)) {
                     Hashtable<String, Object> c = new Hashtable<String, Object>();
                     c.putAll(pidProperties.get(pid));
-                    updateConfig(configs, pid, c);
+                    if (applyConfig(configs, pid, c)) {
+                        updated++;
+                    }
                 }
             }
             // Process agent configuration last
@@ -134,28 +168,112 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
                     Hashtable<String, Object> c = new Hashtable<String, Object>();
                     c.putAll(pidProperties.get(pid));
                     c.put(Profile.HASH, String.valueOf(profile.getProfileHash()));
-                    updateConfig(configs, pid, c);
+                    if (applyConfig(configs, pid, c)) {
+                        updated++;
+                    }
                 }
             }
-            for (Configuration config : configs) {
-                LOGGER.info("Deleting configuration {}", config.getPid());
-                fabricService.get().getPortService().unregisterPort(fabricService.get().getCurrentContainer(), config.getPid());
-                config.delete();
+            if (full) {
+                for (Configuration config : configs) {
+                    deleteConfig(config);
+                    deleted++;
+                }
             }
+            for (Iterator<String> iterator = applied.keySet().iterator(); iterator.hasNext();) {
+                String pid = iterator.next();
+                if (!pidProperties.containsKey(pid)) {
+                    iterator.remove();
+                    Configuration[] removed = configAdmin.get().listConfigurations("(" + FABRIC_ZOOKEEPER_PID + "=" + pid + ")");
+                    if (removed != null) {
+                        for (Configuration config : removed) {
+                            deleteConfig(config);
+                            deleted++;
+                        }
+                    }
+                }
+            }
+            reconciled = true;
         } catch (Throwable e) {
+            // compare everything again next time
+            reconciled = false;
+            applied.clear();
             if (isValid()) {
                 LOGGER.warn("Exception when tracking configurations. This exception will be ignored.", e);
             } else {
                 LOGGER.debug("Exception when tracking configurations. This exception will be ignored because services have been unbound in the mean time.", e);
             }
+        } finally {
+            reconciliations.incrementAndGet();
+            lastReconcileTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            lastUpdatedCount = updated;
+            lastDeletedCount = deleted;
+            if (updated > 0 || deleted > 0) {
+                LOGGER.info("Reconciled configurations in {} ms, updated {} and deleted {}", new Object[]{lastReconcileTime, updated, deleted});
+            } else {
+                LOGGER.debug("Reconciled configurations in {} ms, no changes", lastReconcileTime);
+            }
+        }
+    }
+
+    /**
+     * Updates the configuration unless it is the one last applied, returning true if config admin was updated
+     */
+    private boolean applyConfig(List<Configuration> configs, String pid, Hashtable<String, Object> c) throws Exception {
+        if (configs == null && c.equals(applied.get(pid))) {
+            return false;
         }
+        applied.put(pid, new Hashtable<String, Object>(c));
+        return updateConfig(configs, pid, c);
+    }
+
+    private void deleteConfig(Configuration config) throws Exception {
+        LOGGER.info("Deleting configuration {}", config.getPid());
+        fabricService.get().getPortService().unregisterPort(fabricService.get().getCurrentContainer(), config.getPid());
+        config.delete();
     }
 
-    private void updateConfig(List<Configuration> configs, String pid, Hashtable<String, Object> c) throws Exception {
+    /**
+     * Returns the number of reconciliations of the config admin configurations with the profiles
+     */
+    public long getReconciliationCount() {
+        return reconciliations.get();
+    }
+
+    /**
+     * Returns the number of profile changes which were handled by an already pending reconciliation
+     */
+    public long getCoalescedUpdateCount() {
+        return coalescedUpdates.get();
+    }
+
+    /**
+     * Returns the time in milliseconds the last reconciliation took
+     */
+    public long getLastReconcileTime() {
+        return lastReconcileTime;
+    }
+
+    /**
+     * Returns the number of configurations the last reconciliation updated
+     */
+    public int getLastUpdatedCount() {
+        return lastUpdatedCount;
+    }
+
+    /**
+     * Returns the number of configurations the last reconciliation deleted
+     */
+    public int getLastDeletedCount() {
+        return lastDeletedCount;
+    }
+
+    private boolean updateConfig(List<Configuration> configs, String pid, Hashtable<String, Object> c) throws Exception {
         String p[] = parsePid(pid);
         //Get the configuration by fabric zookeeper pid, pid and factory pid.
         Configuration config = getConfiguration(configAdmin.get(), pid, p[0], p[1]);
-        configs.remove(config);
+        if (configs != null) {
+            configs.remove(config);
+        }
         Dictionary<String, Object> props = config.getProperties();
         Hashtable<String, Object> old = props != null ? new Hashtable<String, Object>() : null;
         if (old != null) {
@@ -175,10 +293,12 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
                 config.setBundleLocation(null);
             }
             config.update(c);
+            return true;
         } else {
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Ignoring configuration {} (no changes)", config.getPid());
             }
+            return false;
         }
     }
 
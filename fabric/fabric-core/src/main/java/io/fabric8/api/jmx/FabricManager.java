@@ -890,6 +890,20 @@ public class FabricManager implements FabricManagerMBean {
         }
     }
 
+    @Override
+    public void setConfigurationFiles(String versionId, String profileId, Map<String, String> files) {
+        Profile profile = getFabricService().getVersion(versionId).getProfile(profileId);
+        Map<String, byte[]> configs = profile.getFileConfigurations();
+        try {
+            for (Map.Entry<String, String> entry : files.entrySet()) {
+                configs.put(entry.getKey(), Base64.decodeBase64(entry.getValue()));
+            }
+            profile.setFileConfigurations(configs);
+        } catch (Exception e) {
+            throw new FabricException("Error setting config files: ", e);
+        }
+    }
+
     @Override
     public void setProfileBundles(String versionId, String profileId, List<String> bundles) {
         Version v = getFabricService().getVersion(versionId);
@@ -187,6 +187,11 @@ public interface FabricManagerMBean {
     
     void setConfigurationFile(String versionId, String profileId, String fileName, String data);
 
+    /**
+     * Sets the given base64 encoded configuration files of the profile with a single change
+     */
+    void setConfigurationFiles(String versionId, String profileId, Map<String, String> files);
+
     /**
      * Returns the profile properties for the given PID
      */
@@ -670,6 +670,31 @@ public class ContainerImpl implements Container {
         }
     }
 
+    @Override
+    public Properties getProvisionTimings() {
+        String str = getOptionalAttribute(DataStore.ContainerAttribute.ProvisionTimings, null);
+        Properties answer = new Properties();
+        if (str != null) {
+            try {
+                answer.load(new StringReader(str));
+            } catch (IOException e) {
+                logger.warn("Failed to convert provisionTimings: " + str + " to a Properties object. " + e, e);
+            }
+        }
+        return answer;
+    }
+
+    @Override
+    public void setProvisionTimings(Properties timings) {
+        StringWriter writer = new StringWriter();
+        try {
+            timings.store(writer, "provision timings");
+            setAttribute(DataStore.ContainerAttribute.ProvisionTimings, writer.toString());
+        } catch (IOException e) {
+            logger.warn("Failed to convert provisionTimings: " + timings + " to a string. " + e, e);
+        }
+    }
+
     @Override
     public CreateContainerMetadata<?> getMetadata() {
         if (metadata == null) {
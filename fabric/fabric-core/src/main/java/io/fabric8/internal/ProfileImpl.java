@@ -251,7 +251,7 @@ public class ProfileImpl implements Profile {
     }
 
     public Profile getOverlay() {
-        return new ProfileOverlayImpl(this, fabricService.getEnvironment());
+        return new ProfileOverlayImpl(this, fabricService.getEnvironment(), false, fabricService);
     }
 
     public Profile getOverlay(boolean substitute) {
@@ -380,7 +380,7 @@ public class ProfileImpl implements Profile {
      * @return
      */
     public boolean agentConfigurationEquals(Profile other) {
-        ProfileOverlayImpl selfOverlay = new ProfileOverlayImpl(this, fabricService.getEnvironment());
+        ProfileOverlayImpl selfOverlay = new ProfileOverlayImpl(this, fabricService.getEnvironment(), false, fabricService);
         return selfOverlay.agentConfigurationEquals(other);
     }
 
@@ -0,0 +1,74 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The overlays of the recently used profiles of a fabric service by version, profile and environment, the
+ * least recently used one being evicted once the maximum size is reached.
+ * <p/>
+ * An entry is only used while the hashes of the profile and all its ancestors are the ones it was computed
+ * from. As the hash of a profile may not change with every change of its data store, the owner of the cache
+ * also clears it whenever the data store notifies a change.
+ */
+public class ProfileOverlayCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    /**
+     * Implemented by the fabric services which cache the overlays of their profiles
+     */
+    public interface Provider {
+
+        ProfileOverlayCache getOverlayCache();
+    }
+
+    private final Map<String, ProfileOverlayImpl.Overlay> overlays;
+
+    public ProfileOverlayCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public ProfileOverlayCache(final int maxSize) {
+        this.overlays = new LinkedHashMap<String, ProfileOverlayImpl.Overlay>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ProfileOverlayImpl.Overlay> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    synchronized ProfileOverlayImpl.Overlay get(String key) {
+        return overlays.get(key);
+    }
+
+    synchronized void put(String key, ProfileOverlayImpl.Overlay overlay) {
+        overlays.put(key, overlay);
+    }
+
+    synchronized int size() {
+        return overlays.size();
+    }
+
+    /**
+     * Clears the cached overlays of all profiles
+     */
+    public synchronized void clear() {
+        overlays.clear();
+    }
+}
@@ -26,10 +26,13 @@ import io.fabric8.internal.ProfileImpl.ConfigListType;
 import io.fabric8.utils.DataStoreUtils;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 public class ProfileOverlayImpl implements Profile {
 
@@ -37,6 +40,7 @@ public class ProfileOverlayImpl implements Profile {
     private final boolean substitute;
     private final String environment;
     private final FabricService fabricService;
+    private final ProfileOverlayCache cache;
 
     public ProfileOverlayImpl(Profile self, String environment) {
         this(self, environment, false, null);
@@ -47,6 +51,7 @@ public class ProfileOverlayImpl implements Profile {
         this.substitute = substitute;
         this.environment = environment;
         this.fabricService = fabricService;
+        this.cache = fabricService instanceof ProfileOverlayCache.Provider ? ((ProfileOverlayCache.Provider) fabricService).getOverlayCache() : null;
     }
 
     @Override
@@ -117,9 +122,9 @@ public class ProfileOverlayImpl implements Profile {
 
     @Override
     public Map<String, String> getContainerConfiguration() {
-        Map<String, String> map = getConfigurations().get(Constants.AGENT_PID);
+        Map<String, String> map = getConfiguration(Constants.AGENT_PID);
         if (map == null) {
-            map = new HashMap<String, String>();
+            map = Collections.emptyMap();
         }
         return map;
     }
@@ -181,16 +186,12 @@ public class ProfileOverlayImpl implements Profile {
      */
     @Override
     public boolean agentConfigurationEquals(Profile other) {
-        ProfileOverlayImpl otherOverlay = new ProfileOverlayImpl(other, environment);
-        if (!getConfigurations().containsKey(Constants.AGENT_PID) && !otherOverlay.getConfigurations().containsKey(Constants.AGENT_PID)) {
-            return true;
-        } else if (getConfigurations().containsKey(Constants.AGENT_PID) != otherOverlay.getConfigurations().containsKey(Constants.AGENT_PID)) {
-            return false;
-        } else if (getConfigurations().containsKey(Constants.AGENT_PID)
-                && !getConfigurations().get(Constants.AGENT_PID).equals(otherOverlay.getConfigurations().get(Constants.AGENT_PID))) {
-            return false;
+        Map<String, String> agentConfiguration = getOverlayData().configurations.get(Constants.AGENT_PID);
+        Map<String, String> otherAgentConfiguration = new ProfileOverlayImpl(other, environment, false, fabricService).getOverlayData().configurations.get(Constants.AGENT_PID);
+        if (agentConfiguration == null || otherAgentConfiguration == null) {
+            return agentConfiguration == otherAgentConfiguration;
         } else {
-            return true;
+            return agentConfiguration.equals(otherAgentConfiguration);
         }
     }
 
@@ -237,18 +238,90 @@ public class ProfileOverlayImpl implements Profile {
         Properties props;
     }
 
+    /**
+     * The merged configuration of a profile and its ancestors
+     */
+    static class Overlay {
+        final String ancestry;
+        final Map<String, byte[]> fileConfigurations;
+        final Map<String, Map<String, String>> configurations;
+
+        Overlay(String ancestry, Map<String, byte[]> fileConfigurations, Map<String, Map<String, String>> configurations) {
+            this.ancestry = ancestry;
+            this.fileConfigurations = fileConfigurations;
+            this.configurations = configurations;
+        }
+    }
+
     private List<Profile> getInheritedProfiles() {
-        List<Profile> profiles = new ArrayList<Profile>();
+        Set<Profile> profiles = new LinkedHashSet<Profile>();
         fillParentProfiles(self, profiles);
-        return profiles;
+        return new ArrayList<Profile>(profiles);
     }
 
-    private void fillParentProfiles(Profile profile, List<Profile> profiles) {
+    private void fillParentProfiles(Profile profile, Set<Profile> profiles) {
         for (Profile p : profile.getParents()) {
             fillParentProfiles(p, profiles);
         }
-        if (!profiles.contains(profile)) {
-            profiles.add(profile);
+        profiles.add(profile);
+    }
+
+    /**
+     * Returns the ids and hashes of the given profiles, which change whenever the overlay would, or null if
+     * a profile has no hash
+     */
+    private static String getAncestry(List<Profile> profiles) {
+        StringBuilder sb = new StringBuilder();
+        for (Profile profile : profiles) {
+            String hash;
+            try {
+                hash = profile.getProfileHash();
+            } catch (UnsupportedOperationException e) {
+                return null;
+            }
+            if (hash == null || hash.isEmpty()) {
+                return null;
+            }
+            sb.append(profile.getId()).append('@').append(hash).append(' ');
+        }
+        return sb.toString();
+    }
+
+    private Overlay getOverlayData() {
+        List<Profile> profiles = getInheritedProfiles();
+        String ancestry = cache != null ? getAncestry(profiles) : null;
+        if (ancestry == null) {
+            return createOverlay(null, profiles);
+        }
+        String key = self.getVersion() + "/" + self.getId() + "/" + environment;
+        Overlay overlay = cache.get(key);
+        if (overlay == null || !overlay.ancestry.equals(ancestry)) {
+            overlay = createOverlay(ancestry, profiles);
+            cache.put(key, overlay);
+        }
+        return overlay;
+    }
+
+    private Overlay createOverlay(String ancestry, List<Profile> profiles) {
+        try {
+            Map<String, SupplementControl> aggregate = new HashMap<String, SupplementControl>();
+            for (Profile profile : profiles) {
+                supplement(profile, aggregate);
+            }
+
+            Map<String, byte[]> fileConfigurations = new HashMap<String, byte[]>();
+            Map<String, Map<String, String>> configurations = new HashMap<String, Map<String, String>>();
+            for (Map.Entry<String, SupplementControl> entry : aggregate.entrySet()) {
+                SupplementControl ctrl = entry.getValue();
+                if (ctrl.props != null) {
+                    ctrl.data = DataStoreUtils.toBytes(ctrl.props);
+                    configurations.put(DataStoreUtils.stripSuffix(entry.getKey(), ".properties"), Collections.unmodifiableMap(DataStoreUtils.toMap(ctrl.props)));
+                }
+                fileConfigurations.put(entry.getKey(), ctrl.data);
+            }
+            return new Overlay(ancestry, Collections.unmodifiableMap(fileConfigurations), Collections.unmodifiableMap(configurations));
+        } catch (Exception e) {
+            throw FabricException.launderThrowable(e);
         }
     }
 
@@ -318,53 +391,30 @@ public class ProfileOverlayImpl implements Profile {
 
     @Override
     public Map<String, byte[]> getFileConfigurations() {
-        try {
-            Map<String, SupplementControl> aggregate = new HashMap<String, SupplementControl>();
-            for (Profile profile : getInheritedProfiles()) {
-                supplement(profile, aggregate);
-            }
-
-            Map<String, byte[]> rc = new HashMap<String, byte[]>();
-            for (Map.Entry<String, SupplementControl> entry : aggregate.entrySet()) {
-                SupplementControl ctrl = entry.getValue();
-                if (ctrl.props != null) {
-                    ctrl.data = DataStoreUtils.toBytes(ctrl.props);
-                }
-                rc.put(entry.getKey(), ctrl.data);
-            }
-            return rc;
-        } catch (Exception e) {
-            throw FabricException.launderThrowable(e);
-        }
+        return getOverlayData().fileConfigurations;
     }
 
     @Override
     public Map<String, Map<String, String>> getConfigurations() {
-        try {
-            Map<String, SupplementControl> aggregate = new HashMap<String, SupplementControl>();
-            for (Profile profile : getInheritedProfiles()) {
-                supplement(profile, aggregate);
-            }
-
+        Map<String, Map<String, String>> configurations = getOverlayData().configurations;
+        if (substitute) {
+            // the substituted values depend on more than the profiles so are not cached
             Map<String, Map<String, String>> rc = new HashMap<String, Map<String, String>>();
-            for (Map.Entry<String, SupplementControl> entry : aggregate.entrySet()) {
-                SupplementControl ctrl = entry.getValue();
-                if (ctrl.props != null) {
-                    rc.put(DataStoreUtils.stripSuffix(entry.getKey(), ".properties"), DataStoreUtils.toMap(ctrl.props));
-                }
-            }
-            if (substitute) {
-                fabricService.substituteConfigurations(rc);
+            for (Map.Entry<String, Map<String, String>> entry : configurations.entrySet()) {
+                rc.put(entry.getKey(), new HashMap<String, String>(entry.getValue()));
             }
-            return rc;
-        } catch (Exception e) {
-            throw FabricException.launderThrowable(e);
+            fabricService.substituteConfigurations(rc);
+            return Collections.unmodifiableMap(rc);
         }
+        return configurations;
     }
 
     @Override
     public Map<String, String> getConfiguration(String pid) {
-        return getConfigurations().get(pid);
+        if (substitute) {
+            return getConfigurations().get(pid);
+        }
+        return getOverlayData().configurations.get(pid);
     }
 
     @Override
@@ -239,6 +239,12 @@ public abstract class AbstractDataStore<T extends DataStore> extends AbstractCom
         callbacks.remove(callback);
     }
 
+    @Override
+    public void runInTransaction(Runnable task) {
+        assertValid();
+        task.run();
+    }
+
     // Container stuff
     //-------------------------------------------------------------------------
 
@@ -635,6 +641,8 @@ public abstract class AbstractDataStore<T extends DataStore> extends AbstractCom
             return ZkPath.CONTAINER_PROVISION_LIST.getPath(containerId);
         case ProvisionChecksums:
             return ZkPath.CONTAINER_PROVISION_CHECKSUMS.getPath(containerId);
+        case ProvisionTimings:
+            return ZkPath.CONTAINER_PROVISION_TIMINGS.getPath(containerId);
         case Location:
             return ZkPath.CONTAINER_LOCATION.getPath(containerId);
         case GeoLocation:
@@ -51,6 +51,7 @@ import io.fabric8.api.scr.AbstractComponent;
 import io.fabric8.api.scr.ValidatingReference;
 import io.fabric8.api.visibility.VisibleForTesting;
 import io.fabric8.internal.ContainerImpl;
+import io.fabric8.internal.ProfileOverlayCache;
 import io.fabric8.internal.VersionImpl;
 import io.fabric8.utils.DataStoreUtils;
 import io.fabric8.utils.PasswordEncoder;
@@ -113,7 +114,7 @@ import com.google.common.base.Strings;
 @ThreadSafe
 @Component(name = "io.fabric8.service", label = "Fabric8 Service", metatype = false)
 @Service(FabricService.class)
-public final class FabricServiceImpl extends AbstractComponent implements FabricService {
+public final class FabricServiceImpl extends AbstractComponent implements FabricService, ProfileOverlayCache.Provider {
 
     public static final String REQUIREMENTS_JSON_PATH = "/fabric/configs/io.fabric8.requirements.json";
     public static final String JVM_OPTIONS_PATH = "/fabric/configs/io.fabric8.containers.jvmOptions";
@@ -153,18 +154,34 @@ public final class FabricServiceImpl extends AbstractComponent implements Fabric
     @Reference(referenceInterface = PlaceholderResolver.class, bind = "bindPlaceholderResolver", unbind = "unbindPlaceholderResolver", cardinality = OPTIONAL_MULTIPLE, policy = ReferencePolicy.DYNAMIC)
     private final Map<String, PlaceholderResolver> placeholderResolvers = new ConcurrentHashMap<String, PlaceholderResolver>();
 
+    private final ProfileOverlayCache overlayCache = new ProfileOverlayCache();
+    private final Runnable clearOverlayCache = new Runnable() {
+        @Override
+        public void run() {
+            overlayCache.clear();
+        }
+    };
+
     private String defaultRepo = FabricService.DEFAULT_REPO_URI;
     private BundleContext bundleContext;
 
     @Activate
     void activate(BundleContext bundleContext) {
         this.bundleContext = bundleContext;
+        dataStore.get().trackConfiguration(clearOverlayCache);
         activateComponent();
     }
 
     @Deactivate
     void deactivate() {
         deactivateComponent();
+        dataStore.get().untrackConfiguration(clearOverlayCache);
+        overlayCache.clear();
+    }
+
+    @Override
+    public ProfileOverlayCache getOverlayCache() {
+        return overlayCache;
     }
 
     @Override
@@ -0,0 +1,132 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.internal;
+
+import io.fabric8.api.DataStore;
+import io.fabric8.api.FabricService;
+import io.fabric8.api.Profile;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fabric service and data store which only hold the profiles of a single version in memory
+ */
+class InMemoryProfiles {
+
+    private final String version;
+    private final Map<String, Map<String, byte[]>> files = new ConcurrentHashMap<String, Map<String, byte[]>>();
+    private final Map<String, Map<String, String>> attributes = new ConcurrentHashMap<String, Map<String, String>>();
+    private final Map<String, String> hashes = new ConcurrentHashMap<String, String>();
+    private final AtomicInteger changes = new AtomicInteger();
+    private final AtomicInteger fileReads = new AtomicInteger();
+    private final ProfileOverlayCache overlayCache = new ProfileOverlayCache();
+    private final DataStore dataStore;
+    private final FabricService fabricService;
+
+    InMemoryProfiles(String version) {
+        this.version = version;
+        this.dataStore = (DataStore) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{DataStore.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("hasProfile")) {
+                    return files.containsKey(args[1]);
+                } else if (name.equals("getProfileAttributes")) {
+                    Map<String, String> answer = attributes.get(args[1]);
+                    return answer != null ? answer : new HashMap<String, String>();
+                } else if (name.equals("getFileConfigurations")) {
+                    fileReads.incrementAndGet();
+                    Map<String, byte[]> answer = files.get(args[1]);
+                    return answer != null ? new HashMap<String, byte[]>(answer) : new HashMap<String, byte[]>();
+                } else if (name.equals("getLastModified")) {
+                    String answer = hashes.get(args[1]);
+                    return answer != null ? answer : "";
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        });
+        this.fabricService = (FabricService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{FabricService.class, ProfileOverlayCache.Provider.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("getDataStore")) {
+                    return dataStore;
+                } else if (name.equals("getVersion")) {
+                    return new VersionImpl((String) args[0], fabricService);
+                } else if (name.equals("getEnvironment")) {
+                    return null;
+                } else if (name.equals("substituteConfigurations")) {
+                    return null;
+                } else if (name.equals("getOverlayCache")) {
+                    return overlayCache;
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+
+    /**
+     * Creates or replaces a profile with the given space separated parents and a single properties file
+     */
+    void putProfile(String id, String parents, String pid, String properties) {
+        Map<String, String> profileAttributes = new HashMap<String, String>();
+        if (parents != null) {
+            profileAttributes.put(Profile.PARENTS, parents);
+        }
+        Map<String, byte[]> profileFiles = new HashMap<String, byte[]>();
+        profileFiles.put(pid + ".properties", properties.getBytes());
+        attributes.put(id, profileAttributes);
+        files.put(id, profileFiles);
+        hashes.put(id, "change-" + changes.incrementAndGet());
+    }
+
+    /**
+     * Adds or replaces a properties file of an existing profile
+     */
+    void putConfiguration(String id, String pid, String properties) {
+        files.get(id).put(pid + ".properties", properties.getBytes());
+        hashes.put(id, "change-" + changes.incrementAndGet());
+    }
+
+    Profile getProfile(String id) {
+        return new ProfileImpl(id, version, fabricService);
+    }
+
+    /**
+     * Sets the hash of a profile without changing its data, as a data store which does not track the changes
+     * of some profiles would
+     */
+    void putHash(String id, String hash) {
+        hashes.put(id, hash);
+    }
+
+    ProfileOverlayCache getOverlayCache() {
+        return overlayCache;
+    }
+
+    /**
+     * Returns the number of times the files of a profile were read
+     */
+    int getFileReads() {
+        return fileReads.get();
+    }
+}
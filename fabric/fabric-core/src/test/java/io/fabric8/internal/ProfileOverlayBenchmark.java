@@ -0,0 +1,142 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.internal;
+
+import io.fabric8.api.Profile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the profile overlays of a deep hierarchy, a chain of 10 profiles, and a wide one, a profile with
+ * 50 parents, each profile having 20 properties in each of 5 PIDs.
+ * <p/>
+ * The cached benchmarks read an overlay whose ancestry did not change, the uncached ones clear the cache
+ * first to measure merging the whole ancestry as every call did before overlays were cached.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProfileOverlayBenchmark {
+
+    private static final int DEPTH = 10;
+    private static final int WIDTH = 50;
+    private static final int PIDS = 5;
+    private static final int PROPERTIES = 20;
+
+    @State(Scope.Benchmark)
+    public static class Hierarchies {
+        InMemoryProfiles profiles;
+        Profile deep;
+        Profile wide;
+
+        @Setup
+        public void setUp() {
+            profiles = new InMemoryProfiles("benchmark");
+            String parent = null;
+            for (int i = 0; i < DEPTH; i++) {
+                putProfile(profiles, "deep-" + i, parent);
+                parent = "deep-" + i;
+            }
+            deep = profiles.getProfile(parent);
+
+            StringBuilder parents = new StringBuilder();
+            for (int i = 0; i < WIDTH; i++) {
+                putProfile(profiles, "wide-" + i, null);
+                parents.append("wide-").append(i).append(' ');
+            }
+            putProfile(profiles, "wide", parents.toString().trim());
+            wide = profiles.getProfile("wide");
+        }
+
+        private static void putProfile(InMemoryProfiles profiles, String id, String parents) {
+            StringBuilder properties = new StringBuilder();
+            for (int i = 0; i < PROPERTIES; i++) {
+                properties.append("key").append(i).append('=').append(id).append('\n');
+            }
+            // the same pids in every profile so that each level overrides the previous ones
+            profiles.putProfile(id, parents, "pid0", properties.toString());
+            for (int i = 1; i < PIDS; i++) {
+                profiles.putConfiguration(id, "pid" + i, properties.toString());
+            }
+        }
+    }
+
+    @Benchmark
+    public Map<String, Map<String, String>> deepConfigurations(Hierarchies hierarchies) {
+        return hierarchies.deep.getOverlay().getConfigurations();
+    }
+
+    @Benchmark
+    public Map<String, Map<String, String>> deepConfigurationsUncached(Hierarchies hierarchies) {
+        hierarchies.profiles.getOverlayCache().clear();
+        return hierarchies.deep.getOverlay().getConfigurations();
+    }
+
+    @Benchmark
+    public Map<String, String> deepConfiguration(Hierarchies hierarchies) {
+        return hierarchies.deep.getOverlay().getConfiguration("pid0");
+    }
+
+    @Benchmark
+    public Map<String, byte[]> deepFileConfigurations(Hierarchies hierarchies) {
+        return hierarchies.deep.getOverlay().getFileConfigurations();
+    }
+
+    @Benchmark
+    public Map<String, Map<String, String>> wideConfigurations(Hierarchies hierarchies) {
+        return hierarchies.wide.getOverlay().getConfigurations();
+    }
+
+    @Benchmark
+    public Map<String, Map<String, String>> wideConfigurationsUncached(Hierarchies hierarchies) {
+        hierarchies.profiles.getOverlayCache().clear();
+        return hierarchies.wide.getOverlay().getConfigurations();
+    }
+
+    @Benchmark
+    public Map<String, String> wideConfiguration(Hierarchies hierarchies) {
+        return hierarchies.wide.getOverlay().getConfiguration("pid0");
+    }
+
+    @Benchmark
+    public boolean wideAgentConfigurationEquals(Hierarchies hierarchies) {
+        return hierarchies.wide.getOverlay().agentConfigurationEquals(hierarchies.deep);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ProfileOverlayBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.internal;
+
+import io.fabric8.api.Profile;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProfileOverlayImplTest {
+
+    private InMemoryProfiles profiles;
+
+    @Before
+    public void setUp() {
+        profiles = new InMemoryProfiles("overlay-test");
+        profiles.putProfile("default", null, "my.pid", "a=default\nb=default\nc=default");
+        profiles.putProfile("base", "default", "my.pid", "b=base");
+        profiles.putProfile("child", "base", "my.pid", "c=child");
+    }
+
+    @Test
+    public void testOverlayIsCachedUntilAnAncestorChanges() throws Exception {
+        Profile overlay = profiles.getProfile("child").getOverlay();
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("a", "default");
+        expected.put("b", "base");
+        expected.put("c", "child");
+        assertEquals(expected, overlay.getConfiguration("my.pid"));
+
+        int reads = profiles.getFileReads();
+        assertEquals(expected, profiles.getProfile("child").getOverlay().getConfigurations().get("my.pid"));
+        assertTrue(profiles.getProfile("child").getOverlay().getFileConfigurations().containsKey("my.pid.properties"));
+        assertEquals("the overlay should have been cached", reads, profiles.getFileReads());
+
+        profiles.putProfile("default", null, "my.pid", "a=changed");
+        expected.put("a", "changed");
+        assertEquals(expected, overlay.getConfiguration("my.pid"));
+        assertTrue(profiles.getFileReads() > reads);
+    }
+
+    @Test
+    public void testOverlayWithoutHashIsNotCached() throws Exception {
+        profiles.putHash("base", "");
+        profiles.getProfile("child").getOverlay().getConfigurations();
+        int reads = profiles.getFileReads();
+        profiles.putConfiguration("base", "my.pid", "b=changed");
+        profiles.putHash("base", "");
+        assertEquals("changed", profiles.getProfile("child").getOverlay().getConfiguration("my.pid").get("b"));
+        assertTrue(profiles.getFileReads() > reads);
+        assertEquals(0, profiles.getOverlayCache().size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedOverlayIsEvicted() throws Exception {
+        ProfileOverlayCache cache = new ProfileOverlayCache(2);
+        ProfileOverlayImpl.Overlay overlay = new ProfileOverlayImpl.Overlay("", null, null);
+        cache.put("a", overlay);
+        cache.put("b", overlay);
+        cache.get("a");
+        cache.put("c", overlay);
+        assertEquals(2, cache.size());
+        assertEquals(overlay, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(overlay, cache.get("c"));
+    }
+
+    @Test
+    public void testOverlaysAreReadOnly() throws Exception {
+        Profile overlay = profiles.getProfile("child").getOverlay();
+        try {
+            overlay.getConfigurations().put("other.pid", new HashMap<String, String>());
+            fail("Overlay configurations should be read only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            overlay.getConfiguration("my.pid").put("a", "b");
+            fail("Overlay configurations should be read only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertNull(overlay.getConfiguration("other.pid"));
+    }
+
+    @Test
+    public void testAgentConfigurationEquals() throws Exception {
+        profiles.putProfile("agent-a", "default", "io.fabric8.agent", "feature.camel=camel");
+        profiles.putProfile("agent-b", "default", "io.fabric8.agent", "feature.camel=camel");
+        profiles.putProfile("agent-c", "default", "io.fabric8.agent", "feature.cxf=cxf");
+        Profile overlay = profiles.getProfile("agent-a").getOverlay();
+        assertTrue(overlay.agentConfigurationEquals(profiles.getProfile("agent-b")));
+        assertFalse(overlay.agentConfigurationEquals(profiles.getProfile("agent-c")));
+        assertFalse(overlay.agentConfigurationEquals(profiles.getProfile("child")));
+        assertTrue(profiles.getProfile("base").getOverlay().agentConfigurationEquals(profiles.getProfile("child")));
+    }
+}
@@ -263,6 +263,9 @@ public class ContainerImplTest {
         expect(dataStore.getConfigurations(eq(v), eq(camelProfile))).andReturn(camelPids).anyTimes();
         expect(dataStore.getConfigurations(eq(v), eq(cxfProfile))).andReturn(cxfPids).anyTimes();
 
+        //Define hashes
+        expect(dataStore.getLastModified(eq(v), EasyMock.<String>anyObject())).andReturn("1").anyTimes();
+
         fabricService.substituteConfigurations((Map<String, Map<String, String>>) anyObject());
         expectLastCall().anyTimes();
         expect(dataStore.getContainerVersion(eq(CONTAINER_ID))).andReturn(v).anyTimes();
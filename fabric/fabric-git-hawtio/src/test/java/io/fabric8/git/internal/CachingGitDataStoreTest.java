@@ -30,13 +30,18 @@ import io.fabric8.api.scr.Configurer;
 import io.fabric8.common.util.Strings;
 import io.fabric8.git.hawtio.FabricGitFacade;
 import io.fabric8.utils.SystemProperties;
+import io.fabric8.zookeeper.ZkPath;
 import io.fabric8.zookeeper.bootstrap.DataStoreTemplateRegistry;
 import io.fabric8.zookeeper.spring.ZKServerFactoryBean;
+import io.fabric8.zookeeper.utils.ZooKeeperUtils;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.retry.RetryOneTime;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.gitective.core.RepositoryUtils;
 import org.junit.After;
 import org.junit.Before;
@@ -46,6 +51,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class CachingGitDataStoreTest {
 
@@ -200,6 +206,7 @@ public class CachingGitDataStoreTest {
         String actual = hawtioAttrbutes.get(hawtioRepoKey);
         assertEquals("should have found the updated hawtio repo key",
                 "mvn:io.hawt/hawtio-karaf/myNewVersion/xml/features", actual);
+        assertEquals("only the changed profile should have been reloaded", 1, dataStore.getLastReloadedProfileCount());
 
 
         // lets check that the file configurations recurses into folders
@@ -210,6 +217,9 @@ public class CachingGitDataStoreTest {
         assertNotNull(schemas);
         assertContainerEquals("schemas for example-dozer", Arrays.asList("invoice.xsd"), new ArrayList<String>(schemas));
 
+        // reads are served from the object database so they should not checkout the version they read
+        assertEquals("checked out branch after reading version 1.0", version, GitHelpers.currentBranch(git));
+
         // check we don't accidentally create a profile
         String profileNotCreated = "shouldNotBeCreated";
         assertEquals("Should not create profile: " + profileNotCreated, null,
@@ -269,6 +279,81 @@ public class CachingGitDataStoreTest {
         System.out.println("Remote branches after delete: " + remoteBranches);
     }
 
+    @Test
+    public void testTimedPullOnlyFetchesWhenPublishedHeadsDiffer() throws Exception {
+        String path = ZkPath.CONFIG_GIT_HEADS.getPath();
+        boolean pullRequired = true;
+        for (int i = 0; i < 50 && pullRequired; i++) {
+            // the timed pull may still be updating the local branches so publish them until they are stable
+            ZooKeeperUtils.setPropertiesAsMap(curator, path, getLocalHeads());
+            Thread.sleep(200);
+            pullRequired = dataStore.isPullRequired();
+        }
+        assertFalse("Should not pull when the published heads match the local branches", pullRequired);
+
+        Map<String, String> heads = getLocalHeads();
+        heads.put("master", ObjectId.zeroId().getName());
+        ZooKeeperUtils.setPropertiesAsMap(curator, path, heads);
+        for (int i = 0; i < 50 && !pullRequired; i++) {
+            Thread.sleep(200);
+            pullRequired = dataStore.isPullRequired();
+        }
+        assertTrue("Should pull when the master branch was published with a new head", pullRequired);
+    }
+
+    @Test
+    public void testTransactionWritesOneCommit() throws Exception {
+        final String version = dataStore.getDefaultVersion();
+        dataStore.importFromFileSystem(basedir + "/../fabric8-karaf/src/main/resources/distro/fabric/import");
+        ObjectId before = git.getRepository().resolve(version);
+
+        final Map<String, String> configuration = new HashMap<String, String>();
+        configuration.put("foo", "bar");
+        dataStore.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                dataStore.createProfile(version, "batch-a");
+                dataStore.createProfile(version, "batch-b");
+                dataStore.setConfiguration(version, "batch-a", "my.pid", configuration);
+                dataStore.setConfiguration(version, "batch-b", "my.pid", configuration);
+                assertEquals("changes are visible within the transaction", configuration, dataStore.getConfiguration(version, "batch-a", "my.pid"));
+            }
+        });
+
+        ObjectId after = git.getRepository().resolve(version);
+        RevWalk walk = new RevWalk(git.getRepository());
+        try {
+            assertEquals("the transaction should make a single commit", before, walk.parseCommit(after).getParent(0));
+        } finally {
+            walk.release();
+        }
+        assertEquals("the transaction should be pushed", after, remote.getRepository().resolve(version));
+        assertEquals(configuration, dataStore.getConfiguration(version, "batch-b", "my.pid"));
+
+        try {
+            dataStore.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    dataStore.createProfile(version, "batch-c");
+                    throw new IllegalStateException("Rolling back");
+                }
+            });
+            fail("Should have thrown the exception of the transaction");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals("a failed transaction should be rolled back", after, git.getRepository().resolve(version));
+        assertProfileNotExists(version, "batch-c");
+    }
+
+    private Map<String, String> getLocalHeads() throws IOException {
+        Map<String, String> heads = new HashMap<String, String>();
+        for (Map.Entry<String, Ref> entry : git.getRepository().getRefDatabase().getRefs(org.eclipse.jgit.lib.Constants.R_HEADS).entrySet()) {
+            heads.put(entry.getKey(), entry.getValue().getObjectId().getName());
+        }
+        return heads;
+    }
+
     public static void assertContainerEquals(String message, List<String> expected, List<String> actual) {
         assertEquals(message + "Size wrong for actual " + actual + " expected " + expected, expected.size(), actual.size());
         for (int i = 0, size = expected.size(); i < size; i++) {
@@ -22,6 +22,16 @@ import org.apache.felix.scr.annotations.ConfigurationPolicy;
 import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Reference;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.http.server.resolver.DefaultReceivePackFactory;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.PostReceiveHook;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.transport.ReceivePack;
+import org.eclipse.jgit.transport.resolver.ReceivePackFactory;
+import org.eclipse.jgit.transport.resolver.ServiceNotAuthorizedException;
+import org.eclipse.jgit.transport.resolver.ServiceNotEnabledException;
 import io.fabric8.api.FabricException;
 import io.fabric8.api.FabricService;
 import io.fabric8.api.jcip.ThreadSafe;
@@ -45,12 +55,16 @@ import org.osgi.service.http.HttpService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.servlet.http.HttpServletRequest;
 import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.TreeMap;
 
 
 @ThreadSafe
@@ -90,6 +104,7 @@ public final class GitHttpServerRegistrationHandler extends AbstractComponent im
 
     private volatile Group<GitNode> group;
     private volatile String gitRemoteUrl;
+    private volatile File fabricRoot;
 
     @Activate
     void activate(Map<String, ?> configuration) {
@@ -160,6 +175,7 @@ public final class GitHttpServerRegistrationHandler extends AbstractComponent im
             gitRemoteUrl = ZooKeeperUtils.getSubstitutedData(curator.get(), url);
             if (group.isMaster()) {
                 updateConfigAdmin();
+                publishHeads();
             }
         } catch (Exception e) {
             // Ignore
@@ -173,7 +189,7 @@ public final class GitHttpServerRegistrationHandler extends AbstractComponent im
             HttpContext base = httpService.get().createDefaultHttpContext();
             HttpContext secure = new GitSecureHttpContext(base, realm, role);
 
-            File fabricRoot = new File(fabricRepoPath);
+            fabricRoot = new File(fabricRepoPath);
 
             //Only need to clone once. If repo already exists, just skip.
             if (!fabricRoot.exists()) {
@@ -192,7 +208,9 @@ public final class GitHttpServerRegistrationHandler extends AbstractComponent im
             initParams.put("base-path", servletBasePath);
             initParams.put("repository-root", servletBasePath);
             initParams.put("export-all", "true");
-            httpService.get().registerServlet("/git", new GitServlet(), initParams, secure);
+            GitServlet gitServlet = new GitServlet();
+            gitServlet.setReceivePackFactory(new PublishingReceivePackFactory());
+            httpService.get().registerServlet("/git", gitServlet, initParams, secure);
         } catch (Throwable t) {
             throw FabricException.launderThrowable(t);
         }
@@ -224,6 +242,68 @@ public final class GitHttpServerRegistrationHandler extends AbstractComponent im
         }
     }
 
+    /**
+     * Publishes the head commit of each branch of the served repository to ZooKeeper so the containers
+     * only need to fetch when one of their version branches is behind.
+     */
+    private void publishHeads() {
+        File root = fabricRoot;
+        if (root == null || !root.exists()) {
+            return;
+        }
+        try {
+            Git git = Git.open(root);
+            try {
+                publishHeads(git.getRepository());
+            } finally {
+                git.getRepository().close();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read the branches of the git repository at " + root + ". Reason: " + e, e);
+        }
+    }
+
+    private void publishHeads(Repository repository) {
+        Group<GitNode> group = this.group;
+        if (!isValid() || group == null || !group.isMaster()) {
+            return;
+        }
+        try {
+            Map<String, String> heads = new TreeMap<String, String>();
+            for (Map.Entry<String, Ref> entry : repository.getRefDatabase().getRefs(Constants.R_HEADS).entrySet()) {
+                if (entry.getValue().getObjectId() != null) {
+                    heads.put(entry.getKey(), entry.getValue().getObjectId().getName());
+                }
+            }
+            ZooKeeperUtils.setPropertiesAsMap(curator.get(), ZkPath.CONFIG_GIT_HEADS.getPath(), heads);
+            LOGGER.debug("Published git heads {}", heads);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to publish the git heads. Reason: " + e, e);
+        }
+    }
+
+    /**
+     * Publishes the new heads and notifies the git listeners whenever a push is received
+     */
+    private class PublishingReceivePackFactory implements ReceivePackFactory<HttpServletRequest> {
+        private final ReceivePackFactory<HttpServletRequest> delegate = new DefaultReceivePackFactory();
+
+        @Override
+        public ReceivePack create(HttpServletRequest request, Repository repository) throws ServiceNotEnabledException, ServiceNotAuthorizedException {
+            ReceivePack receivePack = delegate.create(request, repository);
+            receivePack.setPostReceiveHook(new PostReceiveHook() {
+                @Override
+                public void onPostReceive(ReceivePack receivePack, Collection<ReceiveCommand> commands) {
+                    publishHeads(receivePack.getRepository());
+                    if (isValid()) {
+                        gitService.get().notifyReceivePacket();
+                    }
+                }
+            });
+            return receivePack;
+        }
+    }
+
     private GitNode createState() {
         RuntimeProperties sysprops = runtimeProperties.get();
         TargetContainer runtimeType = TargetContainer.getTargetContainer(sysprops);
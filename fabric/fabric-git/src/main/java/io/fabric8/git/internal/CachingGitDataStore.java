@@ -18,7 +18,6 @@ package io.fabric8.git.internal;
 import io.fabric8.api.Constants;
 import io.fabric8.api.DataStore;
 import io.fabric8.api.DataStoreRegistrationHandler;
-import io.fabric8.api.FabricException;
 import io.fabric8.api.RuntimeProperties;
 import io.fabric8.api.jcip.GuardedBy;
 import io.fabric8.api.jcip.ThreadSafe;
@@ -27,14 +26,17 @@ import io.fabric8.api.visibility.VisibleForTesting;
 import io.fabric8.git.GitService;
 import io.fabric8.utils.DataStoreUtils;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.felix.scr.annotations.Activate;
@@ -47,12 +49,18 @@ import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.References;
 import org.apache.felix.scr.annotations.Service;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.gitective.core.CommitUtils;
-
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A Caching version of {@link GitDataStore} to minimise the use of git operations
@@ -73,26 +81,24 @@ import com.google.common.cache.LoadingCache;
 )
 public final class CachingGitDataStore extends GitDataStore {
 
+    private static final transient Logger LOG = LoggerFactory.getLogger(CachingGitDataStore.class);
+
     public static final String TYPE = "caching-git";
 
     @Reference
     private Configurer configurer;
 
 
-    @GuardedBy("LoadingCache") private final LoadingCache<String, VersionData> cachedVersions = CacheBuilder.newBuilder()
-            .build(new CacheLoader<String, VersionData>() {
-                @Override
-                public VersionData load(final String version) throws Exception {
-                    return gitOperation(new GitOperation<VersionData>() {
-                        public VersionData call(Git git, GitContext context) throws Exception {
-                            VersionData data = new VersionData();
-                            pouplateVersionData(git, version, data);
-                            pouplateVersionData(git, "master", data);
-                            return data;
-                        }
-                    }, true); //We always pull when the item is not present in the cache to prevent loading stale data.
-                }
-            });
+    private final ConcurrentMap<String, VersionData> cachedVersions = new ConcurrentHashMap<String, VersionData>();
+    @GuardedBy("reloadLock") private final Map<String, BranchData> cachedBranches = new HashMap<String, BranchData>();
+    private final Object reloadLock = new Object();
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong reloadedProfiles = new AtomicLong();
+    private final AtomicLong reloadTime = new AtomicLong();
+    private volatile long lastReloadTime;
+    private volatile int lastReloadedProfiles;
 
     @Activate
     @VisibleForTesting
@@ -106,60 +112,144 @@ public final class CachingGitDataStore extends GitDataStore {
         protectedDeactivate();
     }
 
-    protected VersionData getVersionData(String version) {
+    /**
+     * Returns the profiles of the version which are validated against the heads of the version and master branches
+     * whenever the caches were cleared. Only the profiles which changed between the cached and the current commit
+     * of a branch are reloaded.
+     */
+    protected VersionData getVersionData(final String version) {
         assertValid();
-        VersionData data = null;
-        try {
+        VersionData data = cachedVersions.get(version);
+        if (data != null && data.generation == generation.get()) {
+            return data;
+        }
+        if (data == null) {
+            //We always pull when the version is not present in the cache to prevent loading stale data.
+            pull();
+        }
+        synchronized (reloadLock) {
+            // read the generation before the heads so a change while reloading invalidates the reloaded data
+            final long currentGeneration = generation.get();
             data = cachedVersions.get(version);
-        } catch (ExecutionException e) {
-            throw FabricException.launderThrowable(e);
+            if (data != null && data.generation == currentGeneration) {
+                return data;
+            }
+            data = gitReadOperation(new GitReadOperation<VersionData>() {
+                public VersionData call(Git git, ObjectReader reader) throws Exception {
+                    BranchData versionBranch = getBranchData(git, reader, version);
+                    BranchData masterBranch = getBranchData(git, reader, "master");
+                    return new VersionData(versionBranch, masterBranch, currentGeneration);
+                }
+            });
+            cachedVersions.put(version, data);
+            return data;
         }
-        return data;
     }
 
-    protected void pouplateVersionData(Git git, String branch, VersionData data) throws Exception {
-        assertValid();
-        checkoutVersion(git, branch);
-        File profilesDir = getProfilesDirectory(git);
-        if (profilesDir.exists()) {
-            File[] files = profilesDir.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isDirectory()) {
-                        addProfileData(git, branch,  data, file, "");
-                    }
+    @GuardedBy("reloadLock")
+    private BranchData getBranchData(Git git, ObjectReader reader, String branch) throws IOException {
+        ObjectId head = getVersionHead(git, branch);
+        BranchData data = cachedBranches.get(branch);
+        if (data != null && data.head.equals(head)) {
+            return data;
+        }
+        if (head == null) {
+            cachedBranches.remove(branch);
+            return new BranchData(null, Collections.<String, ProfileData>emptyMap());
+        }
+        long start = System.currentTimeMillis();
+        Map<String, ProfileData> profiles = new HashMap<String, ProfileData>();
+        Set<String> changed;
+        int total;
+        RevWalk walk = new RevWalk(reader);
+        try {
+            RevCommit commit = walk.parseCommit(head);
+            RevTree tree = commit.getTree();
+            RevCommit previous = null;
+            if (data != null) {
+                try {
+                    previous = walk.parseCommit(data.head);
+                } catch (MissingObjectException e) {
+                    LOG.debug("The cached commit {} of branch {} no longer exists", data.head.getName(), branch);
                 }
             }
+            if (previous != null && walk.isMergedInto(previous, commit)) {
+                changed = getChangedProfiles(reader, previous.getTree(), tree);
+                profiles.putAll(data.profiles);
+            } else {
+                List<String> names = new ArrayList<String>();
+                doAddProfileNames(names, reader, tree);
+                changed = new HashSet<String>(names);
+            }
+            for (String profile : changed) {
+                TreeWalk profileWalk = findTreeEntry(reader, tree, getProfilePath(profile));
+                if (profileWalk != null && profileWalk.isSubtree()) {
+                    profiles.put(profile, loadProfileData(git, reader, tree, branch, profile));
+                } else {
+                    profiles.remove(profile);
+                }
+            }
+            total = profiles.size();
+        } finally {
+            walk.release();
         }
+        data = new BranchData(head, Collections.unmodifiableMap(profiles));
+        cachedBranches.put(branch, data);
+
+        long time = System.currentTimeMillis() - start;
+        reloads.incrementAndGet();
+        reloadedProfiles.addAndGet(changed.size());
+        reloadTime.addAndGet(time);
+        lastReloadTime = time;
+        lastReloadedProfiles = changed.size();
+        LOG.debug("Reloaded {} of {} profiles of branch {} in {} ms", new Object[]{changed.size(), total, branch, time});
+        return data;
     }
 
-    private void addProfileData(Git git, String version, VersionData data, File file, String prefix) throws IOException {
-        // TODO we could recursively scan for magic ".profile" files or something
-        // then we could put profiles into nicer tree structure?
-        String profile = file.getName();
-        if (useDirectoriesForProfiles) {
-            if (profile.endsWith(PROFILE_FOLDER_SUFFIX)) {
-                profile = prefix + profile.substring(0, profile.length() - PROFILE_FOLDER_SUFFIX.length());
-            } else {
-                // lets recurse all children
-                File[] files = file.listFiles();
-                if (files != null) {
-                    for (File child : files) {
-                        if (child.isDirectory()) {
-                            addProfileData(git, version, data, child, prefix + file.getName() + "-");
-                        }
-                    }
-                }
-                return;
+    /**
+     * Returns the ids of the profiles with any file which differs between the two trees
+     */
+    private Set<String> getChangedProfiles(ObjectReader reader, RevTree oldTree, RevTree newTree) throws IOException {
+        Set<String> answer = new HashSet<String>();
+        String profilesPath = fixFilePattern(CONFIGS_PROFILES);
+        TreeWalk walk = new TreeWalk(reader);
+        walk.addTree(oldTree);
+        walk.addTree(newTree);
+        walk.setRecursive(true);
+        walk.setFilter(AndTreeFilter.create(PathFilter.create(profilesPath), TreeFilter.ANY_DIFF));
+        while (walk.next()) {
+            String profile = getProfileId(walk.getPathString().substring(profilesPath.length() + 1));
+            if (profile != null) {
+                answer.add(profile);
             }
         }
+        return answer;
+    }
 
-        String revision = git.getRepository().getRefDatabase().getRef(version).getObjectId().getName();
-        String path = convertProfileIdToDirectory(profile);
-        RevCommit commit = CommitUtils.getLastCommit(git.getRepository(), revision, CONFIGS_PROFILES + File.separator + path);
-        String lastModified = commit != null ? commit.getId().abbreviate(GIT_COMMIT_SHORT_LENGTH).name() : "";
+    /**
+     * Returns the id of the profile containing the file with the given path relative to the profiles directory
+     * or null if the file is not within a profile
+     */
+    static String getProfileId(String path) {
+        String[] names = path.split("/");
+        StringBuilder id = new StringBuilder();
+        for (int i = 0; i < names.length - 1; i++) {
+            if (i > 0) {
+                id.append('-');
+            }
+            if (!useDirectoriesForProfiles) {
+                return names[i];
+            } else if (names[i].endsWith(PROFILE_FOLDER_SUFFIX)) {
+                return id.append(names[i], 0, names[i].length() - PROFILE_FOLDER_SUFFIX.length()).toString();
+            }
+            id.append(names[i]);
+        }
+        return null;
+    }
 
-        Map<String, byte[]> configurations = doGetFileConfigurations(git, profile);
+    private ProfileData loadProfileData(Git git, ObjectReader reader, RevTree tree, String version, String profile) throws IOException {
+        String lastModified = doGetLastModified(git, version, profile);
+        Map<String, byte[]> configurations = doGetFileConfigurations(reader, tree, profile);
         Map<String, Map<String, String>> substituted = new HashMap<String, Map<String, String>>();
         for (Map.Entry<String, byte[]> entry : configurations.entrySet()) {
             if (entry.getKey().endsWith(".properties")) {
@@ -167,8 +257,36 @@ public final class CachingGitDataStore extends GitDataStore {
                 substituted.put(pid, DataStoreUtils.toMap(DataStoreUtils.toProperties(entry.getValue())));
             }
         }
-        ProfileData profileData = new ProfileData(lastModified, Collections.unmodifiableMap(configurations), Collections.unmodifiableMap(substituted));
-        data.profiles.put(profile, profileData);
+        return new ProfileData(lastModified, Collections.unmodifiableMap(configurations), Collections.unmodifiableMap(substituted));
+    }
+
+    /**
+     * Returns the number of times the profiles of a branch were loaded or updated
+     */
+    public long getReloadCount() {
+        return reloads.get();
+    }
+
+    /**
+     * Returns the total number of profiles loaded by all the reloads
+     */
+    public long getReloadedProfileCount() {
+        return reloadedProfiles.get();
+    }
+
+    /**
+     * Returns the total time in millis spent reloading profiles
+     */
+    public long getTotalReloadTime() {
+        return reloadTime.get();
+    }
+
+    public long getLastReloadTime() {
+        return lastReloadTime;
+    }
+
+    public int getLastReloadedProfileCount() {
+        return lastReloadedProfiles;
     }
 
     public List<String> getProfiles(String version) {
@@ -228,13 +346,17 @@ public final class CachingGitDataStore extends GitDataStore {
     @Override
     void removeVersion(String version) {
         super.removeVersion(version);
-        cachedVersions.invalidate(version);
+        cachedVersions.remove(version);
+        synchronized (reloadLock) {
+            cachedBranches.remove(version);
+        }
     }
 
     @Override
     protected void clearCaches() {
         assertValid();
-        cachedVersions.invalidateAll();
+        // the cached versions are revalidated against the branch heads on their next use
+        generation.incrementAndGet();
     }
 
     @Override
@@ -244,6 +366,21 @@ public final class CachingGitDataStore extends GitDataStore {
 
     private static class VersionData {
         final Map<String, ProfileData> profiles = new HashMap<String, ProfileData>();
+        final long generation;
+        VersionData(BranchData version, BranchData master, long generation) {
+            this.profiles.putAll(version.profiles);
+            this.profiles.putAll(master.profiles);
+            this.generation = generation;
+        }
+    }
+
+    private static class BranchData {
+        final ObjectId head;
+        final Map<String, ProfileData> profiles;
+        BranchData(ObjectId head, Map<String, ProfileData> profiles) {
+            this.head = head;
+            this.profiles = profiles;
+        }
     }
 
     private static class ProfileData {
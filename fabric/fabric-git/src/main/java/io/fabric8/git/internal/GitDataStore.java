@@ -38,6 +38,7 @@ import io.fabric8.service.AbstractDataStore;
 import io.fabric8.utils.DataStoreUtils;
 import io.fabric8.zookeeper.ZkPath;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -46,15 +47,19 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.felix.scr.annotations.Component;
@@ -64,9 +69,12 @@ import org.eclipse.jgit.api.CreateBranchCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand;
 import org.eclipse.jgit.api.MergeResult;
+import org.eclipse.jgit.api.ResetCommand;
 import org.eclipse.jgit.api.errors.CannotDeleteCurrentBranchException;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.PersonIdent;
@@ -75,6 +83,7 @@ import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.merge.MergeStrategy;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.FetchResult;
@@ -82,6 +91,7 @@ import org.eclipse.jgit.transport.PushResult;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
 import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.gitective.core.CommitUtils;
 import org.gitective.core.RepositoryUtils;
 import org.slf4j.Logger;
@@ -100,10 +110,11 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
     private static final String CONFIG_ROOT_DIR = "fabric";
 
     public static final String GIT_PULL_PERIOD = "gitPullPeriod";
+    public static final String GIT_POLL_PERIOD = "gitPollPeriod";
     public static final String GIT_REMOTE_URL = "gitRemoteUrl";
     public static final String GIT_REMOTE_USER = "gitRemoteUser";
     public static final String GIT_REMOTE_PASSWORD = "gitRemotePassword";
-    public static final String[] SUPPORTED_CONFIGURATION = { DATASTORE_TYPE_PROPERTY, GIT_REMOTE_URL, GIT_REMOTE_USER, GIT_REMOTE_PASSWORD, GIT_PULL_PERIOD };
+    public static final String[] SUPPORTED_CONFIGURATION = { DATASTORE_TYPE_PROPERTY, GIT_REMOTE_URL, GIT_REMOTE_USER, GIT_REMOTE_PASSWORD, GIT_PULL_PERIOD, GIT_POLL_PERIOD };
 
     public static final String CONFIGS = CONFIG_ROOT_DIR;
     public static final String CONFIGS_PROFILES = CONFIGS + File.separator + "profiles";
@@ -127,14 +138,22 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
     private final Set<String> versions = new CopyOnWriteArraySet<String>();
     private final GitListener gitListener = new GitDataStoreListener();
     private final AtomicReference<String> remoteRef = new AtomicReference<String>("origin");
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong avoidedFetches = new AtomicLong();
+    private final AtomicLong coalescedOperations = new AtomicLong();
+    private final Queue<PendingOperation<?>> pendingOperations = new ConcurrentLinkedQueue<PendingOperation<?>>();
+    private final ThreadLocal<GitTransaction> currentTransaction = new ThreadLocal<GitTransaction>();
 
     private String remoteUrl;
     private String lastFetchWarning;
+    private volatile long lastPullTime;
 
     @Property(name = "configuredUrl", label = "External Git Repository URL", description = "The URL to a fixed external git repository")
     private String configuredUrl;
     @Property(name = "gitPullPeriod", label = "Pull Interval", description = "The interval between pulls", intValue = 1000)
     private long gitPullPeriod = 1000;
+    @Property(name = "gitPollPeriod", label = "Poll Interval", description = "The interval between pulls when the git master has not published any change of the version branches", longValue = 300000)
+    private long gitPollPeriod = 300000;
 
 
     @Override
@@ -154,10 +173,14 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
             }
 
             forceGetVersions();
-            LOG.info("starting to pull from remote repository every {} millis", gitPullPeriod);
+            LOG.info("starting to check for changes of the remote repository every {} millis", gitPullPeriod);
             threadPool.scheduleWithFixedDelay(new Runnable() {
                 @Override
                 public void run() {
+                    if (!isPullRequired()) {
+                        avoidedFetches.incrementAndGet();
+                        return;
+                    }
                     LOG.debug("Performing timed pull");
                     pull();
                     //a commit that failed to push for any reason, will not get pushed until the next commit.
@@ -201,6 +224,52 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
         }
     }
 
+    /**
+     * Returns true if the timed pull should fetch from the remote repository; which is when the heads published
+     * by the git master differ from the local version branches, when the git master does not publish its heads
+     * or when no pull has happened for the {@link #gitPollPeriod}. An external repository is always pulled.
+     */
+    protected boolean isPullRequired() {
+        if (!isValid()) {
+            return false;
+        }
+        if (configuredUrl != null || System.currentTimeMillis() - lastPullTime >= gitPollPeriod) {
+            return true;
+        }
+        try {
+            Map<String, String> heads = getPropertiesAsMap(getTreeCache(), ZkPath.CONFIG_GIT_HEADS.getPath());
+            if (heads.isEmpty()) {
+                return true;
+            }
+            Map<String, Ref> localHeads = getGit().getRepository().getRefDatabase().getRefs(Constants.R_HEADS);
+            for (Map.Entry<String, String> entry : heads.entrySet()) {
+                Ref ref = localHeads.get(entry.getKey());
+                if (ref == null || ref.getObjectId() == null || !ref.getObjectId().getName().equals(entry.getValue())) {
+                    LOG.debug("Branch {} differs from the head {} published by the git master", entry.getKey(), entry.getValue());
+                    return true;
+                }
+            }
+            return false;
+        } catch (Exception e) {
+            LOG.debug("Failed to compare the local branches with the published heads", e);
+            return true;
+        }
+    }
+
+    /**
+     * Returns the number of fetches from the remote repository
+     */
+    public long getFetchCount() {
+        return fetches.get();
+    }
+
+    /**
+     * Returns the number of timed pulls which did not fetch as the version branches were up to date
+     */
+    public long getAvoidedFetchCount() {
+        return avoidedFetches.get();
+    }
+
     public String getRemote() {
         return remoteRef.get();
     }
@@ -364,44 +433,41 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
     @Override
     public List<String> getProfiles(final String version) {
         assertValid();
-        return gitOperation(new GitOperation<List<String>>() {
-            public List<String> call(Git git, GitContext context) throws Exception {
+        return gitReadOperation(new GitReadOperation<List<String>>() {
+            public List<String> call(Git git, ObjectReader reader) throws Exception {
                 List<String> answer = new ArrayList<String>();
-                File profilesDir = getProfilesDirectory(git);
                 if (hasVersion(version)) {
                     //We are also checking the master branch for non versioned profiles (e.g. ensemble profiles).
-                    checkoutVersion(git, "master");
-                    doAddProfileNames(answer, profilesDir, "");
-
-                    checkoutVersion(git, version);
-                    doAddProfileNames(answer, profilesDir, "");
-
+                    doAddProfileNames(answer, reader, getVersionTree(git, reader, MASTER_BRANCH));
+                    doAddProfileNames(answer, reader, getVersionTree(git, reader, version));
                 }
                 return answer;
             }
         }, !hasVersion(version));
     }
 
-    private void doAddProfileNames(List<String> answer, File profilesDir, String prefix) {
-        if (profilesDir.exists()) {
-            File[] files = profilesDir.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isDirectory()) {
-                        // TODO we could recursively scan for magic ".profile" files or something
-                        // then we could put profiles into nicer tree structure?
-                        String name = file.getName();
-                        if (useDirectoriesForProfiles) {
-                            if (name.endsWith(PROFILE_FOLDER_SUFFIX)) {
-                                name = name.substring(0, name.length() - PROFILE_FOLDER_SUFFIX.length());
-                                answer.add(prefix + name);
-                            } else {
-                                doAddProfileNames(answer, file, prefix + name + "-");
-                            }
-                        } else {
-                            answer.add(name);
-                        }
+    /**
+     * Adds the names of the profiles in the profiles directory of the given version tree
+     */
+    protected void doAddProfileNames(List<String> answer, ObjectReader reader, RevTree versionTree) throws IOException {
+        TreeWalk walk = findTreeEntry(reader, versionTree, fixFilePattern(CONFIGS_PROFILES));
+        if (walk == null || !walk.isSubtree()) {
+            return;
+        }
+        TreeWalk profiles = new TreeWalk(reader);
+        profiles.addTree(walk.getObjectId(0));
+        while (profiles.next()) {
+            if (profiles.isSubtree()) {
+                String name = profiles.getNameString();
+                if (useDirectoriesForProfiles) {
+                    if (name.endsWith(PROFILE_FOLDER_SUFFIX)) {
+                        String path = profiles.getPathString();
+                        answer.add(path.substring(0, path.length() - PROFILE_FOLDER_SUFFIX.length()).replace('/', '-'));
+                    } else {
+                        profiles.enterSubtree();
                     }
+                } else {
+                    answer.add(name);
                 }
             }
         }
@@ -422,15 +488,23 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
     @Override
     public String getProfile(final String version, final String profile, final boolean create) {
         assertValid();
+        boolean exists = gitReadOperation(new GitReadOperation<Boolean>() {
+            public Boolean call(Git git, ObjectReader reader) throws Exception {
+                RevTree tree = getVersionTree(git, reader, GitProfiles.getBranch(version, profile));
+                return findTreeEntry(reader, tree, getProfilePath(profile)) != null;
+            }
+        }, !hasVersion(version));
+        if (exists) {
+            return profile;
+        } else if (!create) {
+            return null;
+        }
         return gitOperation(new GitOperation<String>() {
             public String call(Git git, GitContext context) throws Exception {
                 checkoutVersion(git, GitProfiles.getBranch(version, profile));
                 File profileDirectory = getProfileDirectory(git, profile);
                 if (!profileDirectory.exists()) {
-                    if (create) {
-                        return doCreateProfile(git, context, profile, version);
-                    }
-                    return null;
+                    return doCreateProfile(git, context, profile, version);
                 }
                 return profile;
             }
@@ -493,33 +567,42 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
     @Override
     public String getLastModified(final String version, final String profile) {
         assertValid();
-        String answer = gitOperation(new GitOperation<String>() {
-            public String call(Git git, GitContext context) throws Exception {
-                String revision = git.getRepository().getRefDatabase().getRef(version).getObjectId().getName();
-                String path = convertProfileIdToDirectory(profile);
-                RevCommit commit = CommitUtils.getLastCommit(git.getRepository(), revision, CONFIGS_PROFILES + File.separator + path);
-                return commit != null ? commit.getId().abbreviate(GIT_COMMIT_SHORT_LENGTH).name() : "";
+        String answer = gitReadOperation(new GitReadOperation<String>() {
+            public String call(Git git, ObjectReader reader) throws Exception {
+                return doGetLastModified(git, version, profile);
             }
         }, false);
         return answer != null ? answer : "";
     }
 
+    /**
+     * Returns the abbreviated id of the last commit which changed the given profile on the branch holding it,
+     * the master branch for ensemble profiles and the version branch for the others
+     */
+    protected String doGetLastModified(Git git, String version, String profile) throws IOException {
+        Ref ref = git.getRepository().getRef(Constants.R_HEADS + GitProfiles.getBranch(version, profile));
+        if (ref == null || ref.getObjectId() == null) {
+            return "";
+        }
+        RevCommit commit = CommitUtils.getLastCommit(git.getRepository(), ref.getObjectId().getName(), getProfilePath(profile));
+        return commit != null ? commit.getId().abbreviate(GIT_COMMIT_SHORT_LENGTH).name() : "";
+    }
+
     @Override
     public Collection<String> listFiles(final String version, final Iterable<String> profiles, final String path) {
         assertValid();
-        return gitOperation(new GitOperation<Collection<String>>() {
-            public Collection<String> call(Git git, GitContext context) throws Exception {
+        return gitReadOperation(new GitReadOperation<Collection<String>>() {
+            public Collection<String> call(Git git, ObjectReader reader) throws Exception {
                 SortedSet<String> answer = new TreeSet<String>();
                 for (String profile : profiles) {
-                    checkoutVersion(git, GitProfiles.getBranch(version, profile));
-                    File profileDirectory = getProfileDirectory(git, profile);
-                    File file = Strings.isNotBlank(path) ? new File(profileDirectory, path) : profileDirectory;
-                    if (file.exists()) {
-                        String[] values = file.list();
-                        if (values != null) {
-                            for (String value : values) {
-                                answer.add(value);
-                            }
+                    RevTree tree = getVersionTree(git, reader, GitProfiles.getBranch(version, profile));
+                    String profilePath = getProfilePath(profile);
+                    TreeWalk walk = findTreeEntry(reader, tree, Strings.isNotBlank(path) ? profilePath + "/" + fixFilePattern(path) : profilePath);
+                    if (walk != null && walk.isSubtree()) {
+                        TreeWalk children = new TreeWalk(reader);
+                        children.addTree(walk.getObjectId(0));
+                        while (children.next()) {
+                            answer.add(children.getNameString());
                         }
                     }
                 }
@@ -531,14 +614,33 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
     @Override
     public Map<String, byte[]> getFileConfigurations(final String version, final String profile) {
         assertValid();
-        return gitOperation(new GitOperation<Map<String, byte[]>>() {
-            public Map<String, byte[]> call(Git git, GitContext context) throws Exception {
-                checkoutVersion(git, GitProfiles.getBranch(version, profile));
-                return doGetFileConfigurations(git, profile);
+        return gitReadOperation(new GitReadOperation<Map<String, byte[]>>() {
+            public Map<String, byte[]> call(Git git, ObjectReader reader) throws Exception {
+                RevTree tree = getVersionTree(git, reader, GitProfiles.getBranch(version, profile));
+                return doGetFileConfigurations(reader, tree, profile);
             }
         }, !hasVersion(version));
     }
 
+    /**
+     * Loads all the files of the profile from the given version tree keyed by their path relative to the profile
+     */
+    protected Map<String, byte[]> doGetFileConfigurations(ObjectReader reader, RevTree versionTree, String profile) throws IOException {
+        Map<String, byte[]> configurations = new HashMap<String, byte[]>();
+        TreeWalk walk = findTreeEntry(reader, versionTree, getProfilePath(profile));
+        if (walk != null && walk.isSubtree()) {
+            TreeWalk files = new TreeWalk(reader);
+            files.addTree(walk.getObjectId(0));
+            files.setRecursive(true);
+            while (files.next()) {
+                if (isFile(files.getFileMode(0))) {
+                    configurations.put(files.getPathString(), doLoadBlob(reader, files.getObjectId(0)));
+                }
+            }
+        }
+        return configurations;
+    }
+
     protected Map<String, byte[]> doGetFileConfigurations(Git git, String profile) throws IOException {
         assertValid();
         Map<String, byte[]> configurations = new HashMap<String, byte[]>();
@@ -584,12 +686,28 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
     @Override
     public byte[] getFileConfiguration(final String version, final String profile, final String fileName) {
         assertValid();
-        return gitOperation(new GitOperation<byte[]>() {
-            public byte[] call(Git git, GitContext context) throws Exception {
-                checkoutVersion(git, GitProfiles.getBranch(version, profile));
-                File profileDirectory = getProfileDirectory(git, profile);
-                File file = new File(profileDirectory, fileName);
-                return doLoadFileConfiguration(file);
+        return gitReadOperation(new GitReadOperation<byte[]>() {
+            public byte[] call(Git git, ObjectReader reader) throws Exception {
+                RevTree tree = getVersionTree(git, reader, GitProfiles.getBranch(version, profile));
+                TreeWalk walk = findTreeEntry(reader, tree, getProfilePath(profile) + "/" + fixFilePattern(fileName));
+                if (walk == null) {
+                    return null;
+                } else if (walk.isSubtree()) {
+                    // Not sure why we do this, but for directory pids, lets recurse...
+                    StringBuilder buf = new StringBuilder();
+                    TreeWalk children = new TreeWalk(reader);
+                    children.addTree(walk.getObjectId(0));
+                    while (children.next()) {
+                        if (isFile(children.getFileMode(0))) {
+                            String value = new String(doLoadBlob(reader, children.getObjectId(0)));
+                            buf.append(String.format("%s = %s\n", children.getNameString(), value));
+                        }
+                    }
+                    return buf.toString().getBytes();
+                } else if (isFile(walk.getFileMode(0))) {
+                    return doLoadBlob(reader, walk.getObjectId(0));
+                }
+                return null;
             }
         }, !hasVersion(version));
     }
@@ -701,13 +819,12 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
     @Override
     public Map<String, String> getConfiguration(final String version, final String profile, final String pid) {
         assertValid();
-        return gitOperation(new GitOperation<Map<String, String>>() {
-            public Map<String, String> call(Git git, GitContext context) throws Exception {
-                checkoutVersion(git, GitProfiles.getBranch(version, profile));
-                File profileDirectory = getProfileDirectory(git, profile);
-                File file = getPidFile(profileDirectory, pid);
-                if (file.isFile() && file.exists()) {
-                    byte[] data = Files.readBytes(file);
+        return gitReadOperation(new GitReadOperation<Map<String, String>>() {
+            public Map<String, String> call(Git git, ObjectReader reader) throws Exception {
+                RevTree tree = getVersionTree(git, reader, GitProfiles.getBranch(version, profile));
+                TreeWalk walk = findTreeEntry(reader, tree, getProfilePath(profile) + "/" + fixFilePattern(pid) + PROPERTIES_SUFFIX);
+                if (walk != null && isFile(walk.getFileMode(0))) {
+                    byte[] data = doLoadBlob(reader, walk.getObjectId(0));
                     return DataStoreUtils.toMap(data);
                 } else {
                     return new HashMap<String, String>();
@@ -851,62 +968,386 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
     }
 
     public <T> T gitOperation(PersonIdent personIdent, GitOperation<T> operation, boolean pullFirst, GitContext context) {
+        assertValid();
+        GitTransaction transaction = currentTransaction.get();
+        if (transaction != null) {
+            // part of a transaction which already holds the lock, stashed and pulled
+            return runTransactionOperation(transaction, operation, context);
+        }
+
+        PendingOperation<T> pending = new PendingOperation<T>(personIdent, operation, pullFirst, context);
+        if (Thread.holdsLock(gitOperationMonitor)) {
+            // a git operation invoked from within another one
+            runPendingOperations(Collections.<PendingOperation<?>>singletonList(pending));
+            return pending.getAnswer();
+        }
+
+        // concurrent writers queue up while another operation holds the lock; whoever gets the lock next
+        // runs the queued operations of the same identity with one stash, one pull, one push and one change
+        // notification, leaving the others queued for their own threads
+        pendingOperations.add(pending);
         synchronized (gitOperationMonitor) {
-            assertValid();
+            if (!pending.isDone()) {
+                List<PendingOperation<?>> operations = new ArrayList<PendingOperation<?>>();
+                List<PendingOperation<?>> others = new ArrayList<PendingOperation<?>>();
+                PendingOperation<?> next;
+                while ((next = pendingOperations.poll()) != null) {
+                    if (isSameIdentity(pending.personIdent, next.personIdent)) {
+                        operations.add(next);
+                    } else {
+                        others.add(next);
+                    }
+                }
+                pendingOperations.addAll(others);
+                if (operations.size() > 1) {
+                    coalescedOperations.addAndGet(operations.size() - 1);
+                }
+                runPendingOperations(operations);
+            }
+        }
+        return pending.getAnswer();
+    }
+
+    private static boolean isSameIdentity(PersonIdent a, PersonIdent b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.getName().equals(b.getName()) && a.getEmailAddress().equals(b.getEmailAddress());
+    }
+
+    private void runPendingOperations(List<PendingOperation<?>> operations) {
+        assertValid();
 
-            // must set the TCCL to the classloader that loaded GitDataStore as we need the classloader
-            // that could load this class, as jgit will load resources from classpath using the TCCL
-            // and that requires the TCCL to the classloader that could load GitDataStore as the resources
-            // jgit requires are in the same bundle as GitDataSource (eg embedded inside fabric-git)
+        // must set the TCCL to the classloader that loaded GitDataStore as we need the classloader
+        // that could load this class, as jgit will load resources from classpath using the TCCL
+        // and that requires the TCCL to the classloader that could load GitDataStore as the resources
+        // jgit requires are in the same bundle as GitDataSource (eg embedded inside fabric-git)
+        // see FABRIC-887
+        ClassLoader oldCl = Thread.currentThread().getContextClassLoader();
+        ClassLoader cl = GitDataStore.class.getClassLoader();
+        Thread.currentThread().setContextClassLoader(cl);
+        LOG.trace("Setting ThreadContextClassLoader to {} instead of {}", cl, oldCl);
+        boolean committed = false;
+        try {
+            Git git = getGit();
+            boolean pullFirst = false;
+            for (PendingOperation<?> operation : operations) {
+                pullFirst |= operation.pullFirst;
+            }
+            doStash(git, operations.get(0).personIdent);
+            if (pullFirst) {
+                doPull(git, getCredentialsProvider(), false);
+            }
+
+            boolean requirePush = false;
+            GitContext pushContext = null;
+            for (PendingOperation<?> operation : operations) {
+                try {
+                    operation.run(git);
+                    GitContext context = operation.context;
+                    if (context.isRequireCommit()) {
+                        String message = context.getCommitMessage().toString();
+                        if (message.length() == 0) {
+                            LOG.warn("No commit message from " + operation.operation + ". Please add one! :)");
+                        }
+                        git.commit().setMessage(message).call();
+                        committed = true;
+                    }
+                    if (context.isRequireCommit() || context.isRequirePush()) {
+                        requirePush = true;
+                        pushContext = context;
+                    }
+                } catch (Throwable e) {
+                    // errors are rethrown by the thread which owns the operation
+                    operation.setFailure(e);
+                    // do not leave a half done operation behind for the next one
+                    try {
+                        doStash(git, operation.personIdent);
+                    } catch (Exception stashFailure) {
+                        LOG.warn("Failed to stash the changes of a failed git operation. " + stashFailure, stashFailure);
+                    }
+                }
+            }
+
+            if (requirePush) {
+                try {
+                    doPush(git, pushContext, getCredentialsProvider());
+                } catch (Throwable e) {
+                    for (PendingOperation<?> operation : operations) {
+                        if (operation.failure == null && (operation.context.isRequireCommit() || operation.context.isRequirePush())) {
+                            operation.setFailure(e);
+                        }
+                    }
+                }
+            }
+        } catch (Throwable e) {
+            for (PendingOperation<?> operation : operations) {
+                if (operation.failure == null) {
+                    operation.setFailure(e);
+                }
+            }
+        } finally {
+            try {
+                if (committed) {
+                    clearCaches();
+                    fireChangeNotifications();
+                }
+            } finally {
+                for (PendingOperation<?> operation : operations) {
+                    operation.complete();
+                }
+                LOG.trace("Restoring ThreadContextClassLoader to {}", oldCl);
+                Thread.currentThread().setContextClassLoader(oldCl);
+            }
+        }
+    }
+
+    private void doStash(Git git, PersonIdent personIdent) throws GitAPIException, IOException {
+        if (GitHelpers.hasGitHead(git)) {
+            // lets default the identity if none specified
+            if (personIdent == null) {
+                personIdent = new PersonIdent(git.getRepository());
+            }
+            // lets stash any local changes just in case..
+            git.stashCreate().setPerson(personIdent).setWorkingDirectoryMessage("Stash before a write").call();
+        }
+    }
+
+    /**
+     * Performs all the profile and version changes of the given task as one transaction: the repository is
+     * stashed and pulled once up front, the changes of each version branch are squashed into a single commit,
+     * and there is one push and one change notification at the end. If the task fails the version branches
+     * are reset to where they were before the transaction, the ones it created are deleted and no change is
+     * notified.
+     */
+    @Override
+    public void runInTransaction(Runnable task) {
+        assertValid();
+        if (currentTransaction.get() != null) {
+            task.run();
+            return;
+        }
+        synchronized (gitOperationMonitor) {
             // see FABRIC-887
             ClassLoader oldCl = Thread.currentThread().getContextClassLoader();
-            ClassLoader cl = GitDataStore.class.getClassLoader();
-            Thread.currentThread().setContextClassLoader(cl);
-            LOG.trace("Setting ThreadContextClassLoader to {} instead of {}", cl, oldCl);
+            Thread.currentThread().setContextClassLoader(GitDataStore.class.getClassLoader());
+            GitTransaction transaction = new GitTransaction();
+            boolean rolledBack = false;
             try {
                 Git git = getGit();
-                Repository repository = git.getRepository();
-                // lets default the identity if none specified
-                if (personIdent == null) {
-                    personIdent = new PersonIdent(repository);
-                }
+                doStash(git, null);
+                doPull(git, getCredentialsProvider(), false);
+                transaction.initialBranches.addAll(getLocalBranches(git));
 
-                if (GitHelpers.hasGitHead(git)) {
-                    // lets stash any local changes just in case..
-                    git.stashCreate().setPerson(personIdent).setWorkingDirectoryMessage("Stash before a write").call();
+                boolean completed = false;
+                currentTransaction.set(transaction);
+                try {
+                    task.run();
+                    completed = true;
+                } finally {
+                    currentTransaction.remove();
+                    if (!completed) {
+                        rolledBack = true;
+                        doRollback(git, transaction);
+                    }
                 }
 
-                if (pullFirst) {
-                    doPull(git, getCredentialsProvider(), false);
+                doSquash(git, transaction);
+                if (transaction.context.isRequirePush()) {
+                    doPush(git, transaction.context, getCredentialsProvider());
                 }
-
-                T answer = operation.call(git, context);
-                boolean requirePush = context.isRequirePush();
-                if (context.isRequireCommit()) {
-                    requirePush = true;
-                    String message = context.getCommitMessage().toString();
-                    if (message.length() == 0) {
-                        LOG.warn("No commit message from " + operation + ". Please add one! :)");
+            } catch (Exception e) {
+                throw FabricException.launderThrowable(e);
+            } finally {
+                try {
+                    if (rolledBack) {
+                        // nothing was committed so there is nothing to notify
+                        clearCaches();
+                    } else if (!transaction.branches.isEmpty()) {
+                        clearCaches();
+                        fireChangeNotifications();
                     }
-                    git.commit().setMessage(message).call();
+                } finally {
+                    Thread.currentThread().setContextClassLoader(oldCl);
                 }
+            }
+        }
+    }
 
-                if (requirePush) {
-                    doPush(git, context, getCredentialsProvider());
+    private <T> T runTransactionOperation(GitTransaction transaction, GitOperation<T> operation, GitContext context) {
+        try {
+            Git git = getGit();
+            T answer = operation.call(git, context);
+            if (context.isRequireCommit()) {
+                Repository repository = git.getRepository();
+                String branch = repository.getBranch();
+                BranchChanges changes = transaction.branches.get(branch);
+                if (changes == null) {
+                    changes = new BranchChanges(repository.resolve(Constants.HEAD));
+                    transaction.branches.put(branch, changes);
+                }
+                String message = context.getCommitMessage().toString();
+                if (changes.messages.length() > 0) {
+                    changes.messages.append("\n");
                 }
+                changes.messages.append(message);
+                // commit locally so reads from the object database within the transaction see the change
+                git.commit().setMessage(message).call();
+                changes.commits++;
+                transaction.context.requirePush();
+                clearCaches();
+            } else if (context.isRequirePush()) {
+                transaction.context.requirePush();
+            }
+            return answer;
+        } catch (Exception e) {
+            throw FabricException.launderThrowable(e);
+        }
+    }
 
-                if (context.isRequireCommit()) {
-                    clearCaches();
-                    fireChangeNotifications();
+    /**
+     * Squashes the commits the transaction made on each version branch into one
+     */
+    private void doSquash(Git git, GitTransaction transaction) throws GitAPIException, IOException {
+        for (Map.Entry<String, BranchChanges> entry : transaction.branches.entrySet()) {
+            BranchChanges changes = entry.getValue();
+            if (changes.start != null && changes.commits > 1) {
+                GitHelpers.checkoutBranch(git, entry.getKey());
+                git.reset().setMode(ResetCommand.ResetType.SOFT).setRef(changes.start.getName()).call();
+                git.commit().setMessage(changes.messages.toString()).call();
+            }
+        }
+    }
+
+    /**
+     * Resets the version branches the transaction changed and deletes the ones it created
+     */
+    private void doRollback(Git git, GitTransaction transaction) {
+        for (Map.Entry<String, BranchChanges> entry : transaction.branches.entrySet()) {
+            String branch = entry.getKey();
+            BranchChanges changes = entry.getValue();
+            if (changes.start != null && transaction.initialBranches.contains(branch)) {
+                try {
+                    GitHelpers.checkoutBranch(git, branch);
+                    git.reset().setMode(ResetCommand.ResetType.HARD).setRef(changes.start.getName()).call();
+                } catch (Exception e) {
+                    LOG.warn("Failed to roll back version " + branch + " to " + changes.start.getName() + ". " + e, e);
                 }
-                return answer;
-            } catch (Exception e) {
-                throw FabricException.launderThrowable(e);
-            } finally {
-                LOG.trace("Restoring ThreadContextClassLoader to {}", oldCl);
-                Thread.currentThread().setContextClassLoader(oldCl);
             }
         }
+        try {
+            for (String branch : getLocalBranches(git)) {
+                if (!transaction.initialBranches.contains(branch)) {
+                    GitHelpers.checkoutBranch(git, MASTER_BRANCH);
+                    git.branchDelete().setBranchNames(branch).setForce(true).call();
+                    removeVersion(branch);
+                }
+            }
+        } catch (Exception e) {
+            LOG.warn("Failed to delete the versions created by the rolled back transaction. " + e, e);
+        }
+    }
+
+    private static Set<String> getLocalBranches(Git git) throws GitAPIException {
+        Set<String> answer = new HashSet<String>();
+        for (Ref ref : git.branchList().call()) {
+            if (ref.getName().startsWith("refs/heads/")) {
+                answer.add(ref.getName().substring("refs/heads/".length()));
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the number of git operations which were run together with an operation of another thread
+     * rather than on their own
+     */
+    public long getCoalescedOperationCount() {
+        return coalescedOperations.get();
+    }
+
+    /**
+     * Performs a read only operation on the git object database. Reads resolve the last commit of the version
+     * branch and walk its tree rather than checking out the working tree, so they do not take the lock of the
+     * git operations and run concurrently with each other and with writes.
+     */
+    public <T> T gitReadOperation(GitReadOperation<T> operation) {
+        return gitReadOperation(operation, false);
+    }
+
+    public <T> T gitReadOperation(GitReadOperation<T> operation, boolean pullFirst) {
+        assertValid();
+        if (pullFirst) {
+            pull();
+        }
+        // see FABRIC-887
+        ClassLoader oldCl = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(GitDataStore.class.getClassLoader());
+        ObjectReader reader = null;
+        try {
+            Git git = getGit();
+            reader = git.getRepository().newObjectReader();
+            return operation.call(git, reader);
+        } catch (Exception e) {
+            throw FabricException.launderThrowable(e);
+        } finally {
+            if (reader != null) {
+                reader.release();
+            }
+            Thread.currentThread().setContextClassLoader(oldCl);
+        }
+    }
+
+    /**
+     * Returns the tree of the last commit on the given version branch or null if there is no such branch
+     */
+    protected RevTree getVersionTree(Git git, ObjectReader reader, String version) throws IOException {
+        ObjectId head = getVersionHead(git, version);
+        if (head == null) {
+            return null;
+        }
+        RevWalk walk = new RevWalk(reader);
+        try {
+            return walk.parseCommit(head).getTree();
+        } finally {
+            walk.release();
+        }
+    }
+
+    /**
+     * Returns the id of the last commit on the given version branch or null if there is no such branch
+     */
+    protected ObjectId getVersionHead(Git git, String version) throws IOException {
+        Ref ref = git.getRepository().getRef(Constants.R_HEADS + version);
+        if (ref == null || ref.getObjectId() == null) {
+            return null;
+        }
+        addVersion(version);
+        return ref.getObjectId();
+    }
+
+    /**
+     * Returns a tree walk positioned on the entry with the given path in the version tree or null if it does not exist
+     */
+    protected TreeWalk findTreeEntry(ObjectReader reader, RevTree versionTree, String path) throws IOException {
+        return versionTree != null ? TreeWalk.forPath(reader, path, versionTree) : null;
+    }
+
+    /**
+     * Returns the path of the profile directory within a version tree
+     */
+    protected String getProfilePath(String profile) {
+        return fixFilePattern(CONFIGS_PROFILES + File.separator + convertProfileIdToDirectory(profile));
+    }
+
+    protected byte[] doLoadBlob(ObjectReader reader, ObjectId blobId) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reader.open(blobId, Constants.OBJ_BLOB).copyTo(out);
+        return out.toByteArray();
+    }
+
+    private static boolean isFile(FileMode mode) {
+        return (mode.getBits() & FileMode.TYPE_MASK) == FileMode.TYPE_FILE;
     }
 
     /**
@@ -1004,6 +1445,7 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
 
             boolean hasChanged = false;
             try {
+                fetches.incrementAndGet();
                 FetchResult result = git.fetch().setTimeout(10).setCredentialsProvider(credentialsProvider).setRemote(remoteRef.get()).call();
                 if (Strings.isNullOrBlank(result.getMessages()));
                 LOG.debug(result.getMessages());
@@ -1191,6 +1633,7 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
 
     protected void pull() {
         if (isValid()) {
+            lastPullTime = System.currentTimeMillis();
             try {
                 gitOperation(new GitOperation<Object>() {
                     public Object call(Git git, GitContext context) throws Exception {
@@ -1358,6 +1801,68 @@ public class GitDataStore extends AbstractDataStore<GitDataStore> {
         this.gitService.unbind(service);
     }
 
+    /**
+     * A git operation waiting for the lock, which may be run by another thread together with its own operation
+     */
+    static class PendingOperation<T> {
+        private final PersonIdent personIdent;
+        private final GitOperation<T> operation;
+        private final boolean pullFirst;
+        private final GitContext context;
+        private T answer;
+        private Throwable failure;
+        private volatile boolean done;
+
+        PendingOperation(PersonIdent personIdent, GitOperation<T> operation, boolean pullFirst, GitContext context) {
+            this.personIdent = personIdent;
+            this.operation = operation;
+            this.pullFirst = pullFirst;
+            this.context = context;
+        }
+
+        void run(Git git) throws Exception {
+            answer = operation.call(git, context);
+        }
+
+        void setFailure(Throwable failure) {
+            this.failure = failure;
+        }
+
+        void complete() {
+            done = true;
+        }
+
+        boolean isDone() {
+            return done;
+        }
+
+        T getAnswer() {
+            if (failure != null) {
+                throw FabricException.launderThrowable(failure);
+            }
+            return answer;
+        }
+    }
+
+    /**
+     * The changes made by a {@link #runInTransaction(Runnable)} task so far
+     */
+    static class GitTransaction {
+        private final GitContext context = new GitContext();
+        private final Map<String, BranchChanges> branches = new LinkedHashMap<String, BranchChanges>();
+        private final Set<String> initialBranches = new HashSet<String>();
+    }
+
+    static class BranchChanges {
+        private final ObjectId start;
+        private final StringBuilder messages = new StringBuilder();
+        private int commits;
+
+        BranchChanges(ObjectId start) {
+            this.start = start;
+        }
+    }
+
     class GitDataStoreListener implements GitListener {
 
         @Override
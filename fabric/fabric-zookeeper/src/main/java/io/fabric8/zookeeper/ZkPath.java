@@ -57,6 +57,7 @@ public enum ZkPath {
 	CONFIG_ENSEMBLE_GENERAL        ("/fabric/configs/ensemble/general"),
 	CONFIG_ENSEMBLE_PROFILES       ("/fabric/configs/ensemble/profiles"),
 	CONFIG_ENSEMBLE_PROFILE        ("/fabric/configs/ensemble/profiles/{profile}"),
+	CONFIG_GIT_HEADS               ("/fabric/configs/git/heads"),
 
 
 
@@ -84,6 +85,7 @@ public enum ZkPath {
     CONTAINER_PROVISION            ("/fabric/registry/containers/provision/{container}"),
     CONTAINER_PROVISION_LIST       ("/fabric/registry/containers/provision/{container}/list"),
     CONTAINER_PROVISION_CHECKSUMS  ("/fabric/registry/containers/provision/{container}/checksums"),
+    CONTAINER_PROVISION_TIMINGS    ("/fabric/registry/containers/provision/{container}/timings"),
     CONTAINER_PROVISION_RESULT     ("/fabric/registry/containers/provision/{container}/result"),
     CONTAINER_PROVISION_EXCEPTION  ("/fabric/registry/containers/provision/{container}/exception"),
     CONTAINER_EXTENDER             ("/fabric/registry/containers/provision/{container}/extender/{extender}"),
@@ -28,6 +28,8 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
 import org.apache.curator.framework.listen.ListenerContainer;
 import org.apache.curator.framework.state.ConnectionState;
 import org.apache.curator.framework.state.ConnectionStateListener;
@@ -45,16 +47,22 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Exchanger;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -94,10 +102,25 @@ public class TreeCache implements Closeable
         }
     });
 
+    /**
+     * The full paths of the cached nodes by the path of their parent, so that the removed children of a node can
+     * be found without scanning the whole cache
+     */
+    private final ConcurrentMap<String, Set<String>> childIndex = new ConcurrentHashMap<String, Set<String>>();
+    /**
+     * Incremented after each change of the cached nodes, tells whether the sorted view is still current
+     */
+    private final AtomicLong modCount = new AtomicLong();
+    private volatile SortedData sortedData;
+
     private final AtomicReference<Map<String, ChildData>> initialSet = new AtomicReference<Map<String, ChildData>>();
 
     private static final ChildData NULL_CHILD_DATA = new ChildData(null, null, null);
-    private static final String CHILD_OF_ZNODE_PATTERN = "%s/[^ /]*";
+
+    /**
+     * The maximum number of background reads in flight while loading the tree
+     */
+    private static final int MAX_PIPELINED_READS = 1000;
 
     private final Watcher watcher = new Watcher() {
         @Override
@@ -339,17 +362,7 @@ public class TreeCache implements Closeable
 
         clear();
 
-        List<String> children = client.getChildren().forPath(path);
-        for ( String child : children )
-        {
-            String fullPath = ZKPaths.makePath(path, child);
-            internalRebuildNode(fullPath);
-
-            if ( rebuildTestExchanger != null )
-            {
-                rebuildTestExchanger.exchange(new Object());
-            }
-        }
+        loadTree(false);
 
         // this is necessary so that any updates that occurred while rebuilding are taken
         offerOperation(new TreeRefreshOperation(this, path, RefreshMode.FORCE_GET_DATA_AND_STAT));
@@ -407,7 +420,15 @@ public class TreeCache implements Closeable
      */
     public List<TreeData> getCurrentData()
     {
-        return ImmutableList.copyOf(Sets.<TreeData>newTreeSet(currentData.asMap().values()));
+        // read the count first so that a change made while sorting makes the next call sort again
+        long count = modCount.get();
+        SortedData sorted = sortedData;
+        if ( sorted == null || sorted.modCount != count )
+        {
+            sorted = new SortedData(count, ImmutableList.copyOf(Sets.<TreeData>newTreeSet(currentData.asMap().values())));
+            sortedData = sorted;
+        }
+        return sorted.data;
     }
 
     /**
@@ -422,9 +443,15 @@ public class TreeCache implements Closeable
     {
         try {
             while (true) {
-                TreeData data = currentData.get(fullPath);
+                TreeData data = currentData.getIfPresent(fullPath);
+                if (data == null) {
+                    data = currentData.get(fullPath);
+                    indexChild(fullPath);
+                    modCount.incrementAndGet();
+                }
                 if (data.isInvalidated()) {
                     currentData.invalidate(fullPath);
+                    modCount.incrementAndGet();
                 } else {
                     return data;
                 }
@@ -496,7 +523,7 @@ public class TreeCache implements Closeable
      */
     public void clearAndRefresh() throws Exception
     {
-        currentData.invalidateAll();
+        clear();
         offerOperation(new TreeRefreshOperation(this, path, RefreshMode.STANDARD));
     }
 
@@ -507,6 +534,8 @@ public class TreeCache implements Closeable
     public void clear()
     {
         currentData.invalidateAll();
+        childIndex.clear();
+        modCount.incrementAndGet();
     }
 
     enum RefreshMode
@@ -519,6 +548,12 @@ public class TreeCache implements Closeable
     void refresh(final String path, final RefreshMode mode) throws Exception
     {
         ensurePath.ensure(client.getZookeeperClient());
+        if ( path.equals(this.path) && mode != RefreshMode.FORCE_GET_DATA_AND_STAT && currentData.size() == 0 )
+        {
+            // the initial load, read the whole tree at once rather than refreshing it node by node
+            loadTree(true);
+            return;
+        }
         Stat stat = new Stat();
         List<String> children = client.getChildren().storingStatIn(stat).usingWatcher(watcher).forPath(path);
         processChildren(path, children, mode);
@@ -588,9 +623,13 @@ public class TreeCache implements Closeable
         TreeData data = currentData.getIfPresent(fullPath);
         if ( data != null )
         {
-            currentData.invalidate(fullPath);
+            removeData(fullPath);
             offerOperation(new TreeEventOperation(this, new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.CHILD_REMOVED, data)));
         }
+        else
+        {
+            unindexChild(fullPath);
+        }
         Map<String, ChildData> localInitialSet = initialSet.get();
         if ( localInitialSet != null )
         {
@@ -609,7 +648,7 @@ public class TreeCache implements Closeable
                 Stat stat = new Stat();
                 byte[] bytes = dataIsCompressed ? client.getData().decompressed().storingStatIn(stat).forPath(fullPath) : client.getData().storingStatIn(stat).forPath(fullPath);
                 List<String> children = client.getChildren().forPath(fullPath);
-                currentData.put(fullPath, new TreeData(fullPath, stat, bytes, children));
+                putData(fullPath, new TreeData(fullPath, stat, bytes, children));
                 for (String child : children) {
                     String childPath = ZKPaths.makePath(fullPath, child);
                     internalRebuildNode(childPath);
@@ -618,7 +657,7 @@ public class TreeCache implements Closeable
             catch ( KeeperException.NoNodeException ignore )
             {
                 // node no longer exists - remove it
-                currentData.invalidate(fullPath);
+                removeData(fullPath);
                 removeFromParent(fullPath);
             }
         }
@@ -628,7 +667,7 @@ public class TreeCache implements Closeable
             if ( stat != null )
             {
                 List<String> children = client.getChildren().forPath(fullPath);
-                currentData.put(fullPath, new TreeData(fullPath, stat, null, children));
+                putData(fullPath, new TreeData(fullPath, stat, null, children));
                 for (String child : children) {
                     String childPath = ZKPaths.makePath(fullPath, child);
                     internalRebuildNode(childPath);
@@ -637,12 +676,151 @@ public class TreeCache implements Closeable
             else
             {
                 // node no longer exists - remove it
-                currentData.invalidate(fullPath);
+                removeData(fullPath);
                 removeFromParent(fullPath);
             }
         }
     }
 
+    /**
+     * Loads the whole tree below the cache path level by level. The nodes of a level are read with pipelined
+     * background calls instead of one synchronous round trip after the other, ZooKeeper multi only batches
+     * writes.
+     *
+     * @param notify if true, watchers are set and listeners notified as for any other added node
+     */
+    private void loadTree(boolean notify) throws Exception
+    {
+        List<String> children = notify ? client.getChildren().usingWatcher(watcher).forPath(path) : client.getChildren().forPath(path);
+        List<String> level = makePaths(path, children);
+
+        // filled here rather than node by node, checking for uninitialized nodes after each one is quadratic
+        Map<String, ChildData> localInitialSet = notify ? initialSet.getAndSet(null) : null;
+        try
+        {
+            Semaphore permits = new Semaphore(MAX_PIPELINED_READS);
+            while ( !level.isEmpty() )
+            {
+                List<LoadedNode> nodes = readNodes(level, notify, permits);
+                List<String> nextLevel = Lists.newArrayList();
+                for ( LoadedNode node : nodes )
+                {
+                    if ( node.missing )
+                    {
+                        // deleted since its parent was read, the watcher of the parent has fired
+                        remove(node.fullPath);
+                        continue;
+                    }
+                    TreeData data = new TreeData(node.fullPath, node.stat, node.data, node.children);
+                    if ( notify )
+                    {
+                        applyNewData(node.fullPath, KeeperException.Code.OK.intValue(), node.stat, node.data, node.children);
+                    }
+                    else
+                    {
+                        putData(node.fullPath, data);
+                    }
+                    if ( localInitialSet != null )
+                    {
+                        localInitialSet.put(node.fullPath, data);
+                    }
+                    nextLevel.addAll(makePaths(node.fullPath, node.children));
+                }
+                level = nextLevel;
+
+                if ( rebuildTestExchanger != null )
+                {
+                    rebuildTestExchanger.exchange(new Object());
+                }
+            }
+        }
+        finally
+        {
+            if ( localInitialSet != null )
+            {
+                initialSet.set(localInitialSet);
+            }
+        }
+        if ( localInitialSet != null )
+        {
+            maybeOfferInitializedEvent(localInitialSet);
+        }
+    }
+
+    private List<LoadedNode> readNodes(List<String> fullPaths, boolean watch, Semaphore permits) throws Exception
+    {
+        CountDownLatch done = new CountDownLatch(2 * fullPaths.size());
+        List<LoadedNode> nodes = Lists.newArrayListWithCapacity(fullPaths.size());
+        for ( String fullPath : fullPaths )
+        {
+            LoadedNode node = new LoadedNode(fullPath, done, permits);
+            nodes.add(node);
+
+            permits.acquire(2);
+            if ( cacheData && dataIsCompressed )
+            {
+                if ( watch )
+                {
+                    client.getData().decompressed().usingWatcher(watcher).inBackground(node).forPath(fullPath);
+                }
+                else
+                {
+                    client.getData().decompressed().inBackground(node).forPath(fullPath);
+                }
+            }
+            else if ( cacheData )
+            {
+                if ( watch )
+                {
+                    client.getData().usingWatcher(watcher).inBackground(node).forPath(fullPath);
+                }
+                else
+                {
+                    client.getData().inBackground(node).forPath(fullPath);
+                }
+            }
+            else
+            {
+                if ( watch )
+                {
+                    client.checkExists().usingWatcher(watcher).inBackground(node).forPath(fullPath);
+                }
+                else
+                {
+                    client.checkExists().inBackground(node).forPath(fullPath);
+                }
+            }
+            if ( watch )
+            {
+                client.getChildren().usingWatcher(watcher).inBackground(node).forPath(fullPath);
+            }
+            else
+            {
+                client.getChildren().inBackground(node).forPath(fullPath);
+            }
+        }
+        done.await();
+
+        for ( LoadedNode node : nodes )
+        {
+            if ( node.resultCode != KeeperException.Code.OK.intValue() )
+            {
+                throw KeeperException.create(KeeperException.Code.get(node.resultCode), node.fullPath);
+            }
+        }
+        return nodes;
+    }
+
+    private List<String> makePaths(final String parentPath, List<String> children)
+    {
+        List<String> fullPaths = Lists.newArrayListWithCapacity(children.size());
+        for ( String child : children )
+        {
+            fullPaths.add(ZKPaths.makePath(parentPath, child));
+        }
+        return fullPaths;
+    }
+
     private void handleStateChange(ConnectionState newState)
     {
         switch ( newState )
@@ -688,17 +866,7 @@ public class TreeCache implements Closeable
                         }
                 ));
 
-        Set<String> removedNodes = Sets.filter(Sets.newHashSet(currentData.asMap().keySet()), new Predicate<String>() {
-            @Override
-            public boolean apply(String input) {
-                if (input.matches(String.format(CHILD_OF_ZNODE_PATTERN, path))) {
-                    return true;
-                } else {
-                    return false;
-                }
-            }
-        });
-
+        Set<String> removedNodes = Sets.newHashSet(getIndexedChildren(path));
         removedNodes.removeAll(fullPaths);
 
         for ( String fullPath : removedNodes )
@@ -729,6 +897,51 @@ public class TreeCache implements Closeable
         }
     }
 
+    private void putData(String fullPath, TreeData data)
+    {
+        currentData.put(fullPath, data);
+        indexChild(fullPath);
+        modCount.incrementAndGet();
+    }
+
+    private void removeData(String fullPath)
+    {
+        currentData.invalidate(fullPath);
+        unindexChild(fullPath);
+        modCount.incrementAndGet();
+    }
+
+    private void indexChild(String fullPath)
+    {
+        String parentPath = ZKPaths.getPathAndNode(fullPath).getPath();
+        Set<String> children = childIndex.get(parentPath);
+        if ( children == null )
+        {
+            Set<String> newChildren = Sets.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            children = childIndex.putIfAbsent(parentPath, newChildren);
+            if ( children == null )
+            {
+                children = newChildren;
+            }
+        }
+        children.add(fullPath);
+    }
+
+    private void unindexChild(String fullPath)
+    {
+        Set<String> children = childIndex.get(ZKPaths.getPathAndNode(fullPath).getPath());
+        if ( children != null )
+        {
+            children.remove(fullPath);
+        }
+    }
+
+    private Set<String> getIndexedChildren(String fullPath)
+    {
+        Set<String> children = childIndex.get(fullPath);
+        return children != null ? children : Collections.<String>emptySet();
+    }
+
     private synchronized void addToParent(String fullPath) {
         Optional<String> parent = getParentOf(fullPath);
         if (parent.isPresent()) {
@@ -758,7 +971,7 @@ public class TreeCache implements Closeable
 
             synchronized (this) {
                 previousData = currentData.getIfPresent(fullPath);
-                currentData.put(fullPath, data);
+                putData(fullPath, data);
                 addToParent(fullPath);
             }
 
@@ -772,7 +985,7 @@ public class TreeCache implements Closeable
                     offerOperation(new TreeEventOperation(this, new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.CHILD_UPDATED, data)));
                 }
             }
-            updateInitialSet(ZKPaths.getNodeFromPath(fullPath), data);
+            updateInitialSet(fullPath, data);
         }
     }
 
@@ -850,7 +1063,10 @@ public class TreeCache implements Closeable
 
     private void offerOperation(Operation operation)
     {
-        operations.remove(operation);   // avoids herding for refresh operations
+        if ( !(operation instanceof TreeEventOperation) )
+        {
+            operations.remove(operation);   // avoids herding for refresh operations, events are never equal
+        }
         operations.offer(operation);
     }
 
@@ -861,4 +1077,79 @@ public class TreeCache implements Closeable
             return Optional.of(path.substring(0, path.lastIndexOf("/")));
         }
     }
+
+    /**
+     * The sorted view of the cached nodes as of the given modification count
+     */
+    private static final class SortedData
+    {
+        private final long modCount;
+        private final List<TreeData> data;
+
+        private SortedData(long modCount, List<TreeData> data)
+        {
+            this.modCount = modCount;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Collects the results of the background reads of a node while loading the tree
+     */
+    private static final class LoadedNode implements BackgroundCallback
+    {
+        private final String fullPath;
+        private final CountDownLatch done;
+        private final Semaphore permits;
+        // written by the event thread, read after the latch has been released
+        private Stat stat;
+        private byte[] data;
+        private List<String> children;
+        private boolean missing;
+        private int resultCode = KeeperException.Code.OK.intValue();
+
+        private LoadedNode(String fullPath, CountDownLatch done, Semaphore permits)
+        {
+            this.fullPath = fullPath;
+            this.done = done;
+            this.permits = permits;
+        }
+
+        @Override
+        public synchronized void processResult(CuratorFramework client, CuratorEvent event) throws Exception
+        {
+            try
+            {
+                if ( event.getResultCode() == KeeperException.Code.NONODE.intValue() )
+                {
+                    missing = true;
+                }
+                else if ( event.getResultCode() != KeeperException.Code.OK.intValue() )
+                {
+                    resultCode = event.getResultCode();
+                }
+                else
+                {
+                    switch ( event.getType() )
+                    {
+                        case CHILDREN:
+                            children = event.getChildren();
+                            break;
+                        case GET_DATA:
+                            data = event.getData();
+                            stat = event.getStat();
+                            break;
+                        case EXISTS:
+                            stat = event.getStat();
+                            break;
+                    }
+                }
+            }
+            finally
+            {
+                permits.release();
+                done.countDown();
+            }
+        }
+    }
 }
@@ -0,0 +1,97 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.apache.curator.framework.recipes.cache;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.api.transaction.CuratorTransactionFinal;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.zookeeper.server.NIOServerCnxnFactory;
+import org.apache.zookeeper.server.ServerConfig;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.apache.zookeeper.server.persistence.FileTxnSnapLog;
+
+import java.io.File;
+import java.net.ServerSocket;
+
+/**
+ * A ZooKeeper server running in the test JVM together with a client connected to it
+ */
+class EmbeddedZooKeeper {
+
+    private final NIOServerCnxnFactory cnxnFactory;
+    private final CuratorFramework curator;
+
+    EmbeddedZooKeeper(String dataDir) throws Exception {
+        int port = findFreePort();
+        cnxnFactory = startZooKeeper(port, dataDir);
+        curator = CuratorFrameworkFactory.builder()
+                .connectString("localhost:" + port)
+                .retryPolicy(new RetryOneTime(1000))
+                .build();
+        curator.start();
+        curator.getZookeeperClient().blockUntilConnectedOrTimedOut();
+    }
+
+    CuratorFramework getCurator() {
+        return curator;
+    }
+
+    /**
+     * Creates the given number of children, each holding its own name, below each of the given number of
+     * parents of the root path. The nodes of a parent are created in a single transaction.
+     */
+    void createTree(String root, int parents, int children) throws Exception {
+        curator.create().creatingParentsIfNeeded().forPath(root);
+        for (int i = 0; i < parents; i++) {
+            String parent = root + "/parent-" + i;
+            CuratorTransactionFinal transaction = curator.inTransaction().create().forPath(parent).and();
+            for (int j = 0; j < children; j++) {
+                String name = "child-" + j;
+                transaction = transaction.create().forPath(parent + "/" + name, name.getBytes("UTF-8")).and();
+            }
+            transaction.commit();
+        }
+    }
+
+    void close() {
+        curator.close();
+        cnxnFactory.shutdown();
+    }
+
+    private int findFreePort() throws Exception {
+        ServerSocket ss = new ServerSocket(0);
+        int port = ss.getLocalPort();
+        ss.close();
+        return port;
+    }
+
+    private NIOServerCnxnFactory startZooKeeper(int port, String dataDir) throws Exception {
+        ServerConfig cfg = new ServerConfig();
+        cfg.parse(new String[] { Integer.toString(port), dataDir });
+
+        ZooKeeperServer zkServer = new ZooKeeperServer();
+        FileTxnSnapLog ftxn = new FileTxnSnapLog(new File(cfg.getDataLogDir()), new File(cfg.getDataDir()));
+        zkServer.setTxnLogFactory(ftxn);
+        zkServer.setTickTime(cfg.getTickTime());
+        zkServer.setMinSessionTimeout(cfg.getMinSessionTimeout());
+        zkServer.setMaxSessionTimeout(cfg.getMaxSessionTimeout());
+        NIOServerCnxnFactory cnxnFactory = new NIOServerCnxnFactory();
+        cnxnFactory.configure(cfg.getClientPortAddress(), cfg.getMaxClientCnxns());
+        cnxnFactory.startup(zkServer);
+        return cnxnFactory;
+    }
+}
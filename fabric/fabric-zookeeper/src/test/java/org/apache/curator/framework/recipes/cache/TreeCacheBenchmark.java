@@ -0,0 +1,118 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.apache.curator.framework.recipes.cache;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a {@link TreeCache} of a tree of 50,050 nodes, 50 parents of 1000 children each, held by an
+ * embedded ZooKeeper server.
+ * <p/>
+ * The initial load starts a cache the way the data store does and waits for the events of all nodes, the
+ * current data benchmark reads the sorted view of a loaded cache.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TreeCacheBenchmark {
+
+    private static final String ROOT = "/fabric/benchmark";
+    private static final int PARENTS = 50;
+    private static final int CHILDREN = 1000;
+    private static final int NODES = PARENTS + PARENTS * CHILDREN;
+
+    @State(Scope.Benchmark)
+    public static class Tree {
+        EmbeddedZooKeeper zooKeeper;
+        TreeCache loadedCache;
+
+        @Setup
+        public void setUp() throws Exception {
+            zooKeeper = new EmbeddedZooKeeper("target/zk/benchmark-" + System.currentTimeMillis());
+            zooKeeper.createTree(ROOT, PARENTS, CHILDREN);
+            loadedCache = load(zooKeeper.getCurator());
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            loadedCache.close();
+            zooKeeper.close();
+        }
+    }
+
+    private static TreeCache load(CuratorFramework curator) throws Exception {
+        final CountDownLatch added = new CountDownLatch(NODES);
+        TreeCache cache = new TreeCache(curator, ROOT, true);
+        cache.getListenable().addListener(new PathChildrenCacheListener() {
+            @Override
+            public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+                if (event.getType() == PathChildrenCacheEvent.Type.CHILD_ADDED) {
+                    added.countDown();
+                }
+            }
+        });
+        cache.start(TreeCache.StartMode.NORMAL);
+        if (!added.await(5, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Only " + (NODES - added.getCount()) + " of " + NODES + " nodes were loaded");
+        }
+        return cache;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 2)
+    public int initialLoad(Tree tree) throws Exception {
+        TreeCache cache = load(tree.zooKeeper.getCurator());
+        try {
+            return cache.getCurrentData().size();
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Benchmark
+    public List<TreeData> currentData(Tree tree) {
+        return tree.loadedCache.getCurrentData();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TreeCacheBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package org.apache.curator.framework.recipes.cache;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TreeCacheTest {
+
+    private static final String ROOT = "/fabric/test";
+
+    private EmbeddedZooKeeper zooKeeper;
+    private TreeCache cache;
+    private final BlockingQueue<PathChildrenCacheEvent> events = new LinkedBlockingQueue<PathChildrenCacheEvent>();
+
+    @Before
+    public void setUp() throws Exception {
+        zooKeeper = new EmbeddedZooKeeper("target/zk/tree-cache-" + System.currentTimeMillis());
+        zooKeeper.createTree(ROOT, 2, 3);
+        cache = new TreeCache(zooKeeper.getCurator(), ROOT, true);
+        cache.getListenable().addListener(new PathChildrenCacheListener() {
+            @Override
+            public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+                events.add(event);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.close();
+        zooKeeper.close();
+    }
+
+    @Test
+    public void testInitialLoad() throws Exception {
+        cache.start(TreeCache.StartMode.POST_INITIALIZED_EVENT);
+        PathChildrenCacheEvent initialized = nextEvent(PathChildrenCacheEvent.Type.INITIALIZED);
+        assertEquals(8, initialized.getInitialData().size());
+
+        assertEquals(Arrays.asList(
+                ROOT + "/parent-0",
+                ROOT + "/parent-0/child-0",
+                ROOT + "/parent-0/child-1",
+                ROOT + "/parent-0/child-2",
+                ROOT + "/parent-1",
+                ROOT + "/parent-1/child-0",
+                ROOT + "/parent-1/child-1",
+                ROOT + "/parent-1/child-2"), getPaths(cache.getCurrentData()));
+        assertEquals("child-1", new String(cache.getCurrentData(ROOT + "/parent-1/child-1").getData(), "UTF-8"));
+        List<String> children = cache.getChildrenNames(ROOT + "/parent-0");
+        Collections.sort(children);
+        assertEquals(Arrays.asList("child-0", "child-1", "child-2"), children);
+    }
+
+    @Test
+    public void testChangesAreTracked() throws Exception {
+        cache.start(TreeCache.StartMode.POST_INITIALIZED_EVENT);
+        nextEvent(PathChildrenCacheEvent.Type.INITIALIZED);
+        List<TreeData> loaded = cache.getCurrentData();
+        assertSame("the sorted data should be kept while nothing changes", loaded, cache.getCurrentData());
+
+        CuratorFramework curator = zooKeeper.getCurator();
+        curator.delete().forPath(ROOT + "/parent-0/child-1");
+        assertEquals(ROOT + "/parent-0/child-1", nextEvent(PathChildrenCacheEvent.Type.CHILD_REMOVED).getData().getPath());
+        curator.create().forPath(ROOT + "/parent-1/child-3", "child-3".getBytes("UTF-8"));
+        assertEquals(ROOT + "/parent-1/child-3", nextEvent(PathChildrenCacheEvent.Type.CHILD_ADDED).getData().getPath());
+        curator.setData().forPath(ROOT + "/parent-1/child-0", "updated".getBytes("UTF-8"));
+        assertEquals(ROOT + "/parent-1/child-0", nextEvent(PathChildrenCacheEvent.Type.CHILD_UPDATED).getData().getPath());
+
+        assertNull(cache.getCurrentData(ROOT + "/parent-0/child-1"));
+        assertNotNull(cache.getCurrentData(ROOT + "/parent-1/child-3"));
+        assertEquals("updated", new String(cache.getCurrentData(ROOT + "/parent-1/child-0").getData(), "UTF-8"));
+        assertEquals(Arrays.asList(
+                ROOT + "/parent-0",
+                ROOT + "/parent-0/child-0",
+                ROOT + "/parent-0/child-2",
+                ROOT + "/parent-1",
+                ROOT + "/parent-1/child-0",
+                ROOT + "/parent-1/child-1",
+                ROOT + "/parent-1/child-2",
+                ROOT + "/parent-1/child-3"), getPaths(cache.getCurrentData()));
+    }
+
+    @Test
+    public void testRebuild() throws Exception {
+        cache.start(TreeCache.StartMode.BUILD_INITIAL_CACHE);
+        assertEquals(8, cache.getCurrentData().size());
+        assertEquals("child-2", new String(cache.getCurrentData(ROOT + "/parent-0/child-2").getData(), "UTF-8"));
+    }
+
+    private PathChildrenCacheEvent nextEvent(PathChildrenCacheEvent.Type type) throws InterruptedException {
+        while (true) {
+            PathChildrenCacheEvent event = events.poll(10, TimeUnit.SECONDS);
+            assertNotNull("Timed out waiting for " + type, event);
+            if (event.getType() == type) {
+                return event;
+            }
+        }
+    }
+
+    private static List<String> getPaths(List<TreeData> data) {
+        List<String> paths = new ArrayList<String>();
+        for (TreeData node : data) {
+            paths.add(node.getPath());
+        }
+        return paths;
+    }
+}
@@ -359,46 +359,68 @@ public class DeployToProfileMojo extends AbstractProfileMojo {
 
     protected void uploadProfileConfigurations(J4pClient client, DeployResults results) throws Exception {
         if (profileConfigDir != null && profileConfigDir.exists()) {
-            uploadProfileConfigDir(client, results, profileConfigDir, profileConfigDir);
+            Map<String, String> files = new HashMap<String, String>();
+            collectProfileConfigDir(files, profileConfigDir, profileConfigDir);
+            uploadProfileConfigFiles(client, results, files);
         } else {
             getLog().info("No profile configuration file directory " + profileConfigDir + " is defined in this project; so not importing any other configuration files into the profile.");
         }
     }
 
-    protected void uploadProfileConfigDir(J4pClient client, DeployResults results, File rootDir, File file) throws MojoExecutionException, J4pException, IOException, MalformedObjectNameException {
+    protected void collectProfileConfigDir(Map<String, String> files, File rootDir, File file) throws IOException {
         if (file.isDirectory()) {
-            File[] files = file.listFiles();
-            if (files != null) {
-                for (File child : files) {
-                    uploadProfileConfigDir(client, results, rootDir, child);
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    collectProfileConfigDir(files, rootDir, child);
                 }
             }
         } else if (file.isFile()) {
-            uploadProfileConfigFile(client, results, rootDir, file);
+            String relativePath = Files.getRelativePath(rootDir, file);
+            // the path should use forward slash only as we use forward slashes in fabric profiles
+            relativePath = Files.normalizePath(relativePath, '\\', '/');
+            String text = Files.toString(file);
+            files.put(relativePath, Base64Encoder.encode(text));
         }
     }
 
-    protected void uploadProfileConfigFile(J4pClient client, DeployResults results, File rootDir, File file) throws MojoExecutionException, J4pException, IOException, MalformedObjectNameException {
+    /**
+     * Uploads all the configuration files with one invocation so that the fabric writes them with a single
+     * commit rather than one per file
+     */
+    protected void uploadProfileConfigFiles(J4pClient client, DeployResults results, Map<String, String> files) throws MojoExecutionException, J4pException, MalformedObjectNameException {
         String profileId = results.getProfileId();
         String versionId = results.getVersionId();
         if (Strings.isNullOrBlank(profileId)) {
-            throw new MojoExecutionException("Cannot upload configuration file " + file + " to profile as the profileId was not returned");
+            throw new MojoExecutionException("Cannot upload configuration files " + files.keySet() + " to profile as the profileId was not returned");
         }
         if (Strings.isNullOrBlank(versionId)) {
-            throw new MojoExecutionException("Cannot upload configuration file " + file + " to profile as the versionId was not returned");
+            throw new MojoExecutionException("Cannot upload configuration files " + files.keySet() + " to profile as the versionId was not returned");
+        }
+        if (files.isEmpty()) {
+            return;
         }
-        String relativePath = Files.getRelativePath(rootDir, file);
-        // the path should use forward slash only as we use forward slashes in fabric profiles
-        relativePath = Files.normalizePath(relativePath, '\\', '/');
-        String text = Files.toString(file);
-        String data = Base64Encoder.encode(text);
         String mbeanName = "io.fabric8:type=Fabric";
-        getLog().info("Uploading file " + relativePath + " to invoke mbean " + mbeanName + " on jolokia URL: " + jolokiaUrl + " with user: " + fabricServer.getUsername());
+        getLog().info("Uploading files " + files.keySet() + " to invoke mbean " + mbeanName + " on jolokia URL: " + jolokiaUrl + " with user: " + fabricServer.getUsername());
         try {
-            J4pExecRequest request = new J4pExecRequest(mbeanName, "setConfigurationFile", versionId, profileId, relativePath, data);
-            J4pResponse<J4pExecRequest> response = client.execute(request, "POST");
-            Object value = response.getValue();
-            getLog().info("Got result: " + value);
+            try {
+                J4pExecRequest request = new J4pExecRequest(mbeanName, "setConfigurationFiles", versionId, profileId, files);
+                J4pResponse<J4pExecRequest> response = client.execute(request, "POST");
+                Object value = response.getValue();
+                getLog().info("Got result: " + value);
+            } catch (J4pRemoteException e) {
+                if (e.getMessage() == null || !e.getMessage().contains("No operation setConfigurationFiles")) {
+                    throw e;
+                }
+                // an older fabric without the operation so lets upload the files one at a time
+                getLog().info("The fabric does not support uploading all the files at once, uploading them one at a time");
+                for (Map.Entry<String, String> entry : files.entrySet()) {
+                    J4pExecRequest request = new J4pExecRequest(mbeanName, "setConfigurationFile", versionId, profileId, entry.getKey(), entry.getValue());
+                    J4pResponse<J4pExecRequest> response = client.execute(request, "POST");
+                    Object value = response.getValue();
+                    getLog().info("Got result: " + value);
+                }
+            }
         } catch (J4pException e) {
             if (e.getMessage().contains(".InstanceNotFoundException")) {
                 throw new MojoExecutionException("Could not find the mbean " + mbeanName + " in the JVM for " + jolokiaUrl + ". Are you sure this JVM is running the Fabric8 console?");
@@ -0,0 +1,77 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.benchmark;
+
+import java.util.Locale;
+
+/**
+ * The throughput and latency of a {@link Scenario}
+ */
+public class BenchmarkResult {
+    private final Scenario scenario;
+    private final int concurrency;
+    private final long durationNanos;
+    private final long errors;
+    private final LatencyRecorder latency;
+
+    public BenchmarkResult(Scenario scenario, int concurrency, long durationNanos, long errors, LatencyRecorder latency) {
+        this.scenario = scenario;
+        this.concurrency = concurrency;
+        this.durationNanos = durationNanos;
+        this.errors = errors;
+        this.latency = latency;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "%-16s %10.1f %s/sec  errors=%d  mean=%.1fus  p50=%dus  p99=%dus  p999=%dus  max=%dus",
+                scenario.getName(), getThroughput(), scenario.getUnit(), errors, latency.getMeanMicros(),
+                latency.getPercentileMicros(50), latency.getPercentileMicros(99), latency.getPercentileMicros(99.9),
+                latency.getMaxMicros());
+    }
+
+    /**
+     * Returns the result as a JSON object
+     */
+    public String toJson() {
+        return String.format(Locale.ENGLISH, "{\"scenario\": \"%s\", \"unit\": \"%s\", \"concurrency\": %d, \"durationMillis\": %d, " +
+                "\"operations\": %d, \"errors\": %d, \"throughput\": %.1f, " +
+                "\"latencyMicros\": {\"mean\": %.1f, \"p50\": %d, \"p99\": %d, \"p999\": %d, \"max\": %d}}",
+                scenario.getName(), scenario.getUnit(), concurrency, durationNanos / 1000000L,
+                latency.getCount(), errors, getThroughput(),
+                latency.getMeanMicros(), latency.getPercentileMicros(50), latency.getPercentileMicros(99),
+                latency.getPercentileMicros(99.9), latency.getMaxMicros());
+    }
+
+    /**
+     * Returns the successful operations per second
+     */
+    public double getThroughput() {
+        return durationNanos > 0 ? latency.getCount() * 1000000000.0 / durationNanos : 0;
+    }
+
+    public Scenario getScenario() {
+        return scenario;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public LatencyRecorder getLatency() {
+        return latency;
+    }
+}
@@ -0,0 +1,435 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.benchmark;
+
+import io.fabric8.gateway.ServiceDTO;
+import io.fabric8.gateway.ServiceDetails;
+import io.fabric8.gateway.ServiceMap;
+import io.fabric8.gateway.handlers.detecting.DetectingGateway;
+import io.fabric8.gateway.handlers.detecting.DetectingGatewayProtocolHandler;
+import io.fabric8.gateway.handlers.detecting.Protocol;
+import io.fabric8.gateway.handlers.detecting.protocol.amqp.AmqpProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.http.HttpProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.mqtt.MqttProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.OpenwireProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.codec.OpenWireFormat;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.command.WireFormatInfo;
+import io.fabric8.gateway.handlers.detecting.protocol.stomp.StompProtocol;
+import io.fabric8.gateway.handlers.http.HttpClientPool;
+import io.fabric8.gateway.handlers.http.HttpGatewayHandler;
+import io.fabric8.gateway.handlers.http.HttpGatewayServer;
+import io.fabric8.gateway.handlers.http.MappedServices;
+import io.fabric8.gateway.handlers.tcp.TcpGateway;
+import io.fabric8.gateway.handlers.tcp.TcpGatewayHandler;
+import io.fabric8.gateway.loadbalancer.RoundRobinLoadBalancer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.VertxFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts the {@link DetectingGateway}, {@link HttpGatewayServer} and {@link TcpGateway} in process against
+ * local {@link StubBackends} and a static {@link ServiceMap}, drives a closed loop load of concurrent connections
+ * or requests through them and reports the throughput and p50/p99/p999 latency of each scenario as JSON so that
+ * runs can be compared to spot regressions.
+ * <p/>
+ * The scenarios are:
+ * <ul>
+ *     <li>http - requests through the HTTP gateway over kept alive connections</li>
+ *     <li>detecting-http - a new connection and request through the detecting gateway to the HTTP gateway</li>
+ *     <li>stomp, mqtt, amqp and openwire - a new connection through the detecting gateway which sends the
+ *     initial frame of the protocol and waits for the backend to echo it back</li>
+ *     <li>tcp - a new connection through the TCP gateway which does not detect the protocol</li>
+ * </ul>
+ * Usage:
+ * <pre>
+ * GatewayBenchmark [-duration seconds] [-warmup seconds] [-concurrency threads] [-scenarios http,stomp,...]
+ *                  [-responseSize bytes] [-timeout millis] [-output file]
+ * </pre>
+ * As the load is a closed loop, where each thread waits for an operation to complete before starting the next, the
+ * latencies do not include the time operations would have waited to start at a fixed rate once the gateway saturates.
+ */
+public class GatewayBenchmark {
+    private static final transient Logger LOG = LoggerFactory.getLogger(GatewayBenchmark.class);
+
+    public static final String HOST = "localhost";
+    public static final String VIRTUAL_HOST = "broker";
+    public static final List<String> ALL_SCENARIOS = Arrays.asList("http", "detecting-http", "stomp", "mqtt", "amqp", "openwire", "tcp");
+
+    private int duration = 10;
+    private int warmup = 5;
+    private int concurrency = 16;
+    private int responseSize = 1024;
+    private int timeout = 10000;
+    private List<String> scenarios = ALL_SCENARIOS;
+    private String output;
+
+    private Vertx vertx;
+    private StubBackends backends;
+    private DetectingGateway detectingGateway;
+    private HttpGatewayServer httpGatewayServer;
+    private HttpClientPool clientPool;
+    private TcpGateway tcpGateway;
+    private int httpGatewayPort;
+
+    public static void main(String[] args) throws Exception {
+        GatewayBenchmark benchmark = new GatewayBenchmark();
+        benchmark.configure(args);
+        try {
+            benchmark.start();
+            List<BenchmarkResult> results = benchmark.run();
+            benchmark.report(results);
+        } finally {
+            benchmark.stop();
+        }
+        System.exit(0);
+    }
+
+    public void configure(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            if ("-duration".equals(arg)) {
+                duration = Integer.parseInt(value);
+            } else if ("-warmup".equals(arg)) {
+                warmup = Integer.parseInt(value);
+            } else if ("-concurrency".equals(arg)) {
+                concurrency = Integer.parseInt(value);
+            } else if ("-responseSize".equals(arg)) {
+                responseSize = Integer.parseInt(value);
+            } else if ("-timeout".equals(arg)) {
+                timeout = Integer.parseInt(value);
+            } else if ("-scenarios".equals(arg)) {
+                scenarios = Arrays.asList(value.split(","));
+            } else if ("-output".equals(arg)) {
+                output = value;
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+    }
+
+    public void start() throws Exception {
+        vertx = VertxFactory.newVertx();
+        backends = new StubBackends(vertx, HOST, responseSize);
+        backends.start();
+
+        // all the brokers are the echo backend
+        ServiceMap serviceMap = new ServiceMap();
+        ServiceDTO broker = new ServiceDTO();
+        broker.setId(VIRTUAL_HOST);
+        broker.setVersion("1.0");
+        broker.setContainer("benchmark");
+        String echo = HOST + ":" + backends.getEchoPort();
+        broker.setServices(Arrays.asList("stomp://" + echo, "mqtt://" + echo, "amqp://" + echo, "tcp://" + echo));
+        serviceMap.serviceUpdated(VIRTUAL_HOST, broker);
+
+        httpGatewayPort = StubBackends.freePort();
+        StaticHttpGateway httpGateway = new StaticHttpGateway(new InetSocketAddress(HOST, httpGatewayPort));
+        ServiceDTO web = new ServiceDTO();
+        web.setId("web");
+        web.setVersion("1.0");
+        web.setContainer("benchmark");
+        String webUrl = "http://" + HOST + ":" + backends.getHttpPort() + "/";
+        httpGateway.addMappedServices("/web/", new MappedServices(webUrl, web, new RoundRobinLoadBalancer<String>(), false));
+        clientPool = new HttpClientPool(vertx);
+        clientPool.setMaxConnectionsPerBackend(Math.max(concurrency, HttpClientPool.DEFAULT_MAX_CONNECTIONS_PER_BACKEND));
+        clientPool.start();
+        httpGatewayServer = new HttpGatewayServer(vertx, new HttpGatewayHandler(vertx, httpGateway, clientPool), null, httpGatewayPort);
+        httpGatewayServer.setHost(HOST);
+        httpGatewayServer.init();
+
+        DetectingGatewayProtocolHandler handler = new DetectingGatewayProtocolHandler();
+        handler.setVertx(vertx);
+        handler.setServiceMap(serviceMap);
+        handler.setProtocols(new ArrayList<Protocol>(Arrays.asList(
+                new StompProtocol(), new MqttProtocol(), new AmqpProtocol(), new OpenwireProtocol(), new HttpProtocol())));
+        handler.setServiceLoadBalancer(new RoundRobinLoadBalancer<ServiceDetails>());
+        handler.setDefaultVirtualHost(VIRTUAL_HOST);
+        detectingGateway = new DetectingGateway(vertx, 0, handler);
+        detectingGateway.setHost(HOST);
+        detectingGateway.setHttpGateway(new InetSocketAddress(HOST, httpGatewayPort));
+        detectingGateway.init();
+        detectingGateway.getBoundPort();
+
+        int tcpGatewayPort = StubBackends.freePort();
+        TcpGatewayHandler tcpHandler = new TcpGatewayHandler(vertx, serviceMap, "stomp",
+                new RoundRobinLoadBalancer<String>(), new RoundRobinLoadBalancer<ServiceDetails>());
+        tcpGateway = new TcpGateway(vertx, serviceMap, tcpGatewayPort, "stomp", tcpHandler);
+        tcpGateway.setHost(HOST);
+        tcpGateway.init();
+
+        // the HTTP and TCP gateways do not tell us when they are listening
+        awaitListening(httpGatewayPort);
+        awaitListening(tcpGatewayPort);
+        LOG.info("Started the gateways with the echo backend on port " + backends.getEchoPort()
+                + " and the HTTP backend on port " + backends.getHttpPort());
+    }
+
+    public void stop() {
+        if (tcpGateway != null) {
+            tcpGateway.destroy();
+        }
+        if (detectingGateway != null) {
+            detectingGateway.destroy();
+        }
+        if (httpGatewayServer != null) {
+            httpGatewayServer.destroy();
+        }
+        if (clientPool != null) {
+            clientPool.stop();
+        }
+        if (backends != null) {
+            backends.stop();
+        }
+        if (vertx != null) {
+            vertx.stop();
+        }
+    }
+
+    public List<BenchmarkResult> run() throws Exception {
+        Map<String, Scenario> available = createScenarios();
+        List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+        for (String name : scenarios) {
+            Scenario scenario = available.get(name.trim());
+            if (scenario == null) {
+                throw new IllegalArgumentException("Unknown scenario " + name + "; expected one of " + available.keySet());
+            }
+            if (warmup > 0) {
+                LOG.info("Warming up " + name + " for " + warmup + " seconds");
+                run(scenario, TimeUnit.SECONDS.toNanos(warmup));
+            }
+            LOG.info("Running " + name + " for " + duration + " seconds with " + concurrency + " threads");
+            BenchmarkResult result = run(scenario, TimeUnit.SECONDS.toNanos(duration));
+            LOG.info(result.toString());
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * Runs the scenario on {@link #concurrency} threads for the given duration
+     */
+    public BenchmarkResult run(final Scenario scenario, long durationNanos) throws Exception {
+        final long start = System.nanoTime();
+        final long deadline = start + durationNanos;
+        final LatencyRecorder[] recorders = new LatencyRecorder[concurrency];
+        final long[] errors = new long[concurrency];
+        Thread[] threads = new Thread[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            final int id = i;
+            recorders[i] = new LatencyRecorder();
+            threads[i] = new Thread("benchmark-" + scenario.getName() + "-" + i) {
+                @Override
+                public void run() {
+                    LatencyRecorder recorder = recorders[id];
+                    Scenario.Worker worker;
+                    try {
+                        worker = scenario.createWorker(id);
+                    } catch (IOException e) {
+                        LOG.warn("Failed to create the worker for " + scenario.getName() + ": " + e, e);
+                        errors[id]++;
+                        return;
+                    }
+                    try {
+                        while (System.nanoTime() - deadline < 0) {
+                            long operationStart = System.nanoTime();
+                            try {
+                                worker.execute();
+                                recorder.recordSince(operationStart);
+                            } catch (IOException e) {
+                                if (errors[id]++ == 0) {
+                                    LOG.warn("Failed " + scenario.getName() + " operation: " + e);
+                                }
+                            }
+                        }
+                    } finally {
+                        worker.close();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        LatencyRecorder latency = new LatencyRecorder();
+        long totalErrors = 0;
+        for (int i = 0; i < concurrency; i++) {
+            latency.merge(recorders[i]);
+            totalErrors += errors[i];
+        }
+        return new BenchmarkResult(scenario, concurrency, elapsed, totalErrors, latency);
+    }
+
+    public void report(List<BenchmarkResult> results) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"duration\": ").append(duration)
+                .append(", \"warmup\": ").append(warmup)
+                .append(", \"concurrency\": ").append(concurrency)
+                .append(", \"responseSize\": ").append(responseSize)
+                .append(", \"results\": [");
+        for (int i = 0; i < results.size(); i++) {
+            json.append(i == 0 ? "\n  " : ",\n  ").append(results.get(i).toJson());
+        }
+        json.append("\n]}\n");
+
+        PrintStream out = System.out;
+        out.print(json);
+        if (output != null) {
+            File file = new File(output);
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            Writer writer = new FileWriter(file);
+            try {
+                writer.write(json.toString());
+            } finally {
+                writer.close();
+            }
+            LOG.info("Wrote the results to " + file);
+        }
+    }
+
+    protected Map<String, Scenario> createScenarios() throws Exception {
+        final InetSocketAddress detecting = new InetSocketAddress(HOST, detectingGateway.getBoundPort());
+        InetSocketAddress http = new InetSocketAddress(HOST, httpGatewayPort);
+        InetSocketAddress tcp = new InetSocketAddress(HOST, tcpGateway.getPort());
+
+        Map<String, Scenario> answer = new LinkedHashMap<String, Scenario>();
+        answer.put("http", new HttpScenario("http", http, "/web/index.html", timeout));
+        answer.put("detecting-http", new Scenario("detecting-http", "connections") {
+            final HttpScenario requests = new HttpScenario(getName(), detecting, "/web/index.html", timeout);
+
+            @Override
+            public Worker createWorker(int id) throws IOException {
+                final Worker worker = requests.createWorker(id);
+                return new Worker() {
+                    @Override
+                    public void execute() throws IOException {
+                        // a new connection for each request
+                        try {
+                            worker.execute();
+                        } finally {
+                            worker.close();
+                        }
+                    }
+
+                    @Override
+                    public void close() {
+                        worker.close();
+                    }
+                };
+            }
+        });
+        answer.put("stomp", new HandshakeScenario("stomp", detecting, stompConnect(), timeout));
+        answer.put("mqtt", new HandshakeScenario("mqtt", detecting, mqttConnect(), timeout));
+        answer.put("amqp", new HandshakeScenario("amqp", detecting, amqpHeader(), timeout));
+        answer.put("openwire", new HandshakeScenario("openwire", detecting, openwireWireFormatInfo(), timeout));
+        answer.put("tcp", new HandshakeScenario("tcp", tcp, stompConnect(), timeout));
+        return answer;
+    }
+
+    static byte[] stompConnect() {
+        return ("CONNECT\naccept-version:1.1\nhost:" + VIRTUAL_HOST + "\n\n\u0000").getBytes();
+    }
+
+    /**
+     * An MQTT 3.1.1 CONNECT frame; the virtual host is not encoded in the user name as the gateway would
+     * rewrite the frame so the default virtual host is used instead
+     */
+    static byte[] mqttConnect() {
+        ByteArrayOutputStream variable = new ByteArrayOutputStream();
+        writeString(variable, "MQTT");
+        variable.write(4);      // protocol level
+        variable.write(0x02);   // clean session
+        variable.write(0);      // keep alive of 60 seconds
+        variable.write(60);
+        writeString(variable, "benchmark");
+
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write(0x10);      // CONNECT
+        int remaining = variable.size();
+        do {
+            int digit = remaining & 0x7F;
+            remaining >>>= 7;
+            frame.write(remaining > 0 ? digit | 0x80 : digit);
+        } while (remaining > 0);
+        byte[] bytes = variable.toByteArray();
+        frame.write(bytes, 0, bytes.length);
+        return frame.toByteArray();
+    }
+
+    /**
+     * The AMQP 1.0 protocol header which is all the gateway needs to route the connection
+     */
+    static byte[] amqpHeader() {
+        return new byte[]{'A', 'M', 'Q', 'P', 0, 1, 0, 0};
+    }
+
+    static byte[] openwireWireFormatInfo() throws IOException {
+        WireFormatInfo info = new WireFormatInfo();
+        info.setVersion(OpenWireFormat.DEFAULT_VERSION);
+        info.setHost(VIRTUAL_HOST);
+        return new OpenWireFormat().marshal(info).toByteArray();
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes();
+        out.write(bytes.length >> 8);
+        out.write(bytes.length & 0xFF);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private void awaitListening(int port) throws Exception {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (true) {
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(HOST, port), timeout);
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException("Timed out waiting for a gateway to listen on port " + port, e);
+                }
+                Thread.sleep(100);
+            } finally {
+                socket.close();
+            }
+        }
+    }
+}
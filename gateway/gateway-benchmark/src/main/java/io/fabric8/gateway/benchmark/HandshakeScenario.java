@@ -0,0 +1,82 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Opens a new connection through the gateway for every operation, sends the initial protocol frame which the gateway
+ * uses to detect the protocol and route the connection, and waits for the echo backend to send the frame back.
+ * <p/>
+ * So each operation measures the connection setup latency of the gateway; protocol detection, routing and
+ * connecting to the backend.
+ */
+public class HandshakeScenario extends Scenario {
+    private final InetSocketAddress address;
+    private final byte[] handshake;
+    private final int connectTimeout;
+
+    public HandshakeScenario(String name, InetSocketAddress address, byte[] handshake, int connectTimeout) {
+        super(name, "connections");
+        this.address = address;
+        this.handshake = handshake;
+        this.connectTimeout = connectTimeout;
+    }
+
+    @Override
+    public Worker createWorker(int id) {
+        return new Worker() {
+            private final byte[] response = new byte[handshake.length];
+
+            @Override
+            public void execute() throws IOException {
+                Socket socket = new Socket();
+                try {
+                    // avoid piling up sockets in TIME_WAIT on the client side
+                    socket.setSoLinger(true, 0);
+                    socket.setTcpNoDelay(true);
+                    socket.setSoTimeout(connectTimeout);
+                    socket.connect(address, connectTimeout);
+                    OutputStream out = socket.getOutputStream();
+                    out.write(handshake);
+                    out.flush();
+                    readFully(socket.getInputStream(), response);
+                } finally {
+                    socket.close();
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    static void readFully(InputStream in, byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            int count = in.read(buffer, offset, buffer.length - offset);
+            if (count < 0) {
+                throw new IOException("The gateway closed the connection after " + offset + " of " + buffer.length + " bytes");
+            }
+            offset += count;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Sends HTTP GET requests through the gateway over a kept alive connection per load generating thread and
+ * reads each response so that every operation measures the request latency of the gateway.
+ * <p/>
+ * A minimal HTTP/1.1 client is used rather than a vert.x client so the client does not compete with the
+ * gateway for the event loops.
+ */
+public class HttpScenario extends Scenario {
+    private final InetSocketAddress address;
+    private final byte[] request;
+    private final int timeout;
+
+    public HttpScenario(String name, InetSocketAddress address, String path, int timeout) {
+        super(name, "requests");
+        this.address = address;
+        this.request = ("GET " + path + " HTTP/1.1\r\n" +
+                "Host: " + address.getHostName() + ":" + address.getPort() + "\r\n" +
+                "\r\n").getBytes();
+        this.timeout = timeout;
+    }
+
+    @Override
+    public Worker createWorker(int id) {
+        return new Worker() {
+            private Socket socket;
+            private InputStream in;
+            private OutputStream out;
+
+            @Override
+            public void execute() throws IOException {
+                if (socket == null) {
+                    socket = new Socket();
+                    socket.setTcpNoDelay(true);
+                    socket.setSoTimeout(timeout);
+                    socket.connect(address, timeout);
+                    in = new BufferedInputStream(socket.getInputStream());
+                    out = socket.getOutputStream();
+                }
+                try {
+                    out.write(request);
+                    out.flush();
+                    if (!readResponse()) {
+                        close();
+                    }
+                } catch (IOException e) {
+                    close();
+                    throw e;
+                }
+            }
+
+            /**
+             * Reads the response returning false if the connection is not kept alive
+             */
+            private boolean readResponse() throws IOException {
+                String statusLine = readLine(in);
+                if (statusLine == null || !statusLine.startsWith("HTTP/1.")) {
+                    throw new IOException("Invalid status line: " + statusLine);
+                }
+                int status = Integer.parseInt(statusLine.substring(9, 12));
+                long contentLength = -1;
+                boolean chunked = false;
+                boolean keepAlive = true;
+                String line;
+                while ((line = readLine(in)) != null && line.length() > 0) {
+                    int colon = line.indexOf(':');
+                    if (colon > 0) {
+                        String name = line.substring(0, colon).trim();
+                        String value = line.substring(colon + 1).trim();
+                        if (name.equalsIgnoreCase("Content-Length")) {
+                            contentLength = Long.parseLong(value);
+                        } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                            chunked = value.equalsIgnoreCase("chunked");
+                        } else if (name.equalsIgnoreCase("Connection")) {
+                            keepAlive = !value.equalsIgnoreCase("close");
+                        }
+                    }
+                }
+                if (chunked) {
+                    long size;
+                    while ((size = Long.parseLong(readLine(in).trim(), 16)) > 0) {
+                        skip(in, size);
+                        readLine(in);
+                    }
+                    // the trailers
+                    while ((line = readLine(in)) != null && line.length() > 0) {
+                    }
+                } else if (contentLength > 0) {
+                    skip(in, contentLength);
+                } else if (contentLength < 0) {
+                    keepAlive = false;
+                }
+                if (status >= 500) {
+                    throw new IOException("The gateway returned " + statusLine);
+                }
+                return keepAlive;
+            }
+
+            @Override
+            public void close() {
+                if (socket != null) {
+                    try {
+                        socket.close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                    socket = null;
+                }
+            }
+        };
+    }
+
+    static String readLine(InputStream in) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (c == '\n') {
+                int length = builder.length();
+                if (length > 0 && builder.charAt(length - 1) == '\r') {
+                    builder.setLength(length - 1);
+                }
+                return builder.toString();
+            }
+            builder.append((char) c);
+        }
+        if (builder.length() == 0) {
+            throw new IOException("The gateway closed the connection");
+        }
+        return builder.toString();
+    }
+
+    static void skip(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new IOException("The gateway closed the connection");
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.benchmark;
+
+import java.io.IOException;
+
+/**
+ * A kind of load to drive through a gateway; each load generating thread creates its own {@link Worker}
+ * which performs one operation at a time.
+ */
+public abstract class Scenario {
+    private final String name;
+    private final String unit;
+
+    /**
+     * @param name the name of the scenario in the results
+     * @param unit what an operation is such as "connections" or "requests"
+     */
+    protected Scenario(String name, String unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    @Override
+    public String toString() {
+        return "Scenario{" +
+                "name='" + name + '\'' +
+                ", unit='" + unit + '\'' +
+                '}';
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public abstract Worker createWorker(int id) throws IOException;
+
+    /**
+     * Performs the operations of a single load generating thread
+     */
+    public interface Worker {
+
+        /**
+         * Performs a single operation such as a connection handshake or request, throwing an exception if it failed
+         */
+        void execute() throws IOException;
+
+        void close();
+    }
+}
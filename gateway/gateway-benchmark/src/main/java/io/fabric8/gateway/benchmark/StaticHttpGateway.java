@@ -0,0 +1,74 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.benchmark;
+
+import io.fabric8.gateway.handlers.http.HttpGateway;
+import io.fabric8.gateway.handlers.http.HttpMappingIndex;
+import io.fabric8.gateway.handlers.http.HttpMappingRule;
+import io.fabric8.gateway.handlers.http.MappedServices;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An {@link HttpGateway} with a fixed set of mapped services rather than mapping rules discovered from the fabric
+ */
+public class StaticHttpGateway implements HttpGateway {
+    private final Map<String, MappedServices> mappedServices = new HashMap<String, MappedServices>();
+    private final InetSocketAddress localAddress;
+    private HttpMappingIndex mappingIndex = HttpMappingIndex.EMPTY;
+
+    public StaticHttpGateway(InetSocketAddress localAddress) {
+        this.localAddress = localAddress;
+    }
+
+    public synchronized void addMappedServices(String prefix, MappedServices services) {
+        mappedServices.put(prefix, services);
+        mappingIndex = HttpMappingIndex.build(new HashMap<String, MappedServices>(mappedServices));
+    }
+
+    @Override
+    public void addMappingRuleConfiguration(HttpMappingRule mappingRule) {
+        throw new UnsupportedOperationException("The mapped services are static");
+    }
+
+    @Override
+    public void removeMappingRuleConfiguration(HttpMappingRule mappingRule) {
+        throw new UnsupportedOperationException("The mapped services are static");
+    }
+
+    @Override
+    public synchronized Map<String, MappedServices> getMappedServices() {
+        return Collections.unmodifiableMap(new HashMap<String, MappedServices>(mappedServices));
+    }
+
+    @Override
+    public synchronized HttpMappingIndex getMappingIndex() {
+        return mappingIndex;
+    }
+
+    @Override
+    public boolean isEnableIndex() {
+        return false;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return localAddress;
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.benchmark;
+
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpServer;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.net.NetServer;
+import org.vertx.java.core.net.NetSocket;
+import org.vertx.java.core.streams.Pump;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The local backends the gateways proxy to during a benchmark; a TCP server which echoes everything it receives,
+ * standing in for the message brokers, and an HTTP server which returns a fixed response to every request.
+ */
+public class StubBackends {
+    private final Vertx vertx;
+    private final String host;
+    private final int responseSize;
+    private NetServer echoServer;
+    private HttpServer httpServer;
+    private int echoPort;
+    private int httpPort;
+
+    public StubBackends(Vertx vertx, String host, int responseSize) {
+        this.vertx = vertx;
+        this.host = host;
+        this.responseSize = responseSize;
+    }
+
+    public void start() throws Exception {
+        echoPort = freePort();
+        echoServer = vertx.createNetServer().connectHandler(new Handler<NetSocket>() {
+            @Override
+            public void handle(NetSocket socket) {
+                Pump.createPump(socket, socket).start();
+            }
+        });
+        final ListenFuture<NetServer> echoListen = new ListenFuture<NetServer>();
+        echoServer.listen(echoPort, host, echoListen);
+        echoListen.await("echo backend");
+
+        byte[] bytes = new byte[responseSize];
+        Arrays.fill(bytes, (byte) 'x');
+        final Buffer body = new Buffer(bytes);
+        final String contentLength = Integer.toString(responseSize);
+        httpPort = freePort();
+        httpServer = vertx.createHttpServer().requestHandler(new Handler<HttpServerRequest>() {
+            @Override
+            public void handle(HttpServerRequest request) {
+                request.response().putHeader("Content-Type", "text/plain");
+                request.response().putHeader("Content-Length", contentLength);
+                request.response().end(body);
+            }
+        });
+        final ListenFuture<HttpServer> httpListen = new ListenFuture<HttpServer>();
+        httpServer.listen(httpPort, host, httpListen);
+        httpListen.await("HTTP backend");
+    }
+
+    public void stop() {
+        if (echoServer != null) {
+            echoServer.close();
+        }
+        if (httpServer != null) {
+            httpServer.close();
+        }
+    }
+
+    public int getEchoPort() {
+        return echoPort;
+    }
+
+    public int getHttpPort() {
+        return httpPort;
+    }
+
+    /**
+     * Returns a port which is free to listen on as the HTTP and TCP gateways need to be given a port
+     */
+    public static int freePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Waits for a server to start listening
+     */
+    static class ListenFuture<T> implements Handler<AsyncResult<T>> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicReference<AsyncResult<T>> result = new AtomicReference<AsyncResult<T>>();
+
+        @Override
+        public void handle(AsyncResult<T> event) {
+            result.set(event);
+            done.countDown();
+        }
+
+        public T await(String name) throws Exception {
+            if (!done.await(30, TimeUnit.SECONDS)) {
+                throw new Exception("Timed out waiting for the " + name + " to listen");
+            }
+            AsyncResult<T> event = result.get();
+            if (event.failed()) {
+                throw new Exception("Failed to start the " + name + ": " + event.cause(), event.cause());
+            }
+            return event.result();
+        }
+    }
+}
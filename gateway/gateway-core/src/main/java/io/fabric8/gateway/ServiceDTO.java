@@ -15,6 +15,7 @@
  */
 package io.fabric8.gateway;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.util.Collections;
@@ -41,6 +42,9 @@ public class ServiceDTO implements ServiceDetails {
     @JsonProperty
     private List<String> services = Collections.EMPTY_LIST;
 
+    @JsonIgnore
+    private volatile List<ServiceEndpoint> endpoints;
+
     @Override
     public String toString() {
         return "ServiceDTO{" +
@@ -53,6 +57,30 @@ public class ServiceDTO implements ServiceDetails {
                 '}';
     }
 
+    /**
+     * Services are equal when they have the same id and URLs, so that the instance built on every update
+     * of the registry still matches the one a load balancer bound a client to
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ServiceDTO)) {
+            return false;
+        }
+        ServiceDTO that = (ServiceDTO) o;
+        return (id != null ? id.equals(that.id) : that.id == null)
+                && (services != null ? services.equals(that.services) : that.services == null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = id != null ? id.hashCode() : 0;
+        result = 31 * result + (services != null ? services.hashCode() : 0);
+        return result;
+    }
+
     public String getId() {
         return id;
     }
@@ -85,6 +113,18 @@ public class ServiceDTO implements ServiceDetails {
 
     public void setServices(List<String> services) {
         this.services = services;
+        this.endpoints = null;
+    }
+
+    @Override
+    @JsonIgnore
+    public List<ServiceEndpoint> getEndpoints() {
+        List<ServiceEndpoint> answer = endpoints;
+        if (answer == null) {
+            answer = ServiceEndpoint.parse(services);
+            endpoints = answer;
+        }
+        return answer;
     }
 
     @Override
@@ -29,6 +29,11 @@ public interface ServiceDetails {
 
     List<String> getServices();
 
+    /**
+     * Returns the pre-parsed endpoints of the {@link #getServices()} URLs
+     */
+    List<ServiceEndpoint> getEndpoints();
+
     String getBundleName();
 
     String getBundleVersion();
@@ -0,0 +1,88 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway;
+
+import io.fabric8.common.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A pre-parsed service URL so that the gateways do not need to parse the URLs of a
+ * service every time they route a connection to it.
+ */
+public final class ServiceEndpoint {
+    private static final transient Logger LOG = LoggerFactory.getLogger(ServiceEndpoint.class);
+
+    private final String url;
+    private final String scheme;
+    private final String host;
+    private final int port;
+
+    public ServiceEndpoint(String url, String scheme, String host, int port) {
+        this.url = url;
+        this.scheme = scheme;
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Parses the given service URLs ignoring any blank or invalid URLs
+     */
+    public static List<ServiceEndpoint> parse(List<String> urls) {
+        if (urls == null || urls.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<ServiceEndpoint> answer = new ArrayList<ServiceEndpoint>(urls.size());
+        for (String url : urls) {
+            if (Strings.notEmpty(url)) {
+                try {
+                    URI uri = new URI(url);
+                    answer.add(new ServiceEndpoint(url, uri.getScheme(), uri.getHost(), uri.getPort()));
+                } catch (URISyntaxException e) {
+                    LOG.warn("Failed to parse URI: " + url + ". " + e, e);
+                }
+            }
+        }
+        return Collections.unmodifiableList(answer);
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getScheme() {
+        return scheme;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+}
@@ -16,30 +16,75 @@
 package io.fabric8.gateway;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Maintains a mapping of services which is then use by the proxy to update in process
  * proxy handlers, or used to create new proxy handers
+ * <p/>
+ * The services for each path are published as immutable snapshots which are only rebuilt when a service
+ * is updated or removed, so looking up the services when routing a connection does not allocate anything.
+ * The {@link #getVersion()} is incremented on every change so that callers can cache any state they
+ * derive from the services until the map next changes.
  */
 public class ServiceMap {
-    private ConcurrentHashMap<String, Map<String, ServiceDetails>> map = new ConcurrentHashMap<String, Map<String, ServiceDetails>>();
 
     /**
-     * Returns a list of all the current services for the given path
+     * Notified when a service leaves the map so that state kept for it elsewhere can be dropped
+     */
+    public interface Listener {
+
+        /**
+         * Called when a service is removed, or replaced by an update of the same id which is not equal to it
+         */
+        void serviceRemoved(String path, ServiceDetails service);
+    }
+
+    private final Map<String, Map<String, ServiceDetails>> map = new HashMap<String, Map<String, ServiceDetails>>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private volatile Snapshot snapshot = new Snapshot(Collections.<String, List<ServiceDetails>>emptyMap(), 0);
+
+    /**
+     * Returns an immutable list of all the current services for the given path
      */
     public List<ServiceDetails> getServices(String path) {
-        Map<String, ServiceDetails> pathMap = getPathMap(path);
-        return new ArrayList<ServiceDetails>(pathMap.values());
+        List<ServiceDetails> answer = snapshot.services.get(path);
+        if (answer == null) {
+            answer = Collections.emptyList();
+        }
+        return answer;
     }
 
     /**
-     * Returns a list of all the current paths for the services
+     * Returns all the current services of all the paths
+     */
+    public List<ServiceDetails> getAllServices() {
+        List<ServiceDetails> answer = new ArrayList<ServiceDetails>();
+        for (List<ServiceDetails> services : snapshot.services.values()) {
+            answer.addAll(services);
+        }
+        return answer;
+    }
+
+    /**
+     * Returns an immutable list of all the current paths for the services
      */
     public List<String> getPaths() {
-        return new ArrayList<String>(map.keySet());
+        return snapshot.paths;
+    }
+
+    /**
+     * Returns the version of the services which is incremented every time a service is updated or removed
+     */
+    public long getVersion() {
+        return snapshot.version;
     }
 
     /**
@@ -48,7 +93,21 @@ public class ServiceMap {
     public void serviceUpdated(String path, ServiceDetails service) {
         // ignore services with empty services
         if (!service.getServices().isEmpty()) {
-            getPathMap(path).put(service.getId(), service);
+            // lets parse the service URLs now rather than when routing connections
+            service.getEndpoints();
+            ServiceDetails previous;
+            synchronized (map) {
+                Map<String, ServiceDetails> pathMap = map.get(path);
+                if (pathMap == null) {
+                    pathMap = new LinkedHashMap<String, ServiceDetails>();
+                    map.put(path, pathMap);
+                }
+                previous = pathMap.put(service.getId(), service);
+                publish(path, pathMap);
+            }
+            if (previous != null && !previous.equals(service)) {
+                fireServiceRemoved(path, previous);
+            }
         }
     }
 
@@ -56,17 +115,66 @@ public class ServiceMap {
      * When a service is added or updated
      */
     public void serviceRemoved(String path, ServiceDetails service) {
-        getPathMap(path).remove(service.getId());
+        ServiceDetails removed = null;
+        synchronized (map) {
+            Map<String, ServiceDetails> pathMap = map.get(path);
+            if (pathMap != null) {
+                removed = pathMap.remove(service.getId());
+                if (removed != null) {
+                    if (pathMap.isEmpty()) {
+                        map.remove(path);
+                    }
+                    publish(path, pathMap);
+                }
+            }
+        }
 
         // lets update any in progress proxy handlers using this service
+        if (removed != null) {
+            fireServiceRemoved(path, removed);
+        }
     }
 
-    protected Map<String, ServiceDetails> getPathMap(String path) {
-        Map<String, ServiceDetails> initial = new ConcurrentHashMap<String, ServiceDetails>();
-        Map<String, ServiceDetails> answer = map.putIfAbsent(path, initial);
-        if (answer == null) {
-            answer = initial;
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void fireServiceRemoved(String path, ServiceDetails service) {
+        for (Listener listener : listeners) {
+            listener.serviceRemoved(path, service);
+        }
+    }
+
+    /**
+     * Publishes a new snapshot with the services of the given path rebuilt, reusing the snapshots of all the other paths;
+     * must be called while holding the lock on the map
+     */
+    private void publish(String path, Map<String, ServiceDetails> pathMap) {
+        Snapshot current = snapshot;
+        Map<String, List<ServiceDetails>> services = new HashMap<String, List<ServiceDetails>>(current.services);
+        if (pathMap.isEmpty()) {
+            services.remove(path);
+        } else {
+            Collection<ServiceDetails> values = pathMap.values();
+            ServiceDetails[] array = values.toArray(new ServiceDetails[values.size()]);
+            services.put(path, Collections.unmodifiableList(Arrays.asList(array)));
+        }
+        snapshot = new Snapshot(services, current.version + 1);
+    }
+
+    private static final class Snapshot {
+        private final Map<String, List<ServiceDetails>> services;
+        private final List<String> paths;
+        private final long version;
+
+        private Snapshot(Map<String, List<ServiceDetails>> services, long version) {
+            this.services = services;
+            this.paths = Collections.unmodifiableList(new ArrayList<String>(services.keySet()));
+            this.version = version;
         }
-        return answer;
     }
 }
@@ -0,0 +1,328 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.admission;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The admission control of a gateway which protects the backend services from connection or request storms,
+ * such as thousands of devices reconnecting after a broker fails over, using a token bucket rate limit per
+ * virtual host, client id or remote address together with a maximum number of concurrent connections per backend
+ * where the connections over the limit are queued or rejected.
+ * <p/>
+ * The limits are disabled by default; call {@link #start()} after configuring them.
+ */
+public class AdmissionController implements AdmissionControllerMBean {
+    private static final transient Logger LOG = LoggerFactory.getLogger(AdmissionController.class);
+
+    public static final String REMOTE_ADDRESS = "REMOTE_ADDRESS";
+    public static final String VIRTUAL_HOST = "VIRTUAL_HOST";
+    public static final String CLIENT_ID = "CLIENT_ID";
+
+    public static final int DEFAULT_RATE_LIMIT_BURST = 100;
+    public static final int DEFAULT_MAX_RATE_LIMIT_KEYS = 100000;
+    public static final long DEFAULT_QUEUE_TIMEOUT = 30000L;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong backendRejected = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong queueTimeouts = new AtomicLong();
+
+    private double rateLimit;
+    private int rateLimitBurst = DEFAULT_RATE_LIMIT_BURST;
+    private String rateLimitKey = REMOTE_ADDRESS;
+    private int maxRateLimitKeys = DEFAULT_MAX_RATE_LIMIT_KEYS;
+    private int maxConnectionsPerBackend;
+    private int maxQueuedConnectionsPerBackend;
+    private long queueTimeout = DEFAULT_QUEUE_TIMEOUT;
+    private volatile KeyedRateLimiter rateLimiter;
+    private volatile ConcurrencyLimiter backendLimiter = new ConcurrencyLimiter(0, 0);
+    private ObjectName objectName;
+
+    @Override
+    public String toString() {
+        return "AdmissionController{" +
+                "rateLimit=" + rateLimit +
+                ", rateLimitBurst=" + rateLimitBurst +
+                ", rateLimitKey='" + rateLimitKey + '\'' +
+                ", maxConnectionsPerBackend=" + maxConnectionsPerBackend +
+                ", maxQueuedConnectionsPerBackend=" + maxQueuedConnectionsPerBackend +
+                ", queueTimeout=" + queueTimeout +
+                '}';
+    }
+
+    /**
+     * Creates the limiters from the current configuration
+     */
+    public void start() {
+        rateLimiter = rateLimit > 0 ? new KeyedRateLimiter(rateLimit, rateLimitBurst, maxRateLimitKeys) : null;
+        backendLimiter = new ConcurrencyLimiter(maxConnectionsPerBackend, maxQueuedConnectionsPerBackend);
+    }
+
+    /**
+     * Returns the key a connection is rate limited by based on the {@link #getRateLimitKey()} falling back
+     * to the remote host if the connection did not specify a virtual host or client id
+     */
+    public String getRateLimitKey(String virtualHost, String clientId, InetSocketAddress remoteAddress) {
+        if (VIRTUAL_HOST.equals(rateLimitKey) && virtualHost != null) {
+            return virtualHost;
+        }
+        if (CLIENT_ID.equals(rateLimitKey) && clientId != null) {
+            return clientId;
+        }
+        if (remoteAddress == null) {
+            return null;
+        }
+        return remoteAddress.getAddress() != null ? remoteAddress.getAddress().getHostAddress() : remoteAddress.getHostString();
+    }
+
+    /**
+     * Returns true if a new connection or request for the key is within the rate limit
+     */
+    public boolean tryAdmit(String key) {
+        KeyedRateLimiter limiter = rateLimiter;
+        if (limiter != null && !limiter.tryAcquire(key)) {
+            rateLimited.incrementAndGet();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Rate limited " + key);
+            }
+            return false;
+        }
+        admitted.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Returns the number of seconds a client rejected by the rate limit should wait before retrying
+     */
+    public long getRetryAfterSeconds(String key) {
+        KeyedRateLimiter limiter = rateLimiter;
+        if (limiter == null) {
+            return 0;
+        }
+        long nanos = limiter.getWaitNanos(key, System.nanoTime());
+        return Math.max((nanos + 999999999L) / 1000000000L, 1);
+    }
+
+    /**
+     * Acquires a connection to the backend invoking the task once it is acquired; returns null if the connection
+     * was rejected. If the returned {@link ConcurrencyLimiter.Waiter} is still waiting the caller should cancel it
+     * after the {@link #getQueueTimeout()} or when the client disconnects.
+     */
+    public ConcurrencyLimiter.Waiter acquireBackend(String backend, Runnable task) {
+        ConcurrencyLimiter.Waiter waiter = backendLimiter.acquire(backend, task);
+        if (waiter == null) {
+            backendRejected.incrementAndGet();
+        } else if (waiter.isWaiting()) {
+            queued.incrementAndGet();
+        }
+        return waiter;
+    }
+
+    /**
+     * Acquires a connection to the backend without queueing returning false if it was rejected
+     */
+    public boolean tryAcquireBackend(String backend) {
+        if (backendLimiter.tryAcquire(backend)) {
+            return true;
+        }
+        backendRejected.incrementAndGet();
+        return false;
+    }
+
+    public void releaseBackend(String backend) {
+        backendLimiter.release(backend);
+    }
+
+    public void queueTimedOut() {
+        queueTimeouts.incrementAndGet();
+    }
+
+    // JMX
+    //-------------------------------------------------------------------------
+
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        if (objectName == null) {
+            objectName = new ObjectName("io.fabric8.gateway:type=AdmissionController");
+        }
+        return objectName;
+    }
+
+    public void setObjectName(ObjectName objectName) {
+        this.objectName = objectName;
+    }
+
+    public void registerMBeanServer(MBeanServer mbeanServer) {
+        try {
+            ObjectName name = getObjectName();
+            if (!mbeanServer.isRegistered(name)) {
+                mbeanServer.registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            LOG.warn("An error occured during mbean server registration: " + e, e);
+        }
+    }
+
+    public void unregisterMBeanServer(MBeanServer mbeanServer) {
+        if (mbeanServer != null) {
+            try {
+                ObjectName name = getObjectName();
+                if (mbeanServer.isRegistered(name)) {
+                    mbeanServer.unregisterMBean(name);
+                }
+            } catch (Exception e) {
+                LOG.warn("An error occured during mbean server unregistration: " + e, e);
+            }
+        }
+    }
+
+    @Override
+    public long getAdmitted() {
+        return admitted.get();
+    }
+
+    @Override
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    @Override
+    public long getBackendRejected() {
+        return backendRejected.get();
+    }
+
+    @Override
+    public long getQueued() {
+        return queued.get();
+    }
+
+    @Override
+    public long getQueueTimeouts() {
+        return queueTimeouts.get();
+    }
+
+    @Override
+    public int getRateLimitKeyCount() {
+        KeyedRateLimiter limiter = rateLimiter;
+        return limiter != null ? limiter.getKeyCount() : 0;
+    }
+
+    @Override
+    public Map<String, Integer> getActiveConnectionsPerBackend() {
+        return Collections.unmodifiableMap(backendLimiter.getActiveCounts());
+    }
+
+    @Override
+    public Map<String, Integer> getQueuedConnectionsPerBackend() {
+        return Collections.unmodifiableMap(backendLimiter.getQueuedCounts());
+    }
+
+    @Override
+    public void resetStatistics() {
+        admitted.set(0);
+        rateLimited.set(0);
+        backendRejected.set(0);
+        queued.set(0);
+        queueTimeouts.set(0);
+    }
+
+    // Properties
+    //-------------------------------------------------------------------------
+
+    @Override
+    public double getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * Sets the number of new connections or requests per second allowed for each key or zero for no limit
+     */
+    public void setRateLimit(double rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    @Override
+    public int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    public void setRateLimitBurst(int rateLimitBurst) {
+        this.rateLimitBurst = rateLimitBurst;
+    }
+
+    @Override
+    public String getRateLimitKey() {
+        return rateLimitKey;
+    }
+
+    /**
+     * Sets what connections are rate limited by; one of {@link #REMOTE_ADDRESS}, {@link #VIRTUAL_HOST} or {@link #CLIENT_ID}
+     */
+    public void setRateLimitKey(String rateLimitKey) {
+        this.rateLimitKey = rateLimitKey;
+    }
+
+    public int getMaxRateLimitKeys() {
+        return maxRateLimitKeys;
+    }
+
+    public void setMaxRateLimitKeys(int maxRateLimitKeys) {
+        this.maxRateLimitKeys = maxRateLimitKeys;
+    }
+
+    @Override
+    public int getMaxConnectionsPerBackend() {
+        return maxConnectionsPerBackend;
+    }
+
+    /**
+     * Sets the maximum concurrent connections to each backend or zero for no limit
+     */
+    public void setMaxConnectionsPerBackend(int maxConnectionsPerBackend) {
+        this.maxConnectionsPerBackend = maxConnectionsPerBackend;
+    }
+
+    @Override
+    public int getMaxQueuedConnectionsPerBackend() {
+        return maxQueuedConnectionsPerBackend;
+    }
+
+    /**
+     * Sets the number of connections which may wait for a backend at its maximum connections or zero to reject them
+     */
+    public void setMaxQueuedConnectionsPerBackend(int maxQueuedConnectionsPerBackend) {
+        this.maxQueuedConnectionsPerBackend = maxQueuedConnectionsPerBackend;
+    }
+
+    @Override
+    public long getQueueTimeout() {
+        return queueTimeout;
+    }
+
+    public void setQueueTimeout(long queueTimeout) {
+        this.queueTimeout = queueTimeout;
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.admission;
+
+import java.util.Map;
+
+/**
+ * JMX MBean API for the admission control of the connections or requests of a gateway
+ */
+public interface AdmissionControllerMBean {
+
+    /**
+     * Returns the number of connections or requests which passed the rate limit
+     */
+    long getAdmitted();
+
+    /**
+     * Returns the number of connections or requests rejected as they exceeded the rate limit of their key
+     */
+    long getRateLimited();
+
+    /**
+     * Returns the number of connections rejected as their backend was at its maximum connections and the queue was full
+     */
+    long getBackendRejected();
+
+    /**
+     * Returns the number of connections which had to wait for a connection to their backend to close
+     */
+    long getQueued();
+
+    long getQueueTimeouts();
+
+    /**
+     * Returns the number of rate limit keys currently being tracked
+     */
+    int getRateLimitKeyCount();
+
+    Map<String, Integer> getActiveConnectionsPerBackend();
+
+    Map<String, Integer> getQueuedConnectionsPerBackend();
+
+    double getRateLimit();
+
+    int getRateLimitBurst();
+
+    String getRateLimitKey();
+
+    int getMaxConnectionsPerBackend();
+
+    int getMaxQueuedConnectionsPerBackend();
+
+    long getQueueTimeout();
+
+    void resetStatistics();
+}
@@ -0,0 +1,225 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.admission;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the number of concurrent connections to each backend, queueing or rejecting the connections over the limit.
+ * <p/>
+ * The limiter is lock free; a released permit is handed directly to the oldest queued connection which is then
+ * granted on the thread releasing the permit, so callers typically dispatch the granted task back onto the
+ * event loop of the connection.
+ */
+public class ConcurrencyLimiter {
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final ConcurrentHashMap<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+
+    /**
+     * @param maxConcurrent the maximum concurrent permits per key or zero for no limit
+     * @param maxQueued     the maximum number of waiters queued per key or zero to reject rather than queue
+     */
+    public ConcurrencyLimiter(int maxConcurrent, int maxQueued) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Acquires a permit without queueing returning true if it was acquired
+     */
+    public boolean tryAcquire(String key) {
+        return getSlot(key).tryAcquire();
+    }
+
+    /**
+     * Acquires a permit for the given key invoking the task as soon as it is acquired, which is immediately if a
+     * permit is available. Returns null if the permit was rejected as the queue is full; otherwise returns the
+     * {@link Waiter} which can be used to cancel the waiting task.
+     */
+    public Waiter acquire(String key, Runnable task) {
+        Slot slot = getSlot(key);
+        if (slot.tryAcquire()) {
+            task.run();
+            return Waiter.GRANTED;
+        }
+        if (!incrementIfBelow(slot.queued, maxQueued)) {
+            return null;
+        }
+        Waiter waiter = new Waiter(slot, task);
+        slot.waiters.add(waiter);
+        // a permit may have been released while we were queueing
+        dispatch(slot);
+        return waiter;
+    }
+
+    public void release(String key) {
+        Slot slot = slots.get(key);
+        if (slot != null) {
+            slot.active.decrementAndGet();
+            dispatch(slot);
+        }
+    }
+
+    public int getActive(String key) {
+        Slot slot = slots.get(key);
+        return slot != null ? slot.active.get() : 0;
+    }
+
+    public int getQueued(String key) {
+        Slot slot = slots.get(key);
+        return slot != null ? slot.queued.get() : 0;
+    }
+
+    public Map<String, Integer> getActiveCounts() {
+        Map<String, Integer> answer = new TreeMap<String, Integer>();
+        for (Map.Entry<String, Slot> entry : slots.entrySet()) {
+            answer.put(entry.getKey(), entry.getValue().active.get());
+        }
+        return answer;
+    }
+
+    public Map<String, Integer> getQueuedCounts() {
+        Map<String, Integer> answer = new TreeMap<String, Integer>();
+        for (Map.Entry<String, Slot> entry : slots.entrySet()) {
+            answer.put(entry.getKey(), entry.getValue().queued.get());
+        }
+        return answer;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    /**
+     * Hands any free permits to the queued waiters
+     */
+    private void dispatch(Slot slot) {
+        while (!slot.waiters.isEmpty() && slot.tryAcquire()) {
+            boolean granted = false;
+            Waiter waiter;
+            while ((waiter = slot.waiters.poll()) != null) {
+                if (waiter.grant()) {
+                    granted = true;
+                    waiter.task.run();
+                    break;
+                }
+            }
+            if (!granted) {
+                slot.active.decrementAndGet();
+            }
+        }
+    }
+
+    private Slot getSlot(String key) {
+        Slot slot = slots.get(key);
+        if (slot == null) {
+            Slot newSlot = new Slot();
+            slot = slots.putIfAbsent(key, newSlot);
+            if (slot == null) {
+                slot = newSlot;
+            }
+        }
+        return slot;
+    }
+
+    private static boolean incrementIfBelow(AtomicInteger counter, int max) {
+        while (true) {
+            int value = counter.get();
+            if (value >= max) {
+                return false;
+            }
+            if (counter.compareAndSet(value, value + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private class Slot {
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<Waiter>();
+
+        private boolean tryAcquire() {
+            if (maxConcurrent <= 0) {
+                active.incrementAndGet();
+                return true;
+            }
+            return incrementIfBelow(active, maxConcurrent);
+        }
+    }
+
+    /**
+     * A task waiting for a permit
+     */
+    public static class Waiter {
+        private static final int WAITING = 0;
+        private static final int GRANTED_STATE = 1;
+        private static final int CANCELLED = 2;
+
+        static final Waiter GRANTED = new Waiter(null, null, GRANTED_STATE);
+
+        private final Slot slot;
+        private final Runnable task;
+        private final AtomicInteger state;
+
+        private Waiter(Slot slot, Runnable task) {
+            this(slot, task, WAITING);
+        }
+
+        private Waiter(Slot slot, Runnable task, int state) {
+            this.slot = slot;
+            this.task = task;
+            this.state = new AtomicInteger(state);
+        }
+
+        public boolean isWaiting() {
+            return state.get() == WAITING;
+        }
+
+        public boolean isGranted() {
+            return state.get() == GRANTED_STATE;
+        }
+
+        /**
+         * Cancels the waiter returning true if it was still waiting so the task will never be invoked
+         */
+        public boolean cancel() {
+            if (state.compareAndSet(WAITING, CANCELLED)) {
+                slot.queued.decrementAndGet();
+                slot.waiters.remove(this);
+                return true;
+            }
+            return false;
+        }
+
+        private boolean grant() {
+            if (state.compareAndSet(WAITING, GRANTED_STATE)) {
+                slot.queued.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
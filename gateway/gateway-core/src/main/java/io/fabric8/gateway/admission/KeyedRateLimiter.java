@@ -0,0 +1,88 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.admission;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link TokenBucket} per key such as a virtual host, client id or remote address.
+ * <p/>
+ * Buckets which have refilled are discarded when the number of keys reaches the maximum; if there are still too
+ * many keys then the new keys share a single overflow bucket so a flood of distinct keys can not exhaust the memory.
+ */
+public class KeyedRateLimiter {
+    private final double permitsPerSecond;
+    private final int burst;
+    private final int maxKeys;
+    private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<String, TokenBucket>();
+    private final TokenBucket overflow;
+
+    public KeyedRateLimiter(double permitsPerSecond, int burst, int maxKeys) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.maxKeys = maxKeys;
+        this.overflow = new TokenBucket(permitsPerSecond, burst);
+    }
+
+    public boolean tryAcquire(String key) {
+        return tryAcquire(key, System.nanoTime());
+    }
+
+    public boolean tryAcquire(String key, long nowNanos) {
+        return getBucket(key == null ? "" : key, nowNanos).tryAcquire(nowNanos);
+    }
+
+    /**
+     * Returns the number of nanoseconds until the next permit for the key is available
+     */
+    public long getWaitNanos(String key, long nowNanos) {
+        TokenBucket bucket = buckets.get(key == null ? "" : key);
+        return bucket != null ? bucket.getWaitNanos(nowNanos) : 0;
+    }
+
+    /**
+     * Removes the buckets which have refilled returning the number removed
+     */
+    public int purge(long nowNanos) {
+        int count = 0;
+        for (Map.Entry<String, TokenBucket> entry : buckets.entrySet()) {
+            if (entry.getValue().isFull(nowNanos) && buckets.remove(entry.getKey(), entry.getValue())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getKeyCount() {
+        return buckets.size();
+    }
+
+    protected TokenBucket getBucket(String key, long nowNanos) {
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxKeys && purge(nowNanos) == 0) {
+                return overflow;
+            }
+            TokenBucket newBucket = new TokenBucket(permitsPerSecond, burst, nowNanos);
+            bucket = buckets.putIfAbsent(key, newBucket);
+            if (bucket == null) {
+                bucket = newBucket;
+            }
+        }
+        return bucket;
+    }
+}
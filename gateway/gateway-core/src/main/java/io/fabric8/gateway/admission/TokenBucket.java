@@ -0,0 +1,80 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock free token bucket which allows a burst of permits followed by a steady rate of permits per second.
+ * <p/>
+ * Rather than a token count and refill timestamp the bucket keeps only the theoretical arrival time of the next
+ * permit (the generic cell rate algorithm) so that acquiring a permit is a single compare and set which is
+ * cheap enough for the vert.x event loop.
+ */
+public class TokenBucket {
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong theoreticalArrival;
+
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System.nanoTime());
+    }
+
+    public TokenBucket(double permitsPerSecond, int burst, long nowNanos) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("The permits per second must be positive");
+        }
+        this.intervalNanos = Math.max((long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond), 1);
+        this.burstNanos = intervalNanos * Math.max(burst, 1);
+        this.theoreticalArrival = new AtomicLong(nowNanos);
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    /**
+     * Returns true if a permit was available at the given time from {@link System#nanoTime()}
+     */
+    public boolean tryAcquire(long nowNanos) {
+        while (true) {
+            long arrival = theoreticalArrival.get();
+            long next = (arrival - nowNanos < 0 ? nowNanos : arrival) + intervalNanos;
+            if (next - nowNanos > burstNanos) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(arrival, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of nanoseconds until the next permit is available which is zero if one is available now
+     */
+    public long getWaitNanos(long nowNanos) {
+        long next = theoreticalArrival.get() + intervalNanos - burstNanos;
+        return Math.max(next - nowNanos, 0);
+    }
+
+    /**
+     * Returns true if the bucket is full so it behaves exactly like a newly created bucket and can be discarded
+     */
+    public boolean isFull(long nowNanos) {
+        return theoreticalArrival.get() - nowNanos <= 0;
+    }
+}
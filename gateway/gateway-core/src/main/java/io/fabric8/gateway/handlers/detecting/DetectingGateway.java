@@ -75,6 +75,7 @@ public class DetectingGateway {
 
     public void destroy() {
         server.close();
+        handler.destroy();
     }
 
     public String getHost() {
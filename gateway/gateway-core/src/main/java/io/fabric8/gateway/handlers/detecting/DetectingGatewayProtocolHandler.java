@@ -15,19 +15,24 @@
  */
 package io.fabric8.gateway.handlers.detecting;
 
-import io.fabric8.common.util.Strings;
 import io.fabric8.gateway.ServiceDetails;
+import io.fabric8.gateway.ServiceEndpoint;
 import io.fabric8.gateway.SocketWrapper;
+import io.fabric8.gateway.admission.AdmissionController;
+import io.fabric8.gateway.admission.ConcurrencyLimiter;
 import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslSocketWrapper;
 import io.fabric8.gateway.loadbalancer.ClientRequestFacadeFactory;
 import io.fabric8.gateway.loadbalancer.ConnectionParameters;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
+import io.fabric8.gateway.loadbalancer.LoadBalancers;
+import io.fabric8.gateway.loadbalancer.ServiceLoad;
 import io.fabric8.gateway.ServiceMap;
 import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslConfig;
 import io.fabric8.gateway.loadbalancer.ClientRequestFacade;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Context;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.buffer.Buffer;
@@ -38,9 +43,13 @@ import org.vertx.java.core.streams.ReadStream;
 
 import javax.net.ssl.SSLContext;
 import java.net.InetSocketAddress;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -58,6 +67,10 @@ public class DetectingGatewayProtocolHandler implements Handler<SocketWrapper> {
     ClientRequestFacadeFactory clientRequestFacadeFactory = new ClientRequestFacadeFactory("PROTOCOL_SESSION_ID, PROTOCOL_CLIENT_ID, REMOTE_ADDRESS");
     final AtomicReference<InetSocketAddress> httpGateway = new AtomicReference<InetSocketAddress>();
     SslConfig sslConfig;
+    final ConcurrentHashMap<Thread, NetClient> netClients = new ConcurrentHashMap<Thread, NetClient>();
+    final DetectingGatewayStatistics statistics = new DetectingGatewayStatistics();
+    AdmissionController admissionController = new AdmissionController();
+    ExecutorService sslHandshakeExecutor;
 
     public Vertx getVertx() {
         return vertx;
@@ -131,80 +144,80 @@ public class DetectingGatewayProtocolHandler implements Handler<SocketWrapper> {
             }
         });
         readStream.dataHandler(new Handler<Buffer>() {
-            Buffer received = new Buffer();
+            final ProtocolDetector detector = new ProtocolDetector(protocols, maxProtocolIdentificationLength);
 
             @Override
             public void handle(Buffer event) {
-                received.appendBuffer(event);
-                for (final Protocol protocol : protocols) {
-                    if (protocol.matches(received)) {
-                        if ("ssl".equals(protocol.getProtocolName())) {
-
-                            LOG.info(String.format("SSL Connection from '%s'", socket.remoteAddress()));
-                            String disabledCypherSuites=null;
-                            String enabledCipherSuites=null;
-                            if (sslConfig != null) {
-                                disabledCypherSuites = sslConfig.getDisabledCypherSuites();
-                                enabledCipherSuites = sslConfig.getEnabledCipherSuites();
-                            }
-                            if (sslContext == null) {
-                                try {
-                                    if (sslConfig != null) {
-                                        sslContext = SSLContext.getInstance(sslConfig.getProtocol());
-                                        sslContext.init(sslConfig.getKeyManagers(), sslConfig.getTrustManagers(), null);
-                                    } else {
-                                        sslContext = SSLContext.getDefault();
-                                    }
-                                } catch (Exception e) {
-                                    LOG.warn("Could initialize SSL: " + e, e);
-                                    socket.close();
-                                    return;
+                final Protocol protocol = detector.detect(event);
+                if (protocol != null) {
+                    final Buffer received = detector.getReceived();
+                    if ("ssl".equals(protocol.getProtocolName())) {
+
+                        LOG.info(String.format("SSL Connection from '%s'", socket.remoteAddress()));
+                        String disabledCypherSuites=null;
+                        String enabledCipherSuites=null;
+                        if (sslConfig != null) {
+                            disabledCypherSuites = sslConfig.getDisabledCypherSuites();
+                            enabledCipherSuites = sslConfig.getEnabledCipherSuites();
+                        }
+                        if (sslContext == null) {
+                            try {
+                                if (sslConfig != null) {
+                                    sslContext = sslConfig.createSSLContext();
+                                } else {
+                                    sslContext = SSLContext.getDefault();
                                 }
+                            } catch (Exception e) {
+                                LOG.warn("Could initialize SSL: " + e, e);
+                                socket.close();
+                                return;
                             }
+                        }
 
-                            // lets wrap it up in a SslSocketWrapper.
-                            SslSocketWrapper sslSocketWrapper = new SslSocketWrapper(socket);
-                            sslSocketWrapper.putBackHeader(received);
-                            sslSocketWrapper.initServer(sslContext, clientAuth, disabledCypherSuites, enabledCipherSuites);
-                            DetectingGatewayProtocolHandler.this.handle(sslSocketWrapper);
-                            return;
-
-                        } else if ("http".equals(protocol.getProtocolName())) {
-                            InetSocketAddress target = getHttpGateway();
-                            if (target != null) {
-                                try {
-                                    URI url = new URI("http://" + target.getHostString() + ":" + target.getPort());
-                                    LOG.info(String.format("Connecting '%s' to '%s:%d' using the http protocol",
-                                            socket.remoteAddress(), url.getHost(), url.getPort()));
-                                    createClient(socket, url, received);
-                                    return;
-                                } catch (URISyntaxException e) {
-                                    LOG.warn("Could not build valid connect URI.", e);
-                                    socket.close();
-                                    return;
-                                }
-                            } else {
-                                LOG.info("No http gateway available for the http protocol");
-                                socket.close();
+                        // lets wrap it up in a SslSocketWrapper.
+                        SslSocketWrapper sslSocketWrapper = new SslSocketWrapper(socket);
+                        sslSocketWrapper.setHandshakeListener(statistics);
+                        ExecutorService handshakeExecutor = getSslHandshakeExecutor();
+                        if (handshakeExecutor != null) {
+                            sslSocketWrapper.setDelegatedTaskExecutor(handshakeExecutor, vertx.currentContext());
+                        }
+                        sslSocketWrapper.putBackHeader(received);
+                        sslSocketWrapper.initServer(sslContext, clientAuth, disabledCypherSuites, enabledCipherSuites);
+                        DetectingGatewayProtocolHandler.this.handle(sslSocketWrapper);
+                        return;
+
+                    } else if ("http".equals(protocol.getProtocolName())) {
+                        InetSocketAddress target = getHttpGateway();
+                        if (target != null) {
+                            if (!admit(socket, null)) {
                                 return;
                             }
+                            String host = target.getHostString();
+                            LOG.info(String.format("Connecting '%s' to '%s:%d' using the http protocol",
+                                    socket.remoteAddress(), host, target.getPort()));
+                            createClient(socket, null, host, target.getPort(), "http", received);
+                            return;
                         } else {
-                            protocol.snoopConnectionParameters(socket, received, new Handler<ConnectionParameters>() {
-                                @Override
-                                public void handle(ConnectionParameters connectionParameters) {
-                                    // this will install a new dataHandler on the socket.
-                                    if (connectionParameters.protocol == null)
-                                        connectionParameters.protocol = protocol.getProtocolName();
-                                    if (connectionParameters.protocolSchemes == null)
-                                        connectionParameters.protocolSchemes = protocol.getProtocolSchemes();
-                                    route(socket, connectionParameters, received);
-                                }
-                            });
+                            LOG.info("No http gateway available for the http protocol");
+                            socket.close();
                             return;
                         }
+                    } else {
+                        protocol.snoopConnectionParameters(socket, received, new Handler<ConnectionParameters>() {
+                            @Override
+                            public void handle(ConnectionParameters connectionParameters) {
+                                // this will install a new dataHandler on the socket.
+                                if (connectionParameters.protocol == null)
+                                    connectionParameters.protocol = protocol.getProtocolName();
+                                if (connectionParameters.protocolSchemes == null)
+                                    connectionParameters.protocolSchemes = protocol.getProtocolSchemes();
+                                route(socket, connectionParameters, received);
+                            }
+                        });
+                        return;
                     }
                 }
-                if (received.length() >= maxProtocolIdentificationLength) {
+                if (detector.isRejected()) {
                     LOG.info("Connection did not use one of the enabled protocols " + getProtocolNames());
                     socket.close();
                 }
@@ -213,11 +226,14 @@ public class DetectingGatewayProtocolHandler implements Handler<SocketWrapper> {
     }
 
     public void route(final SocketWrapper socket, ConnectionParameters params, final Buffer received) {
-        NetClient client = null;
+        boolean routed = false;
 
         if( params.protocolVirtualHost==null ) {
             params.protocolVirtualHost = defaultVirtualHost;
         }
+        if (!admit(socket, params)) {
+            return;
+        }
         HashSet<String> schemes = new HashSet<String>(Arrays.asList(params.protocolSchemes));
         if(params.protocolVirtualHost!=null) {
             List<ServiceDetails> services = serviceMap.getServices(params.protocolVirtualHost);
@@ -233,59 +249,156 @@ public class DetectingGatewayProtocolHandler implements Handler<SocketWrapper> {
                 ClientRequestFacade clientRequestFacade = clientRequestFacadeFactory.create(socket, params);
                 ServiceDetails serviceDetails = serviceLoadBalancer.choose(services, clientRequestFacade);
                 if (serviceDetails != null) {
-                    List<String> urlStrings = serviceDetails.getServices();
-                    LOG.debug("Selected service exposes the following URLS: {}", urlStrings);
-                    for (String urlString : urlStrings) {
-                        if (Strings.notEmpty(urlString)) {
-                            // lets create a client for this request...
-                            try {
-                                URI uri = new URI(urlString);
-                                //URL url = new URL(urlString);
-                                String urlProtocol = uri.getScheme();
-                                if (schemes.contains(urlProtocol)) {
-                                    LOG.info(String.format("Connecting '%s' requesting virtual host '%s' with client key '%s' to '%s:%d' using the %s protocol",
-                                        socket.remoteAddress(), params.protocolVirtualHost, clientRequestFacade.getClientRequestKey(), uri.getHost(), uri.getPort(), params.protocol
-                                      ));
-
-                                    client = createClient(socket, uri, received);
-                                    break;
-                                }
-                            } catch (URISyntaxException e) {
-                                LOG.warn("Failed to parse URI: " + urlString + ". " + e, e);
-                            }
+                    List<ServiceEndpoint> endpoints = serviceDetails.getEndpoints();
+                    LOG.debug("Selected service exposes the following URLS: {}", endpoints);
+                    for (ServiceEndpoint endpoint : endpoints) {
+                        if (schemes.contains(endpoint.getScheme())) {
+                            LOG.info(String.format("Connecting '%s' requesting virtual host '%s' with client key '%s' to '%s:%d' using the %s protocol",
+                                socket.remoteAddress(), params.protocolVirtualHost, clientRequestFacade.getClientRequestKey(), endpoint.getHost(), endpoint.getPort(), params.protocol
+                              ));
+
+                            createClient(socket, serviceDetails, endpoint.getHost(), endpoint.getPort(), params.protocol, received);
+                            routed = true;
+                            break;
                         }
                     }
                 }
             }
         }
 
-        if (client == null) {
+        if (!routed) {
             // failed to route
             LOG.info(String.format("No endpoint available for virtual host '%s' and protocol %s", params.protocolVirtualHost, params.protocol));
+            statistics.connectionFailed();
             socket.close();
         }
     }
 
     /**
-     * Creates a new client for the given URL and handler
+     * Returns true if the new connection is within the rate limit of its virtual host, client id or remote address
+     * otherwise the connection is closed
+     */
+    protected boolean admit(SocketWrapper socket, ConnectionParameters params) {
+        String key = params != null
+                ? admissionController.getRateLimitKey(params.protocolVirtualHost, params.protocolClientId, socket.remoteAddress())
+                : admissionController.getRateLimitKey(null, null, socket.remoteAddress());
+        if (admissionController.tryAdmit(key)) {
+            return true;
+        }
+        LOG.info(String.format("Rejecting '%s' as it exceeded the connection rate limit of '%s'", socket.remoteAddress(), key));
+        statistics.connectionFailed();
+        socket.close();
+        return false;
+    }
+
+    /**
+     * Connects the client socket to the given backend once the backend is below its maximum connections,
+     * queueing or rejecting the connection if it is at its maximum
+     */
+    private void createClient(final SocketWrapper socketFromClient, final ServiceDetails service, final String host, final int port, final String protocol, final Buffer received) {
+        final String backend = host + ":" + port;
+        final AtomicBoolean clientClosed = new AtomicBoolean();
+        final Context context = vertx.currentContext();
+        final Runnable connectTask = new Runnable() {
+            @Override
+            public void run() {
+                if (context == null || context == vertx.currentContext()) {
+                    connect(socketFromClient, service, host, port, protocol, received, backend, clientClosed);
+                } else {
+                    // the permit was released by a connection on another event loop
+                    context.runOnContext(new Handler<Void>() {
+                        @Override
+                        public void handle(Void event) {
+                            connect(socketFromClient, service, host, port, protocol, received, backend, clientClosed);
+                        }
+                    });
+                }
+            }
+        };
+        final ConcurrencyLimiter.Waiter[] waiter = new ConcurrencyLimiter.Waiter[1];
+        socketFromClient.readStream().endHandler(new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                LOG.info(String.format("Gateway client '%s' closed the connection before it could be routed.", socketFromClient.remoteAddress()));
+                clientClosed.set(true);
+                if (waiter[0] != null) {
+                    waiter[0].cancel();
+                }
+                socketFromClient.close();
+            }
+        });
+        waiter[0] = admissionController.acquireBackend(backend, connectTask);
+        if (waiter[0] == null) {
+            LOG.info(String.format("Rejecting '%s' as '%s' is at its maximum connections", socketFromClient.remoteAddress(), backend));
+            statistics.connectionFailed();
+            socketFromClient.close();
+        } else if (waiter[0].isWaiting()) {
+            LOG.debug("Queueing {} until {} is below its maximum connections", socketFromClient.remoteAddress(), backend);
+            socketFromClient.readStream().pause();
+            long timeout = admissionController.getQueueTimeout();
+            if (timeout > 0) {
+                vertx.setTimer(timeout, new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        if (waiter[0].cancel()) {
+                            LOG.info(String.format("Timed out waiting to connect '%s' to '%s' as it is at its maximum connections", socketFromClient.remoteAddress(), backend));
+                            admissionController.queueTimedOut();
+                            statistics.connectionFailed();
+                            socketFromClient.close();
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Connects the client socket to the given backend using the shared client of the current event loop
      */
-    private NetClient createClient(final SocketWrapper socketFromClient, URI url, final Buffer received) {
-        return vertx.createNetClient().connect(url.getPort(), url.getHost(), new Handler<AsyncResult<NetSocket>>() {
+    private void connect(final SocketWrapper socketFromClient, final ServiceDetails service, final String host, final int port, final String protocol, final Buffer received,
+                         final String backend, final AtomicBoolean clientClosed) {
+        if (clientClosed.get()) {
+            admissionController.releaseBackend(backend);
+            return;
+        }
+        final long start = System.nanoTime();
+        if (service != null) {
+            LoadBalancers.requestStarted(serviceLoadBalancer, service);
+        }
+        getNetClient().connect(port, host, new Handler<AsyncResult<NetSocket>>() {
             public void handle(final AsyncResult<NetSocket> asyncSocket) {
+                if (asyncSocket.failed()) {
+                    LOG.info(String.format("Failed to connect '%s' to '%s:%d': %s", socketFromClient.remoteAddress(), host, port, asyncSocket.cause()));
+                    statistics.connectionFailed();
+                    admissionController.releaseBackend(backend);
+                    if (service != null) {
+                        LoadBalancers.recordLatency(serviceLoadBalancer, service, ServiceLoad.FAILURE_PENALTY_NANOS);
+                        LoadBalancers.requestCompleted(serviceLoadBalancer, service);
+                    }
+                    socketFromClient.close();
+                    return;
+                }
+                statistics.connectionRouted(protocol, start);
+                if (service != null) {
+                    LoadBalancers.recordLatency(serviceLoadBalancer, service, System.nanoTime() - start);
+                }
                 final NetSocket socketToServer = asyncSocket.result();
+                final AtomicBoolean closed = new AtomicBoolean();
+                if (clientClosed.get()) {
+                    closeRoute(socketFromClient, socketToServer, service, backend, closed);
+                    return;
+                }
 
                 Handler<Void> endHandler = new Handler<Void>() {
                     @Override
                     public void handle(Void event) {
-                        socketFromClient.close();
-                        socketToServer.close();
+                        closeRoute(socketFromClient, socketToServer, service, backend, closed);
                     }
                 };
                 Handler<Throwable> exceptionHandler = new Handler<Throwable>() {
                     @Override
                     public void handle(Throwable event) {
-                        socketFromClient.close();
-                        socketToServer.close();
+                        closeRoute(socketFromClient, socketToServer, service, backend, closed);
                     }
                 };
                 socketFromClient.readStream().endHandler(endHandler);
@@ -296,10 +409,95 @@ public class DetectingGatewayProtocolHandler implements Handler<SocketWrapper> {
                 socketToServer.write(received);
                 Pump.createPump(socketToServer, socketFromClient.writeStream()).start();
                 Pump.createPump(socketFromClient.readStream(), socketToServer).start();
+                // the client is paused while it is queued for the backend
+                socketFromClient.readStream().resume();
             }
         });
     }
 
+    /**
+     * Closes both sides of a routed connection but only tells the load balancer and admission control once
+     */
+    private void closeRoute(SocketWrapper socketFromClient, NetSocket socketToServer, ServiceDetails service, String backend, AtomicBoolean closed) {
+        socketFromClient.close();
+        socketToServer.close();
+        if (closed.compareAndSet(false, true)) {
+            if (service != null) {
+                LoadBalancers.requestCompleted(serviceLoadBalancer, service);
+            }
+            admissionController.releaseBackend(backend);
+        }
+    }
+
+    /**
+     * Returns the long lived client for the current event loop thread, creating it if required.
+     * A vert.x NetClient can open any number of connections so there is no need to create one per connection.
+     */
+    protected NetClient getNetClient() {
+        Thread thread = Thread.currentThread();
+        NetClient client = netClients.get(thread);
+        if (client == null) {
+            client = vertx.createNetClient();
+            NetClient existing = netClients.putIfAbsent(thread, client);
+            if (existing != null) {
+                client.close();
+                client = existing;
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Returns the executor which runs the SSL handshake tasks off the event loop, creating it if required,
+     * or null if the handshake tasks should be run on the event loop
+     */
+    protected synchronized ExecutorService getSslHandshakeExecutor() {
+        if (sslHandshakeExecutor == null) {
+            int threads = sslConfig != null ? sslConfig.getHandshakeThreads() : SslConfig.DEFAULT_HANDSHAKE_THREADS;
+            if (threads > 0) {
+                sslHandshakeExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                    private final AtomicInteger counter = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "gateway-ssl-handshake-" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+        }
+        return sslHandshakeExecutor;
+    }
+
+    /**
+     * Closes the shared backend clients and stops the SSL handshake threads
+     */
+    public void destroy() {
+        for (NetClient client : netClients.values()) {
+            client.close();
+        }
+        netClients.clear();
+        synchronized (this) {
+            if (sslHandshakeExecutor != null) {
+                sslHandshakeExecutor.shutdown();
+                sslHandshakeExecutor = null;
+            }
+        }
+    }
+
+    public DetectingGatewayStatistics getStatistics() {
+        return statistics;
+    }
+
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    public void setAdmissionController(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
     public ServiceMap getServiceMap() {
         return serviceMap;
     }
@@ -0,0 +1,187 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslSocketWrapper;
+import io.fabric8.gateway.support.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The statistics of a {@link DetectingGatewayProtocolHandler} such as the number of routed connections and
+ * the latency of setting up the connection to the backend service for each protocol.
+ * <p/>
+ * It also counts the full and resumed SSL handshakes of the SSL connections so that the effectiveness
+ * of the SSL session cache can be monitored.
+ */
+public class DetectingGatewayStatistics implements DetectingGatewayStatisticsMBean, SslSocketWrapper.HandshakeListener {
+    private static final transient Logger LOG = LoggerFactory.getLogger(DetectingGatewayStatistics.class);
+
+    private final ConcurrentHashMap<String, LatencyHistogram> connectLatencies = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final AtomicLong connectionsRouted = new AtomicLong();
+    private final AtomicLong connectionsFailed = new AtomicLong();
+    private final AtomicLong fullSslHandshakes = new AtomicLong();
+    private final AtomicLong resumedSslHandshakes = new AtomicLong();
+    private final AtomicLong failedSslHandshakes = new AtomicLong();
+    private final LatencyHistogram sslHandshakeLatency = new LatencyHistogram();
+    private ObjectName objectName;
+
+    /**
+     * Returns the backend connection setup latency histogram for the given protocol
+     */
+    public LatencyHistogram getConnectLatency(String protocol) {
+        LatencyHistogram answer = connectLatencies.get(protocol);
+        if (answer == null) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            answer = connectLatencies.putIfAbsent(protocol, histogram);
+            if (answer == null) {
+                answer = histogram;
+            }
+        }
+        return answer;
+    }
+
+    public void connectionRouted(String protocol, long startNanos) {
+        connectionsRouted.incrementAndGet();
+        getConnectLatency(protocol).recordSince(startNanos);
+    }
+
+    public void connectionFailed() {
+        connectionsFailed.incrementAndGet();
+    }
+
+    @Override
+    public void handshakeCompleted(boolean resumed, long startNanos) {
+        if (resumed) {
+            resumedSslHandshakes.incrementAndGet();
+        } else {
+            fullSslHandshakes.incrementAndGet();
+        }
+        sslHandshakeLatency.recordSince(startNanos);
+    }
+
+    @Override
+    public void handshakeFailed(Throwable error) {
+        failedSslHandshakes.incrementAndGet();
+    }
+
+    // JMX
+    //-------------------------------------------------------------------------
+
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        if (objectName == null) {
+            objectName = new ObjectName("io.fabric8.gateway:type=DetectingGateway");
+        }
+        return objectName;
+    }
+
+    public void setObjectName(ObjectName objectName) {
+        this.objectName = objectName;
+    }
+
+    public void registerMBeanServer(MBeanServer mbeanServer) {
+        try {
+            ObjectName name = getObjectName();
+            if (!mbeanServer.isRegistered(name)) {
+                mbeanServer.registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            LOG.warn("An error occured during mbean server registration: " + e, e);
+        }
+    }
+
+    public void unregisterMBeanServer(MBeanServer mbeanServer) {
+        if (mbeanServer != null) {
+            try {
+                ObjectName name = getObjectName();
+                if (mbeanServer.isRegistered(name)) {
+                    mbeanServer.unregisterMBean(name);
+                }
+            } catch (Exception e) {
+                LOG.warn("An error occured during mbean server unregistration: " + e, e);
+            }
+        }
+    }
+
+    @Override
+    public long getConnectionsRouted() {
+        return connectionsRouted.get();
+    }
+
+    @Override
+    public long getConnectionsFailed() {
+        return connectionsFailed.get();
+    }
+
+    @Override
+    public long getFullSslHandshakes() {
+        return fullSslHandshakes.get();
+    }
+
+    @Override
+    public long getResumedSslHandshakes() {
+        return resumedSslHandshakes.get();
+    }
+
+    @Override
+    public long getFailedSslHandshakes() {
+        return failedSslHandshakes.get();
+    }
+
+    @Override
+    public String getSslHandshakeLatency() {
+        return sslHandshakeLatency.toString();
+    }
+
+    @Override
+    public Map<String, String> getConnectLatencies() {
+        Map<String, String> answer = new TreeMap<String, String>();
+        for (Map.Entry<String, LatencyHistogram> entry : connectLatencies.entrySet()) {
+            answer.put(entry.getKey(), entry.getValue().toString());
+        }
+        return answer;
+    }
+
+    @Override
+    public Map<String, Long> getConnectLatencyPercentile(double percentile) {
+        Map<String, Long> answer = new TreeMap<String, Long>();
+        for (Map.Entry<String, LatencyHistogram> entry : connectLatencies.entrySet()) {
+            answer.put(entry.getKey(), entry.getValue().getPercentileMicros(percentile));
+        }
+        return answer;
+    }
+
+    @Override
+    public void resetStatistics() {
+        connectionsRouted.set(0);
+        connectionsFailed.set(0);
+        fullSslHandshakes.set(0);
+        resumedSslHandshakes.set(0);
+        failedSslHandshakes.set(0);
+        sslHandshakeLatency.reset();
+        for (LatencyHistogram histogram : connectLatencies.values()) {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import java.util.Map;
+
+/**
+ * JMX MBean API for the statistics of a detecting gateway
+ */
+public interface DetectingGatewayStatisticsMBean {
+
+    long getConnectionsRouted();
+
+    long getConnectionsFailed();
+
+    /**
+     * Returns the number of SSL handshakes which created a new session
+     */
+    long getFullSslHandshakes();
+
+    /**
+     * Returns the number of SSL handshakes which resumed a cached session
+     */
+    long getResumedSslHandshakes();
+
+    long getFailedSslHandshakes();
+
+    /**
+     * Returns a summary of the SSL handshake latency histogram
+     */
+    String getSslHandshakeLatency();
+
+    /**
+     * Returns a summary of the backend connection setup latency histogram for each protocol
+     */
+    Map<String, String> getConnectLatencies();
+
+    /**
+     * Returns the given percentile (0-100) of the backend connection setup latency in microseconds for each protocol
+     */
+    Map<String, Long> getConnectLatencyPercentile(double percentile);
+
+    void resetStatistics();
+}
@@ -0,0 +1,85 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.List;
+
+/**
+ * Detects which of the enabled protocols a client connection is using as its data arrives.
+ * <p/>
+ * The first chunk of data received is kept as is rather than copied so that when the protocol header
+ * arrives in a single chunk it is inspected in place and then handed on to the backend untouched.
+ * A protocol which fails to match once at least {@link Protocol#getMaxIdentificationLength()} bytes
+ * have been received is ruled out and not asked to match the following chunks again.
+ * <p/>
+ * A detector is created for each connection and must only be used from its event loop.
+ */
+public class ProtocolDetector {
+    private final List<Protocol> protocols;
+    private final int maxIdentificationLength;
+    private final boolean[] ruledOut;
+    private int candidates;
+    private Buffer received;
+
+    public ProtocolDetector(List<Protocol> protocols, int maxIdentificationLength) {
+        this.protocols = protocols;
+        this.maxIdentificationLength = maxIdentificationLength;
+        this.ruledOut = new boolean[protocols.size()];
+        this.candidates = protocols.size();
+    }
+
+    /**
+     * Adds the given data to the data received so far and returns the protocol it matches or null if
+     * more data is required or the protocol is not one of the enabled protocols, see {@link #isRejected()}
+     */
+    public Protocol detect(Buffer data) {
+        if (received == null) {
+            received = data;
+        } else {
+            received.appendBuffer(data);
+        }
+        int length = received.length();
+        for (int i = 0; i < ruledOut.length; i++) {
+            if (!ruledOut[i]) {
+                Protocol protocol = protocols.get(i);
+                if (protocol.matches(received)) {
+                    return protocol;
+                }
+                if (length >= protocol.getMaxIdentificationLength()) {
+                    ruledOut[i] = true;
+                    candidates--;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the data received so far cannot match any of the enabled protocols
+     */
+    public boolean isRejected() {
+        return candidates <= 0 || (received != null && received.length() >= maxIdentificationLength);
+    }
+
+    /**
+     * Returns all of the data received so far
+     */
+    public Buffer getReceived() {
+        return received;
+    }
+}
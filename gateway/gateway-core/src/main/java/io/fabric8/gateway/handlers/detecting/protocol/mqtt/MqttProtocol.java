@@ -61,10 +61,11 @@ public class MqttProtocol implements Protocol {
         if (header.length() < 10) {
           return false;
         } else {
+          // the protocol name follows the 1 to 4 byte remaining length so only look for it there
           return BufferSupport.startsWith(header, HEAD_MAGIC) && (
-              BufferSupport.indexOf(header, 2, MQTT31_TAIL_MAGIC)< 6
+              BufferSupport.indexOf(header, 2, 5, MQTT31_TAIL_MAGIC) >= 0
               ||
-              BufferSupport.indexOf(header, 2, MQTT311_TAIL_MAGIC) < 6
+              BufferSupport.indexOf(header, 2, 5, MQTT311_TAIL_MAGIC) >= 0
           );
         }
     }
@@ -57,7 +57,7 @@ public class OpenwireProtocol implements Protocol {
 
     @Override
     public boolean matches(Buffer buffer) {
-        return buffer.length() >= 4 + MAGIC.length() && indexOf(buffer, 5, MAGIC) >= 0;
+        return buffer.length() >= 4 + MAGIC.length() && indexOf(buffer, 5, getMaxIdentificationLength(), MAGIC) >= 0;
     }
 
     @Override
@@ -53,6 +53,14 @@ public class SslConfig {
     String disabledCypherSuites;
     String enabledCipherSuites;
 
+    public static final int DEFAULT_SESSION_CACHE_SIZE = 10000;
+    public static final int DEFAULT_SESSION_TIMEOUT = 60 * 60;
+    public static final int DEFAULT_HANDSHAKE_THREADS = 4;
+
+    private int sessionCacheSize = DEFAULT_SESSION_CACHE_SIZE;
+    private int sessionTimeout = DEFAULT_SESSION_TIMEOUT;
+    private int handshakeThreads = DEFAULT_HANDSHAKE_THREADS;
+
     public SslConfig() {
     }
 
@@ -167,6 +175,32 @@ public class SslConfig {
       return keyManagers;
     }
 
+    /**
+     * Creates and initializes an SSLContext using this configuration with its server session cache configured
+     * so that clients which reconnect can resume their previous session rather than perform a full handshake.
+     */
+    public SSLContext createSSLContext() throws GeneralSecurityException, IOException {
+        SSLContext answer = SSLContext.getInstance(getProtocol());
+        answer.init(getKeyManagers(), getTrustManagers(), null);
+        configureSessionContext(answer.getServerSessionContext());
+        return answer;
+    }
+
+    /**
+     * Applies the session cache size and timeout to the given session context; a value of zero
+     * or less leaves the setting of the session context unchanged.
+     */
+    public void configureSessionContext(SSLSessionContext sessionContext) {
+        if (sessionContext != null) {
+            if (sessionCacheSize > 0) {
+                sessionContext.setSessionCacheSize(sessionCacheSize);
+            }
+            if (sessionTimeout > 0) {
+                sessionContext.setSessionTimeout(sessionTimeout);
+            }
+        }
+    }
+
     public String getProtocol() {
         return protocol;
     }
@@ -305,4 +339,38 @@ public class SslConfig {
         this.enabledCipherSuites = enabledCipherSuites;
     }
 
+    public int getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of SSL sessions cached for resumption
+     */
+    public void setSessionCacheSize(int sessionCacheSize) {
+        this.sessionCacheSize = sessionCacheSize;
+    }
+
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    /**
+     * Sets the number of seconds a cached SSL session can be resumed for
+     */
+    public void setSessionTimeout(int sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    public int getHandshakeThreads() {
+        return handshakeThreads;
+    }
+
+    /**
+     * Sets the number of worker threads which run the expensive SSL handshake tasks off the event loop;
+     * zero runs them on the event loop
+     */
+    public void setHandshakeThreads(int handshakeThreads) {
+        this.handshakeThreads = handshakeThreads;
+    }
+
 }
@@ -16,6 +16,7 @@
 package io.fabric8.gateway.handlers.detecting.protocol.ssl;
 
 import io.fabric8.gateway.SocketWrapper;
+import org.vertx.java.core.Context;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.streams.ReadStream;
@@ -28,10 +29,17 @@ import javax.net.ssl.SSLException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
 
 /**
+ * Wraps a socket with an SSLEngine so that the data read and written to it is decrypted and encrypted.
+ * <p/>
+ * The expensive handshake tasks of the SSLEngine can be run on a separate executor using
+ * {@link #setDelegatedTaskExecutor(Executor, Context)} so that they do not stall the event loop, and the
+ * temporary buffers used to wrap and unwrap the data are reused by each event loop thread.
  */
 public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSocketWrapper>, WriteStream<SslSocketWrapper> {
 
@@ -41,12 +49,31 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
         WANT, NEED, NONE
     };
 
+    /**
+     * Is notified when the initial handshake of a connection completes or fails
+     */
+    public interface HandshakeListener {
+        void handshakeCompleted(boolean resumed, long startNanos);
+        void handshakeFailed(Throwable error);
+    }
+
+    private static final ThreadLocal<ByteBuffer> unwrapBuffers = new ThreadLocal<ByteBuffer>();
+    private static final ThreadLocal<ByteBuffer> wrapBuffers = new ThreadLocal<ByteBuffer>();
+
     final private SocketWrapper next;
 
     private SSLEngine engine;
     private Handler<Throwable> plainExceptionHandler;
     private boolean failed = false;
 
+    private Executor taskExecutor;
+    private Context context;
+    private boolean tasksPending;
+    private HandshakeListener handshakeListener;
+    private boolean handshakeCompleted;
+    private long handshakeStartNanos;
+    private long handshakeStartMillis;
+
     //////////////////////////////////////////////////////////////////////////
     //
     // ReadStream<SslSocketWrapper> interface impl.
@@ -76,13 +103,13 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
         while( pump ) {
             pump = false;
 
-            if( readPaused > 0 || failed ) {
+            if( readPaused > 0 || failed || tasksPending ) {
                 return;
             }
 
             if( encryptedReadBuffer!=null && plainReadBuffer==null && !encryptedReadBufferUnderflow ) {
                 ByteBuffer input = ByteBuffer.wrap(encryptedReadBuffer.getBytes());
-                ByteBuffer output = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+                ByteBuffer output = borrowBuffer(unwrapBuffers, engine.getSession().getApplicationBufferSize());
 
                 try {
                     boolean done = false;
@@ -267,13 +294,13 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
         while (pump) {
             pump= false;
 
-            if( failed ) {
+            if( failed || tasksPending ) {
                 return;
             }
 
             if( plainWriteBuffer!=null ) {
                 ByteBuffer input = ByteBuffer.wrap(plainWriteBuffer.getBytes());
-                ByteBuffer output = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+                ByteBuffer output = borrowBuffer(wrapBuffers, engine.getSession().getPacketBufferSize());
 
                 try {
                     boolean done = false;
@@ -395,6 +422,19 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
         pause();
     }
 
+    /**
+     * Runs the delegated tasks of the SSLEngine on the given executor, continuing the handshake on the
+     * given vert.x context once they have completed
+     */
+    public void setDelegatedTaskExecutor(Executor taskExecutor, Context context) {
+        this.taskExecutor = taskExecutor;
+        this.context = context;
+    }
+
+    public void setHandshakeListener(HandshakeListener handshakeListener) {
+        this.handshakeListener = handshakeListener;
+    }
+
     public void initClient(SSLContext sslContext, String host, int port, String disabledCypherSuites, String enabledCipherSuites) {
         assert engine == null;
         engine = sslContext.createSSLEngine(host, port);
@@ -443,6 +483,8 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
     }
 
     private void init() {
+        handshakeStartNanos = System.nanoTime();
+        handshakeStartMillis = System.currentTimeMillis();
         this.next.readStream().dataHandler(new Handler<Buffer>() {
             @Override
             public void handle(Buffer buffer) {
@@ -477,8 +519,18 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
         return rc.toArray(new String[rc.size()]);
     }
 
+    private static ByteBuffer borrowBuffer(ThreadLocal<ByteBuffer> buffers, int size) {
+        ByteBuffer answer = buffers.get();
+        if( answer == null || answer.capacity() < size ) {
+            answer = ByteBuffer.allocate(size);
+            buffers.set(answer);
+        }
+        answer.clear();
+        return answer;
+    }
+
     public void handshake() {
-        if( failed )
+        if( failed || tasksPending )
             return;
         try {
             while( true ) {
@@ -489,6 +541,9 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                         return;
 
                     case NEED_TASK:
+                        if( taskExecutor!=null && context!=null && runDelegatedTasks() ) {
+                            return;
+                        }
                         final Runnable task = engine.getDelegatedTask();
                         if( task!=null ) {
                             task.run();
@@ -517,14 +572,73 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
             }
         } finally {
             SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
-            if( status == NOT_HANDSHAKING ) {
+            if( status == NOT_HANDSHAKING && !tasksPending ) {
+                if( !handshakeCompleted ) {
+                    onHandshakeCompleted();
+                }
                 pumpWrites(false);
                 pumpReads(false);
             }
         }
     }
 
+    /**
+     * Runs the delegated tasks on the task executor returning false if the executor rejected them
+     */
+    private boolean runDelegatedTasks() {
+        try {
+            taskExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Throwable error = null;
+                    try {
+                        Runnable task;
+                        while( (task = engine.getDelegatedTask()) != null ) {
+                            task.run();
+                        }
+                    } catch (Throwable e) {
+                        error = e;
+                    }
+                    final Throwable failure = error;
+                    context.runOnContext(new Handler<Void>() {
+                        @Override
+                        public void handle(Void event) {
+                            tasksPending = false;
+                            if( failure!=null ) {
+                                onFailure(failure);
+                            } else {
+                                handshake();
+                            }
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the executor is shutting down so lets just run the tasks on the event loop
+            return false;
+        }
+        tasksPending = true;
+        return true;
+    }
+
+    private void onHandshakeCompleted() {
+        // we only get a real cipher suite once the handshake has actually happened
+        if( "SSL_NULL_WITH_NULL_NULL".equals(engine.getSession().getCipherSuite()) ) {
+            return;
+        }
+        handshakeCompleted = true;
+        HandshakeListener listener = handshakeListener;
+        if( listener!=null ) {
+            // a resumed session was created by an earlier connection
+            boolean resumed = engine.getSession().getCreationTime() < handshakeStartMillis;
+            listener.handshakeCompleted(resumed, handshakeStartNanos);
+        }
+    }
+
     private void onFailure(Throwable error) {
+        if( !failed && !handshakeCompleted && handshakeListener!=null ) {
+            handshakeListener.handshakeFailed(error);
+        }
         failed = true;
         Handler<Throwable> handler = plainExceptionHandler;
         if( handler!=null ) {
@@ -0,0 +1,404 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.http.HttpClient;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of keep-alive {@link HttpClient} instances, one per backend host:port, so that
+ * the {@link HttpGatewayHandler} reuses connections to the services it proxies rather than
+ * creating a new client and TCP connection for each request.
+ * <p/>
+ * Clients which have not been used for the {@link #getIdleTimeout()} are closed and
+ * clients for backends which are no longer mapped can be closed via {@link #retainBackends(java.util.Collection)}.
+ * <p/>
+ * A client is marked as in use before it is returned and is retired once it is closed, so it is never
+ * handed out after it was closed; a client removed while it still has requests in flight is only closed
+ * once the last of them is released.
+ */
+public class HttpClientPool implements HttpClientPoolMBean {
+    private static final transient Logger LOG = LoggerFactory.getLogger(HttpClientPool.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_BACKEND = 16;
+    public static final long DEFAULT_IDLE_TIMEOUT = 60000L;
+
+    private final Vertx vertx;
+    private final ConcurrentHashMap<String, PooledClient> clients = new ConcurrentHashMap<String, PooledClient>();
+    private final AtomicLong clientsCreated = new AtomicLong();
+    private final AtomicLong clientsEvicted = new AtomicLong();
+    private final AtomicLong totalRequests = new AtomicLong();
+
+    private boolean keepAlive = true;
+    private int maxConnectionsPerBackend = DEFAULT_MAX_CONNECTIONS_PER_BACKEND;
+    private int connectTimeout = 60000;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private long evictionTimerId = -1;
+    private ObjectName objectName;
+
+    public HttpClientPool(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpClientPool{" +
+                "backends=" + clients.keySet() +
+                ", keepAlive=" + keepAlive +
+                ", maxConnectionsPerBackend=" + maxConnectionsPerBackend +
+                ", idleTimeout=" + idleTimeout +
+                '}';
+    }
+
+    /**
+     * Starts the periodic eviction of idle clients
+     */
+    public synchronized void start() {
+        if (evictionTimerId < 0 && idleTimeout > 0) {
+            long period = Math.max(1000L, idleTimeout / 2);
+            evictionTimerId = vertx.setPeriodic(period, new Handler<Long>() {
+                @Override
+                public void handle(Long timerId) {
+                    evictIdleClients();
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops the eviction timer and closes all the pooled clients
+     */
+    public synchronized void stop() {
+        if (evictionTimerId >= 0) {
+            vertx.cancelTimer(evictionTimerId);
+            evictionTimerId = -1;
+        }
+        closeAll();
+    }
+
+    /**
+     * Returns the pooled client for the host and port of the given URL, creating one if required.
+     * Each call must be paired with a call to {@link #release(PooledClient)} once the request completes.
+     */
+    public PooledClient acquire(URL url) {
+        String key = backendKey(url);
+        while (true) {
+            PooledClient pooled = clients.get(key);
+            if (pooled == null) {
+                PooledClient newClient = new PooledClient(key, createClient(url));
+                pooled = clients.putIfAbsent(key, newClient);
+                if (pooled == null) {
+                    pooled = newClient;
+                    clientsCreated.incrementAndGet();
+                    LOG.debug("Created pooled HTTP client for backend {}", key);
+                } else {
+                    newClient.client.close();
+                }
+            }
+            if (pooled.tryAcquire()) {
+                pooled.requests.incrementAndGet();
+                totalRequests.incrementAndGet();
+                return pooled;
+            }
+            // the client was closed since it was looked up so lets use a new one
+            clients.remove(key, pooled);
+        }
+    }
+
+    /**
+     * Marks a request using the given client as completed, closing the client if it was removed from the pool
+     * and this was its last request
+     */
+    public void release(PooledClient pooled) {
+        pooled.lastUsed = System.currentTimeMillis();
+        if (pooled.activeRequests.decrementAndGet() == 0 && pooled.removed && pooled.retire()) {
+            LOG.debug("Closing removed HTTP client for backend {} after its last request", pooled.key);
+            closeQuietly(pooled);
+        }
+    }
+
+    /**
+     * Closes the clients of any backends which are not referenced by the given service URLs;
+     * typically invoked when services are removed from the mapping rules.
+     */
+    public void retainBackends(Collection<String> serviceUrls) {
+        Set<String> keys = new HashSet<String>();
+        for (String serviceUrl : serviceUrls) {
+            try {
+                keys.add(backendKey(new URL(serviceUrl)));
+            } catch (MalformedURLException e) {
+                LOG.debug("Ignoring invalid service URL " + serviceUrl + ". " + e);
+            }
+        }
+        for (String key : new ArrayList<String>(clients.keySet())) {
+            if (!keys.contains(key)) {
+                closeClient(key);
+            }
+        }
+    }
+
+    /**
+     * Closes any clients which have no active requests and have been idle for longer than the idle timeout
+     */
+    public void evictIdleClients() {
+        long threshold = System.currentTimeMillis() - idleTimeout;
+        for (PooledClient pooled : clients.values()) {
+            if (pooled.lastUsed < threshold && pooled.retire()) {
+                clients.remove(pooled.key, pooled);
+                LOG.debug("Evicting idle HTTP client for backend {}", pooled.key);
+                clientsEvicted.incrementAndGet();
+                closeQuietly(pooled);
+            }
+        }
+    }
+
+    @Override
+    public void closeAll() {
+        for (String key : new ArrayList<String>(clients.keySet())) {
+            closeClient(key);
+        }
+    }
+
+    /**
+     * Removes the client of the given backend from the pool, closing it now if it has no requests in flight
+     * or else once the last of them is released
+     */
+    protected void closeClient(String key) {
+        PooledClient pooled = clients.remove(key);
+        if (pooled != null) {
+            clientsEvicted.incrementAndGet();
+            pooled.removed = true;
+            if (pooled.retire()) {
+                LOG.debug("Closing HTTP client for backend {}", key);
+                closeQuietly(pooled);
+            } else {
+                LOG.debug("Closing HTTP client for backend {} once its requests complete", key);
+            }
+        }
+    }
+
+    protected HttpClient createClient(URL url) {
+        HttpClient client = vertx.createHttpClient();
+        client.setHost(url.getHost());
+        client.setPort(backendPort(url));
+        client.setKeepAlive(keepAlive);
+        client.setMaxPoolSize(maxConnectionsPerBackend);
+        client.setConnectTimeout(connectTimeout);
+        return client;
+    }
+
+    protected static String backendKey(URL url) {
+        return url.getHost() + ":" + backendPort(url);
+    }
+
+    protected static int backendPort(URL url) {
+        int port = url.getPort();
+        return port >= 0 ? port : url.getDefaultPort();
+    }
+
+    private static void closeQuietly(PooledClient pooled) {
+        try {
+            pooled.client.close();
+        } catch (Exception e) {
+            LOG.debug("Failed to close HTTP client for backend " + pooled.key + ". " + e, e);
+        }
+    }
+
+    // JMX
+    //-------------------------------------------------------------------------
+
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        if (objectName == null) {
+            objectName = new ObjectName("io.fabric8.gateway:type=HttpClientPool");
+        }
+        return objectName;
+    }
+
+    public void setObjectName(ObjectName objectName) {
+        this.objectName = objectName;
+    }
+
+    public void registerMBeanServer(MBeanServer mbeanServer) {
+        try {
+            ObjectName name = getObjectName();
+            if (!mbeanServer.isRegistered(name)) {
+                mbeanServer.registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            LOG.warn("An error occured during mbean server registration: " + e, e);
+        }
+    }
+
+    public void unregisterMBeanServer(MBeanServer mbeanServer) {
+        if (mbeanServer != null) {
+            try {
+                ObjectName name = getObjectName();
+                if (mbeanServer.isRegistered(name)) {
+                    mbeanServer.unregisterMBean(name);
+                }
+            } catch (Exception e) {
+                LOG.warn("An error occured during mbean server unregistration: " + e, e);
+            }
+        }
+    }
+
+    @Override
+    public List<String> getBackends() {
+        return new ArrayList<String>(clients.keySet());
+    }
+
+    @Override
+    public int getBackendCount() {
+        return clients.size();
+    }
+
+    @Override
+    public Map<String, Long> getRequestsPerBackend() {
+        Map<String, Long> answer = new HashMap<String, Long>();
+        for (PooledClient pooled : clients.values()) {
+            answer.put(pooled.key, pooled.requests.get());
+        }
+        return answer;
+    }
+
+    @Override
+    public long getTotalRequests() {
+        return totalRequests.get();
+    }
+
+    @Override
+    public int getActiveRequests() {
+        int answer = 0;
+        for (PooledClient pooled : clients.values()) {
+            answer += Math.max(0, pooled.activeRequests.get());
+        }
+        return answer;
+    }
+
+    @Override
+    public long getClientsCreated() {
+        return clientsCreated.get();
+    }
+
+    @Override
+    public long getClientsEvicted() {
+        return clientsEvicted.get();
+    }
+
+    // Properties
+    //-------------------------------------------------------------------------
+
+    @Override
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    @Override
+    public int getMaxConnectionsPerBackend() {
+        return maxConnectionsPerBackend;
+    }
+
+    public void setMaxConnectionsPerBackend(int maxConnectionsPerBackend) {
+        this.maxConnectionsPerBackend = maxConnectionsPerBackend;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    @Override
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * A client of the pool which is in use until it is passed to {@link HttpClientPool#release(PooledClient)}
+     */
+    public static final class PooledClient {
+        private static final int RETIRED = -1;
+
+        private final String key;
+        private final HttpClient client;
+        // the number of requests in flight, or RETIRED once the client is closed
+        private final AtomicInteger activeRequests = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile boolean removed;
+
+        private PooledClient(String key, HttpClient client) {
+            this.key = key;
+            this.client = client;
+        }
+
+        public HttpClient getClient() {
+            return client;
+        }
+
+        /**
+         * Marks the client in use unless it was retired
+         */
+        private boolean tryAcquire() {
+            while (true) {
+                int active = activeRequests.get();
+                if (active == RETIRED) {
+                    return false;
+                }
+                if (activeRequests.compareAndSet(active, active + 1)) {
+                    lastUsed = System.currentTimeMillis();
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Retires the client if it has no requests in flight, after which it is never acquired again
+         */
+        private boolean retire() {
+            return activeRequests.compareAndSet(0, RETIRED);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JMX MBean API for the pooled backend HTTP clients of the HTTP gateway
+ */
+public interface HttpClientPoolMBean {
+
+    /**
+     * Returns the host:port keys of the backends which currently have a pooled client
+     */
+    List<String> getBackends();
+
+    int getBackendCount();
+
+    /**
+     * Returns the number of requests proxied to each backend since its client was created
+     */
+    Map<String, Long> getRequestsPerBackend();
+
+    long getTotalRequests();
+
+    int getActiveRequests();
+
+    long getClientsCreated();
+
+    long getClientsEvicted();
+
+    boolean isKeepAlive();
+
+    int getMaxConnectionsPerBackend();
+
+    long getIdleTimeout();
+
+    /**
+     * Closes all the pooled clients; new clients are created lazily on the next request
+     */
+    void closeAll();
+}
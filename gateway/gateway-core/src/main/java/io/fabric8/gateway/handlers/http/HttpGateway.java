@@ -41,6 +41,12 @@ public interface HttpGateway {
      */
     Map<String, MappedServices> getMappedServices();
 
+    /**
+     * Returns the current immutable index of the mapped services by URI prefix which is used to
+     * find the services for each request
+     */
+    HttpMappingIndex getMappingIndex();
+
     /**
      * Returns true if the mapping index is enabled which by default
      * returns a JSON document describing the mapping of URI prefixes to services
@@ -16,13 +16,16 @@
 package io.fabric8.gateway.handlers.http;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.fabric8.gateway.admission.AdmissionController;
+import io.fabric8.gateway.handlers.http.cache.CachedResponse;
+import io.fabric8.gateway.handlers.http.cache.HttpResponseCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.vertx.java.core.Context;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.VoidHandler;
 import org.vertx.java.core.buffer.Buffer;
-import org.vertx.java.core.http.HttpClient;
 import org.vertx.java.core.http.HttpClientRequest;
 import org.vertx.java.core.http.HttpClientResponse;
 import org.vertx.java.core.http.HttpServerRequest;
@@ -37,86 +40,134 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  */
 public class HttpGatewayHandler implements Handler<HttpServerRequest> {
     private static final transient Logger LOG = LoggerFactory.getLogger(HttpGatewayHandler.class);
+    private static final String CONTENT_LENGTH = "Content-Length";
+    private static final String TRANSFER_ENCODING = "Transfer-Encoding";
 
     private final Vertx vertx;
     private final HttpGateway httpGateway;
+    private final HttpClientPool clientPool;
     private final ObjectMapper mapper = new ObjectMapper();
+    private AdmissionController admissionController;
 
     public HttpGatewayHandler(Vertx vertx, HttpGateway httpGateway) {
+        this(vertx, httpGateway, new HttpClientPool(vertx));
+    }
+
+    public HttpGatewayHandler(Vertx vertx, HttpGateway httpGateway, HttpClientPool clientPool) {
         this.vertx = vertx;
         this.httpGateway = httpGateway;
+        this.clientPool = clientPool;
     }
 
     @Override
     public void handle(final HttpServerRequest request) {
-        String uri = request.uri();
-        String uri2 = null;
-        if (!uri.endsWith("/")) {
-            uri2 = uri + "/";
+        if (admissionController != null) {
+            String key = admissionController.getRateLimitKey(request.headers().get("Host"), null, request.remoteAddress());
+            if (!admissionController.tryAdmit(key)) {
+                LOG.info("Rejecting request " + request.uri() + " as it exceeded the request rate limit of " + key);
+                HttpServerResponse response = request.response();
+                response.setStatusCode(429);
+                response.setStatusMessage("Too Many Requests");
+                response.headers().set("Retry-After", Long.toString(admissionController.getRetryAfterSeconds(key)));
+                response.end();
+                return;
+            }
         }
+        handle(request, true);
+    }
+
+    /**
+     * Proxies the request; if coalesce is enabled and a request for the same cacheable response is already being
+     * proxied then the request waits for it to complete and is retried
+     */
+    protected void handle(final HttpServerRequest request, boolean coalesce) {
+        final String uri = request.uri();
         if (LOG.isDebugEnabled()) {
             LOG.debug("Proxying request: " + uri);
         }
 
         // lets map the request URI to map to the service URI and then the renaming URI
         // using mapping rules...
-        HttpClient client = null;
+        HttpClientPool.PooledClient pooledClient = null;
+        final AtomicBoolean completed = new AtomicBoolean();
+        MappedServices mappedServices = null;
         String remaining = null;
         String prefix = null;
         String proxyServiceUrl = null;
         String reverseServiceUrl = null;
-        Map<String, MappedServices> mappingRules = httpGateway.getMappedServices();
+        HttpResponseCache responseCache = null;
+        String cacheKey = null;
+        boolean fetching = false;
+        HttpMappingIndex mappingIndex = httpGateway.getMappingIndex();
         try {
             if (isMappingIndexRequest(request)) {
                 // lets return the JSON of all the results
-                String json = mappingRulesToJson(mappingRules);
+                String json = mappingRulesToJson(mappingIndex.getMappedServices());
                 HttpServerResponse response = request.response();
                 response.headers().set("ContentType", "application/json");
                 response.end(json);
                 response.setStatusCode(200);
             } else {
-                MappedServices mappedServices = null;
                 URL clientURL = null;
-                Set<Map.Entry<String, MappedServices>> entries = mappingRules.entrySet();
-                for (Map.Entry<String, MappedServices> entry : entries) {
-                    String path = entry.getKey();
-                    mappedServices = entry.getValue();
-
-                    String pathPrefix = path;
-                    if (uri.startsWith(pathPrefix) || (uri2 != null && uri2.startsWith(pathPrefix))) {
-                        int pathPrefixLength = pathPrefix.length();
-                        if (pathPrefixLength < uri.length()) {
-                            remaining = uri.substring(pathPrefixLength);
-                        } else {
-                            remaining = null;
+                HttpMappingIndex.Entry entry = mappingIndex.findLongestPrefix(uri);
+                if (entry != null) {
+                    String pathPrefix = entry.getPrefix();
+                    mappedServices = entry.getMappedServices();
+
+                    responseCache = mappedServices.getResponseCache();
+                    if (responseCache != null) {
+                        cacheKey = responseCache.getCacheKey(request);
+                    }
+                    if (cacheKey != null) {
+                        CachedResponse cached = responseCache.getFresh(cacheKey, request);
+                        if (cached != null) {
+                            if (LOG.isDebugEnabled()) {
+                                LOG.debug("Serving cached response for request: " + uri);
+                            }
+                            responseCache.serve(cached, request);
+                            return;
                         }
+                        if (coalesce) {
+                            CoalescedRetry retry = new CoalescedRetry(request);
+                            if (responseCache.coalesce(cacheKey, retry)) {
+                                retry.expireAfter(responseCache.getCoalesceTimeout());
+                                return;
+                            }
+                            fetching = true;
+                        }
+                    }
 
-                        // now lets pick a service for this path
-                        proxyServiceUrl = mappedServices.chooseService(request);
-                        if (proxyServiceUrl != null) {
-                            // lets create a client for this request...
-                            try {
-                                clientURL = new URL(proxyServiceUrl);
-                                client = createClient(clientURL);
-                                prefix = clientURL.getPath();
-                                reverseServiceUrl = request.absoluteURI().resolve(pathPrefix).toString();
-                                if (reverseServiceUrl.endsWith("/")) {
-                                    reverseServiceUrl = reverseServiceUrl.substring(0, reverseServiceUrl.length() - 1);
-                                }
-                                break;
-                            } catch (MalformedURLException e) {
-                                LOG.warn("Failed to parse URL: " + proxyServiceUrl + ". " + e, e);
+                    int pathPrefixLength = pathPrefix.length();
+                    if (pathPrefixLength < uri.length()) {
+                        remaining = uri.substring(pathPrefixLength);
+                    }
+
+                    // now lets pick a service for this path
+                    proxyServiceUrl = mappedServices.chooseService(request);
+                    if (proxyServiceUrl != null) {
+                        // lets create a client for this request...
+                        try {
+                            clientURL = new URL(proxyServiceUrl);
+                            pooledClient = clientPool.acquire(clientURL);
+                            mappedServices.requestStarted(proxyServiceUrl);
+                            prefix = clientURL.getPath();
+                            reverseServiceUrl = request.absoluteURI().resolve(pathPrefix).toString();
+                            if (reverseServiceUrl.endsWith("/")) {
+                                reverseServiceUrl = reverseServiceUrl.substring(0, reverseServiceUrl.length() - 1);
                             }
+                        } catch (MalformedURLException e) {
+                            LOG.warn("Failed to parse URL: " + proxyServiceUrl + ". " + e, e);
                         }
                     }
                 }
 
-                if (client != null) {
+                if (pooledClient != null) {
                     String servicePath = prefix != null ? prefix : "";
                     // we should usually end the prefix path with a slash for web apps at least
                     if (servicePath.length() > 0 && !servicePath.endsWith("/")) {
@@ -126,26 +177,76 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                         servicePath += remaining;
                     }
 
+                    final URL backendURL = clientURL;
+                    final HttpClientPool.PooledClient backendClient = pooledClient;
+                    final MappedServices backendServices = mappedServices;
+                    final String backendServiceUrl = proxyServiceUrl;
+                    final HttpResponseCache backendCache = responseCache;
+                    final String backendCacheKey = cacheKey;
+                    final String fetchedCacheKey = fetching ? cacheKey : null;
+                    final CachedResponse stale = cacheKey != null ? responseCache.getRevalidatable(cacheKey, request) : null;
+                    final long start = System.nanoTime();
                     LOG.info("Proxying request " + uri + " to service path: " + servicePath + " on service: " + proxyServiceUrl + " reverseServiceUrl: " + reverseServiceUrl);
                     Handler<HttpClientResponse> responseHandler = new Handler<HttpClientResponse>() {
                         public void handle(HttpClientResponse clientResponse) {
                             if (LOG.isDebugEnabled()) {
                                 LOG.debug("Proxying response: " + clientResponse.statusCode());
                             }
+                            backendServices.responseReceived(backendServiceUrl, System.nanoTime() - start);
+                            clientResponse.exceptionHandler(new Handler<Throwable>() {
+                                public void handle(Throwable e) {
+                                    LOG.warn("Failed to proxy response of " + uri + " from " + backendURL + ". " + e);
+                                    if (completeRequest(backendClient, backendServices, backendServiceUrl, true, fetchedCacheKey, completed)) {
+                                        // the response may already be partly written so the client must see it fail
+                                        request.response().close();
+                                    }
+                                }
+                            });
+                            if (stale != null && clientResponse.statusCode() == 304) {
+                                // the back end service has told us our stale cached response is still valid
+                                final CachedResponse revalidated = backendCache.revalidated(backendCacheKey, stale, clientResponse.headers());
+                                clientResponse.endHandler(new VoidHandler() {
+                                    public void handle() {
+                                        if (completed.get()) {
+                                            return;
+                                        }
+                                        backendCache.serve(revalidated, request);
+                                        completeRequest(backendClient, backendServices, backendServiceUrl, false, fetchedCacheKey, completed);
+                                    }
+                                });
+                                return;
+                            }
+                            final HttpResponseCache.Recorder recorder = backendCacheKey != null
+                                    ? backendCache.record(backendCacheKey, request, clientResponse) : null;
                             request.response().setStatusCode(clientResponse.statusCode());
                             request.response().headers().set(clientResponse.headers());
-                            request.response().setChunked(true);
+                            // only use chunked encoding if the backend did not give us the content length
+                            if (!clientResponse.headers().contains(CONTENT_LENGTH)) {
+                                request.response().setChunked(true);
+                            }
                             clientResponse.dataHandler(new Handler<Buffer>() {
                                 public void handle(Buffer data) {
                                     if (LOG.isDebugEnabled()) {
                                         LOG.debug("Proxying response body:" + data);
                                     }
+                                    if (recorder != null) {
+                                        recorder.append(data);
+                                    }
                                     request.response().write(data);
                                 }
                             });
                             clientResponse.endHandler(new VoidHandler() {
                                 public void handle() {
+                                    if (completed.get()) {
+                                        // the response has already failed
+                                        return;
+                                    }
+                                    // store the response before the requests waiting for it are retried
+                                    if (recorder != null) {
+                                        recorder.complete();
+                                    }
                                     request.response().end();
+                                    completeRequest(backendClient, backendServices, backendServiceUrl, false, fetchedCacheKey, completed);
                                 }
                             });
                         }
@@ -154,9 +255,28 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                         ProxyMappingDetails proxyMappingDetails = new ProxyMappingDetails(proxyServiceUrl, reverseServiceUrl, servicePath);
                         responseHandler = mappedServices.wrapResponseHandlerInPolicies(request, responseHandler, proxyMappingDetails);
                     }
-                    final HttpClientRequest clientRequest = client.request(request.method(), servicePath, responseHandler);
+                    final HttpClientRequest clientRequest = backendClient.getClient().request(request.method(), servicePath, responseHandler);
                     clientRequest.headers().set(request.headers());
-                    clientRequest.setChunked(true);
+                    if (stale != null) {
+                        backendCache.addValidators(stale, clientRequest);
+                    }
+                    // only use chunked encoding if the client did not give us the content length
+                    if (!request.headers().contains(CONTENT_LENGTH) && request.headers().contains(TRANSFER_ENCODING)) {
+                        clientRequest.setChunked(true);
+                    }
+                    clientRequest.exceptionHandler(new Handler<Throwable>() {
+                        public void handle(Throwable e) {
+                            LOG.warn("Failed to proxy request " + uri + " to " + backendURL + ". " + e);
+                            if (completeRequest(backendClient, backendServices, backendServiceUrl, true, fetchedCacheKey, completed)) {
+                                request.response().setStatusCode(502).end();
+                            }
+                        }
+                    });
+                    if (backendCacheKey != null) {
+                        // cacheable requests have no body so there is no need to wait for the end of the request
+                        clientRequest.end();
+                        return;
+                    }
                     request.dataHandler(new Handler<Buffer>() {
                         public void handle(Buffer data) {
                             if (LOG.isDebugEnabled()) {
@@ -175,14 +295,22 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                     });
 
                 } else {
+                    if (fetching) {
+                        responseCache.fetchCompleted(cacheKey);
+                    }
                     //  lets return a 404
-                    LOG.info("Could not find matching proxy path for " + uri + " from paths: " + mappingRules.keySet());
+                    LOG.info("Could not find matching proxy path for " + uri + " from paths: " + mappingIndex.getPrefixes());
                     request.response().setStatusCode(404);
                     request.response().close();
                 }
             }
         } catch (Throwable e) {
             LOG.error("Caught: " + e, e);
+            if (pooledClient != null) {
+                completeRequest(pooledClient, mappedServices, proxyServiceUrl, true, fetching ? cacheKey : null, completed);
+            } else if (fetching) {
+                responseCache.fetchCompleted(cacheKey);
+            }
             request.response().setStatusCode(404);
             StringWriter buffer = new StringWriter();
             e.printStackTrace(new PrintWriter(buffer));
@@ -191,6 +319,74 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
         }
     }
 
+    /**
+     * Retries a request on its own context once a concurrent request for the same cached response has completed
+     * or the coalesce timeout has elapsed, whichever comes first
+     */
+    private class CoalescedRetry implements Runnable {
+        private final HttpServerRequest request;
+        private final Context context = vertx.currentContext();
+        private final AtomicBoolean retried = new AtomicBoolean();
+        private volatile long timerId = -1;
+
+        CoalescedRetry(HttpServerRequest request) {
+            this.request = request;
+        }
+
+        void expireAfter(final long timeout) {
+            timerId = vertx.setTimer(timeout, new Handler<Long>() {
+                public void handle(Long id) {
+                    if (!retried.get()) {
+                        LOG.info("Request " + request.uri() + " waited " + timeout + " ms for a concurrent request for the same response, proxying it");
+                    }
+                    run();
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            if (!retried.compareAndSet(false, true)) {
+                return;
+            }
+            long id = timerId;
+            if (id != -1) {
+                vertx.cancelTimer(id);
+            }
+            if (context == null) {
+                handle(request, false);
+            } else {
+                context.runOnContext(new VoidHandler() {
+                    public void handle() {
+                        HttpGatewayHandler.this.handle(request, false);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Releases the pooled client of a proxied request, tells the load balancer and retries the requests waiting
+     * for the fetched cache key, if any, when its response has ended or the request or response has failed.
+     * Returns false if it was already completed as a failure may follow the end of the response
+     */
+    private boolean completeRequest(HttpClientPool.PooledClient pooledClient, MappedServices services, String serviceUrl,
+                                    boolean failed, String fetchedCacheKey, AtomicBoolean completed) {
+        if (!completed.compareAndSet(false, true)) {
+            return false;
+        }
+        clientPool.release(pooledClient);
+        if (failed) {
+            services.requestFailed(serviceUrl);
+        } else {
+            services.requestCompleted(serviceUrl);
+        }
+        if (fetchedCacheKey != null) {
+            services.getResponseCache().fetchCompleted(fetchedCacheKey);
+        }
+        return true;
+    }
+
     protected String mappingRulesToJson(Map<String, MappedServices> rules) throws IOException {
         Map<String, Collection<String>> data = new HashMap<String, Collection<String>>();
 
@@ -212,13 +408,19 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
         return uri == null || uri.length() == 0 || uri.equals("/");
     }
 
-    protected HttpClient createClient(URL url) throws MalformedURLException {
-        // lets create a client
-        HttpClient client = vertx.createHttpClient();
-        client.setHost(url.getHost());
-        client.setPort(url.getPort());
-        return client;
+    public HttpClientPool getClientPool() {
+        return clientPool;
+    }
+
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
 
+    /**
+     * Sets the admission control which rate limits the requests per virtual host or remote address
+     */
+    public void setAdmissionController(AdmissionController admissionController) {
+        this.admissionController = admissionController;
     }
 
 }
@@ -0,0 +1,197 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An immutable prefix trie of the URI prefixes of the {@link MappedServices} so that the
+ * {@link HttpGatewayHandler} can find the longest matching prefix of a request URI in time
+ * proportional to the length of the URI rather than the number of mapped prefixes.
+ * <p/>
+ * A new index is built whenever the mapping rules change and is then published as a whole.
+ */
+public final class HttpMappingIndex {
+    public static final HttpMappingIndex EMPTY = build(Collections.<String, MappedServices>emptyMap());
+
+    private final Node root;
+    private final Map<String, MappedServices> mappedServices;
+
+    private HttpMappingIndex(Node root, Map<String, MappedServices> mappedServices) {
+        this.root = root;
+        this.mappedServices = mappedServices;
+    }
+
+    /**
+     * Creates an index of the given mapped services keyed by URI prefix
+     */
+    public static HttpMappingIndex build(Map<String, MappedServices> mappedServices) {
+        BuilderNode root = new BuilderNode();
+        for (Map.Entry<String, MappedServices> entry : mappedServices.entrySet()) {
+            String prefix = entry.getKey();
+            BuilderNode node = root;
+            for (int i = 0, size = prefix.length(); i < size; i++) {
+                char ch = prefix.charAt(i);
+                BuilderNode child = node.children.get(ch);
+                if (child == null) {
+                    child = new BuilderNode();
+                    node.children.put(ch, child);
+                }
+                node = child;
+            }
+            node.entry = new Entry(prefix, entry.getValue());
+        }
+        Map<String, MappedServices> copy = Collections.unmodifiableMap(new HashMap<String, MappedServices>(mappedServices));
+        return new HttpMappingIndex(root.toNode(), copy);
+    }
+
+    @Override
+    public String toString() {
+        return "HttpMappingIndex{" +
+                "prefixes=" + mappedServices.keySet() +
+                '}';
+    }
+
+    /**
+     * Returns the entry with the longest URI prefix matching the given URI or null if there is no match.
+     * <p/>
+     * As with web application context paths, a URI which does not end with a slash also matches
+     * a prefix equal to the URI plus a trailing slash.
+     */
+    public Entry findLongestPrefix(String uri) {
+        Node node = root;
+        Entry answer = node.entry;
+        int size = uri.length();
+        for (int i = 0; i < size; i++) {
+            node = node.child(uri.charAt(i));
+            if (node == null) {
+                return answer;
+            }
+            if (node.entry != null) {
+                answer = node.entry;
+            }
+        }
+        if (size == 0 || uri.charAt(size - 1) != '/') {
+            node = node.child('/');
+            if (node != null && node.entry != null) {
+                answer = node.entry;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the unmodifiable map of the mapped services indexed by URI prefix
+     */
+    public Map<String, MappedServices> getMappedServices() {
+        return mappedServices;
+    }
+
+    public Set<String> getPrefixes() {
+        return mappedServices.keySet();
+    }
+
+    public int size() {
+        return mappedServices.size();
+    }
+
+    /**
+     * A URI prefix and the services mapped to it
+     */
+    public static final class Entry {
+        private final String prefix;
+        private final MappedServices mappedServices;
+
+        Entry(String prefix, MappedServices mappedServices) {
+            this.prefix = prefix;
+            this.mappedServices = mappedServices;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                    "prefix='" + prefix + '\'' +
+                    ", mappedServices=" + mappedServices +
+                    '}';
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        public MappedServices getMappedServices() {
+            return mappedServices;
+        }
+    }
+
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private final char[] keys;
+        private final Node[] children;
+        private final Entry entry;
+
+        private Node(char[] keys, Node[] children, Entry entry) {
+            this.keys = keys;
+            this.children = children;
+            this.entry = entry;
+        }
+
+        private Node child(char ch) {
+            // keys are sorted so lets do a binary search
+            int low = 0;
+            int high = keys.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char key = keys[mid];
+                if (key < ch) {
+                    low = mid + 1;
+                } else if (key > ch) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class BuilderNode {
+        private final TreeMap<Character, BuilderNode> children = new TreeMap<Character, BuilderNode>();
+        private Entry entry;
+
+        private Node toNode() {
+            int size = children.size();
+            if (size == 0) {
+                return new Node(Node.NO_KEYS, Node.NO_CHILDREN, entry);
+            }
+            char[] keys = new char[size];
+            Node[] nodes = new Node[size];
+            int i = 0;
+            for (Map.Entry<Character, BuilderNode> child : children.entrySet()) {
+                keys[i] = child.getKey();
+                nodes[i] = child.getValue().toNode();
+                i++;
+            }
+            return new Node(keys, nodes, entry);
+        }
+    }
+}
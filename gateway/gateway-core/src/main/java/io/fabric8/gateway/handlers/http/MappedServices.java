@@ -16,8 +16,12 @@
 package io.fabric8.gateway.handlers.http;
 
 import io.fabric8.gateway.ServiceDetails;
+import io.fabric8.gateway.handlers.http.cache.HttpResponseCache;
+import io.fabric8.gateway.handlers.http.policy.ReverseUriBodyPolicy;
 import io.fabric8.gateway.handlers.http.policy.ReverseUriPolicy;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
+import io.fabric8.gateway.loadbalancer.LoadBalancers;
+import io.fabric8.gateway.loadbalancer.ServiceLoad;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.http.HttpClientResponse;
 import org.vertx.java.core.http.HttpServerRequest;
@@ -33,12 +37,24 @@ public class MappedServices {
     private final ServiceDetails serviceDetails;
     private final LoadBalancer<String> loadBalancer;
     private final boolean reverseHeaders;
+    private final boolean reverseBody;
+    private final HttpResponseCache responseCache;
     private List<String> serviceUrls = new CopyOnWriteArrayList<String>();
 
     public MappedServices(String service, ServiceDetails serviceDetails, LoadBalancer<String> loadBalancer, boolean reverseHeaders) {
+        this(service, serviceDetails, loadBalancer, reverseHeaders, false);
+    }
+
+    public MappedServices(String service, ServiceDetails serviceDetails, LoadBalancer<String> loadBalancer, boolean reverseHeaders, boolean reverseBody) {
+        this(service, serviceDetails, loadBalancer, reverseHeaders, reverseBody, null);
+    }
+
+    public MappedServices(String service, ServiceDetails serviceDetails, LoadBalancer<String> loadBalancer, boolean reverseHeaders, boolean reverseBody, HttpResponseCache responseCache) {
         this.serviceDetails = serviceDetails;
         this.loadBalancer = loadBalancer;
         this.reverseHeaders = reverseHeaders;
+        this.reverseBody = reverseBody;
+        this.responseCache = responseCache;
         serviceUrls.add(service);
     }
 
@@ -56,12 +72,45 @@ public class MappedServices {
         return loadBalancer.choose(serviceUrls, new HttpClientRequestFacade(request));
     }
 
+    /**
+     * Notifies the load balancer that a request to the given service has started
+     */
+    public void requestStarted(String serviceUrl) {
+        LoadBalancers.requestStarted(loadBalancer, serviceUrl);
+    }
+
+    /**
+     * Notifies the load balancer that the given service started responding after the given latency
+     */
+    public void responseReceived(String serviceUrl, long latencyNanos) {
+        LoadBalancers.recordLatency(loadBalancer, serviceUrl, latencyNanos);
+    }
+
+    /**
+     * Notifies the load balancer that a request to the given service has completed
+     */
+    public void requestCompleted(String serviceUrl) {
+        LoadBalancers.requestCompleted(loadBalancer, serviceUrl);
+    }
+
+    /**
+     * Notifies the load balancer that a request to the given service has failed
+     */
+    public void requestFailed(String serviceUrl) {
+        LoadBalancers.recordLatency(loadBalancer, serviceUrl, ServiceLoad.FAILURE_PENALTY_NANOS);
+        LoadBalancers.requestCompleted(loadBalancer, serviceUrl);
+    }
+
     /**
      * Provides a hook so we can wrap a client response handler in a policy such
-     * as to reverse the URIs {@link io.fabric8.gateway.handlers.http.policy.ReverseUriPolicy} or
+     * as to reverse the URIs {@link io.fabric8.gateway.handlers.http.policy.ReverseUriPolicy},
+     * {@link io.fabric8.gateway.handlers.http.policy.ReverseUriBodyPolicy} or
      * add metering, limits, security or contract checks etc.
      */
     public Handler<HttpClientResponse> wrapResponseHandlerInPolicies(HttpServerRequest request, Handler<HttpClientResponse> responseHandler, ProxyMappingDetails proxyMappingDetails) {
+        if (reverseBody) {
+            responseHandler = new ReverseUriBodyPolicy(responseHandler, proxyMappingDetails);
+        }
         if (reverseHeaders) {
             responseHandler = new ReverseUriPolicy(this, request, responseHandler, proxyMappingDetails);
         }
@@ -90,6 +139,17 @@ public class MappedServices {
         return reverseHeaders;
     }
 
+    public boolean isReverseBody() {
+        return reverseBody;
+    }
+
+    /**
+     * Returns the cache of the responses of the services or null if responses are not cached
+     */
+    public HttpResponseCache getResponseCache() {
+        return responseCache;
+    }
+
     public ServiceDetails getServiceDetails() {
         return serviceDetails;
     }
@@ -0,0 +1,130 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http.cache;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * The directives of the <code>Cache-Control</code> headers of a HTTP request or response
+ */
+public class CacheControl {
+    public static final CacheControl EMPTY = new CacheControl(new HashMap<String, String>());
+
+    private final Map<String, String> directives;
+
+    private CacheControl(Map<String, String> directives) {
+        this.directives = directives;
+    }
+
+    /**
+     * Parses the values of all the <code>Cache-Control</code> headers
+     */
+    public static CacheControl parse(List<String> headers) {
+        if (headers == null || headers.isEmpty()) {
+            return EMPTY;
+        }
+        Map<String, String> directives = new HashMap<String, String>();
+        for (String header : headers) {
+            for (String directive : header.split(",")) {
+                directive = directive.trim();
+                if (directive.length() == 0) {
+                    continue;
+                }
+                int idx = directive.indexOf('=');
+                if (idx > 0) {
+                    String value = directive.substring(idx + 1).trim();
+                    if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+                        value = value.substring(1, value.length() - 1);
+                    }
+                    directives.put(directive.substring(0, idx).trim().toLowerCase(), value);
+                } else {
+                    directives.put(directive.toLowerCase(), "");
+                }
+            }
+        }
+        return new CacheControl(directives);
+    }
+
+    /**
+     * Parses a HTTP date such as the value of the <code>Expires</code> or <code>Date</code> headers
+     * returning -1 if the date is missing or invalid
+     */
+    public static long parseDate(String value) {
+        if (value == null || value.length() == 0) {
+            return -1;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return format.parse(value.trim()).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Formats the given time as a HTTP date
+     */
+    public static String formatDate(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(millis));
+    }
+
+    public boolean contains(String directive) {
+        return directives.containsKey(directive);
+    }
+
+    /**
+     * Returns the number of seconds of the given directive such as <code>max-age</code> or -1 if
+     * the directive is not present or is not a valid number
+     */
+    public long getSeconds(String directive) {
+        String value = directives.get(directive);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Math.max(Long.parseLong(value), 0);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public boolean isNoStore() {
+        return contains("no-store");
+    }
+
+    public boolean isNoCache() {
+        return contains("no-cache");
+    }
+
+    public boolean isPrivate() {
+        return contains("private");
+    }
+
+    @Override
+    public String toString() {
+        return "CacheControl" + directives;
+    }
+}
@@ -0,0 +1,347 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http.cache;
+
+import java.io.File;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A HTTP response stored in the {@link HttpResponseCache} along with the details required to decide whether it is
+ * fresh or needs to be revalidated with the back end service using its <code>ETag</code> or
+ * <code>Last-Modified</code> header.
+ * <p/>
+ * Only explicit freshness from the <code>s-maxage</code>, <code>max-age</code> or <code>Expires</code> headers is
+ * used; responses which only have a validator are stored stale so that they are always revalidated.
+ */
+public class CachedResponse {
+    private static final Set<String> NOT_STORED_HEADERS = new HashSet<String>(Arrays.asList(
+            "connection", "keep-alive", "proxy-authenticate", "proxy-authorization", "te", "trailer",
+            "transfer-encoding", "upgrade", "content-length", "age"));
+
+    private final int statusCode;
+    private final String statusMessage;
+    private final List<Map.Entry<String, String>> headers;
+    private final Body body;
+    private final long responseMillis;
+    private final long initialAgeSeconds;
+    private final long freshnessLifetimeSeconds;
+    private final String etag;
+    private final String lastModified;
+
+    private CachedResponse(int statusCode, String statusMessage, List<Map.Entry<String, String>> headers, Body body, long responseMillis, long initialAgeSeconds) {
+        this.statusCode = statusCode;
+        this.statusMessage = statusMessage;
+        this.headers = Collections.unmodifiableList(headers);
+        this.body = body;
+        this.responseMillis = responseMillis;
+        this.etag = getHeader(headers, "ETag");
+        this.lastModified = getHeader(headers, "Last-Modified");
+        this.initialAgeSeconds = initialAgeSeconds;
+        this.freshnessLifetimeSeconds = freshnessLifetime(headers);
+    }
+
+    /**
+     * Creates a cached response returning null if the response is not allowed to be stored by a shared cache
+     */
+    public static CachedResponse create(int statusCode, String statusMessage, List<Map.Entry<String, String>> headers, byte[] body, long responseMillis) {
+        if (!isStorable(statusCode, headers)) {
+            return null;
+        }
+        List<Map.Entry<String, String>> storedHeaders = new ArrayList<Map.Entry<String, String>>(headers.size());
+        for (Map.Entry<String, String> header : headers) {
+            if (!NOT_STORED_HEADERS.contains(header.getKey().toLowerCase())) {
+                storedHeaders.add(new AbstractMap.SimpleImmutableEntry<String, String>(header.getKey(), header.getValue()));
+            }
+        }
+        CachedResponse answer = new CachedResponse(statusCode, statusMessage, storedHeaders, new Body(body), responseMillis, getAgeSeconds(headers));
+        if (answer.freshnessLifetimeSeconds <= 0 && !answer.hasValidators()) {
+            // there is no point storing a response we can neither reuse nor revalidate
+            return null;
+        }
+        return answer;
+    }
+
+    /**
+     * Returns true if the status code and headers of a response allow it to be stored by a shared cache
+     */
+    public static boolean isStorable(int statusCode, List<Map.Entry<String, String>> headers) {
+        if (statusCode != 200 && statusCode != 203 && statusCode != 301) {
+            return false;
+        }
+        CacheControl cacheControl = CacheControl.parse(getHeaders(headers, "Cache-Control"));
+        if (cacheControl.isNoStore() || cacheControl.isPrivate()) {
+            return false;
+        }
+        if (getHeader(headers, "Set-Cookie") != null) {
+            return false;
+        }
+        for (String vary : getVaryHeaderNames(headers)) {
+            if (vary.equals("*")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a copy of this response with the headers updated from a <code>304 Not Modified</code> response
+     * from the back end service; the body is shared with this response
+     */
+    public CachedResponse revalidate(List<Map.Entry<String, String>> notModifiedHeaders, long responseMillis) {
+        Set<String> updated = new HashSet<String>();
+        for (Map.Entry<String, String> header : notModifiedHeaders) {
+            updated.add(header.getKey().toLowerCase());
+        }
+        List<Map.Entry<String, String>> merged = new ArrayList<Map.Entry<String, String>>(headers.size());
+        for (Map.Entry<String, String> header : headers) {
+            if (!updated.contains(header.getKey().toLowerCase())) {
+                merged.add(header);
+            }
+        }
+        for (Map.Entry<String, String> header : notModifiedHeaders) {
+            if (!NOT_STORED_HEADERS.contains(header.getKey().toLowerCase())) {
+                merged.add(new AbstractMap.SimpleImmutableEntry<String, String>(header.getKey(), header.getValue()));
+            }
+        }
+        return new CachedResponse(statusCode, statusMessage, merged, body, responseMillis, getAgeSeconds(notModifiedHeaders));
+    }
+
+    public long getAgeSeconds(long now) {
+        return initialAgeSeconds + Math.max(now - responseMillis, 0) / 1000;
+    }
+
+    public boolean isFresh(long now) {
+        return getAgeSeconds(now) < freshnessLifetimeSeconds;
+    }
+
+    /**
+     * Returns true if this response is fresh enough for a request with the given <code>Cache-Control</code>
+     */
+    public boolean isFresh(long now, CacheControl requestCacheControl) {
+        if (requestCacheControl.isNoCache()) {
+            return false;
+        }
+        long maxAge = requestCacheControl.getSeconds("max-age");
+        if (maxAge >= 0 && getAgeSeconds(now) > maxAge) {
+            return false;
+        }
+        return isFresh(now);
+    }
+
+    public boolean hasValidators() {
+        return etag != null || lastModified != null;
+    }
+
+    /**
+     * Returns true if the value of an <code>If-None-Match</code> request header matches the entity tag of this response
+     */
+    public boolean matchesETag(String ifNoneMatch) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        String trimmed = ifNoneMatch.trim();
+        if (trimmed.equals("*")) {
+            return true;
+        }
+        String opaqueTag = weakless(etag);
+        for (String tag : trimmed.split(",")) {
+            if (weakless(tag.trim()).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getStatusMessage() {
+        return statusMessage;
+    }
+
+    public List<Map.Entry<String, String>> getHeaders() {
+        return headers;
+    }
+
+    public String getETag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public long getFreshnessLifetimeSeconds() {
+        return freshnessLifetimeSeconds;
+    }
+
+    public List<String> getVaryHeaderNames() {
+        return getVaryHeaderNames(headers);
+    }
+
+    /**
+     * Returns the body if it is held in memory or null if it has been spilled to disk
+     */
+    public byte[] getBody() {
+        return body.bytes;
+    }
+
+    /**
+     * Returns the file the body has been spilled to or null if it is held in memory
+     */
+    public File getFile() {
+        return body.file;
+    }
+
+    public int getBodyLength() {
+        return body.length;
+    }
+
+    /**
+     * Returns an estimate of the number of bytes used by this response
+     */
+    public long getSize() {
+        long size = body.length;
+        for (Map.Entry<String, String> header : headers) {
+            size += header.getKey().length() + header.getValue().length();
+        }
+        return size;
+    }
+
+    boolean isSpilled() {
+        return body.file != null;
+    }
+
+    boolean sharesBody(CachedResponse response) {
+        return response != null && response.body == body;
+    }
+
+    void spilled(File file) {
+        // lets make the file visible before dropping the bytes so the body is always available
+        body.file = file;
+        body.bytes = null;
+    }
+
+    @Override
+    public String toString() {
+        return "CachedResponse{" +
+                "statusCode=" + statusCode +
+                ", bodyLength=" + body.length +
+                ", etag='" + etag + '\'' +
+                ", freshnessLifetime=" + freshnessLifetimeSeconds +
+                ", spilled=" + isSpilled() +
+                '}';
+    }
+
+    protected static long freshnessLifetime(List<Map.Entry<String, String>> headers) {
+        CacheControl cacheControl = CacheControl.parse(getHeaders(headers, "Cache-Control"));
+        if (cacheControl.isNoCache()) {
+            return 0;
+        }
+        long sharedMaxAge = cacheControl.getSeconds("s-maxage");
+        if (sharedMaxAge >= 0) {
+            return sharedMaxAge;
+        }
+        long maxAge = cacheControl.getSeconds("max-age");
+        if (maxAge >= 0) {
+            return maxAge;
+        }
+        String expiresHeader = getHeader(headers, "Expires");
+        if (expiresHeader != null) {
+            long expires = CacheControl.parseDate(expiresHeader);
+            long date = CacheControl.parseDate(getHeader(headers, "Date"));
+            if (expires < 0 || date < 0) {
+                // an invalid Expires header means the response has already expired
+                return 0;
+            }
+            return Math.max(expires - date, 0) / 1000;
+        }
+        return 0;
+    }
+
+    protected static List<String> getVaryHeaderNames(List<Map.Entry<String, String>> headers) {
+        List<String> answer = new ArrayList<String>();
+        for (String vary : getHeaders(headers, "Vary")) {
+            for (String name : vary.split(",")) {
+                name = name.trim();
+                if (name.length() > 0) {
+                    answer.add(name.toLowerCase());
+                }
+            }
+        }
+        return answer;
+    }
+
+    protected static String getHeader(List<Map.Entry<String, String>> headers, String name) {
+        for (Map.Entry<String, String> header : headers) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    protected static List<String> getHeaders(List<Map.Entry<String, String>> headers, String name) {
+        List<String> answer = new ArrayList<String>();
+        for (Map.Entry<String, String> header : headers) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                answer.add(header.getValue());
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the age the response already had when we received it from the <code>Age</code> header
+     */
+    private static long getAgeSeconds(List<Map.Entry<String, String>> headers) {
+        String value = getHeader(headers, "Age");
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(Long.parseLong(value.trim()), 0);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String weakless(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    /**
+     * The body of a response which is shared by the revalidated copies of a response
+     */
+    private static class Body {
+        private final int length;
+        private volatile byte[] bytes;
+        private volatile File file;
+
+        private Body(byte[] bytes) {
+            this.bytes = bytes;
+            this.length = bytes.length;
+        }
+    }
+}
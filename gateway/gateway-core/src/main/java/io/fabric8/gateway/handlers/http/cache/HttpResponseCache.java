@@ -0,0 +1,729 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.MultiMap;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpClientRequest;
+import org.vertx.java.core.http.HttpClientResponse;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.http.HttpServerResponse;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A shared cache of the responses of the back end services of a HTTP mapping rule which honours the
+ * <code>Cache-Control</code>, <code>Expires</code>, <code>ETag</code>, <code>Last-Modified</code> and
+ * <code>Vary</code> headers.
+ * <p/>
+ * Responses are held in memory in least recently used order up to {@link #getMaxMemorySize()} bytes. If a
+ * {@link #getSpillDirectory()} is configured then the least recently used responses are written to disk rather
+ * than discarded, up to {@link #getMaxDiskSize()} bytes, and are served from there using <code>sendFile</code>.
+ * Responses larger than {@link #getMaxEntrySize()} are never cached.
+ * <p/>
+ * Concurrent misses for the same response are coalesced so only one request is proxied to the back end service;
+ * the other requests are retried once it completes, when they are typically served from the cache. A fetch which
+ * has not completed within {@link #getCoalesceTimeout()} milliseconds is taken over by the next request.
+ */
+public class HttpResponseCache implements HttpResponseCacheMBean {
+    private static final transient Logger LOG = LoggerFactory.getLogger(HttpResponseCache.class);
+
+    public static final long DEFAULT_MAX_MEMORY_SIZE = 64L * 1024 * 1024;
+    public static final int DEFAULT_MAX_ENTRY_SIZE = 1024 * 1024;
+    public static final long DEFAULT_MAX_DISK_SIZE = 1024L * 1024 * 1024;
+    public static final long DEFAULT_COALESCE_TIMEOUT = 30 * 1000L;
+
+    private static final int MAX_VARY_ENTRIES = 16384;
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<String, CachedResponse> memory = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true);
+    private final LinkedHashMap<String, CachedResponse> disk = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true);
+    private final LinkedHashMap<String, List<String>> varyHeaderNames = new LinkedHashMap<String, List<String>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+            return size() > MAX_VARY_ENTRIES;
+        }
+    };
+    private final Map<String, Fetch> inflight = new HashMap<String, Fetch>();
+    private long memorySize;
+    private long diskSize;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong coalescedRequests = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong spills = new AtomicLong();
+    private final AtomicLong spillCounter = new AtomicLong();
+
+    private long maxMemorySize = DEFAULT_MAX_MEMORY_SIZE;
+    private int maxEntrySize = DEFAULT_MAX_ENTRY_SIZE;
+    private long maxDiskSize = DEFAULT_MAX_DISK_SIZE;
+    private long coalesceTimeout = DEFAULT_COALESCE_TIMEOUT;
+    private File spillDirectory;
+    private ExecutorService spillExecutor;
+    private ObjectName objectName;
+
+    @Override
+    public String toString() {
+        return "HttpResponseCache{" +
+                "maxMemorySize=" + maxMemorySize +
+                ", maxEntrySize=" + maxEntrySize +
+                ", spillDirectory=" + spillDirectory +
+                ", maxDiskSize=" + maxDiskSize +
+                '}';
+    }
+
+    public void start() {
+        if (spillDirectory != null) {
+            if (!spillDirectory.isDirectory() && !spillDirectory.mkdirs()) {
+                LOG.warn("Could not create the response cache spill directory " + spillDirectory + " so responses will not be spilled to disk");
+                spillDirectory = null;
+                return;
+            }
+            spillExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "gateway-response-cache-spill");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    public void stop() {
+        clear();
+        ExecutorService executor = spillExecutor;
+        if (executor != null) {
+            executor.shutdown();
+            spillExecutor = null;
+        }
+    }
+
+    // Request handling
+    //-------------------------------------------------------------------------
+
+    /**
+     * Returns the key of the cached response for the given request or null if the request can not be served
+     * from the cache such as requests which are not a <code>GET</code> or which have a body or credentials
+     */
+    public String getCacheKey(HttpServerRequest request) {
+        if (!"GET".equals(request.method())) {
+            return null;
+        }
+        MultiMap headers = request.headers();
+        if (headers.contains("Authorization") || headers.contains("Range") || headers.contains("Transfer-Encoding")) {
+            return null;
+        }
+        String contentLength = headers.get("Content-Length");
+        if (contentLength != null && !contentLength.trim().equals("0")) {
+            return null;
+        }
+        if (CacheControl.parse(headers.getAll("Cache-Control")).isNoStore()) {
+            return null;
+        }
+        String baseKey = getBaseKey(request);
+        List<String> vary;
+        synchronized (lock) {
+            vary = varyHeaderNames.get(baseKey);
+        }
+        return getVariantKey(baseKey, vary, headers);
+    }
+
+    /**
+     * Returns the fresh response for the given key or null if there is no response or it needs to be
+     * revalidated with the back end service
+     */
+    public CachedResponse getFresh(String key, HttpServerRequest request) {
+        CachedResponse cached = get(key);
+        if (cached != null && cached.isFresh(System.currentTimeMillis(), getRequestCacheControl(request))) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Returns the stale response which can be revalidated with the back end service for the given request
+     * or null if there is none or the request already has its own validators
+     */
+    public CachedResponse getRevalidatable(String key, HttpServerRequest request) {
+        MultiMap headers = request.headers();
+        if (headers.contains("If-None-Match") || headers.contains("If-Modified-Since")) {
+            return null;
+        }
+        CachedResponse cached = get(key);
+        return cached != null && cached.hasValidators() ? cached : null;
+    }
+
+    /**
+     * Adds the validators of the stale response to the request to the back end service so it can reply with
+     * <code>304 Not Modified</code> rather than the whole response
+     */
+    public void addValidators(CachedResponse stale, HttpClientRequest clientRequest) {
+        if (stale.getETag() != null) {
+            clientRequest.headers().set("If-None-Match", stale.getETag());
+        }
+        if (stale.getLastModified() != null) {
+            clientRequest.headers().set("If-Modified-Since", stale.getLastModified());
+        }
+    }
+
+    /**
+     * Updates the stale response with the headers of the <code>304 Not Modified</code> response from the back end
+     * service, returning the updated response
+     */
+    public CachedResponse revalidated(String key, CachedResponse stale, MultiMap notModifiedHeaders) {
+        revalidations.incrementAndGet();
+        CachedResponse answer = stale.revalidate(notModifiedHeaders.entries(), System.currentTimeMillis());
+        synchronized (lock) {
+            if (memory.get(key) == stale) {
+                memory.put(key, answer);
+                memorySize += answer.getSize() - stale.getSize();
+            } else if (disk.get(key) == stale) {
+                disk.put(key, answer);
+                diskSize += answer.getSize() - stale.getSize();
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns true if another request is already fetching the response for the key, in which case the retry is
+     * invoked once it completes; otherwise the caller must fetch it and invoke {@link #fetchCompleted(String)}.
+     * <p/>
+     * The caller should also invoke the retry itself if it is still waiting after {@link #getCoalesceTimeout()}
+     * so a request is never blocked by a fetch which does not complete; the retry must then ignore the second call.
+     */
+    public boolean coalesce(String key, Runnable retry) {
+        long now = System.currentTimeMillis();
+        synchronized (inflight) {
+            Fetch fetch = inflight.get(key);
+            if (fetch == null) {
+                inflight.put(key, new Fetch(now));
+                return false;
+            }
+            if (now - fetch.started > coalesceTimeout) {
+                // the fetch is stuck so this request takes it over, keeping the requests still waiting for it
+                LOG.warn("Fetching the response " + key + " did not complete within " + coalesceTimeout + " ms, fetching it again");
+                fetch.started = now;
+                return false;
+            }
+            fetch.waiters.add(retry);
+        }
+        // the request is counted again when it is retried
+        misses.decrementAndGet();
+        coalescedRequests.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Retries the requests which were waiting for the response for the key
+     */
+    public void fetchCompleted(String key) {
+        Fetch fetch;
+        synchronized (inflight) {
+            fetch = inflight.remove(key);
+        }
+        if (fetch != null) {
+            for (Runnable waiter : fetch.waiters) {
+                try {
+                    waiter.run();
+                } catch (Throwable e) {
+                    LOG.warn("Failed to retry request waiting for cached response " + key + ". " + e, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a recorder for the body of the response from the back end service or null if the response
+     * can not be stored
+     */
+    public Recorder record(String key, HttpServerRequest request, HttpClientResponse clientResponse) {
+        List<Map.Entry<String, String>> headers = clientResponse.headers().entries();
+        if (!CachedResponse.isStorable(clientResponse.statusCode(), headers)) {
+            return null;
+        }
+        String contentLength = clientResponse.headers().get("Content-Length");
+        if (contentLength != null) {
+            try {
+                if (Long.parseLong(contentLength.trim()) > maxEntrySize) {
+                    return null;
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return new Recorder(request, clientResponse.statusCode(), clientResponse.statusMessage(), headers);
+    }
+
+    /**
+     * Writes the cached response to the client replying with <code>304 Not Modified</code> if the request has
+     * a matching <code>If-None-Match</code> header
+     */
+    public void serve(CachedResponse cached, HttpServerRequest request) {
+        HttpServerResponse response = request.response();
+        for (Map.Entry<String, String> header : cached.getHeaders()) {
+            response.headers().add(header.getKey(), header.getValue());
+        }
+        response.headers().set("Age", Long.toString(cached.getAgeSeconds(System.currentTimeMillis())));
+        if (cached.matchesETag(request.headers().get("If-None-Match"))) {
+            response.setStatusCode(304);
+            response.end();
+            return;
+        }
+        response.setStatusCode(cached.getStatusCode());
+        if (cached.getStatusMessage() != null) {
+            response.setStatusMessage(cached.getStatusMessage());
+        }
+        byte[] body = cached.getBody();
+        if (body != null) {
+            response.headers().set("Content-Length", Integer.toString(body.length));
+            response.end(new Buffer(body));
+        } else {
+            response.sendFile(cached.getFile().getPath());
+        }
+    }
+
+    // Storage
+    //-------------------------------------------------------------------------
+
+    public CachedResponse get(String key) {
+        synchronized (lock) {
+            CachedResponse answer = memory.get(key);
+            if (answer == null) {
+                answer = disk.get(key);
+            }
+            return answer;
+        }
+    }
+
+    /**
+     * Stores the response evicting or spilling the least recently used responses to stay within the size limits
+     */
+    public void put(String key, CachedResponse response) {
+        if (response.getBodyLength() > maxEntrySize) {
+            return;
+        }
+        stores.incrementAndGet();
+        synchronized (lock) {
+            removeInternal(key, response);
+            memory.put(key, response);
+            memorySize += response.getSize();
+            evict();
+        }
+    }
+
+    public void remove(String key) {
+        synchronized (lock) {
+            removeInternal(key, null);
+        }
+    }
+
+    private void removeInternal(String key, CachedResponse replacement) {
+        CachedResponse old = memory.remove(key);
+        if (old != null) {
+            memorySize -= old.getSize();
+        }
+        CachedResponse oldSpilled = disk.remove(key);
+        if (oldSpilled != null) {
+            diskSize -= oldSpilled.getSize();
+            if (!oldSpilled.sharesBody(replacement)) {
+                deleteSpilledFile(oldSpilled);
+            }
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, CachedResponse>> iter = memory.entrySet().iterator();
+        while (memorySize > maxMemorySize && iter.hasNext()) {
+            Map.Entry<String, CachedResponse> eldest = iter.next();
+            iter.remove();
+            CachedResponse response = eldest.getValue();
+            memorySize -= response.getSize();
+            if (spillExecutor != null) {
+                disk.put(eldest.getKey(), response);
+                diskSize += response.getSize();
+                spill(response);
+            } else {
+                evictions.incrementAndGet();
+            }
+        }
+        iter = disk.entrySet().iterator();
+        while (diskSize > maxDiskSize && iter.hasNext()) {
+            CachedResponse response = iter.next().getValue();
+            iter.remove();
+            diskSize -= response.getSize();
+            evictions.incrementAndGet();
+            deleteSpilledFile(response);
+        }
+    }
+
+    private void spill(final CachedResponse response) {
+        final byte[] body = response.getBody();
+        if (body == null) {
+            return;
+        }
+        spills.incrementAndGet();
+        final File file = new File(spillDirectory, "response-" + spillCounter.incrementAndGet() + ".cache");
+        spillExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    FileOutputStream out = new FileOutputStream(file);
+                    try {
+                        out.write(body);
+                    } finally {
+                        out.close();
+                    }
+                    response.spilled(file);
+                } catch (IOException e) {
+                    // the response stays in memory until it is evicted from the disk
+                    LOG.warn("Failed to spill cached response to " + file + ". " + e, e);
+                    file.delete();
+                }
+            }
+        });
+    }
+
+    private void deleteSpilledFile(final CachedResponse response) {
+        ExecutorService executor = spillExecutor;
+        if (executor == null) {
+            return;
+        }
+        // the files are deleted on the spill thread so that any pending write of the file has completed
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File file = response.getFile();
+                if (file != null && !file.delete()) {
+                    LOG.debug("Failed to delete spilled cached response " + file);
+                }
+            }
+        });
+    }
+
+    protected String getBaseKey(HttpServerRequest request) {
+        String host = request.headers().get("Host");
+        return (host != null ? host : "") + request.uri();
+    }
+
+    protected static String getVariantKey(String baseKey, List<String> varyHeaderNames, MultiMap headers) {
+        if (varyHeaderNames == null || varyHeaderNames.isEmpty()) {
+            return baseKey;
+        }
+        StringBuilder builder = new StringBuilder(baseKey);
+        for (String name : varyHeaderNames) {
+            builder.append('\n').append(name).append(':');
+            List<String> values = headers.getAll(name);
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(values.get(i));
+            }
+        }
+        return builder.toString();
+    }
+
+    protected static CacheControl getRequestCacheControl(HttpServerRequest request) {
+        MultiMap headers = request.headers();
+        List<String> values = headers.getAll("Cache-Control");
+        String pragma = headers.get("Pragma");
+        if (pragma != null && pragma.toLowerCase().contains("no-cache")) {
+            values = new ArrayList<String>(values);
+            values.add("no-cache");
+        }
+        return CacheControl.parse(values);
+    }
+
+    /**
+     * A response which is being fetched from the back end service and the requests waiting for it
+     */
+    private static class Fetch {
+        private final List<Runnable> waiters = new ArrayList<Runnable>(2);
+        private long started;
+
+        private Fetch(long started) {
+            this.started = started;
+        }
+    }
+
+    /**
+     * Records the body of a response from the back end service as it is proxied so it can be stored once
+     * the response is complete
+     */
+    public class Recorder {
+        private final HttpServerRequest request;
+        private final int statusCode;
+        private final String statusMessage;
+        private final List<Map.Entry<String, String>> headers;
+        private Buffer body = new Buffer();
+
+        private Recorder(HttpServerRequest request, int statusCode, String statusMessage, List<Map.Entry<String, String>> headers) {
+            this.request = request;
+            this.statusCode = statusCode;
+            this.statusMessage = statusMessage;
+            this.headers = headers;
+        }
+
+        /**
+         * Appends the data which must be invoked before the data is written to the client
+         */
+        public void append(Buffer data) {
+            if (body != null) {
+                if (body.length() + data.length() > maxEntrySize) {
+                    body = null;
+                } else {
+                    body.appendBuffer(data);
+                }
+            }
+        }
+
+        /**
+         * Stores the response if it was not too large
+         */
+        public void complete() {
+            if (body == null) {
+                return;
+            }
+            CachedResponse response = CachedResponse.create(statusCode, statusMessage, headers, body.getBytes(), System.currentTimeMillis());
+            body = null;
+            if (response != null) {
+                String baseKey = getBaseKey(request);
+                List<String> vary = response.getVaryHeaderNames();
+                synchronized (lock) {
+                    if (vary.isEmpty()) {
+                        varyHeaderNames.remove(baseKey);
+                    } else {
+                        varyHeaderNames.put(baseKey, vary);
+                    }
+                }
+                put(getVariantKey(baseKey, vary, request.headers()), response);
+            }
+        }
+    }
+
+    // JMX
+    //-------------------------------------------------------------------------
+
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        if (objectName == null) {
+            objectName = new ObjectName("io.fabric8.gateway:type=HttpResponseCache");
+        }
+        return objectName;
+    }
+
+    public void setObjectName(ObjectName objectName) {
+        this.objectName = objectName;
+    }
+
+    public void registerMBeanServer(MBeanServer mbeanServer) {
+        try {
+            ObjectName name = getObjectName();
+            if (!mbeanServer.isRegistered(name)) {
+                mbeanServer.registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            LOG.warn("An error occured during mbean server registration: " + e, e);
+        }
+    }
+
+    public void unregisterMBeanServer(MBeanServer mbeanServer) {
+        if (mbeanServer != null) {
+            try {
+                ObjectName name = getObjectName();
+                if (mbeanServer.isRegistered(name)) {
+                    mbeanServer.unregisterMBean(name);
+                }
+            } catch (Exception e) {
+                LOG.warn("An error occured during mbean server unregistration: " + e, e);
+            }
+        }
+    }
+
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total > 0 ? (double) hitCount / total : 0.0;
+    }
+
+    @Override
+    public long getRevalidations() {
+        return revalidations.get();
+    }
+
+    @Override
+    public long getCoalescedRequests() {
+        return coalescedRequests.get();
+    }
+
+    @Override
+    public long getStores() {
+        return stores.get();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public long getSpills() {
+        return spills.get();
+    }
+
+    @Override
+    public int getMemoryEntryCount() {
+        synchronized (lock) {
+            return memory.size();
+        }
+    }
+
+    @Override
+    public int getDiskEntryCount() {
+        synchronized (lock) {
+            return disk.size();
+        }
+    }
+
+    @Override
+    public long getMemorySize() {
+        synchronized (lock) {
+            return memorySize;
+        }
+    }
+
+    @Override
+    public long getDiskSize() {
+        synchronized (lock) {
+            return diskSize;
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (lock) {
+            for (CachedResponse response : disk.values()) {
+                deleteSpilledFile(response);
+            }
+            memory.clear();
+            disk.clear();
+            varyHeaderNames.clear();
+            memorySize = 0;
+            diskSize = 0;
+        }
+    }
+
+    @Override
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        revalidations.set(0);
+        coalescedRequests.set(0);
+        stores.set(0);
+        evictions.set(0);
+        spills.set(0);
+    }
+
+    // Properties
+    //-------------------------------------------------------------------------
+
+    @Override
+    public long getMaxMemorySize() {
+        return maxMemorySize;
+    }
+
+    public void setMaxMemorySize(long maxMemorySize) {
+        this.maxMemorySize = maxMemorySize;
+    }
+
+    @Override
+    public int getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    public void setMaxEntrySize(int maxEntrySize) {
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    @Override
+    public long getCoalesceTimeout() {
+        return coalesceTimeout;
+    }
+
+    /**
+     * Sets the number of milliseconds requests wait for a concurrent request for the same response before they
+     * are proxied to the back end service themselves
+     */
+    public void setCoalesceTimeout(long coalesceTimeout) {
+        this.coalesceTimeout = coalesceTimeout;
+    }
+
+    @Override
+    public long getMaxDiskSize() {
+        return maxDiskSize;
+    }
+
+    public void setMaxDiskSize(long maxDiskSize) {
+        this.maxDiskSize = maxDiskSize;
+    }
+
+    @Override
+    public String getSpillDirectory() {
+        return spillDirectory != null ? spillDirectory.getPath() : null;
+    }
+
+    /**
+     * Sets the directory the least recently used responses are written to rather than being discarded
+     * when the memory is full; responses are not spilled to disk if this is not set
+     */
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http.cache;
+
+/**
+ * JMX MBean API for the response cache of a HTTP mapping rule
+ */
+public interface HttpResponseCacheMBean {
+
+    /**
+     * Returns the number of requests served from the cache without contacting the back end service
+     */
+    long getHits();
+
+    /**
+     * Returns the number of cacheable requests which had to be proxied to the back end service
+     */
+    long getMisses();
+
+    double getHitRatio();
+
+    /**
+     * Returns the number of stale responses which the back end service confirmed were not modified
+     */
+    long getRevalidations();
+
+    /**
+     * Returns the number of requests which waited for a concurrent request for the same response
+     * rather than being proxied to the back end service
+     */
+    long getCoalescedRequests();
+
+    long getStores();
+
+    long getEvictions();
+
+    long getSpills();
+
+    int getMemoryEntryCount();
+
+    int getDiskEntryCount();
+
+    long getMemorySize();
+
+    long getDiskSize();
+
+    long getMaxMemorySize();
+
+    long getMaxDiskSize();
+
+    int getMaxEntrySize();
+
+    /**
+     * Returns the number of milliseconds requests wait for a concurrent request for the same response
+     */
+    long getCoalesceTimeout();
+
+    String getSpillDirectory();
+
+    /**
+     * Removes all the cached responses
+     */
+    void clear();
+
+    void resetStatistics();
+}
@@ -0,0 +1,97 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http.policy;
+
+import io.fabric8.gateway.handlers.http.ProxyMappingDetails;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.MultiMap;
+import org.vertx.java.core.http.HttpClientResponse;
+
+/**
+ * Rewrites the URLs of the back end service in the body of text based HTTP responses such as HTML, XML and JSON
+ * to the URL of the front end service on the gateway.
+ * <p/>
+ * The body is rewritten as it streams through the gateway using a {@link StreamingUriRewriter} so the response
+ * is never buffered. Compressed responses and responses which are not text are passed through untouched.
+ * As rewriting changes the length of the body the <code>Content-Length</code> header is removed so that the
+ * response is sent using chunked encoding.
+ * <p>
+ * Similar to the [Substitute directive in mod_substitute](http://httpd.apache.org/docs/current/mod/mod_substitute.html)
+ */
+public class ReverseUriBodyPolicy implements Handler<HttpClientResponse> {
+    private static final transient Logger LOG = LoggerFactory.getLogger(ReverseUriBodyPolicy.class);
+
+    private static final String[] REWRITE_CONTENT_TYPES = {
+            "text/", "application/json", "application/xml", "application/xhtml+xml",
+            "application/javascript", "application/x-javascript"
+    };
+
+    private final Handler<HttpClientResponse> delegate;
+    private final ProxyMappingDetails proxyMappingDetails;
+
+    public ReverseUriBodyPolicy(Handler<HttpClientResponse> delegate, ProxyMappingDetails proxyMappingDetails) {
+        this.delegate = delegate;
+        this.proxyMappingDetails = proxyMappingDetails;
+    }
+
+    @Override
+    public void handle(HttpClientResponse clientResponse) {
+        MultiMap headers = clientResponse.headers();
+        String fromUrl = removeTrailingSlash(proxyMappingDetails.getProxyServiceUrl());
+        String toUrl = removeTrailingSlash(proxyMappingDetails.getReverseServiceUrl());
+        if (fromUrl.length() > 0 && !fromUrl.equals(toUrl)
+                && isRewritableContentType(headers.get("Content-Type")) && !isEncoded(headers.get("Content-Encoding"))) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Rewriting response body from: " + fromUrl + " to: " + toUrl);
+            }
+            headers.remove("Content-Length");
+            clientResponse = new RewritingHttpClientResponse(clientResponse, new StreamingUriRewriter(fromUrl, toUrl));
+        }
+        delegate.handle(clientResponse);
+    }
+
+    /**
+     * Returns true if the content type is text based and uses an ASCII compatible character set
+     */
+    public static boolean isRewritableContentType(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String lower = contentType.toLowerCase();
+        if (lower.contains("utf-16") || lower.contains("utf-32")) {
+            return false;
+        }
+        for (String type : REWRITE_CONTENT_TYPES) {
+            if (lower.startsWith(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected static boolean isEncoded(String contentEncoding) {
+        return contentEncoding != null && contentEncoding.length() > 0 && !"identity".equalsIgnoreCase(contentEncoding);
+    }
+
+    private static String removeTrailingSlash(String url) {
+        if (url == null) {
+            return "";
+        }
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
@@ -51,8 +51,6 @@ public class ReverseUriPolicy implements Handler<HttpClientResponse> {
 
     @Override
     public void handle(HttpClientResponse clientResponse) {
-        delegate.handle(clientResponse);
-
         MultiMap headers = clientResponse.headers();
         for (String headerName : rewriteHeaders) {
             List<String> headerValues = headers.getAll(headerName);
@@ -64,10 +62,13 @@ public class ReverseUriPolicy implements Handler<HttpClientResponse> {
                     if (headerValue != null && headerValue.length() > 0) {
                         newValue = proxyMappingDetails.rewriteBackendUrl(headerValue);
                     }
+                    newHeaders.add(newValue);
                 }
                 LOG.info("Rewriting header " + headerName + " from: " + headerValues + " to: " + newHeaders);
                 headers.set(headerName, newHeaders);
             }
         }
+        // lets rewrite the headers before the response is copied to the front end
+        delegate.handle(clientResponse);
     }
 }
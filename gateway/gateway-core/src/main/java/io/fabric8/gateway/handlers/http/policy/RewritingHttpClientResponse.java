@@ -0,0 +1,142 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http.policy;
+
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.MultiMap;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpClientResponse;
+import org.vertx.java.core.net.NetSocket;
+
+import java.util.List;
+
+/**
+ * An {@link HttpClientResponse} which passes the body of the underlying response through a
+ * {@link StreamingUriRewriter} as it is read.
+ */
+public class RewritingHttpClientResponse implements HttpClientResponse {
+    private final HttpClientResponse delegate;
+    private final StreamingUriRewriter rewriter;
+    private Handler<Buffer> dataHandler;
+
+    public RewritingHttpClientResponse(HttpClientResponse delegate, StreamingUriRewriter rewriter) {
+        this.delegate = delegate;
+        this.rewriter = rewriter;
+    }
+
+    @Override
+    public int statusCode() {
+        return delegate.statusCode();
+    }
+
+    @Override
+    public String statusMessage() {
+        return delegate.statusMessage();
+    }
+
+    @Override
+    public MultiMap headers() {
+        return delegate.headers();
+    }
+
+    @Override
+    public MultiMap trailers() {
+        return delegate.trailers();
+    }
+
+    @Override
+    public List<String> cookies() {
+        return delegate.cookies();
+    }
+
+    public NetSocket netSocket() {
+        return delegate.netSocket();
+    }
+
+    @Override
+    public HttpClientResponse bodyHandler(final Handler<Buffer> bodyHandler) {
+        final Buffer body = new Buffer();
+        dataHandler(new Handler<Buffer>() {
+            @Override
+            public void handle(Buffer data) {
+                body.appendBuffer(data);
+            }
+        });
+        endHandler(new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                bodyHandler.handle(body);
+            }
+        });
+        return this;
+    }
+
+    @Override
+    public HttpClientResponse dataHandler(final Handler<Buffer> handler) {
+        this.dataHandler = handler;
+        if (handler == null) {
+            delegate.dataHandler(null);
+        } else {
+            delegate.dataHandler(new Handler<Buffer>() {
+                @Override
+                public void handle(Buffer data) {
+                    Buffer rewritten = rewriter.rewrite(data);
+                    if (rewritten.length() > 0) {
+                        handler.handle(rewritten);
+                    }
+                }
+            });
+        }
+        return this;
+    }
+
+    @Override
+    public HttpClientResponse endHandler(final Handler<Void> handler) {
+        delegate.endHandler(new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                // lets write out anything held back waiting for the rest of a URL
+                Buffer remaining = rewriter.flush();
+                Handler<Buffer> data = dataHandler;
+                if (remaining.length() > 0 && data != null) {
+                    data.handle(remaining);
+                }
+                if (handler != null) {
+                    handler.handle(event);
+                }
+            }
+        });
+        return this;
+    }
+
+    @Override
+    public HttpClientResponse pause() {
+        delegate.pause();
+        return this;
+    }
+
+    @Override
+    public HttpClientResponse resume() {
+        delegate.resume();
+        return this;
+    }
+
+    @Override
+    public HttpClientResponse exceptionHandler(Handler<Throwable> handler) {
+        delegate.exceptionHandler(handler);
+        return this;
+    }
+}
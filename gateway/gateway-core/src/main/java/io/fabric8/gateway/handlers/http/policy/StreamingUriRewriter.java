@@ -0,0 +1,141 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http.policy;
+
+import org.vertx.java.core.buffer.Buffer;
+
+import java.nio.charset.Charset;
+
+/**
+ * Replaces a URL with another in a stream of {@link Buffer} chunks without buffering the whole stream.
+ * <p/>
+ * A URL may be split across chunks so the bytes at the end of a chunk which could be the start of the URL
+ * are held back until the next chunk arrives; this look behind window is always shorter than the URL.
+ * Chunks which contain no part of the URL are passed through as is without being copied.
+ * <p/>
+ * A rewriter keeps the state of a single stream so a new one is required for each response.
+ */
+public class StreamingUriRewriter {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final byte[] EMPTY = new byte[0];
+
+    private final byte[] pattern;
+    private final byte[] replacement;
+    private byte[] pending = EMPTY;
+
+    public StreamingUriRewriter(String fromUrl, String toUrl) {
+        this(fromUrl.getBytes(ASCII), toUrl.getBytes(ASCII));
+    }
+
+    public StreamingUriRewriter(byte[] pattern, byte[] replacement) {
+        if (pattern.length == 0) {
+            throw new IllegalArgumentException("The URL to replace must not be empty");
+        }
+        this.pattern = pattern;
+        this.replacement = replacement;
+    }
+
+    /**
+     * Returns the rewritten data which can be written out now which may be empty if the
+     * whole chunk could be the start of the URL
+     */
+    public Buffer rewrite(Buffer chunk) {
+        int pendingLength = pending.length;
+        int length = pendingLength + chunk.length();
+        Buffer answer = null;
+        int copyFrom = 0;
+        int tailStart = length;
+        byte first = pattern[0];
+        int i = 0;
+        while (i < length) {
+            if (byteAt(chunk, i) == first) {
+                int matched = 1;
+                while (matched < pattern.length && i + matched < length && byteAt(chunk, i + matched) == pattern[matched]) {
+                    matched++;
+                }
+                if (matched == pattern.length) {
+                    if (answer == null) {
+                        answer = new Buffer(length + replacement.length);
+                    }
+                    append(answer, chunk, copyFrom, i);
+                    answer.appendBytes(replacement);
+                    i += matched;
+                    copyFrom = i;
+                    continue;
+                }
+                if (i + matched == length) {
+                    // we may have the start of the URL so lets wait for the next chunk
+                    tailStart = i;
+                    break;
+                }
+            }
+            i++;
+        }
+        if (answer == null && pendingLength == 0 && tailStart == length) {
+            return chunk;
+        }
+        if (answer == null) {
+            answer = new Buffer(Math.max(tailStart - copyFrom, 0));
+        }
+        append(answer, chunk, copyFrom, tailStart);
+        pending = copy(chunk, tailStart, length);
+        return answer;
+    }
+
+    /**
+     * Returns any data held back at the end of the stream
+     */
+    public Buffer flush() {
+        Buffer answer = new Buffer(pending);
+        pending = EMPTY;
+        return answer;
+    }
+
+    /**
+     * Returns the number of bytes currently held back waiting for the next chunk
+     */
+    public int getPendingLength() {
+        return pending.length;
+    }
+
+    private byte byteAt(Buffer chunk, int index) {
+        int pendingLength = pending.length;
+        return index < pendingLength ? pending[index] : chunk.getByte(index - pendingLength);
+    }
+
+    private void append(Buffer answer, Buffer chunk, int from, int to) {
+        int pendingLength = pending.length;
+        if (from < pendingLength) {
+            int end = Math.min(to, pendingLength);
+            answer.appendBytes(pending, from, end - from);
+            from = end;
+        }
+        if (from < to) {
+            answer.appendBytes(chunk.getBytes(from - pendingLength, to - pendingLength));
+        }
+    }
+
+    private byte[] copy(Buffer chunk, int from, int to) {
+        if (from >= to) {
+            return EMPTY;
+        }
+        byte[] answer = new byte[to - from];
+        for (int i = from; i < to; i++) {
+            answer[i - from] = byteAt(chunk, i);
+        }
+        return answer;
+    }
+}
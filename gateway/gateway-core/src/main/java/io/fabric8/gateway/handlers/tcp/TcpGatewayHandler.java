@@ -18,6 +18,7 @@ package io.fabric8.gateway.handlers.tcp;
 import io.fabric8.common.util.Objects;
 import io.fabric8.common.util.Strings;
 import io.fabric8.gateway.ServiceDetails;
+import io.fabric8.gateway.admission.AdmissionController;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
 import io.fabric8.gateway.ServiceMap;
 import org.slf4j.Logger;
@@ -33,6 +34,7 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A TCP gateway implementation
@@ -45,6 +47,7 @@ public class TcpGatewayHandler implements Handler<NetSocket> {
     private final String protocol;
     private final LoadBalancer<String> pathLoadBalancer;
     private final LoadBalancer<ServiceDetails> serviceLoadBalancer;
+    private AdmissionController admissionController;
 
     public TcpGatewayHandler(Vertx vertx, ServiceMap serviceMap, String protocol, LoadBalancer<String> pathLoadBalancer, LoadBalancer<ServiceDetails> serviceLoadBalancer) {
         this.vertx = vertx;
@@ -56,6 +59,14 @@ public class TcpGatewayHandler implements Handler<NetSocket> {
 
     @Override
     public void handle(final NetSocket socket) {
+        if (admissionController != null) {
+            String key = admissionController.getRateLimitKey(null, null, socket.remoteAddress());
+            if (!admissionController.tryAdmit(key)) {
+                LOG.info("Rejecting " + socket.remoteAddress() + " as it exceeded the connection rate limit of " + key);
+                socket.close();
+                return;
+            }
+        }
         NetClient client = null;
         List<String> paths = serviceMap.getPaths();
         TcpClientRequestFacade requestFacade = new TcpClientRequestFacade(socket);
@@ -74,9 +85,37 @@ public class TcpGatewayHandler implements Handler<NetSocket> {
                                 //URL url = new URL(urlString);
                                 String urlProtocol = uri.getScheme();
                                 if (Objects.equal(protocol, urlProtocol)) {
+                                    final String backend = uri.getHost() + ":" + uri.getPort();
+                                    if (admissionController != null && !admissionController.tryAcquireBackend(backend)) {
+                                        LOG.info("Rejecting " + socket.remoteAddress() + " as " + backend + " is at its maximum connections");
+                                        break;
+                                    }
                                     Handler<AsyncResult<NetSocket>> handler = new Handler<AsyncResult<NetSocket>>() {
                                         public void handle(final AsyncResult<NetSocket> asyncSocket) {
-                                            NetSocket clientSocket = asyncSocket.result();
+                                            if (asyncSocket.failed()) {
+                                                LOG.info("Failed to connect " + socket.remoteAddress() + " to " + backend + ". " + asyncSocket.cause());
+                                                if (admissionController != null) {
+                                                    admissionController.releaseBackend(backend);
+                                                }
+                                                socket.close();
+                                                return;
+                                            }
+                                            final NetSocket clientSocket = asyncSocket.result();
+                                            final AtomicBoolean released = new AtomicBoolean();
+                                            Handler<Void> closeHandler = new Handler<Void>() {
+                                                @Override
+                                                public void handle(Void event) {
+                                                    if (released.compareAndSet(false, true)) {
+                                                        socket.close();
+                                                        clientSocket.close();
+                                                        if (admissionController != null) {
+                                                            admissionController.releaseBackend(backend);
+                                                        }
+                                                    }
+                                                }
+                                            };
+                                            clientSocket.closeHandler(closeHandler);
+                                            socket.closeHandler(closeHandler);
                                             Pump.createPump(clientSocket, socket).start();
                                             Pump.createPump(socket, clientSocket).start();
                                         }
@@ -101,6 +140,18 @@ public class TcpGatewayHandler implements Handler<NetSocket> {
         }
     }
 
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    /**
+     * Sets the admission control which rate limits new connections per remote address and limits the
+     * concurrent connections to each backend
+     */
+    public void setAdmissionController(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
     /**
      * Creates a new client for the given URL and handler
      */
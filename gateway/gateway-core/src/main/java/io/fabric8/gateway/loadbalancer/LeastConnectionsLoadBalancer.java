@@ -0,0 +1,53 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses the service with the fewest active requests or connections; ties are broken in a round robin fashion
+ */
+public class LeastConnectionsLoadBalancer<T> extends LoadAwareLoadBalancerSupport<T> {
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override
+    public String toString() {
+        return "LeastConnectionsLoadBalancer";
+    }
+
+    @Override
+    public T choose(List<T> services, ClientRequestFacade requestFacade) {
+        int size = services.size();
+        if (size == 0) {
+            return null;
+        } else if (size == 1) {
+            return services.get(0);
+        }
+        int offset = (counter.getAndIncrement() & Integer.MAX_VALUE) % size;
+        T answer = null;
+        int fewest = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            T service = services.get((offset + i) % size);
+            int active = activeRequests(service);
+            if (active < fewest) {
+                fewest = active;
+                answer = service;
+            }
+        }
+        return answer;
+    }
+}
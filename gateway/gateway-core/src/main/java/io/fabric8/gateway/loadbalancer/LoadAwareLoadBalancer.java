@@ -0,0 +1,41 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+/**
+ * A {@link LoadBalancer} which takes into account how busy and how fast each service currently is
+ * so the gateways must tell it when they start and complete requests or connections to a service
+ * and how long the service took to respond.
+ * <p/>
+ * Use the helper methods on {@link LoadBalancers} to notify any load balancer which may implement this interface.
+ */
+public interface LoadAwareLoadBalancer<T> extends LoadBalancer<T> {
+
+    /**
+     * A request or connection to the service has been started
+     */
+    void requestStarted(T service);
+
+    /**
+     * Records how long the service took to respond to a request or accept a connection
+     */
+    void recordLatency(T service, long latencyNanos);
+
+    /**
+     * A request or connection to the service has completed, successfully or not
+     */
+    void requestCompleted(T service);
+}
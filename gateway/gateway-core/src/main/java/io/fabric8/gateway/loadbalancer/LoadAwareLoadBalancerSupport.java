@@ -0,0 +1,104 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A base class for {@link LoadAwareLoadBalancer} implementations which keeps a {@link ServiceLoad} per service.
+ * <p/>
+ * The load of services which have been idle for a while is discarded so that services which have been
+ * replaced in the service map do not accumulate.
+ */
+public abstract class LoadAwareLoadBalancerSupport<T> implements LoadAwareLoadBalancer<T> {
+    private static final long IDLE_EXPIRY_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final int EXPIRY_CHECK_INTERVAL = 4096;
+
+    private final ConcurrentHashMap<T, ServiceLoad> loads = new ConcurrentHashMap<T, ServiceLoad>();
+    private final AtomicInteger operations = new AtomicInteger();
+    private final long decayTimeNanos;
+
+    protected LoadAwareLoadBalancerSupport() {
+        this(ServiceLoad.DEFAULT_DECAY_TIME_NANOS);
+    }
+
+    /**
+     * @param decayTimeNanos the time constant of the moving average latency of the services
+     */
+    protected LoadAwareLoadBalancerSupport(long decayTimeNanos) {
+        this.decayTimeNanos = decayTimeNanos;
+    }
+
+    @Override
+    public void requestStarted(T service) {
+        getLoad(service).requestStarted();
+        if ((operations.incrementAndGet() % EXPIRY_CHECK_INTERVAL) == 0) {
+            expireIdleLoads();
+        }
+    }
+
+    @Override
+    public void recordLatency(T service, long latencyNanos) {
+        getLoad(service).recordLatency(latencyNanos);
+    }
+
+    @Override
+    public void requestCompleted(T service) {
+        ServiceLoad load = loads.get(service);
+        if (load != null) {
+            load.requestCompleted();
+        }
+    }
+
+    /**
+     * Returns the load of the given service, creating it if required
+     */
+    public ServiceLoad getLoad(T service) {
+        ServiceLoad answer = loads.get(service);
+        if (answer == null) {
+            ServiceLoad load = new ServiceLoad(decayTimeNanos);
+            answer = loads.putIfAbsent(service, load);
+            if (answer == null) {
+                answer = load;
+            }
+        }
+        return answer;
+    }
+
+    protected int activeRequests(T service) {
+        ServiceLoad load = loads.get(service);
+        return load != null ? load.getActiveRequests() : 0;
+    }
+
+    protected double cost(T service) {
+        ServiceLoad load = loads.get(service);
+        return load != null ? load.getCost() : 1.0;
+    }
+
+    protected void expireIdleLoads() {
+        long threshold = System.nanoTime() - IDLE_EXPIRY_NANOS;
+        for (Iterator<Map.Entry<T, ServiceLoad>> iter = loads.entrySet().iterator(); iter.hasNext(); ) {
+            ServiceLoad load = iter.next().getValue();
+            if (load.getActiveRequests() == 0 && load.getLastUsedNanos() - threshold < 0) {
+                iter.remove();
+            }
+        }
+    }
+}
@@ -21,7 +21,8 @@ import java.util.List;
  * Represents the load balancing algorithm to use to pick which service to use.
  *
  * Example implementations are: {@link RandomLoadBalancer},
- * {@link RoundRobinLoadBalancer} or {@link StickyLoadBalancer}
+ * {@link RoundRobinLoadBalancer} or {@link StickyLoadBalancer} or the {@link LoadAwareLoadBalancer}
+ * implementations such as {@link LeastConnectionsLoadBalancer}
  */
 public interface LoadBalancer<T> {
     public T choose(List<T> services, ClientRequestFacade requestFacade);
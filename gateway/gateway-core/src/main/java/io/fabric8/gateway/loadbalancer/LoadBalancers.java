@@ -16,9 +16,13 @@
 package io.fabric8.gateway.loadbalancer;
 
 import io.fabric8.common.util.Strings;
+import io.fabric8.gateway.ServiceDetails;
+import io.fabric8.gateway.ServiceMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashSet;
+
 /**
  * Helper methods for using and creating load balancers
  */
@@ -28,6 +32,9 @@ public class LoadBalancers {
     public static final String RANDOM_LOAD_BALANCER = "random";
     public static final String ROUND_ROBIN_LOAD_BALANCER = "roundrobin";
     public static final String STICKY_LOAD_BALANCER = "sticky";
+    public static final String LEAST_CONNECTIONS_LOAD_BALANCER = "leastconnections";
+    public static final String PEAK_EWMA_LOAD_BALANCER = "peakewma";
+    public static final String POWER_OF_TWO_CHOICES_LOAD_BALANCER = "poweroftwochoices";
 
     public static final int STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE = 10000;
 
@@ -38,6 +45,12 @@ public class LoadBalancers {
             return new RoundRobinLoadBalancer<T>();
         } else if (STICKY_LOAD_BALANCER.equals(loadBalancerType)) {
             return new StickyLoadBalancer<T>(stickyLoadBalancerCacheSize);
+        } else if (LEAST_CONNECTIONS_LOAD_BALANCER.equals(loadBalancerType)) {
+            return new LeastConnectionsLoadBalancer<T>();
+        } else if (PEAK_EWMA_LOAD_BALANCER.equals(loadBalancerType)) {
+            return new PeakEwmaLoadBalancer<T>();
+        } else if (POWER_OF_TWO_CHOICES_LOAD_BALANCER.equals(loadBalancerType)) {
+            return new PowerOfTwoChoicesLoadBalancer<T>();
         } else {
             if (Strings.isNotBlank(loadBalancerType)) {
                 LOG.warn("Ignored invalid load balancer type: " + loadBalancerType);
@@ -47,4 +60,53 @@ public class LoadBalancers {
             return new RoundRobinLoadBalancer<T>();
         }
     }
+
+    /**
+     * Notifies the load balancer, if it is a {@link LoadAwareLoadBalancer}, that a request to the service has started
+     */
+    public static <T> void requestStarted(LoadBalancer<T> loadBalancer, T service) {
+        if (loadBalancer instanceof LoadAwareLoadBalancer) {
+            ((LoadAwareLoadBalancer<T>) loadBalancer).requestStarted(service);
+        }
+    }
+
+    /**
+     * Notifies the load balancer, if it is a {@link LoadAwareLoadBalancer}, of the latency of the service
+     */
+    public static <T> void recordLatency(LoadBalancer<T> loadBalancer, T service, long latencyNanos) {
+        if (loadBalancer instanceof LoadAwareLoadBalancer) {
+            ((LoadAwareLoadBalancer<T>) loadBalancer).recordLatency(service, latencyNanos);
+        }
+    }
+
+    /**
+     * Notifies the load balancer, if it is a {@link LoadAwareLoadBalancer}, that a request to the service has completed
+     */
+    public static <T> void requestCompleted(LoadBalancer<T> loadBalancer, T service) {
+        if (loadBalancer instanceof LoadAwareLoadBalancer) {
+            ((LoadAwareLoadBalancer<T>) loadBalancer).requestCompleted(service);
+        }
+    }
+
+    /**
+     * Purges the client bindings of the load balancer, if it is a {@link StickyLoadBalancer}, to the services
+     * which are no longer in the service map and then to every service removed from or replaced in it.
+     *
+     * @return the listener added to the service map, or null if the load balancer keeps no bindings
+     */
+    public static ServiceMap.Listener bindServiceMap(ServiceMap serviceMap, LoadBalancer<ServiceDetails> loadBalancer) {
+        if (!(loadBalancer instanceof StickyLoadBalancer)) {
+            return null;
+        }
+        final StickyLoadBalancer<ServiceDetails> stickyLoadBalancer = (StickyLoadBalancer<ServiceDetails>) loadBalancer;
+        ServiceMap.Listener listener = new ServiceMap.Listener() {
+            @Override
+            public void serviceRemoved(String path, ServiceDetails service) {
+                stickyLoadBalancer.removeService(service);
+            }
+        };
+        serviceMap.addListener(listener);
+        stickyLoadBalancer.retainServices(new HashSet<ServiceDetails>(serviceMap.getAllServices()));
+        return listener;
+    }
 }
@@ -0,0 +1,66 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses the service with the lowest expected cost; its peak sensitive moving average latency
+ * multiplied by the number of requests which would be outstanding on it (see {@link ServiceLoad#getCost()}).
+ * <p/>
+ * Services whose costs are within {@link #TIE_TOLERANCE} of each other are considered equally expensive and
+ * are used in turn, as the averages keep decaying and are never exactly equal.
+ */
+public class PeakEwmaLoadBalancer<T> extends LoadAwareLoadBalancerSupport<T> {
+    private static final double TIE_TOLERANCE = 0.01;
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    public PeakEwmaLoadBalancer() {
+    }
+
+    public PeakEwmaLoadBalancer(long decayTimeNanos) {
+        super(decayTimeNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "PeakEwmaLoadBalancer";
+    }
+
+    @Override
+    public T choose(List<T> services, ClientRequestFacade requestFacade) {
+        int size = services.size();
+        if (size == 0) {
+            return null;
+        } else if (size == 1) {
+            return services.get(0);
+        }
+        int offset = (counter.getAndIncrement() & Integer.MAX_VALUE) % size;
+        T answer = null;
+        double lowest = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            T service = services.get((offset + i) % size);
+            double cost = cost(service);
+            if (cost < lowest * (1.0 - TIE_TOLERANCE)) {
+                lowest = cost;
+                answer = service;
+            }
+        }
+        return answer;
+    }
+}
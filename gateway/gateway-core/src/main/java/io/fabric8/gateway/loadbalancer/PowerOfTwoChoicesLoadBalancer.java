@@ -0,0 +1,57 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Picks two services at random and chooses the one with the lower expected cost
+ * (see {@link ServiceLoad#getCost()}); this avoids the herding of always picking the least loaded service
+ * while needing to look at only two services per request.
+ */
+public class PowerOfTwoChoicesLoadBalancer<T> extends LoadAwareLoadBalancerSupport<T> {
+    private final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    @Override
+    public String toString() {
+        return "PowerOfTwoChoicesLoadBalancer";
+    }
+
+    @Override
+    public T choose(List<T> services, ClientRequestFacade requestFacade) {
+        int size = services.size();
+        if (size == 0) {
+            return null;
+        } else if (size == 1) {
+            return services.get(0);
+        }
+        Random rnd = random.get();
+        int first = rnd.nextInt(size);
+        int second = rnd.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        T a = services.get(first);
+        T b = services.get(second);
+        return cost(a) <= cost(b) ? a : b;
+    }
+}
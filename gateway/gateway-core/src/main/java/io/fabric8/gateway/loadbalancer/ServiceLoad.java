@@ -0,0 +1,108 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the number of active requests and a peak sensitive exponentially weighted moving average
+ * of the latency of a service for use by a {@link LoadAwareLoadBalancer}.
+ * <p/>
+ * A latency above the current average replaces it immediately so a degrading service is avoided straight away,
+ * while lower latencies decay the average with the configured time constant. The average also decays towards
+ * zero while no latency is recorded, so a service which is avoided after a peak, and therefore records no new
+ * latency, is eventually tried again.
+ */
+public class ServiceLoad {
+    public static final long DEFAULT_DECAY_TIME_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * The latency recorded for a request which failed so that failing services are avoided
+     */
+    public static final long FAILURE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final long decayTimeNanos;
+    private double ewmaNanos;
+    private long lastUpdateNanos = System.nanoTime();
+    private volatile long lastUsedNanos = System.nanoTime();
+
+    public ServiceLoad() {
+        this(DEFAULT_DECAY_TIME_NANOS);
+    }
+
+    public ServiceLoad(long decayTimeNanos) {
+        this.decayTimeNanos = decayTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceLoad{" +
+                "activeRequests=" + activeRequests.get() +
+                ", ewmaMillis=" + (getLatencyNanos() / 1000000.0) +
+                '}';
+    }
+
+    public void requestStarted() {
+        activeRequests.incrementAndGet();
+        lastUsedNanos = System.nanoTime();
+    }
+
+    public void requestCompleted() {
+        activeRequests.decrementAndGet();
+        lastUsedNanos = System.nanoTime();
+    }
+
+    public synchronized void recordLatency(long latencyNanos) {
+        long now = System.nanoTime();
+        double weight = decayWeight(now);
+        if (latencyNanos > ewmaNanos * weight) {
+            ewmaNanos = latencyNanos;
+        } else {
+            ewmaNanos = ewmaNanos * weight + latencyNanos * (1.0 - weight);
+        }
+        lastUpdateNanos = now;
+    }
+
+    public int getActiveRequests() {
+        return Math.max(0, activeRequests.get());
+    }
+
+    public synchronized double getLatencyNanos() {
+        return ewmaNanos * decayWeight(System.nanoTime());
+    }
+
+    /**
+     * Returns the expected cost of sending another request to this service; the average latency
+     * weighted by the number of requests which would then be outstanding
+     */
+    public double getCost() {
+        return (getLatencyNanos() + 1.0) * (getActiveRequests() + 1);
+    }
+
+    public long getLastUsedNanos() {
+        return lastUsedNanos;
+    }
+
+    /**
+     * Returns the weight of the current average after the time elapsed since the last recorded latency
+     */
+    private double decayWeight(long now) {
+        long elapsed = Math.max(0, now - lastUpdateNanos);
+        return Math.exp(-(double) elapsed / decayTimeNanos);
+    }
+}
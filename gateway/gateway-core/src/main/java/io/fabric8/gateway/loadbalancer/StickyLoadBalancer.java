@@ -15,19 +15,34 @@
  */
 package io.fabric8.gateway.loadbalancer;
 
-import java.util.LinkedHashMap;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Implements a sticky load balancer where a unique client ID String is requested from the
  * {@link ClientRequestFacade} and used to keep track of which
  * service was used last time and to use that if its possible and keep a cache of requests to
+ * <p/>
+ * The cache is a {@link ConcurrentHashMap} so looking up a client never blocks; when the cache grows
+ * beyond its maximum size an approximately least recently used entry is evicted by sampling a few entries.
+ * Entries bound to a service which is no longer in the list of available services are replaced on lookup,
+ * and can be purged as soon as services go away using {@link #removeService(Object)} and
+ * {@link #retainServices(Collection)}, see {@link LoadBalancers#bindServiceMap}.
  */
 public class StickyLoadBalancer<T> implements LoadBalancer<T> {
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+
     private final LoadBalancer<T> firstRequestLoadBalancer;
     private final int maximumCacheSize;
-    private final Map<String, T> requestCache;
+    private final ConcurrentHashMap<String, CacheEntry<T>> requestCache = new ConcurrentHashMap<String, CacheEntry<T>>();
+    private final AtomicInteger cacheSize = new AtomicInteger();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private Iterator<Map.Entry<String, CacheEntry<T>>> evictionCursor;
 
     public StickyLoadBalancer() {
         this(LoadBalancers.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE);
@@ -40,12 +55,6 @@ public class StickyLoadBalancer<T> implements LoadBalancer<T> {
     public StickyLoadBalancer(int maximumCacheSize, LoadBalancer<T> firstRequestLoadBalancer) {
         this.firstRequestLoadBalancer = firstRequestLoadBalancer;
         this.maximumCacheSize = maximumCacheSize;
-        this.requestCache = new LinkedHashMap(maximumCacheSize + 1, .75F, true) {
-            // This method is called just after a new entry has been added
-            public boolean removeEldestEntry(Map.Entry eldest) {
-                return size() > StickyLoadBalancer.this.maximumCacheSize;
-            }
-        };
     }
 
     @Override
@@ -58,25 +67,121 @@ public class StickyLoadBalancer<T> implements LoadBalancer<T> {
     @Override
     public T choose(List<T> services, ClientRequestFacade requestFacade) {
         String clientKey = requestFacade.getClientRequestKey();
-        T answer;
-        synchronized (requestCache) {
-            answer = requestCache.get(clientKey);
-            if (answer == null) {
-                answer = firstRequestLoadBalancer.choose(services, requestFacade);
-                if (answer != null) {
-                    requestCache.put(clientKey, answer);
+        if (clientKey == null) {
+            return firstRequestLoadBalancer.choose(services, requestFacade);
+        }
+        CacheEntry<T> entry = requestCache.get(clientKey);
+        if (entry != null) {
+            if (services.contains(entry.value)) {
+                entry.lastAccess = System.nanoTime();
+                return entry.value;
+            }
+            // the service has gone away so lets pick another one
+            if (requestCache.remove(clientKey, entry)) {
+                cacheSize.decrementAndGet();
+            }
+        }
+        T answer = firstRequestLoadBalancer.choose(services, requestFacade);
+        if (answer != null) {
+            CacheEntry<T> newEntry = new CacheEntry<T>(answer);
+            CacheEntry<T> existing = requestCache.putIfAbsent(clientKey, newEntry);
+            if (existing == null) {
+                if (cacheSize.incrementAndGet() > maximumCacheSize) {
+                    evict();
                 }
+            } else if (services.contains(existing.value)) {
+                // another thread bound this client concurrently so lets stick with its choice
+                answer = existing.value;
             }
         }
         return answer;
     }
 
+    /**
+     * Removes any cached client bindings to the given service
+     */
+    public void removeService(T service) {
+        for (Map.Entry<String, CacheEntry<T>> entry : requestCache.entrySet()) {
+            if (service.equals(entry.getValue().value) && requestCache.remove(entry.getKey(), entry.getValue())) {
+                cacheSize.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes any cached client bindings to services which are not in the given collection
+     */
+    public void retainServices(Collection<T> services) {
+        for (Map.Entry<String, CacheEntry<T>> entry : requestCache.entrySet()) {
+            if (!services.contains(entry.getValue().value) && requestCache.remove(entry.getKey(), entry.getValue())) {
+                cacheSize.decrementAndGet();
+            }
+        }
+    }
+
     /**
      * Clears the cache of request client IDs to the bound service
      */
     public void flush() {
-        synchronized (requestCache) {
-            requestCache.clear();
+        for (String key : requestCache.keySet()) {
+            if (requestCache.remove(key) != null) {
+                cacheSize.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cached client bindings
+     */
+    public int getCacheSize() {
+        return cacheSize.get();
+    }
+
+    public int getMaximumCacheSize() {
+        return maximumCacheSize;
+    }
+
+    /**
+     * Evicts the least recently used of a sample of entries until the cache is within its maximum size.
+     * Only one thread evicts at a time; other threads just carry on as the cache is allowed to briefly overshoot.
+     */
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            while (cacheSize.get() > maximumCacheSize) {
+                Map.Entry<String, CacheEntry<T>> oldest = null;
+                for (int i = 0; i < EVICTION_SAMPLE_SIZE; i++) {
+                    if (evictionCursor == null || !evictionCursor.hasNext()) {
+                        evictionCursor = requestCache.entrySet().iterator();
+                        if (!evictionCursor.hasNext()) {
+                            break;
+                        }
+                    }
+                    Map.Entry<String, CacheEntry<T>> candidate = evictionCursor.next();
+                    if (oldest == null || candidate.getValue().lastAccess < oldest.getValue().lastAccess) {
+                        oldest = candidate;
+                    }
+                }
+                if (oldest == null) {
+                    break;
+                }
+                if (requestCache.remove(oldest.getKey(), oldest.getValue())) {
+                    cacheSize.decrementAndGet();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static final class CacheEntry<T> {
+        private final T value;
+        private volatile long lastAccess = System.nanoTime();
+
+        private CacheEntry(T value) {
+            this.value = value;
         }
     }
 }
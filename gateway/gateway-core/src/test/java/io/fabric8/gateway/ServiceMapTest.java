@@ -0,0 +1,105 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway;
+
+import io.fabric8.gateway.loadbalancer.ClientRequestFacade;
+import io.fabric8.gateway.loadbalancer.LoadBalancers;
+import io.fabric8.gateway.loadbalancer.StickyLoadBalancer;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ServiceMapTest {
+
+    private ServiceMap serviceMap = new ServiceMap();
+
+    @Test
+    public void testSnapshotsOnlyChangeWhenServicesChange() throws Exception {
+        assertTrue(serviceMap.getServices("broker").isEmpty());
+        assertTrue(serviceMap.getPaths().isEmpty());
+        long version = serviceMap.getVersion();
+
+        ServiceDTO broker1 = createService("broker1", "tcp://localhost:61616");
+        ServiceDTO broker2 = createService("broker2", "tcp://localhost:61617");
+        serviceMap.serviceUpdated("broker", broker1);
+        serviceMap.serviceUpdated("broker", broker2);
+        assertEquals(version + 2, serviceMap.getVersion());
+
+        List<ServiceDetails> services = serviceMap.getServices("broker");
+        assertEquals(Arrays.<ServiceDetails>asList(broker1, broker2), services);
+        assertSame("Lookups should return the same snapshot", services, serviceMap.getServices("broker"));
+        assertEquals(Arrays.asList("broker"), serviceMap.getPaths());
+
+        serviceMap.serviceRemoved("broker", broker1);
+        assertEquals(version + 3, serviceMap.getVersion());
+        assertEquals(Arrays.<ServiceDetails>asList(broker2), serviceMap.getServices("broker"));
+        assertEquals("The previous snapshot should not change", 2, services.size());
+
+        // removing an unknown service should not change the version
+        serviceMap.serviceRemoved("broker", broker1);
+        assertEquals(version + 3, serviceMap.getVersion());
+
+        serviceMap.serviceRemoved("broker", broker2);
+        assertTrue(serviceMap.getServices("broker").isEmpty());
+        assertTrue(serviceMap.getPaths().isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotsAreImmutable() throws Exception {
+        serviceMap.serviceUpdated("broker", createService("broker1", "tcp://localhost:61616"));
+        serviceMap.getServices("broker").clear();
+    }
+
+    @Test
+    public void testStickyBindingsSurviveRepublishingAndArePurgedOnChange() throws Exception {
+        serviceMap.serviceUpdated("broker", createService("broker1", "tcp://localhost:61616"));
+        serviceMap.serviceUpdated("broker", createService("broker2", "tcp://localhost:61617"));
+        StickyLoadBalancer<ServiceDetails> loadBalancer = new StickyLoadBalancer<ServiceDetails>();
+        LoadBalancers.bindServiceMap(serviceMap, loadBalancer);
+        ClientRequestFacade client = new ClientRequestFacade() {
+            @Override
+            public String getClientRequestKey() {
+                return "client";
+            }
+        };
+        ServiceDetails bound = loadBalancer.choose(serviceMap.getServices("broker"), client);
+
+        // the registry builds new instances of the same services on every update
+        ServiceDTO republished = createService(bound.getId(), bound.getServices().get(0));
+        serviceMap.serviceUpdated("broker", republished);
+        assertEquals(1, loadBalancer.getCacheSize());
+        assertEquals(bound, loadBalancer.choose(serviceMap.getServices("broker"), client));
+
+        serviceMap.serviceUpdated("broker", createService(bound.getId(), "tcp://localhost:61618"));
+        assertEquals("The binding to the replaced service should be purged", 0, loadBalancer.getCacheSize());
+
+        bound = loadBalancer.choose(serviceMap.getServices("broker"), client);
+        serviceMap.serviceRemoved("broker", bound);
+        assertEquals("The binding to the removed service should be purged", 0, loadBalancer.getCacheSize());
+    }
+
+    protected ServiceDTO createService(String id, String... urls) {
+        ServiceDTO answer = new ServiceDTO();
+        answer.setId(id);
+        answer.setServices(Arrays.asList(urls));
+        return answer;
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.admission;
+
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AdmissionControllerTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testTokenBucketAllowsBurstThenSteadyRate() throws Exception {
+        long now = 1000L;
+        TokenBucket bucket = new TokenBucket(10, 5, now);
+        assertTrue(bucket.isFull(now));
+        for (int i = 0; i < 5; i++) {
+            assertTrue("Permit " + i + " of the burst", bucket.tryAcquire(now));
+        }
+        assertFalse(bucket.tryAcquire(now));
+        assertEquals(SECOND / 10, bucket.getWaitNanos(now));
+
+        // one permit every 100ms
+        assertFalse(bucket.tryAcquire(now + SECOND / 10 - 1));
+        assertTrue(bucket.tryAcquire(now + SECOND / 10));
+        assertFalse(bucket.tryAcquire(now + SECOND / 10));
+
+        long later = now + 10 * SECOND;
+        assertTrue(bucket.isFull(later));
+        assertEquals(0, bucket.getWaitNanos(later));
+    }
+
+    @Test
+    public void testKeyedRateLimiterIsolatesKeysAndBoundsMemory() throws Exception {
+        KeyedRateLimiter limiter = new KeyedRateLimiter(1, 2, 2);
+        long now = System.nanoTime();
+        assertTrue(limiter.tryAcquire("a", now));
+        assertTrue(limiter.tryAcquire("a", now));
+        assertFalse(limiter.tryAcquire("a", now));
+        assertTrue("Other keys should have their own bucket", limiter.tryAcquire("b", now));
+        assertEquals(2, limiter.getKeyCount());
+
+        // neither bucket has refilled so new keys share the overflow bucket
+        assertTrue(limiter.tryAcquire("c", now));
+        assertTrue(limiter.tryAcquire("d", now));
+        assertFalse(limiter.tryAcquire("e", now));
+        assertEquals(2, limiter.getKeyCount());
+
+        // once refilled the buckets are purged to make room for new keys
+        long later = now + 10 * SECOND;
+        assertTrue(limiter.tryAcquire("c", later));
+        assertEquals(1, limiter.getKeyCount());
+    }
+
+    @Test
+    public void testConcurrencyLimiterQueuesAndHandsOffPermits() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1);
+        final List<String> started = new ArrayList<String>();
+
+        assertSame(ConcurrencyLimiter.Waiter.GRANTED, limiter.acquire("broker", recorder(started, "first")));
+        ConcurrencyLimiter.Waiter second = limiter.acquire("broker", recorder(started, "second"));
+        assertTrue(second.isWaiting());
+        assertNull("The queue is full", limiter.acquire("broker", recorder(started, "third")));
+        assertEquals(1, limiter.getActive("broker"));
+        assertEquals(1, limiter.getQueued("broker"));
+
+        limiter.release("broker");
+        assertTrue(second.isGranted());
+        assertEquals(1, limiter.getActive("broker"));
+        assertEquals(0, limiter.getQueued("broker"));
+
+        ConcurrencyLimiter.Waiter fourth = limiter.acquire("broker", recorder(started, "fourth"));
+        assertTrue(fourth.cancel());
+        assertFalse(fourth.cancel());
+        limiter.release("broker");
+        assertEquals(0, limiter.getActive("broker"));
+        assertEquals(0, limiter.getQueued("broker"));
+
+        assertEquals("[first, second]", started.toString());
+        assertTrue(limiter.tryAcquire("other"));
+    }
+
+    @Test
+    public void testAdmissionControllerRateLimitKeys() throws Exception {
+        AdmissionController controller = new AdmissionController();
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", 1234);
+        assertEquals("127.0.0.1", controller.getRateLimitKey("broker", "client", address));
+
+        controller.setRateLimitKey(AdmissionController.VIRTUAL_HOST);
+        assertEquals("broker", controller.getRateLimitKey("broker", "client", address));
+        assertEquals("127.0.0.1", controller.getRateLimitKey(null, "client", address));
+
+        controller.setRateLimitKey(AdmissionController.CLIENT_ID);
+        assertEquals("client", controller.getRateLimitKey("broker", "client", address));
+
+        // unlimited until configured
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(controller.tryAdmit("client"));
+        }
+        controller.setRateLimit(1);
+        controller.setRateLimitBurst(1);
+        controller.setMaxConnectionsPerBackend(1);
+        controller.start();
+        assertTrue(controller.tryAdmit("client"));
+        assertFalse(controller.tryAdmit("client"));
+        assertTrue(controller.getRetryAfterSeconds("client") >= 1);
+        assertEquals(1, controller.getRateLimited());
+
+        assertTrue(controller.tryAcquireBackend("localhost:61616"));
+        assertFalse(controller.tryAcquireBackend("localhost:61616"));
+        controller.releaseBackend("localhost:61616");
+        assertTrue(controller.tryAcquireBackend("localhost:61616"));
+        assertEquals(1, controller.getBackendRejected());
+    }
+
+    private static Runnable recorder(final List<String> started, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                started.add(name);
+            }
+        };
+    }
+}
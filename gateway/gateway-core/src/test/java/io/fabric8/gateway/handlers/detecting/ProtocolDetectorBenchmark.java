@@ -0,0 +1,129 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares detecting the protocol of MQTT, AMQP, STOMP and OpenWire connections whose headers arrive in
+ * fragments using the {@link ProtocolDetector} against the previous approach of copying every chunk into a
+ * new buffer and asking every protocol to match the whole buffer again.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProtocolDetectorBenchmark {
+
+    @Param({"1", "3", "64"})
+    public int fragmentSize;
+
+    private ArrayList<Protocol> protocols;
+    private int maxIdentificationLength;
+    private byte[][][] connections;
+
+    @Setup
+    public void setUp() {
+        protocols = ProtocolDetectorTest.createProtocols();
+        maxIdentificationLength = ProtocolDetectorTest.maxIdentificationLength(protocols);
+        byte[][] headers = {
+                ProtocolDetectorTest.MQTT_HEADER,
+                ProtocolDetectorTest.AMQP_HEADER,
+                ProtocolDetectorTest.STOMP_HEADER,
+                ProtocolDetectorTest.OPENWIRE_HEADER
+        };
+        connections = new byte[headers.length][][];
+        for (int i = 0; i < headers.length; i++) {
+            connections[i] = fragment(headers[i], fragmentSize);
+        }
+    }
+
+    @Benchmark
+    public int protocolDetector() {
+        int detected = 0;
+        for (byte[][] fragments : connections) {
+            ProtocolDetector detector = new ProtocolDetector(protocols, maxIdentificationLength);
+            for (byte[] fragment : fragments) {
+                if (detector.detect(new Buffer(fragment)) != null) {
+                    detected++;
+                    break;
+                }
+            }
+        }
+        return detected;
+    }
+
+    @Benchmark
+    public int copyAndMatchAll() {
+        int detected = 0;
+        for (byte[][] fragments : connections) {
+            Buffer received = new Buffer();
+            for (byte[] fragment : fragments) {
+                received.appendBuffer(new Buffer(fragment));
+                Protocol match = null;
+                for (Protocol protocol : protocols) {
+                    if (protocol.matches(received)) {
+                        match = protocol;
+                        break;
+                    }
+                }
+                if (match != null) {
+                    detected++;
+                    break;
+                }
+            }
+        }
+        return detected;
+    }
+
+    private static byte[][] fragment(byte[] header, int size) {
+        int count = (header.length + size - 1) / size;
+        byte[][] answer = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            int offset = i * size;
+            answer[i] = new byte[Math.min(size, header.length - offset)];
+            System.arraycopy(header, offset, answer[i], 0, answer[i].length);
+        }
+        return answer;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ProtocolDetectorBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import io.fabric8.gateway.handlers.detecting.protocol.amqp.AmqpProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.http.HttpProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.mqtt.MqttProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.OpenwireProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.stomp.StompProtocol;
+import org.junit.Test;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ProtocolDetectorTest {
+
+    static final byte[] MQTT_HEADER = {0x10, 0x1a, 0x00, 0x06, 'M', 'Q', 'I', 's', 'd', 'p', 0x03, 0x02, 0x00, 0x3c};
+    static final byte[] AMQP_HEADER = {'A', 'M', 'Q', 'P', 0x00, 0x01, 0x00, 0x00};
+    static final byte[] STOMP_HEADER = "CONNECT\naccept-version:1.1\nhost:broker\n\n\u0000".getBytes();
+    static final byte[] OPENWIRE_HEADER = {0x00, 0x00, 0x01, 0x0a, 0x01, 'A', 'c', 't', 'i', 'v', 'e', 'M', 'Q', 0x00, 0x00, 0x00, 0x0a};
+    static final byte[] HTTP_HEADER = "GET /index.html HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes();
+
+    static ArrayList<Protocol> createProtocols() {
+        ArrayList<Protocol> protocols = new ArrayList<Protocol>();
+        protocols.add(new StompProtocol());
+        protocols.add(new MqttProtocol());
+        protocols.add(new AmqpProtocol());
+        protocols.add(new OpenwireProtocol());
+        protocols.add(new HttpProtocol());
+        protocols.add(new SslProtocol());
+        return protocols;
+    }
+
+    static int maxIdentificationLength(List<Protocol> protocols) {
+        int max = 0;
+        for (Protocol protocol : protocols) {
+            max = Math.max(max, protocol.getMaxIdentificationLength());
+        }
+        return max;
+    }
+
+    private final ArrayList<Protocol> protocols = createProtocols();
+
+    @Test
+    public void testDetectsFragmentedHeaders() throws Exception {
+        assertDetected("mqtt", MQTT_HEADER);
+        assertDetected("amqp", AMQP_HEADER);
+        assertDetected("stomp", STOMP_HEADER);
+        assertDetected("openwire", OPENWIRE_HEADER);
+        assertDetected("http", HTTP_HEADER);
+    }
+
+    @Test
+    public void testFirstChunkIsNotCopied() throws Exception {
+        ProtocolDetector detector = new ProtocolDetector(protocols, maxIdentificationLength(protocols));
+        Buffer chunk = new Buffer(AMQP_HEADER);
+        assertEquals("amqp", detector.detect(chunk).getProtocolName());
+        assertSame(chunk, detector.getReceived());
+    }
+
+    @Test
+    public void testRejectsUnknownProtocol() throws Exception {
+        ProtocolDetector detector = new ProtocolDetector(protocols, maxIdentificationLength(protocols));
+        assertNull(detector.detect(new Buffer("HELLO")));
+        assertFalse(detector.isRejected());
+        assertNull(detector.detect(new Buffer(" WORLD, HOW ARE YOU?")));
+        assertTrue(detector.isRejected());
+    }
+
+    protected void assertDetected(String protocolName, byte[] header) {
+        ProtocolDetector detector = new ProtocolDetector(protocols, maxIdentificationLength(protocols));
+        Protocol answer = null;
+        int received = 0;
+        while (answer == null && received < header.length) {
+            byte[] chunk = new byte[Math.min(3, header.length - received)];
+            System.arraycopy(header, received, chunk, 0, chunk.length);
+            received += chunk.length;
+            answer = detector.detect(new Buffer(chunk));
+            if (answer == null) {
+                assertFalse("Should not reject " + protocolName + " after " + received + " bytes", detector.isRejected());
+            }
+        }
+        assertNotNull("Should have detected " + protocolName, answer);
+        assertEquals(protocolName, answer.getProtocolName());
+        assertEquals("Should keep all the data received", received, detector.getReceived().length());
+    }
+}
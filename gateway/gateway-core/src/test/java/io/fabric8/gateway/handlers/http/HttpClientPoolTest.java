@@ -0,0 +1,99 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import org.junit.Test;
+import org.vertx.java.core.http.HttpClient;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class HttpClientPoolTest {
+
+    private final Set<HttpClient> closed = new CopyOnWriteArraySet<HttpClient>();
+
+    private final HttpClientPool pool = new HttpClientPool(null) {
+        @Override
+        protected HttpClient createClient(URL url) {
+            return (HttpClient) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{HttpClient.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getName().equals("close")) {
+                        closed.add((HttpClient) proxy);
+                    } else if (method.getName().equals("equals")) {
+                        return proxy == args[0];
+                    } else if (method.getName().equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    }
+                    return null;
+                }
+            });
+        }
+    };
+
+    @Test
+    public void testRemovedClientIsClosedAfterItsLastRequest() throws Exception {
+        URL url = new URL("http://localhost:8182/foo");
+        HttpClientPool.PooledClient first = pool.acquire(url);
+        HttpClientPool.PooledClient second = pool.acquire(url);
+        assertSame(first, second);
+
+        pool.retainBackends(Collections.<String>emptyList());
+        assertEquals(0, pool.getBackendCount());
+        assertFalse("Should not close a client with requests in flight", closed.contains(first.getClient()));
+
+        pool.release(first);
+        assertFalse("Should not close a client with requests in flight", closed.contains(first.getClient()));
+        pool.release(second);
+        assertTrue("Should close the client after its last request", closed.contains(first.getClient()));
+
+        HttpClientPool.PooledClient third = pool.acquire(url);
+        assertNotSame("Should create a new client", first, third);
+        pool.release(third);
+    }
+
+    @Test
+    public void testEvictedClientIsNeverAcquired() throws Exception {
+        URL url = new URL("http://localhost:8182/foo");
+        pool.setIdleTimeout(0);
+        HttpClientPool.PooledClient busy = pool.acquire(url);
+        Thread.sleep(5);
+        pool.evictIdleClients();
+        assertFalse("Should not evict a client in use", closed.contains(busy.getClient()));
+
+        pool.release(busy);
+        Thread.sleep(5);
+        pool.evictIdleClients();
+        assertTrue(closed.contains(busy.getClient()));
+
+        HttpClientPool.PooledClient next = pool.acquire(url);
+        assertFalse("Should not hand out a closed client", closed.contains(next.getClient()));
+        pool.release(next);
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import io.fabric8.gateway.ServiceDTO;
+import io.fabric8.gateway.loadbalancer.RoundRobinLoadBalancer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares finding the mapped services for a request URI using the {@link HttpMappingIndex}
+ * against the linear scan over all the URI prefixes which the {@link HttpGatewayHandler} used to perform.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HttpMappingIndexBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int routes;
+
+    private Map<String, MappedServices> mappedServices;
+    private HttpMappingIndex index;
+    private String[] uris;
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        mappedServices = new HashMap<String, MappedServices>();
+        for (int i = 0; i < routes; i++) {
+            String contextPath = "/cxf/service" + i;
+            mappedServices.put(contextPath + "/", new MappedServices("http://localhost:8181" + contextPath,
+                    new ServiceDTO(), new RoundRobinLoadBalancer<String>(), false));
+        }
+        index = HttpMappingIndex.build(mappedServices);
+
+        uris = new String[64];
+        for (int i = 0; i < uris.length; i++) {
+            uris[i] = "/cxf/service" + ((i * 7919) % routes) + "/customers/" + i;
+        }
+    }
+
+    @Benchmark
+    public MappedServices mappingIndex() {
+        HttpMappingIndex.Entry entry = index.findLongestPrefix(nextUri());
+        return entry != null ? entry.getMappedServices() : null;
+    }
+
+    @Benchmark
+    public MappedServices linearScan() {
+        String uri = nextUri();
+        String uri2 = null;
+        if (!uri.endsWith("/")) {
+            uri2 = uri + "/";
+        }
+        for (Map.Entry<String, MappedServices> entry : mappedServices.entrySet()) {
+            String pathPrefix = entry.getKey();
+            if (uri.startsWith(pathPrefix) || (uri2 != null && uri2.startsWith(pathPrefix))) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private String nextUri() {
+        return uris[(counter++) & (uris.length - 1)];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(HttpMappingIndexBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import io.fabric8.gateway.ServiceDTO;
+import io.fabric8.gateway.loadbalancer.RoundRobinLoadBalancer;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ */
+public class HttpMappingIndexTest {
+
+    protected Map<String, MappedServices> mappedServices = new HashMap<String, MappedServices>();
+
+    @Test
+    public void testEmptyIndex() throws Exception {
+        assertNull(HttpMappingIndex.EMPTY.findLongestPrefix("/cxf/crm/"));
+        assertNull(HttpMappingIndex.EMPTY.findLongestPrefix(""));
+    }
+
+    @Test
+    public void testLongestPrefixWins() throws Exception {
+        addMapping("/cxf/", "http://localhost:8181/cxf");
+        addMapping("/cxf/crm/", "http://localhost:8182/cxf/crm");
+        addMapping("/cxf/crm/v2/", "http://localhost:8183/cxf/crm/v2");
+        HttpMappingIndex index = HttpMappingIndex.build(mappedServices);
+
+        assertPrefix(index, "/cxf/crm/customers/123", "/cxf/crm/");
+        assertPrefix(index, "/cxf/crm/v2/customers", "/cxf/crm/v2/");
+        assertPrefix(index, "/cxf/HelloWorld", "/cxf/");
+        assertPrefix(index, "/cxf/crm/v", "/cxf/crm/");
+        assertNull(index.findLongestPrefix("/foo/cxf/crm/"));
+        assertNull(index.findLongestPrefix("/cx"));
+    }
+
+    @Test
+    public void testUriWithoutTrailingSlashMatchesContextPath() throws Exception {
+        addMapping("/cxf/crm/", "http://localhost:8182/cxf/crm");
+        HttpMappingIndex index = HttpMappingIndex.build(mappedServices);
+
+        assertPrefix(index, "/cxf/crm", "/cxf/crm/");
+        assertPrefix(index, "/cxf/crm/", "/cxf/crm/");
+        assertNull(index.findLongestPrefix("/cxf/cr"));
+    }
+
+    @Test
+    public void testRootPrefix() throws Exception {
+        addMapping("/", "http://localhost:8181/");
+        addMapping("/hawtio/", "http://localhost:8181/hawtio");
+        HttpMappingIndex index = HttpMappingIndex.build(mappedServices);
+
+        assertPrefix(index, "", "/");
+        assertPrefix(index, "/index.html", "/");
+        assertPrefix(index, "/hawtio/index.html", "/hawtio/");
+        assertEquals("size", 2, index.size());
+    }
+
+    protected void addMapping(String prefix, String service) {
+        mappedServices.put(prefix, new MappedServices(service, new ServiceDTO(), new RoundRobinLoadBalancer<String>(), false));
+    }
+
+    protected void assertPrefix(HttpMappingIndex index, String uri, String expectedPrefix) {
+        HttpMappingIndex.Entry entry = index.findLongestPrefix(uri);
+        assertNotNull("Should have found a match for " + uri, entry);
+        assertEquals("prefix for " + uri, expectedPrefix, entry.getPrefix());
+        assertEquals("mapped services for " + uri, mappedServices.get(expectedPrefix), entry.getMappedServices());
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http.cache;
+
+import org.junit.Test;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HttpResponseCacheTest {
+
+    @Test
+    public void testFreshnessFromCacheControl() throws Exception {
+        long now = System.currentTimeMillis();
+        CachedResponse response = create(200, now, "Cache-Control", "public, max-age=60");
+        assertNotNull(response);
+        assertEquals(60, response.getFreshnessLifetimeSeconds());
+        assertTrue(response.isFresh(now + 59000));
+        assertFalse(response.isFresh(now + 60000));
+
+        response = create(200, now, "Cache-Control", "max-age=60, s-maxage=10");
+        assertEquals("s-maxage should win for a shared cache", 10, response.getFreshnessLifetimeSeconds());
+
+        response = create(200, now, "Cache-Control", "max-age=60", "Age", "50");
+        assertTrue(response.isFresh(now + 9000));
+        assertFalse(response.isFresh(now + 10000));
+    }
+
+    @Test
+    public void testFreshnessFromExpires() throws Exception {
+        long now = System.currentTimeMillis();
+        CachedResponse response = create(200, now,
+                "Date", CacheControl.formatDate(now), "Expires", CacheControl.formatDate(now + 120000));
+        assertNotNull(response);
+        assertEquals(120, response.getFreshnessLifetimeSeconds(), 1);
+
+        assertNull("An invalid Expires without a validator is not worth storing",
+                create(200, now, "Date", CacheControl.formatDate(now), "Expires", "0"));
+    }
+
+    @Test
+    public void testResponsesWhichAreNotStored() throws Exception {
+        long now = System.currentTimeMillis();
+        assertNull(create(200, now, "Cache-Control", "no-store, max-age=60"));
+        assertNull(create(200, now, "Cache-Control", "private, max-age=60"));
+        assertNull(create(200, now, "Cache-Control", "max-age=60", "Set-Cookie", "session=1"));
+        assertNull(create(200, now, "Cache-Control", "max-age=60", "Vary", "*"));
+        assertNull(create(500, now, "Cache-Control", "max-age=60"));
+        assertNull("No freshness or validator", create(200, now, "Content-Type", "text/plain"));
+    }
+
+    @Test
+    public void testValidatorOnlyResponsesAreStoredStale() throws Exception {
+        long now = System.currentTimeMillis();
+        CachedResponse response = create(200, now, "ETag", "\"v1\"", "Cache-Control", "no-cache, max-age=60");
+        assertNotNull(response);
+        assertFalse(response.isFresh(now));
+        assertTrue(response.hasValidators());
+        assertTrue(response.matchesETag("\"v0\", W/\"v1\""));
+        assertFalse(response.matchesETag("\"v2\""));
+
+        CachedResponse revalidated = response.revalidate(headers("Cache-Control", "max-age=30", "ETag", "\"v1\""), now);
+        assertTrue(revalidated.isFresh(now));
+        assertTrue(revalidated.sharesBody(response));
+        assertEquals("text/plain", CachedResponse.getHeader(revalidated.getHeaders(), "Content-Type"));
+    }
+
+    @Test
+    public void testRequestCacheControl() throws Exception {
+        long now = System.currentTimeMillis();
+        CachedResponse response = create(200, now - 20000, "Cache-Control", "max-age=60");
+        assertTrue(response.isFresh(now, CacheControl.EMPTY));
+        assertFalse(response.isFresh(now, CacheControl.parse(Arrays.asList("no-cache"))));
+        assertFalse(response.isFresh(now, CacheControl.parse(Arrays.asList("max-age=10"))));
+    }
+
+    @Test
+    public void testHopByHopHeadersAreNotStored() throws Exception {
+        CachedResponse response = create(200, System.currentTimeMillis(), "Cache-Control", "max-age=60",
+                "Connection", "keep-alive", "Transfer-Encoding", "chunked", "Content-Length", "5");
+        assertNull(CachedResponse.getHeader(response.getHeaders(), "Connection"));
+        assertNull(CachedResponse.getHeader(response.getHeaders(), "Transfer-Encoding"));
+        assertNull(CachedResponse.getHeader(response.getHeaders(), "Content-Length"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws Exception {
+        HttpResponseCache cache = new HttpResponseCache();
+        long now = System.currentTimeMillis();
+        CachedResponse a = create(200, now, "Cache-Control", "max-age=60");
+        long size = a.getSize();
+        cache.setMaxMemorySize(size * 2);
+        cache.put("a", a);
+        cache.put("b", create(200, now, "Cache-Control", "max-age=60"));
+        assertSame(a, cache.get("a"));
+        cache.put("c", create(200, now, "Cache-Control", "max-age=60"));
+
+        assertNotNull("a was used more recently than b", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(2, cache.getMemoryEntryCount());
+        assertEquals(size * 2, cache.getMemorySize());
+        assertEquals(1, cache.getEvictions());
+
+        cache.setMaxEntrySize(4);
+        cache.put("d", create(200, now, "Cache-Control", "max-age=60"));
+        assertNull("Should not store responses larger than the max entry size", cache.get("d"));
+    }
+
+    @Test
+    public void testCoalesceConcurrentMisses() throws Exception {
+        HttpResponseCache cache = new HttpResponseCache();
+        final AtomicInteger retries = new AtomicInteger();
+        Runnable retry = new Runnable() {
+            @Override
+            public void run() {
+                retries.incrementAndGet();
+            }
+        };
+        assertFalse("The first request should fetch the response", cache.coalesce("a", retry));
+        assertTrue(cache.coalesce("a", retry));
+        assertTrue(cache.coalesce("a", retry));
+        assertFalse(cache.coalesce("b", retry));
+        assertEquals(0, retries.get());
+
+        cache.fetchCompleted("a");
+        assertEquals(2, retries.get());
+        assertEquals(2, cache.getCoalescedRequests());
+        assertFalse("The next request should fetch the response again", cache.coalesce("a", retry));
+    }
+
+    @Test
+    public void testStuckFetchIsTakenOver() throws Exception {
+        HttpResponseCache cache = new HttpResponseCache();
+        cache.setCoalesceTimeout(50);
+        final AtomicInteger retries = new AtomicInteger();
+        Runnable retry = new Runnable() {
+            @Override
+            public void run() {
+                retries.incrementAndGet();
+            }
+        };
+        assertFalse(cache.coalesce("a", retry));
+        assertTrue(cache.coalesce("a", retry));
+        Thread.sleep(100);
+        assertFalse("The next request should take over the stuck fetch", cache.coalesce("a", retry));
+        assertTrue("Requests should wait for the new fetch", cache.coalesce("a", retry));
+
+        cache.fetchCompleted("a");
+        assertEquals("The requests waiting for the stuck fetch should also be retried", 2, retries.get());
+    }
+
+    protected static CachedResponse create(int status, long responseMillis, String... nameValues) {
+        return CachedResponse.create(status, "OK", headers(nameValues), "hello".getBytes(), responseMillis);
+    }
+
+    protected static List<Map.Entry<String, String>> headers(String... nameValues) {
+        List<Map.Entry<String, String>> answer = new ArrayList<Map.Entry<String, String>>();
+        answer.add(new AbstractMap.SimpleEntry<String, String>("Content-Type", "text/plain"));
+        for (int i = 0; i < nameValues.length; i += 2) {
+            answer.add(new AbstractMap.SimpleEntry<String, String>(nameValues[i], nameValues[i + 1]));
+        }
+        return answer;
+    }
+}
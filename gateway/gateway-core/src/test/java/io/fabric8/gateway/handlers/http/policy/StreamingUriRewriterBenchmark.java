@@ -0,0 +1,100 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http.policy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput overhead of streaming a 64KB HTML response through the {@link StreamingUriRewriter}
+ * compared to passing the chunks straight through as the proxy does when the body is not rewritten.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StreamingUriRewriterBenchmark {
+    private static final String FROM = "http://backend:8181/cxf/crm";
+    private static final String TO = "http://gateway:9000/crm";
+
+    @Param({"1024", "8192"})
+    public int chunkSize;
+
+    private byte[][] chunks;
+
+    @Setup
+    public void setUp() {
+        StringBuilder html = new StringBuilder("<html><body>");
+        int i = 0;
+        while (html.length() < 64 * 1024) {
+            html.append("<p>Customer ").append(i).append(" <a href=\"").append(FROM).append("/customers/").append(i).append("\">details</a></p>\n");
+            i++;
+        }
+        html.append("</body></html>");
+        byte[] body = html.toString().getBytes();
+        int count = (body.length + chunkSize - 1) / chunkSize;
+        chunks = new byte[count][];
+        for (int c = 0; c < count; c++) {
+            int offset = c * chunkSize;
+            chunks[c] = new byte[Math.min(chunkSize, body.length - offset)];
+            System.arraycopy(body, offset, chunks[c], 0, chunks[c].length);
+        }
+    }
+
+    @Benchmark
+    public int passThrough() {
+        int length = 0;
+        for (byte[] chunk : chunks) {
+            length += new Buffer(chunk).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int rewrite() {
+        StreamingUriRewriter rewriter = new StreamingUriRewriter(FROM, TO);
+        int length = 0;
+        for (byte[] chunk : chunks) {
+            length += rewriter.rewrite(new Buffer(chunk)).length();
+        }
+        return length + rewriter.flush().length();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(StreamingUriRewriterBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http.policy;
+
+import org.junit.Test;
+import org.vertx.java.core.buffer.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingUriRewriterTest {
+
+    private static final String FROM = "http://backend:8181/cxf/crm";
+    private static final String TO = "http://gateway:9000/crm";
+
+    @Test
+    public void testRewritesUrlsSplitAtEveryPosition() throws Exception {
+        String body = "<a href=\"http://backend:8181/cxf/crm/customers/1\">one</a> <a href='http://backend:8181/cxf/crm'>home</a> http://backend:8181/cxf/cr";
+        String expected = body.replace(FROM, TO);
+        for (int split = 0; split <= body.length(); split++) {
+            StreamingUriRewriter rewriter = new StreamingUriRewriter(FROM, TO);
+            Buffer output = new Buffer();
+            output.appendBuffer(rewriter.rewrite(new Buffer(body.substring(0, split))));
+            output.appendBuffer(rewriter.rewrite(new Buffer(body.substring(split))));
+            output.appendBuffer(rewriter.flush());
+            assertEquals("Split at " + split, expected, output.toString());
+        }
+    }
+
+    @Test
+    public void testRewritesUrlsStreamedByteByByte() throws Exception {
+        String body = "{\"self\":\"http://backend:8181/cxf/crm/1\",\"parent\":\"http://backend:8181/cxf/crm\",\"other\":\"http://backend:8181/cxf/cars\"}";
+        StreamingUriRewriter rewriter = new StreamingUriRewriter(FROM, TO);
+        Buffer output = new Buffer();
+        for (int i = 0; i < body.length(); i++) {
+            output.appendBuffer(rewriter.rewrite(new Buffer(body.substring(i, i + 1))));
+            assertTrue("Look behind window should be bounded", rewriter.getPendingLength() < FROM.length());
+        }
+        output.appendBuffer(rewriter.flush());
+        assertEquals(body.replace(FROM, TO), output.toString());
+    }
+
+    @Test
+    public void testPassesThroughChunksWithoutUrls() throws Exception {
+        StreamingUriRewriter rewriter = new StreamingUriRewriter(FROM, TO);
+        Buffer chunk = new Buffer("<html><body>Hello World</body></html>");
+        assertSame(chunk, rewriter.rewrite(chunk));
+        assertEquals(0, rewriter.flush().length());
+    }
+
+    @Test
+    public void testContentTypes() throws Exception {
+        assertTrue(ReverseUriBodyPolicy.isRewritableContentType("text/html; charset=UTF-8"));
+        assertTrue(ReverseUriBodyPolicy.isRewritableContentType("application/json"));
+        assertFalse(ReverseUriBodyPolicy.isRewritableContentType("image/png"));
+        assertFalse(ReverseUriBodyPolicy.isRewritableContentType("text/plain; charset=UTF-16"));
+        assertFalse(ReverseUriBodyPolicy.isRewritableContentType(null));
+    }
+}
@@ -28,6 +28,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -103,6 +104,116 @@ public class LoadBalancerTest {
 
     }
 
+    @Test
+    public void testStickyLoadBalancerRebindsWhenServiceRemoved() throws Exception {
+        StickyLoadBalancer<String> loadBalancer = new StickyLoadBalancer<String>();
+        String first = loadBalancer.choose(services, clientRequestFacade);
+        assertEquals("Should stick to the same service", first, loadBalancer.choose(services, clientRequestFacade));
+
+        List<String> remaining = new ArrayList<String>(services);
+        remaining.remove(first);
+        String second = loadBalancer.choose(remaining, clientRequestFacade);
+        assertNotNull("Should have chosen another service", second);
+        assertTrue("Should have chosen one of the remaining services: " + second, remaining.contains(second));
+        assertEquals("Should stick to the new service", second, loadBalancer.choose(remaining, clientRequestFacade));
+
+        loadBalancer.removeService(second);
+        assertEquals("cache size", 0, loadBalancer.getCacheSize());
+        loadBalancer.choose(remaining, clientRequestFacade);
+        loadBalancer.retainServices(Collections.<String>emptyList());
+        assertEquals("cache size", 0, loadBalancer.getCacheSize());
+    }
+
+    @Test
+    public void testStickyLoadBalancerCacheIsBounded() throws Exception {
+        int maximumCacheSize = 100;
+        StickyLoadBalancer<String> loadBalancer = new StickyLoadBalancer<String>(maximumCacheSize);
+        for (int i = 0; i < maximumCacheSize * 10; i++) {
+            clientRequestKey = "client:" + i;
+            assertNotNull(loadBalancer.choose(services, clientRequestFacade));
+        }
+        assertTrue("Cache should be bounded but has size " + loadBalancer.getCacheSize(), loadBalancer.getCacheSize() <= maximumCacheSize);
+
+        loadBalancer.flush();
+        assertEquals("cache size", 0, loadBalancer.getCacheSize());
+    }
+
+    @Test
+    public void testLeastConnectionsLoadBalancer() throws Exception {
+        LeastConnectionsLoadBalancer<String> loadBalancer = new LeastConnectionsLoadBalancer<String>();
+        assertLoadBalancerWorksOnEmptyOrSingletonServices(loadBalancer);
+
+        // with no load we should spread the requests over all the services
+        assertEquals("Should have all of the values", services.size(), asSet(performRequests(loadBalancer)).size());
+
+        // lets keep all but the last service busy
+        String idle = services.get(services.size() - 1);
+        for (String service : services) {
+            if (!service.equals(idle)) {
+                loadBalancer.requestStarted(service);
+            }
+        }
+        assertEquals("Should pick the idle service", asSet(Arrays.asList(idle)), asSet(performRequests(loadBalancer)));
+
+        for (String service : services) {
+            loadBalancer.requestCompleted(service);
+        }
+        assertEquals("Should have all of the values", services.size(), asSet(performRequests(loadBalancer)).size());
+    }
+
+    @Test
+    public void testPeakEwmaLoadBalancerAvoidsSlowService() throws Exception {
+        PeakEwmaLoadBalancer<String> loadBalancer = new PeakEwmaLoadBalancer<String>();
+        assertLoadBalancerWorksOnEmptyOrSingletonServices(loadBalancer);
+
+        String slow = services.get(0);
+        for (String service : services) {
+            loadBalancer.recordLatency(service, service.equals(slow) ? 500000000L : 1000000L);
+        }
+        Set<String> set = asSet(performRequests(loadBalancer));
+        assertTrue("Should never pick the slow service: " + set, !set.contains(slow));
+        assertTrue("Should use the other services: " + set, set.size() > 1);
+    }
+
+    @Test
+    public void testPeakEwmaLoadBalancerRetriesPenalisedServiceOnceItsLatencyDecayed() throws Exception {
+        PeakEwmaLoadBalancer<String> loadBalancer = new PeakEwmaLoadBalancer<String>(TimeUnit.MILLISECONDS.toNanos(10));
+        String failed = services.get(0);
+        for (String service : services) {
+            loadBalancer.recordLatency(service, service.equals(failed) ? ServiceLoad.FAILURE_PENALTY_NANOS : 1000000L);
+        }
+        assertTrue("Should avoid the failed service", !asSet(performRequests(loadBalancer)).contains(failed));
+
+        // the failed service gets no traffic so only the other services record new latencies
+        Thread.sleep(200);
+        for (String service : services) {
+            if (!service.equals(failed)) {
+                loadBalancer.recordLatency(service, 1000000L);
+            }
+        }
+        assertTrue("Should try the failed service again", asSet(performRequests(loadBalancer)).contains(failed));
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesLoadBalancerAvoidsBusyService() throws Exception {
+        PowerOfTwoChoicesLoadBalancer<String> loadBalancer = new PowerOfTwoChoicesLoadBalancer<String>();
+        assertLoadBalancerWorksOnEmptyOrSingletonServices(loadBalancer);
+
+        String busy = services.get(0);
+        for (int i = 0; i < 100; i++) {
+            loadBalancer.requestStarted(busy);
+        }
+        Set<String> set = asSet(performRequests(loadBalancer));
+        assertTrue("Should never pick the busy service: " + set, !set.contains(busy));
+    }
+
+    @Test
+    public void testCreateLoadAwareLoadBalancers() throws Exception {
+        assertTrue(LoadBalancers.createLoadBalancer(LoadBalancers.LEAST_CONNECTIONS_LOAD_BALANCER, 0) instanceof LeastConnectionsLoadBalancer);
+        assertTrue(LoadBalancers.createLoadBalancer(LoadBalancers.PEAK_EWMA_LOAD_BALANCER, 0) instanceof PeakEwmaLoadBalancer);
+        assertTrue(LoadBalancers.createLoadBalancer(LoadBalancers.POWER_OF_TWO_CHOICES_LOAD_BALANCER, 0) instanceof PowerOfTwoChoicesLoadBalancer);
+    }
+
     protected List<String> performRequests(LoadBalancer<String> loadBalancer) {
         List<String> answer = new ArrayList<String>();
         for (int i = 0; i < requestCount; i++) {
@@ -0,0 +1,169 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of the {@link StickyLoadBalancer} against the previous implementation which
+ * synchronized on an access ordered {@link LinkedHashMap}, using 1, 4 and 16 threads.
+ * <p/>
+ * The client keys are drawn from a population twice the size of the cache so that the benchmark
+ * exercises both cache hits and evictions.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StickyLoadBalancerBenchmark {
+
+    private static final int CACHE_SIZE = 10000;
+    private static final int CLIENTS = CACHE_SIZE * 2;
+
+    @State(Scope.Benchmark)
+    public static class Balancers {
+        final List<String> services = new ArrayList<String>();
+        final String[] clientKeys = new String[CLIENTS];
+        LoadBalancer<String> sticky;
+        LoadBalancer<String> synchronizedSticky;
+
+        @Setup
+        public void setUp() {
+            for (int i = 0; i < 8; i++) {
+                services.add("tcp://broker" + i + ":61616");
+            }
+            for (int i = 0; i < clientKeys.length; i++) {
+                clientKeys[i] = "client:" + i;
+            }
+            sticky = new StickyLoadBalancer<String>(CACHE_SIZE);
+            synchronizedSticky = new SynchronizedStickyLoadBalancer<String>(CACHE_SIZE);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client implements ClientRequestFacade {
+        int counter = (int) (Math.random() * CLIENTS);
+        String key;
+
+        ClientRequestFacade next(Balancers balancers) {
+            // a cheap pseudo random walk over the client keys
+            counter = (counter + 7919) % CLIENTS;
+            key = balancers.clientKeys[counter];
+            return this;
+        }
+
+        @Override
+        public String getClientRequestKey() {
+            return key;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String sticky_1(Balancers balancers, Client client) {
+        return balancers.sticky.choose(balancers.services, client.next(balancers));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String sticky_4(Balancers balancers, Client client) {
+        return balancers.sticky.choose(balancers.services, client.next(balancers));
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String sticky_16(Balancers balancers, Client client) {
+        return balancers.sticky.choose(balancers.services, client.next(balancers));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String synchronizedSticky_1(Balancers balancers, Client client) {
+        return balancers.synchronizedSticky.choose(balancers.services, client.next(balancers));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String synchronizedSticky_4(Balancers balancers, Client client) {
+        return balancers.synchronizedSticky.choose(balancers.services, client.next(balancers));
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String synchronizedSticky_16(Balancers balancers, Client client) {
+        return balancers.synchronizedSticky.choose(balancers.services, client.next(balancers));
+    }
+
+    /**
+     * The previous sticky load balancer implementation kept as a baseline
+     */
+    static class SynchronizedStickyLoadBalancer<T> implements LoadBalancer<T> {
+        private final LoadBalancer<T> firstRequestLoadBalancer = new RoundRobinLoadBalancer<T>();
+        private final Map<String, T> requestCache;
+
+        SynchronizedStickyLoadBalancer(final int maximumCacheSize) {
+            this.requestCache = new LinkedHashMap<String, T>(maximumCacheSize + 1, .75F, true) {
+                public boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+                    return size() > maximumCacheSize;
+                }
+            };
+        }
+
+        @Override
+        public T choose(List<T> services, ClientRequestFacade requestFacade) {
+            String clientKey = requestFacade.getClientRequestKey();
+            T answer;
+            synchronized (requestCache) {
+                answer = requestCache.get(clientKey);
+                if (answer == null) {
+                    answer = firstRequestLoadBalancer.choose(services, requestFacade);
+                    if (answer != null) {
+                        requestCache.put(clientKey, answer);
+                    }
+                }
+            }
+            return answer;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(StickyLoadBalancerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
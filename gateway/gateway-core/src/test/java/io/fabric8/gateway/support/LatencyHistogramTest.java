@@ -0,0 +1,56 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.support;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmptyHistogram() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMicros(99));
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 990; i++) {
+            histogram.record(100, TimeUnit.MICROSECONDS);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(50, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(50000, histogram.getMaxMicros());
+
+        long p50 = histogram.getPercentileMicros(50);
+        assertTrue("p50 should be within a factor of two of 100us but was " + p50, p50 >= 100 && p50 < 200);
+        long p999 = histogram.getPercentileMicros(99.9);
+        assertTrue("p999 should be within a factor of two of 50ms but was " + p999, p999 >= 25000 && p999 <= 50000);
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+}
@@ -17,13 +17,12 @@ package io.fabric8.gateway.fabric.haproxy;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -31,8 +30,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.fabric8.api.Container;
 import io.fabric8.api.FabricService;
@@ -41,6 +43,7 @@ import io.fabric8.api.jcip.GuardedBy;
 import io.fabric8.api.scr.AbstractComponent;
 import io.fabric8.api.scr.Configurer;
 import io.fabric8.common.util.Closeables;
+import io.fabric8.common.util.Files;
 import io.fabric8.common.util.Strings;
 import io.fabric8.gateway.fabric.haproxy.model.BackEndServer;
 import io.fabric8.gateway.fabric.haproxy.model.FrontEnd;
@@ -57,6 +60,7 @@ import org.apache.felix.scr.annotations.Modified;
 import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
 import org.apache.felix.scr.annotations.Service;
 import org.mvel2.ParserContext;
 import org.mvel2.templates.CompiledTemplate;
@@ -65,6 +69,8 @@ import org.mvel2.templates.TemplateRuntime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.MBeanServer;
+
 /**
  * An HTTP gateway which listens on a port and applies a number of {@link HttpMappingRuleConfiguration} instances to bind
  * HTTP requests to different HTTP based services running within the fabric.
@@ -77,6 +83,8 @@ public class FabricHaproxyGateway extends AbstractComponent {
     private static final transient Logger LOG = LoggerFactory.getLogger(FabricHaproxyGateway.class);
     private static final String TEMPLATE_FILE_NAME = "io.fabric8.gateway.haproxy.config.mvel";
 
+    public static final long DEFAULT_COALESCE_WINDOW = 500L;
+
     @Reference
     private Configurer configurer;
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY, bind = "setFabricService", unbind = "unsetFabricService")
@@ -85,6 +93,9 @@ public class FabricHaproxyGateway extends AbstractComponent {
     @Reference(cardinality = ReferenceCardinality.MANDATORY_MULTIPLE, bind = "setCurator", unbind = "unsetCurator")
     private CuratorFramework curator;
 
+    @Reference(referenceInterface = MBeanServer.class, cardinality = ReferenceCardinality.OPTIONAL_UNARY, bind = "setMBeanServer", unbind = "unsetMBeanServer", policy = ReferencePolicy.DYNAMIC)
+    private MBeanServer mbeanServer;
+
     @Property(name = "configFile",
             label = "Config file location", description = "The full file path of the generated configuration file created for haproxy to reuse")
     private String configFile;
@@ -97,15 +108,29 @@ public class FabricHaproxyGateway extends AbstractComponent {
             label = "Reload Command Directory", description = "The directory that should be used to run the reload command in")
     private String reloadCommandDirectory;
 
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    @Property(name = "coalesceWindow", longValue = DEFAULT_COALESCE_WINDOW,
+            label = "Coalesce Window", description = "The number of milliseconds to wait after a mapping change for further changes so that a burst of changes, such as a rolling deployment, results in a single regeneration of the configuration file. Use 0 to regenerate on every change")
+    private long coalesceWindow = DEFAULT_COALESCE_WINDOW;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicBoolean regenerationScheduled = new AtomicBoolean();
+    private final HaproxyGatewayStatistics statistics = new HaproxyGatewayStatistics();
 
     private Set<HttpMappingRule> mappingRuleConfigurations = new CopyOnWriteArraySet<HttpMappingRule>();
     private Runnable changeListener = new Runnable() {
         @Override
         public void run() {
+            statistics.changed();
+            scheduleRegeneration();
+        }
+    };
+    private final Runnable regenerationTask = new Runnable() {
+        @Override
+        public void run() {
+            // changes from now on need another regeneration
+            regenerationScheduled.set(false);
             try {
-                rewriteConfigurationFile();
-                reloadHaproxy();
+                regenerate();
             } catch (Exception e) {
                 LOG.warn("Failed to write haproxy config file: " + e, e);
             }
@@ -116,27 +141,75 @@ public class FabricHaproxyGateway extends AbstractComponent {
     @GuardedBy("this")
     private final ParserContext parserContext = new ParserContext();
     private CompiledTemplate template;
+    @GuardedBy("this")
+    private String lastConfiguration;
 
-    public void rewriteConfigurationFile() throws IOException {
-        LOG.info("Writing HAProxy file: " + configFile);
-        File outFile = new File(configFile);
-        outFile.getParentFile().mkdirs();
-        PrintWriter writer = new PrintWriter(new FileWriter(outFile));
-        try {
-            Map<String, MappedServices> mappedServices = getMappedServices();
+    /**
+     * Regenerates the configuration file after the coalescing window unless a regeneration is already pending,
+     * in which case it will pick up this change too
+     */
+    protected void scheduleRegeneration() {
+        if (coalesceWindow <= 0) {
+            regenerationTask.run();
+        } else if (regenerationScheduled.compareAndSet(false, true)) {
+            try {
+                executor.schedule(regenerationTask, coalesceWindow, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                regenerationScheduled.set(false);
+                LOG.debug("Ignoring mapping change as the gateway is stopped");
+            }
+        }
+    }
 
-            CompiledTemplate compiledTemplate = getTemplate();
-            Map<String, ?> data = createTemplateData();
+    /**
+     * Rewrites the configuration file and reloads haproxy if the configuration has changed
+     *
+     * @return true if the configuration changed
+     */
+    public synchronized boolean regenerate() throws Exception {
+        if (rewriteConfigurationFile()) {
+            reloadHaproxy();
+            return true;
+        }
+        return false;
+    }
 
-            String renderedTemplate = TemplateRuntime.execute(compiledTemplate, parserContext, data).toString();
-            writer.println(renderedTemplate);
-        } finally {
-            try {
-                writer.close();
-            } catch (Exception e) {
-                LOG.debug("Caught while closing: " + e, e);
+    /**
+     * Renders the configuration and writes it to the configuration file unless it is the same as the current file.
+     * The file is written to a temporary file first which is renamed so that haproxy never reads a partial file.
+     *
+     * @return true if the file was written
+     */
+    public synchronized boolean rewriteConfigurationFile() throws IOException {
+        long start = System.nanoTime();
+        CompiledTemplate compiledTemplate = getTemplate();
+        Map<String, ?> data = createTemplateData();
+        String configuration = TemplateRuntime.execute(compiledTemplate, parserContext, data).toString() + System.getProperty("line.separator");
+
+        File outFile = new File(configFile).getAbsoluteFile();
+        if (lastConfiguration == null && outFile.isFile()) {
+            // avoid reloading haproxy on a restart when the backends have not changed
+            lastConfiguration = Files.toString(outFile);
+        }
+        boolean modified = !configuration.equals(lastConfiguration);
+        statistics.rendered(modified, start);
+        if (!modified) {
+            LOG.debug("HAProxy file " + configFile + " is unchanged");
+            return false;
+        }
+
+        LOG.info("Writing HAProxy file: " + configFile);
+        File tmpFile = new File(outFile.getParentFile(), "." + outFile.getName() + ".tmp");
+        Files.writeToFile(tmpFile, configuration, Charset.defaultCharset());
+        if (!tmpFile.renameTo(outFile)) {
+            // some platforms can not rename over an existing file
+            outFile.delete();
+            if (!tmpFile.renameTo(outFile)) {
+                throw new IOException("Failed to rename " + tmpFile + " to " + outFile);
             }
         }
+        lastConfiguration = configuration;
+        return true;
     }
 
     public void reloadHaproxy() throws Exception {
@@ -159,6 +232,8 @@ public class FabricHaproxyGateway extends AbstractComponent {
                 public void run() {
                     Process process = null;
                     Runtime runtime = Runtime.getRuntime();
+                    long start = System.nanoTime();
+                    boolean succeeded = false;
                     try {
                         if (Strings.isNotBlank(reloadCommandDirectory)) {
                             File directory = new File(reloadCommandDirectory);
@@ -183,12 +258,14 @@ public class FabricHaproxyGateway extends AbstractComponent {
                         try {
                             int exitCode = process.waitFor();
                             LOG.info("command exit code: " + exitCode);
+                            succeeded = exitCode == 0;
                         } catch (InterruptedException e) {
                             LOG.warn("Failed to wait for process exit code: " + e, e);
                         }
                     } catch (Exception e) {
                         LOG.error("Failed to create process: " + reloadCommand + ". " + e, e);
                     } finally {
+                        statistics.reloaded(succeeded, start);
                         if (process != null) {
                             try {
                                 process.destroy();
@@ -276,6 +353,9 @@ public class FabricHaproxyGateway extends AbstractComponent {
     void activate(Map<String, ?> configuration) throws Exception {
         updateConfiguration(configuration);
         activateComponent();
+        if (mbeanServer != null) {
+            statistics.registerMBeanServer(mbeanServer);
+        }
     }
 
 
@@ -290,6 +370,8 @@ public class FabricHaproxyGateway extends AbstractComponent {
     void deactivate() {
         deactivateInternal();
         deactivateComponent();
+        statistics.unregisterMBeanServer(mbeanServer);
+        executor.shutdown();
     }
 
     protected void updateConfiguration(Map<String, ?> configuration) throws Exception {
@@ -307,7 +389,10 @@ public class FabricHaproxyGateway extends AbstractComponent {
 
 
     public void removeMappingRuleConfiguration(HttpMappingRule mappingRuleConfiguration) {
-        mappingRuleConfigurations.remove(mappingRuleConfiguration);
+        mappingRuleConfiguration.removeChangeListener(changeListener);
+        if (mappingRuleConfigurations.remove(mappingRuleConfiguration)) {
+            changeListener.run();
+        }
     }
 
     public Map<String, MappedServices> getMappedServices() {
@@ -333,6 +418,22 @@ public class FabricHaproxyGateway extends AbstractComponent {
         this.curator = null;
     }
 
+    public void setMBeanServer(MBeanServer mbeanServer) {
+        this.mbeanServer = mbeanServer;
+        if (isValid()) {
+            statistics.registerMBeanServer(mbeanServer);
+        }
+    }
+
+    public void unsetMBeanServer(MBeanServer mbeanServer) {
+        statistics.unregisterMBeanServer(mbeanServer);
+        this.mbeanServer = null;
+    }
+
+    public HaproxyGatewayStatistics getStatistics() {
+        return statistics;
+    }
+
     public FabricService getFabricService() {
         return fabricService;
     }
@@ -361,6 +462,17 @@ public class FabricHaproxyGateway extends AbstractComponent {
         this.reloadCommand = reloadCommand;
     }
 
+    public long getCoalesceWindow() {
+        return coalesceWindow;
+    }
+
+    /**
+     * Sets the number of milliseconds to wait for further mapping changes before regenerating the configuration
+     */
+    public void setCoalesceWindow(long coalesceWindow) {
+        this.coalesceWindow = coalesceWindow;
+    }
+
     public String getReloadCommandDirectory() {
         return reloadCommandDirectory;
     }
@@ -0,0 +1,146 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.fabric.haproxy;
+
+import io.fabric8.gateway.support.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The statistics of a {@link FabricHaproxyGateway} such as how many mapping changes resulted in
+ * the configuration being rendered and haproxy being reloaded and how long each took.
+ */
+public class HaproxyGatewayStatistics implements HaproxyGatewayStatisticsMBean {
+    private static final transient Logger LOG = LoggerFactory.getLogger(HaproxyGatewayStatistics.class);
+
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicLong renders = new AtomicLong();
+    private final AtomicLong unchangedRenders = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong failedReloads = new AtomicLong();
+    private final LatencyHistogram renderLatency = new LatencyHistogram();
+    private final LatencyHistogram reloadLatency = new LatencyHistogram();
+    private ObjectName objectName;
+
+    public void changed() {
+        changes.incrementAndGet();
+    }
+
+    public void rendered(boolean modified, long startNanos) {
+        renders.incrementAndGet();
+        if (!modified) {
+            unchangedRenders.incrementAndGet();
+        }
+        renderLatency.recordSince(startNanos);
+    }
+
+    public void reloaded(boolean succeeded, long startNanos) {
+        reloads.incrementAndGet();
+        if (!succeeded) {
+            failedReloads.incrementAndGet();
+        }
+        reloadLatency.recordSince(startNanos);
+    }
+
+    // JMX
+    //-------------------------------------------------------------------------
+
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        if (objectName == null) {
+            objectName = new ObjectName("io.fabric8.gateway:type=HaproxyGateway");
+        }
+        return objectName;
+    }
+
+    public void setObjectName(ObjectName objectName) {
+        this.objectName = objectName;
+    }
+
+    public void registerMBeanServer(MBeanServer mbeanServer) {
+        try {
+            ObjectName name = getObjectName();
+            if (!mbeanServer.isRegistered(name)) {
+                mbeanServer.registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            LOG.warn("An error occured during mbean server registration: " + e, e);
+        }
+    }
+
+    public void unregisterMBeanServer(MBeanServer mbeanServer) {
+        if (mbeanServer != null) {
+            try {
+                ObjectName name = getObjectName();
+                if (mbeanServer.isRegistered(name)) {
+                    mbeanServer.unregisterMBean(name);
+                }
+            } catch (Exception e) {
+                LOG.warn("An error occured during mbean server unregistration: " + e, e);
+            }
+        }
+    }
+
+    @Override
+    public long getChanges() {
+        return changes.get();
+    }
+
+    @Override
+    public long getRenders() {
+        return renders.get();
+    }
+
+    @Override
+    public long getUnchangedRenders() {
+        return unchangedRenders.get();
+    }
+
+    @Override
+    public long getReloads() {
+        return reloads.get();
+    }
+
+    @Override
+    public long getFailedReloads() {
+        return failedReloads.get();
+    }
+
+    @Override
+    public String getRenderLatency() {
+        return renderLatency.toString();
+    }
+
+    @Override
+    public String getReloadLatency() {
+        return reloadLatency.toString();
+    }
+
+    @Override
+    public void resetStatistics() {
+        changes.set(0);
+        renders.set(0);
+        unchangedRenders.set(0);
+        reloads.set(0);
+        failedReloads.set(0);
+        renderLatency.reset();
+        reloadLatency.reset();
+    }
+}
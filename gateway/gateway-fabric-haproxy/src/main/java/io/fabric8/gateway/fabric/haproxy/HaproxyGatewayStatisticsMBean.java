@@ -0,0 +1,54 @@
+/**
+ *  Copyright 2005-2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.fabric.haproxy;
+
+/**
+ * JMX MBean API for the statistics of the haproxy configuration regeneration
+ */
+public interface HaproxyGatewayStatisticsMBean {
+
+    /**
+     * Returns the number of mapping change events received
+     */
+    long getChanges();
+
+    /**
+     * Returns the number of times the configuration was rendered which is less than the number of changes
+     * as the changes within the coalescing window are rendered once
+     */
+    long getRenders();
+
+    /**
+     * Returns the number of renders which did not change the configuration so no reload was required
+     */
+    long getUnchangedRenders();
+
+    long getReloads();
+
+    long getFailedReloads();
+
+    /**
+     * Returns a summary of the render duration histogram
+     */
+    String getRenderLatency();
+
+    /**
+     * Returns a summary of the reload command duration histogram
+     */
+    String getReloadLatency();
+
+    void resetStatistics();
+}
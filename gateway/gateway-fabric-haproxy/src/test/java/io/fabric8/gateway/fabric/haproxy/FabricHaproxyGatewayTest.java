@@ -36,6 +36,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -81,6 +83,7 @@ public class FabricHaproxyGatewayTest {
 
     @Test
     public void testGenerateTemplate() throws Exception {
+        gateway.setCoalesceWindow(0);
         setUriTemplate("/bar/{version}{contextPath}/", oldVersion);
 
         addQuickstartServices();
@@ -106,6 +109,39 @@ public class FabricHaproxyGatewayTest {
         LOG.info("Done!");
     }
 
+    @Test
+    public void testCoalescesChangesAndSkipsUnchangedConfiguration() throws Exception {
+        outputFile.delete();
+        gateway.setCoalesceWindow(200);
+        HaproxyGatewayStatistics statistics = gateway.getStatistics();
+        setUriTemplate("/bar/{version}{contextPath}/", oldVersion);
+
+        addQuickstartServices();
+        waitFor(statistics, 1, 0);
+        assertEquals(2, statistics.getChanges());
+        assertEquals("The changes should be rendered once", 1, statistics.getRenders());
+        assertTrue("Should have generated " + outputFile, outputFile.exists() && outputFile.isFile());
+        long lastModified = outputFile.lastModified();
+
+        // re-adding the same services does not change the configuration so haproxy is not reloaded
+        addQuickstartServices();
+        waitFor(statistics, 2, 1);
+        assertFalse("The unchanged configuration should not be regenerated", gateway.regenerate());
+        assertEquals(2, statistics.getUnchangedRenders());
+        assertEquals(lastModified, outputFile.lastModified());
+        assertEquals(1, statistics.getReloads());
+    }
+
+    protected void waitFor(HaproxyGatewayStatistics statistics, long renders, long unchangedRenders) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 5000;
+        while ((statistics.getRenders() < renders || statistics.getUnchangedRenders() < unchangedRenders || statistics.getReloads() < 1)
+                && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+        assertEquals(renders, statistics.getRenders());
+        assertEquals(unchangedRenders, statistics.getUnchangedRenders());
+    }
+
     protected void assertLinesContains(List<String> lines, String... expectedLines) {
         for (String expectedLine : expectedLines) {
             boolean found = false;
@@ -19,6 +19,7 @@ import io.fabric8.zookeeper.internal.SimplePathTemplate;
 import io.fabric8.gateway.ServiceDetails;
 import io.fabric8.gateway.handlers.http.HttpMappingRule;
 import io.fabric8.gateway.handlers.http.MappedServices;
+import io.fabric8.gateway.handlers.http.cache.HttpResponseCache;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,17 +48,29 @@ public class HttpMappingRuleBase implements HttpMappingRule {
     private final String enabledVersion;
     private final LoadBalancer<String> loadBalancer;
     private final boolean reverseHeaders;
+    private final boolean reverseBody;
+    private final HttpResponseCache responseCache;
 
     private Map<String, MappedServices> mappingRules = new ConcurrentHashMap<String, MappedServices>();
 
     private Set<Runnable> changeListeners = new CopyOnWriteArraySet<Runnable>();
 
     public HttpMappingRuleBase(SimplePathTemplate uriTemplate, String gatewayVersion, String enabledVersion, LoadBalancer<String> loadBalancer, boolean reverseHeaders) {
+        this(uriTemplate, gatewayVersion, enabledVersion, loadBalancer, reverseHeaders, false);
+    }
+
+    public HttpMappingRuleBase(SimplePathTemplate uriTemplate, String gatewayVersion, String enabledVersion, LoadBalancer<String> loadBalancer, boolean reverseHeaders, boolean reverseBody) {
+        this(uriTemplate, gatewayVersion, enabledVersion, loadBalancer, reverseHeaders, reverseBody, null);
+    }
+
+    public HttpMappingRuleBase(SimplePathTemplate uriTemplate, String gatewayVersion, String enabledVersion, LoadBalancer<String> loadBalancer, boolean reverseHeaders, boolean reverseBody, HttpResponseCache responseCache) {
         this.uriTemplate = uriTemplate;
         this.gatewayVersion = gatewayVersion;
         this.enabledVersion = enabledVersion;
         this.loadBalancer = loadBalancer;
         this.reverseHeaders = reverseHeaders;
+        this.reverseBody = reverseBody;
+        this.responseCache = responseCache;
     }
 
     /**
@@ -83,6 +96,8 @@ public class HttpMappingRuleBase implements HttpMappingRule {
                 ", loadBalancer=" + loadBalancer +
                 ", enabledVersion='" + enabledVersion + '\'' +
                 ", reverseHeaders=" + reverseHeaders +
+                ", reverseBody=" + reverseBody +
+                ", responseCache=" + responseCache +
                 ", gatewayVersion='" + gatewayVersion + '\'' +
                 '}';
     }
@@ -97,6 +112,10 @@ public class HttpMappingRuleBase implements HttpMappingRule {
         return gatewayVersion;
     }
 
+    public HttpResponseCache getResponseCache() {
+        return responseCache;
+    }
+
     public SimplePathTemplate getUriTemplate() {
         return uriTemplate;
     }
@@ -142,7 +161,7 @@ public class HttpMappingRuleBase implements HttpMappingRule {
                         }
                     }
                 } else {
-                    MappedServices mappedServices = new MappedServices(service, serviceDetails, loadBalancer, reverseHeaders);
+                    MappedServices mappedServices = new MappedServices(service, serviceDetails, loadBalancer, reverseHeaders, reverseBody, responseCache);
                     MappedServices oldRule = mappingRules.put(fullPath, mappedServices);
                     if (oldRule != null) {
                         mappedServices.getServiceUrls().addAll(oldRule.getServiceUrls());
@@ -24,6 +24,7 @@ import io.fabric8.api.scr.AbstractComponent;
 import io.fabric8.api.scr.Configurer;
 import io.fabric8.common.util.Strings;
 import io.fabric8.gateway.ServiceDetails;
+import io.fabric8.gateway.admission.AdmissionController;
 import io.fabric8.gateway.ServiceMap;
 import io.fabric8.gateway.fabric.http.FabricHTTPGateway;
 import io.fabric8.gateway.fabric.support.vertx.VertxService;
@@ -55,6 +56,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Vertx;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 /**
  * A gateway which listens to a part of the ZooKeeper tree for messaging services and exposes those over a protocol detecting port.
  */
@@ -79,6 +83,9 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
     @Reference(cardinality = ReferenceCardinality.OPTIONAL_UNARY, bind = "setHttpGateway", unbind = "unsetHttpGateway", policy=ReferencePolicy.DYNAMIC)
     private FabricHTTPGateway httpGateway;
 
+    @Reference(referenceInterface = MBeanServer.class, cardinality = ReferenceCardinality.OPTIONAL_UNARY, bind = "setMBeanServer", unbind = "unsetMBeanServer", policy=ReferencePolicy.DYNAMIC)
+    private MBeanServer mbeanServer;
+
     @Property(name = "zooKeeperPath", value = "/fabric/registry/clusters/fusemq",
             label = "ZooKeeper path", description = "The path in ZooKeeper which is monitored to discover the available message brokers")
     private String zooKeeperPath;
@@ -123,7 +130,10 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
             options = {
                     @PropertyOption(name = LoadBalancers.RANDOM_LOAD_BALANCER, value = "Random"),
                     @PropertyOption(name = LoadBalancers.ROUND_ROBIN_LOAD_BALANCER, value = "Round Robin"),
-                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky")
+                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky"),
+                    @PropertyOption(name = LoadBalancers.LEAST_CONNECTIONS_LOAD_BALANCER, value = "Least Connections"),
+                    @PropertyOption(name = LoadBalancers.PEAK_EWMA_LOAD_BALANCER, value = "Peak EWMA Latency"),
+                    @PropertyOption(name = LoadBalancers.POWER_OF_TWO_CHOICES_LOAD_BALANCER, value = "Power of Two Choices")
             },
             label = "Load Balancer", description = "The kind of load balancing strategy to use when multiple endpoints can service the client conneciton")
     private String loadBalancerType;
@@ -174,10 +184,53 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
             label = "SSL Cipher Suites Disabled", description = "Comma separated list of cipher suites to disable on the SSL sessions.")
     String disabledCypherSuites;
 
+    @Property(name = "sslSessionCacheSize", intValue = SslConfig.DEFAULT_SESSION_CACHE_SIZE,
+            label = "SSL Session Cache Size", description = "The maximum number of SSL sessions to cache so that reconnecting clients can resume their session rather than perform a full handshake")
+    private int sslSessionCacheSize = SslConfig.DEFAULT_SESSION_CACHE_SIZE;
+
+    @Property(name = "sslSessionTimeout", intValue = SslConfig.DEFAULT_SESSION_TIMEOUT,
+            label = "SSL Session Timeout", description = "The number of seconds a cached SSL session can be resumed for")
+    private int sslSessionTimeout = SslConfig.DEFAULT_SESSION_TIMEOUT;
+
+    @Property(name = "sslHandshakeThreads", intValue = SslConfig.DEFAULT_HANDSHAKE_THREADS,
+            label = "SSL Handshake Threads", description = "The number of threads which run the SSL handshake tasks so that they do not stall the event loop. Use 0 to run them on the event loop")
+    private int sslHandshakeThreads = SslConfig.DEFAULT_HANDSHAKE_THREADS;
+
+    @Property(name = "connectionRateLimit", doubleValue = 0,
+            label = "Connection Rate Limit", description = "The number of new connections per second allowed for each rate limit key. Use 0 for no limit")
+    private double connectionRateLimit;
+
+    @Property(name = "connectionRateBurst", intValue = AdmissionController.DEFAULT_RATE_LIMIT_BURST,
+            label = "Connection Rate Burst", description = "The number of new connections a rate limit key can open at once before the connection rate limit applies")
+    private int connectionRateBurst = AdmissionController.DEFAULT_RATE_LIMIT_BURST;
+
+    @Property(name = "rateLimitKey",
+            value = AdmissionController.REMOTE_ADDRESS,
+            options = {
+                    @PropertyOption(name = AdmissionController.REMOTE_ADDRESS, value = "Remote Address"),
+                    @PropertyOption(name = AdmissionController.VIRTUAL_HOST, value = "Virtual Host"),
+                    @PropertyOption(name = AdmissionController.CLIENT_ID, value = "Client ID")
+            },
+            label = "Rate Limit Key", description = "What the connection rate limit applies to; connections which do not specify a virtual host or client id are limited by their remote address")
+    private String rateLimitKey = AdmissionController.REMOTE_ADDRESS;
+
+    @Property(name = "maxConnectionsPerBackend", intValue = 0,
+            label = "Max Connections Per Backend", description = "The maximum number of concurrent connections to each message broker. Use 0 for no limit")
+    private int maxConnectionsPerBackend;
+
+    @Property(name = "maxQueuedConnectionsPerBackend", intValue = 0,
+            label = "Max Queued Connections Per Backend", description = "The number of connections which can wait for a message broker which is at its maximum connections. Use 0 to reject those connections")
+    private int maxQueuedConnectionsPerBackend;
+
+    @Property(name = "connectionQueueTimeout", longValue = AdmissionController.DEFAULT_QUEUE_TIMEOUT,
+            label = "Connection Queue Timeout", description = "The number of milliseconds a queued connection waits for a message broker before it is closed")
+    private long connectionQueueTimeout = AdmissionController.DEFAULT_QUEUE_TIMEOUT;
+
     private DetectingGateway detectingGateway;
     DetectingGatewayProtocolHandler handler = new DetectingGatewayProtocolHandler();
     private GatewayServiceTreeCache cache;
     private ServiceMap serviceMap = new ServiceMap();
+    private ServiceMap.Listener serviceMapListener;
 
     @Activate
     void activate(Map<String, ?> configuration) throws Exception {
@@ -191,6 +244,12 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
             cache = new GatewayServiceTreeCache(getCurator(), getZooKeeperPath(), serviceMap);
             cache.init();
             detectingGateway.init();
+            handler.getStatistics().setObjectName(new ObjectName("io.fabric8.gateway:type=DetectingGateway,port=" + port));
+            handler.getAdmissionController().setObjectName(new ObjectName("io.fabric8.gateway:type=AdmissionController,gateway=DetectingGateway,port=" + port));
+            if (mbeanServer != null) {
+                handler.getStatistics().registerMBeanServer(mbeanServer);
+                handler.getAdmissionController().registerMBeanServer(mbeanServer);
+            }
         }
     }
 
@@ -198,9 +257,15 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
     void deactivate() {
         deactivateComponent();
         if (detectingGateway != null) {
+            handler.getStatistics().unregisterMBeanServer(mbeanServer);
+            handler.getAdmissionController().unregisterMBeanServer(mbeanServer);
             cache.destroy();
             detectingGateway.destroy();
         }
+        if (serviceMapListener != null) {
+            serviceMap.removeListener(serviceMapListener);
+            serviceMapListener = null;
+        }
     }
 
     protected DetectingGateway createDetectingGateway() {
@@ -255,6 +320,9 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
             if( Strings.isNotBlank(disabledCypherSuites) ) {
                 sslConfig.setDisabledCypherSuites(disabledCypherSuites);
             }
+            sslConfig.setSessionCacheSize(sslSessionCacheSize);
+            sslConfig.setSessionTimeout(sslSessionTimeout);
+            sslConfig.setHandshakeThreads(sslHandshakeThreads);
             handler.setSslConfig(sslConfig);
             protocols.add(new SslProtocol());
         }
@@ -270,7 +338,19 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
         handler.setServiceMap(serviceMap);
         handler.setProtocols(protocols);
         handler.setServiceLoadBalancer(serviceLoadBalancer);
+        serviceMapListener = LoadBalancers.bindServiceMap(serviceMap, serviceLoadBalancer);
         handler.setDefaultVirtualHost(defaultVirtualHost);
+
+        AdmissionController admissionController = handler.getAdmissionController();
+        admissionController.setRateLimit(connectionRateLimit);
+        admissionController.setRateLimitBurst(connectionRateBurst);
+        if (Strings.isNotBlank(rateLimitKey)) {
+            admissionController.setRateLimitKey(rateLimitKey);
+        }
+        admissionController.setMaxConnectionsPerBackend(maxConnectionsPerBackend);
+        admissionController.setMaxQueuedConnectionsPerBackend(maxQueuedConnectionsPerBackend);
+        admissionController.setQueueTimeout(connectionQueueTimeout);
+        admissionController.start();
         return new DetectingGateway(vertx, port, handler);
     }
 
@@ -374,6 +454,20 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
         return handler;
     }
 
+    public void setMBeanServer(MBeanServer mbeanServer) {
+        this.mbeanServer = mbeanServer;
+        if (detectingGateway != null) {
+            handler.getStatistics().registerMBeanServer(mbeanServer);
+            handler.getAdmissionController().registerMBeanServer(mbeanServer);
+        }
+    }
+
+    public void unsetMBeanServer(MBeanServer mbeanServer) {
+        handler.getStatistics().unregisterMBeanServer(mbeanServer);
+        handler.getAdmissionController().unregisterMBeanServer(mbeanServer);
+        this.mbeanServer = null;
+    }
+
     public void setHttpGateway(FabricHTTPGateway httpGateway) {
         this.httpGateway = httpGateway;
         LOG.info("HTTP Gateway address is: "+httpGateway.getLocalAddress());
@@ -436,6 +530,18 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
         this.enabledCipherSuites = enabledCipherSuites;
     }
 
+    public void setSslSessionCacheSize(int sslSessionCacheSize) {
+        this.sslSessionCacheSize = sslSessionCacheSize;
+    }
+
+    public void setSslSessionTimeout(int sslSessionTimeout) {
+        this.sslSessionTimeout = sslSessionTimeout;
+    }
+
+    public void setSslHandshakeThreads(int sslHandshakeThreads) {
+        this.sslHandshakeThreads = sslHandshakeThreads;
+    }
+
     public String getDisabledCypherSuites() {
         return disabledCypherSuites;
     }
@@ -23,12 +23,16 @@ import io.fabric8.api.scr.Configurer;
 import io.fabric8.api.scr.ValidatingReference;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 
+import io.fabric8.gateway.admission.AdmissionController;
 import io.fabric8.gateway.fabric.detecting.FabricDetectingGatewayService;
+import io.fabric8.gateway.handlers.http.HttpClientPool;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
@@ -36,6 +40,7 @@ import org.apache.felix.scr.annotations.ConfigurationPolicy;
 import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Modified;
 import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.PropertyOption;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.apache.felix.scr.annotations.ReferencePolicy;
@@ -45,10 +50,14 @@ import io.fabric8.gateway.handlers.detecting.DetectingGatewayWebSocketHandler;
 import io.fabric8.gateway.handlers.http.HttpGateway;
 import io.fabric8.gateway.handlers.http.HttpGatewayHandler;
 import io.fabric8.gateway.handlers.http.HttpGatewayServer;
+import io.fabric8.gateway.handlers.http.HttpMappingIndex;
 import io.fabric8.gateway.handlers.http.HttpMappingRule;
 import io.fabric8.gateway.handlers.http.MappedServices;
 import org.vertx.java.core.Vertx;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 /**
  * An HTTP gateway which listens on a port and applies a number of {@link HttpMappingRuleConfiguration} instances to bind
  * HTTP requests to different HTTP based services running within the fabric.
@@ -74,6 +83,29 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
     @Property(name = "websocketGatewayPrefix", label = "Web Socket Path Prefix", description = "The prefix a websocket requests must have")
     private String websocketGatewayPrefix = "";
 
+    @Property(name = "keepAlive", boolValue = true, label = "Keep alive", description = "If enabled then the connections to the proxied services are kept alive and reused for subsequent requests")
+    private boolean keepAlive = true;
+
+    @Property(name = "maxConnectionsPerBackend", intValue = HttpClientPool.DEFAULT_MAX_CONNECTIONS_PER_BACKEND, label = "Max connections per backend", description = "The maximum number of pooled connections to each proxied service host and port")
+    private int maxConnectionsPerBackend = HttpClientPool.DEFAULT_MAX_CONNECTIONS_PER_BACKEND;
+
+    @Property(name = "clientIdleTimeout", longValue = HttpClientPool.DEFAULT_IDLE_TIMEOUT, label = "Client idle timeout", description = "The number of milliseconds after which an unused pooled client to a proxied service is closed")
+    private long clientIdleTimeout = HttpClientPool.DEFAULT_IDLE_TIMEOUT;
+
+    @Property(name = "requestRateLimit", doubleValue = 0, label = "Request rate limit", description = "The number of requests per second allowed for each rate limit key; requests over the limit are rejected with 429 Too Many Requests. Use 0 for no limit")
+    private double requestRateLimit;
+
+    @Property(name = "requestRateBurst", intValue = AdmissionController.DEFAULT_RATE_LIMIT_BURST, label = "Request rate burst", description = "The number of requests a rate limit key can send at once before the request rate limit applies")
+    private int requestRateBurst = AdmissionController.DEFAULT_RATE_LIMIT_BURST;
+
+    @Property(name = "requestRateLimitKey", value = AdmissionController.REMOTE_ADDRESS,
+            options = {
+                    @PropertyOption(name = AdmissionController.REMOTE_ADDRESS, value = "Remote Address"),
+                    @PropertyOption(name = AdmissionController.VIRTUAL_HOST, value = "Virtual Host")
+            },
+            label = "Request rate limit key", description = "Whether the request rate limit applies to each client address or to each virtual host from the Host header")
+    private String requestRateLimitKey = AdmissionController.REMOTE_ADDRESS;
+
     @Reference
     private Configurer configurer;
 
@@ -83,15 +115,28 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
     private final ValidatingReference<FabricService> fabricService = new ValidatingReference<FabricService>();
     @Reference(referenceInterface = CuratorFramework.class)
     private final ValidatingReference<CuratorFramework> curator = new ValidatingReference<CuratorFramework>();
+    @Reference(referenceInterface = MBeanServer.class, cardinality = ReferenceCardinality.OPTIONAL_UNARY, policy = ReferencePolicy.DYNAMIC, bind = "bindMBeanServer", unbind = "unbindMBeanServer")
+    private final ValidatingReference<MBeanServer> mbeanServer = new ValidatingReference<MBeanServer>();
     @Reference(referenceInterface = FabricDetectingGatewayService.class, cardinality = ReferenceCardinality.OPTIONAL_UNARY, policy= ReferencePolicy.DYNAMIC)
     private final ValidatingReference<FabricDetectingGatewayService> fabricDetectingGatewayService = new ValidatingReference<FabricDetectingGatewayService>();
 
     private HttpGatewayServer server;
     private HttpGatewayHandler handler;
+    private HttpClientPool clientPool;
+    private AdmissionController admissionController;
     private DetectingGatewayWebSocketHandler websocketHandler = new DetectingGatewayWebSocketHandler();
 
     private Set<HttpMappingRule> mappingRuleConfigurations = new CopyOnWriteArraySet<HttpMappingRule>();
 
+    private final Runnable mappingRulesChangeListener = new Runnable() {
+        @Override
+        public void run() {
+            mappingRulesChanged();
+        }
+    };
+
+    private volatile HttpMappingIndex mappingIndex = HttpMappingIndex.EMPTY;
+
     @Activate
     void activate(Map<String, ?> configuration) throws Exception {
         updateConfiguration(configuration);
@@ -115,7 +160,29 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
         configurer.configure(configuration, this);
 
         Vertx vertx = getVertx();
-        handler = new HttpGatewayHandler(vertx, this);
+        clientPool = new HttpClientPool(vertx);
+        clientPool.setKeepAlive(keepAlive);
+        clientPool.setMaxConnectionsPerBackend(maxConnectionsPerBackend);
+        clientPool.setIdleTimeout(clientIdleTimeout);
+        clientPool.setObjectName(new ObjectName("io.fabric8.gateway:type=HttpClientPool,port=" + port));
+        clientPool.start();
+        MBeanServer mbeanServer = this.mbeanServer.getOptional();
+        if (mbeanServer != null) {
+            clientPool.registerMBeanServer(mbeanServer);
+        }
+        handler = new HttpGatewayHandler(vertx, this, clientPool);
+        if (requestRateLimit > 0) {
+            admissionController = new AdmissionController();
+            admissionController.setRateLimit(requestRateLimit);
+            admissionController.setRateLimitBurst(requestRateBurst);
+            admissionController.setRateLimitKey(requestRateLimitKey);
+            admissionController.setObjectName(new ObjectName("io.fabric8.gateway:type=AdmissionController,gateway=HttpGateway,port=" + port));
+            admissionController.start();
+            if (mbeanServer != null) {
+                admissionController.registerMBeanServer(mbeanServer);
+            }
+            handler.setAdmissionController(admissionController);
+        }
         websocketHandler.setPathPrefix(websocketGatewayPrefix);
         server = new HttpGatewayServer(vertx, handler, enableWebSocketGateway ? websocketHandler : null, port);
         server.init();
@@ -125,18 +192,48 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
         if (server != null) {
             server.destroy();
         }
+        if (clientPool != null) {
+            clientPool.unregisterMBeanServer(mbeanServer.getOptional());
+            clientPool.stop();
+            clientPool = null;
+        }
+        if (admissionController != null) {
+            admissionController.unregisterMBeanServer(mbeanServer.getOptional());
+            admissionController = null;
+        }
     }
 
     @Override
     public void addMappingRuleConfiguration(HttpMappingRule mappingRuleConfiguration) {
         assertValid();
         mappingRuleConfigurations.add(mappingRuleConfiguration);
+        mappingRuleConfiguration.addChangeListener(mappingRulesChangeListener);
+        mappingRulesChanged();
     }
 
     @Override
     public void removeMappingRuleConfiguration(HttpMappingRule mappingRuleConfiguration) {
         assertValid();
         mappingRuleConfigurations.remove(mappingRuleConfiguration);
+        mappingRuleConfiguration.removeChangeListener(mappingRulesChangeListener);
+        mappingRulesChanged();
+    }
+
+    /**
+     * Rebuilds the mapping index and closes the pooled clients of any backends which are no longer mapped
+     */
+    protected synchronized void mappingRulesChanged() {
+        Map<String, MappedServices> mappedServices = getMappedServices();
+        mappingIndex = HttpMappingIndex.build(mappedServices);
+
+        HttpClientPool pool = clientPool;
+        if (pool != null) {
+            List<String> serviceUrls = new ArrayList<String>();
+            for (MappedServices services : mappedServices.values()) {
+                serviceUrls.addAll(services.getServiceUrls());
+            }
+            pool.retainBackends(serviceUrls);
+        }
     }
 
     @Override
@@ -149,6 +246,11 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
         return answer;
     }
 
+    @Override
+    public HttpMappingIndex getMappingIndex() {
+        return mappingIndex;
+    }
+
     @Override
     public boolean isEnableIndex() {
         return enableIndex;
@@ -209,6 +311,30 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
         this.fabricService.unbind(fabricService);
     }
 
+    void bindMBeanServer(MBeanServer mbeanServer) {
+        this.mbeanServer.bind(mbeanServer);
+        HttpClientPool pool = clientPool;
+        if (pool != null) {
+            pool.registerMBeanServer(mbeanServer);
+        }
+        AdmissionController controller = admissionController;
+        if (controller != null) {
+            controller.registerMBeanServer(mbeanServer);
+        }
+    }
+
+    void unbindMBeanServer(MBeanServer mbeanServer) {
+        HttpClientPool pool = clientPool;
+        if (pool != null) {
+            pool.unregisterMBeanServer(mbeanServer);
+        }
+        AdmissionController controller = admissionController;
+        if (controller != null) {
+            controller.unregisterMBeanServer(mbeanServer);
+        }
+        this.mbeanServer.unbind(mbeanServer);
+    }
+
     void bindFabricDetectingGatewayService(FabricDetectingGatewayService fabricDetectingGatewayService) {
         this.fabricDetectingGatewayService.bind(fabricDetectingGatewayService);
         websocketHandler.setHandler(fabricDetectingGatewayService.getDetectingGatewayProtocolHandler());
@@ -21,8 +21,12 @@ import io.fabric8.api.scr.ValidatingReference;
 import io.fabric8.internal.Objects;
 import io.fabric8.zookeeper.internal.SimplePathTemplate;
 
+import java.io.File;
 import java.util.Map;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
@@ -32,8 +36,11 @@ import org.apache.felix.scr.annotations.Modified;
 import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.PropertyOption;
 import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
 import io.fabric8.gateway.fabric.support.http.HttpMappingRuleBase;
 import io.fabric8.gateway.fabric.support.http.HttpMappingZooKeeperTreeCache;
+import io.fabric8.gateway.handlers.http.cache.HttpResponseCache;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
 import io.fabric8.gateway.loadbalancer.LoadBalancers;
 import org.slf4j.Logger;
@@ -55,6 +62,8 @@ public final class HttpMappingRuleConfiguration extends AbstractComponent {
     private final ValidatingReference<CuratorFramework> curator = new ValidatingReference<CuratorFramework>();
     @Reference(referenceInterface = FabricHTTPGateway.class)
     private final ValidatingReference<FabricHTTPGateway> gateway = new ValidatingReference<FabricHTTPGateway>();
+    @Reference(referenceInterface = MBeanServer.class, cardinality = ReferenceCardinality.OPTIONAL_UNARY, policy = ReferencePolicy.DYNAMIC, bind = "bindMBeanServer", unbind = "unbindMBeanServer")
+    private final ValidatingReference<MBeanServer> mbeanServer = new ValidatingReference<MBeanServer>();
 
     @Property(name = "zooKeeperPath", value = "/fabric/registry/clusters/webapps",
             label = "ZooKeeper path", description = "The path in ZooKeeper which is monitored to discover the available web services or web applications")
@@ -72,12 +81,19 @@ public final class HttpMappingRuleConfiguration extends AbstractComponent {
             label = "Reverse headers", description = "If enabled then the URL in the Location, Content-Location and URI headers from the proxied HTTP responses are rewritten from the back end service URL to match the front end URL on the gateway.\nThis is equivalent to the ProxyPassReverse directive in mod_proxy.")
     private boolean reverseHeaders = true;
 
+    @Property(name = "reverseBody", boolValue = false,
+            label = "Reverse body", description = "If enabled then the back end service URL in the body of text based HTTP responses such as HTML, XML and JSON is rewritten to match the front end URL on the gateway.\nThe body is rewritten as it streams through the gateway so the response is never buffered; compressed responses are not rewritten.")
+    private boolean reverseBody = false;
+
     @Property(name = "loadBalancerType",
             value = LoadBalancers.ROUND_ROBIN_LOAD_BALANCER,
             options = {
                     @PropertyOption(name = LoadBalancers.RANDOM_LOAD_BALANCER, value = "Random"),
                     @PropertyOption(name = LoadBalancers.ROUND_ROBIN_LOAD_BALANCER, value = "Round Robin"),
-                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky")
+                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky"),
+                    @PropertyOption(name = LoadBalancers.LEAST_CONNECTIONS_LOAD_BALANCER, value = "Least Connections"),
+                    @PropertyOption(name = LoadBalancers.PEAK_EWMA_LOAD_BALANCER, value = "Peak EWMA Latency"),
+                    @PropertyOption(name = LoadBalancers.POWER_OF_TWO_CHOICES_LOAD_BALANCER, value = "Power of Two Choices")
             },
             label = "Load Balancer", description = "The kind of load balancing strategy used")
     private String loadBalancerType;
@@ -86,10 +102,36 @@ public final class HttpMappingRuleConfiguration extends AbstractComponent {
             label = "Sticky Load Balancer Cache Size", description = "The number of unique client keys to cache for the sticky load balancer (using an LRU caching algorithm)")
     private int stickyLoadBalancerCacheSize = LoadBalancers.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE;
 
+    @Property(name = "responseCacheEnabled", boolValue = false,
+            label = "Response cache", description = "If enabled then GET responses from the back end services are cached by the gateway as allowed by their Cache-Control, Expires, ETag and Vary headers.\nConcurrent requests for the same uncached response are coalesced into a single request to the back end service.")
+    private boolean responseCacheEnabled = false;
+
+    @Property(name = "responseCacheMaxMemorySize", longValue = HttpResponseCache.DEFAULT_MAX_MEMORY_SIZE,
+            label = "Response cache memory size", description = "The maximum number of bytes of cached responses held in memory; the least recently used responses are evicted or spilled to disk")
+    private long responseCacheMaxMemorySize = HttpResponseCache.DEFAULT_MAX_MEMORY_SIZE;
+
+    @Property(name = "responseCacheMaxEntrySize", intValue = HttpResponseCache.DEFAULT_MAX_ENTRY_SIZE,
+            label = "Response cache max entry size", description = "The maximum size in bytes of a response body which is cached")
+    private int responseCacheMaxEntrySize = HttpResponseCache.DEFAULT_MAX_ENTRY_SIZE;
+
+    @Property(name = "responseCacheDirectory",
+            label = "Response cache directory", description = "The directory the least recently used cached responses are spilled to when the memory is full.\nIf none is specified then responses are discarded rather than spilled to disk.")
+    private String responseCacheDirectory;
+
+    @Property(name = "responseCacheMaxDiskSize", longValue = HttpResponseCache.DEFAULT_MAX_DISK_SIZE,
+            label = "Response cache disk size", description = "The maximum number of bytes of cached responses spilled to disk")
+    private long responseCacheMaxDiskSize = HttpResponseCache.DEFAULT_MAX_DISK_SIZE;
+
+    @Property(name = "responseCacheCoalesceTimeout", longValue = HttpResponseCache.DEFAULT_COALESCE_TIMEOUT,
+            label = "Response cache coalesce timeout", description = "The number of milliseconds a request waits for a concurrent request for the same uncached response before it is proxied to the back end service itself")
+    private long responseCacheCoalesceTimeout = HttpResponseCache.DEFAULT_COALESCE_TIMEOUT;
+
     private HttpMappingRuleBase httpMappingRuleBase;
 
     private HttpMappingZooKeeperTreeCache mappingTree;
 
+    private HttpResponseCache responseCache;
+
     @Activate
     void activate(Map<String, ?> configuration) throws Exception {
         activateComponent();
@@ -160,10 +202,26 @@ public final class HttpMappingRuleConfiguration extends AbstractComponent {
         if (httpMappingRuleBase != null) {
             gateway.get().removeMappingRuleConfiguration(httpMappingRuleBase);
         }
+        if (responseCacheEnabled) {
+            responseCache = new HttpResponseCache();
+            responseCache.setMaxMemorySize(responseCacheMaxMemorySize);
+            responseCache.setMaxEntrySize(responseCacheMaxEntrySize);
+            responseCache.setMaxDiskSize(responseCacheMaxDiskSize);
+            responseCache.setCoalesceTimeout(responseCacheCoalesceTimeout);
+            if (responseCacheDirectory != null && responseCacheDirectory.length() > 0) {
+                responseCache.setSpillDirectory(new File(responseCacheDirectory));
+            }
+            responseCache.setObjectName(new ObjectName("io.fabric8.gateway:type=HttpResponseCache,zooKeeperPath=" + ObjectName.quote(zkPath)));
+            responseCache.start();
+            MBeanServer mbeanServer = this.mbeanServer.getOptional();
+            if (mbeanServer != null) {
+                responseCache.registerMBeanServer(mbeanServer);
+            }
+        }
         httpMappingRuleBase = new HttpMappingRuleBase(
                 new SimplePathTemplate(uriTemplate),
                 gateway.get().getGatewayVersion(),
-                enabledVersion, loadBalancer, reverseHeaders);
+                enabledVersion, loadBalancer, reverseHeaders, reverseBody, responseCache);
 
         mappingTree = new HttpMappingZooKeeperTreeCache(curator.get(), httpMappingRuleBase, zooKeeperPath);
         mappingTree.init();
@@ -176,6 +234,11 @@ public final class HttpMappingRuleConfiguration extends AbstractComponent {
             mappingTree.destroy();
             mappingTree = null;
         }
+        if (responseCache != null) {
+            responseCache.unregisterMBeanServer(mbeanServer.getOptional());
+            responseCache.stop();
+            responseCache = null;
+        }
     }
 
     void bindCurator(CuratorFramework curator) {
@@ -194,6 +257,22 @@ public final class HttpMappingRuleConfiguration extends AbstractComponent {
         this.gateway.unbind(gateway);
     }
 
+    void bindMBeanServer(MBeanServer mbeanServer) {
+        this.mbeanServer.bind(mbeanServer);
+        HttpResponseCache cache = responseCache;
+        if (cache != null) {
+            cache.registerMBeanServer(mbeanServer);
+        }
+    }
+
+    void unbindMBeanServer(MBeanServer mbeanServer) {
+        HttpResponseCache cache = responseCache;
+        if (cache != null) {
+            cache.unregisterMBeanServer(mbeanServer);
+        }
+        this.mbeanServer.unbind(mbeanServer);
+    }
+
     @Override
     public String toString() {
         return "HttpMappingRuleConfiguration{" +
@@ -28,9 +28,11 @@ import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.PropertyOption;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
 import io.fabric8.common.util.Strings;
 import io.fabric8.gateway.ServiceDetails;
 import io.fabric8.gateway.ServiceMap;
+import io.fabric8.gateway.admission.AdmissionController;
 import io.fabric8.gateway.fabric.support.vertx.VertxService;
 import io.fabric8.gateway.handlers.tcp.TcpGateway;
 import io.fabric8.gateway.handlers.tcp.TcpGatewayHandler;
@@ -40,6 +42,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Vertx;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -64,6 +69,9 @@ public class FabricMQGateway extends AbstractComponent {
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY, bind = "setCurator", unbind = "unsetCurator")
     private CuratorFramework curator;
 
+    @Reference(referenceInterface = MBeanServer.class, cardinality = ReferenceCardinality.OPTIONAL_UNARY, bind = "setMBeanServer", unbind = "unsetMBeanServer", policy=ReferencePolicy.DYNAMIC)
+    private MBeanServer mbeanServer;
+
     @Property(name = "zooKeeperPath", value = "/fabric/registry/clusters/fusemq",
             label = "ZooKeeper path", description = "The path in ZooKeeper which is monitored to discover the available message brokers")
     private String zooKeeperPath;
@@ -121,7 +129,20 @@ public class FabricMQGateway extends AbstractComponent {
             label = "Sticky Load Balancer Cache Size", description = "The number of unique client keys to cache for the sticky load balancer (using an LRU caching algorithm)")
     private int stickyLoadBalancerCacheSize = LoadBalancers.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE;
 
+    @Property(name = "connectionRateLimit", doubleValue = 0,
+            label = "Connection Rate Limit", description = "The number of new connections per second allowed from each remote address. Use 0 for no limit")
+    private double connectionRateLimit;
+
+    @Property(name = "connectionRateBurst", intValue = AdmissionController.DEFAULT_RATE_LIMIT_BURST,
+            label = "Connection Rate Burst", description = "The number of new connections a remote address can open at once before the connection rate limit applies")
+    private int connectionRateBurst = AdmissionController.DEFAULT_RATE_LIMIT_BURST;
+
+    @Property(name = "maxConnectionsPerBackend", intValue = 0,
+            label = "Max Connections Per Backend", description = "The maximum number of concurrent connections to each message broker; connections over the limit are closed. Use 0 for no limit")
+    private int maxConnectionsPerBackend;
+
     private GatewayServiceTreeCache gatewayServiceTreeCache;
+    private final AdmissionController admissionController = new AdmissionController();
 
     @Activate
     void activate(Map<String, ?> configuration) throws Exception {
@@ -133,6 +154,10 @@ public class FabricMQGateway extends AbstractComponent {
         gatewayServiceTreeCache = createListener();
         if (gatewayServiceTreeCache != null) {
             gatewayServiceTreeCache.init();
+            admissionController.setObjectName(new ObjectName("io.fabric8.gateway:type=AdmissionController,gateway=MQGateway"));
+            if (mbeanServer != null) {
+                admissionController.registerMBeanServer(mbeanServer);
+            }
         }
     }
 
@@ -140,6 +165,7 @@ public class FabricMQGateway extends AbstractComponent {
     void deactivate() {
         deactivateComponent();
         if (gatewayServiceTreeCache != null) {
+            admissionController.unregisterMBeanServer(mbeanServer);
             gatewayServiceTreeCache.destroy();
         }
     }
@@ -158,11 +184,17 @@ public class FabricMQGateway extends AbstractComponent {
 
         LoadBalancer<String> pathLoadBalancer = LoadBalancers.createLoadBalancer(loadBalancerType, stickyLoadBalancerCacheSize);
         LoadBalancer<ServiceDetails> serviceLoadBalancer = LoadBalancers.createLoadBalancer(loadBalancerType, stickyLoadBalancerCacheSize);
+        LoadBalancers.bindServiceMap(serviceMap, serviceLoadBalancer);
 
         LOG.info("activating MQ mapping ZooKeeper path: " + zkPath + " host: " + host
                 + " with load balancer: " + pathLoadBalancer);
 
 
+        admissionController.setRateLimit(connectionRateLimit);
+        admissionController.setRateLimitBurst(connectionRateBurst);
+        admissionController.setMaxConnectionsPerBackend(maxConnectionsPerBackend);
+        admissionController.start();
+
         List<TcpGateway> gateways = new ArrayList<TcpGateway>();
         addGateway(gateways, vertx, serviceMap, "tcp", isOpenWireEnabled(), getOpenWirePort(), pathLoadBalancer, serviceLoadBalancer);
         addGateway(gateways, vertx, serviceMap, "stomp", isStompEnabled(), getStompPort(), pathLoadBalancer, serviceLoadBalancer);
@@ -179,6 +211,7 @@ public class FabricMQGateway extends AbstractComponent {
     protected TcpGateway addGateway(List<TcpGateway> gateways, Vertx vertx, ServiceMap serviceMap, String protocolName, boolean enabled, int listenPort, LoadBalancer pathLoadBalancer, LoadBalancer<ServiceDetails> serviceLoadBalancer) {
         if (enabled) {
             TcpGatewayHandler handler = new TcpGatewayHandler(vertx, serviceMap, protocolName, pathLoadBalancer, serviceLoadBalancer);
+            handler.setAdmissionController(admissionController);
             TcpGateway gateway = new TcpGateway(vertx, serviceMap, listenPort, protocolName, handler);
             if (Strings.isNotBlank(host)) {
                 gateway.setHost(host);
@@ -217,6 +250,18 @@ public class FabricMQGateway extends AbstractComponent {
         this.curator = null;
     }
 
+    public void setMBeanServer(MBeanServer mbeanServer) {
+        this.mbeanServer = mbeanServer;
+        if (gatewayServiceTreeCache != null) {
+            admissionController.registerMBeanServer(mbeanServer);
+        }
+    }
+
+    public void unsetMBeanServer(MBeanServer mbeanServer) {
+        admissionController.unregisterMBeanServer(mbeanServer);
+        this.mbeanServer = null;
+    }
+
     public FabricService getFabricService() {
         return fabricService;
     }
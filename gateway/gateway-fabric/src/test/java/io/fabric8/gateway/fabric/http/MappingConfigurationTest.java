@@ -22,6 +22,7 @@ import java.util.Map;
 
 import io.fabric8.gateway.ServiceDTO;
 import io.fabric8.gateway.fabric.support.http.HttpMappingRuleBase;
+import io.fabric8.gateway.handlers.http.HttpMappingIndex;
 import io.fabric8.gateway.handlers.http.MappedServices;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
 import io.fabric8.gateway.loadbalancer.RoundRobinLoadBalancer;
@@ -31,6 +32,7 @@ import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -106,6 +108,21 @@ public class MappingConfigurationTest {
         assertEquals("mapping size",  2, httpGateway.getMappedServices().size());
     }
 
+    @Test
+    public void testMappingIndexUpdatedOnChanges() throws Exception {
+        setUriTemplate("{contextPath}/", oldVersion);
+
+        addQuickstartServices();
+
+        HttpMappingIndex.Entry entry = httpGateway.getMappingIndex().findLongestPrefix("/cxf/crm/customers/123");
+        assertNotNull("Should have found the mapping for the crm service", entry);
+        assertEquals("prefix", "/cxf/crm/", entry.getPrefix());
+        assertTrue(entry.getMappedServices().getServiceUrls().contains("http://localhost:8182/cxf/crm"));
+
+        removeService("rest/CustomerService/crm/1.0/resty", "http://localhost:8182/cxf/crm", oldVersion);
+        assertNull("Should have removed the mapping for the crm service", httpGateway.getMappingIndex().findLongestPrefix("/cxf/crm/customers/123"));
+    }
+
     protected void setUriTemplate(String uriTemplate, String version) {
         config = new HttpMappingRuleBase(
                 new SimplePathTemplate(uriTemplate), version, enabledVersion, loadBalancer, reverseHeaders);
@@ -113,6 +130,14 @@ public class MappingConfigurationTest {
     }
 
     protected void addService(String path, String service, String version) {
+        updateService(false, path, service, version);
+    }
+
+    protected void removeService(String path, String service, String version) {
+        updateService(true, path, service, version);
+    }
+
+    protected void updateService(boolean remove, String path, String service, String version) {
         Map<String, String> params = new HashMap<String, String>();
         params.put("version", version);
         String container = path.contains("HelloWorld") ? "soapy" : "resty";
@@ -120,7 +145,7 @@ public class MappingConfigurationTest {
         ServiceDTO serviceDetails = new ServiceDTO();
         serviceDetails.setContainer(container);
         serviceDetails.setVersion(version);
-        config.updateMappingRules(false, path, Arrays.asList(service), params, serviceDetails);
+        config.updateMappingRules(remove, path, Arrays.asList(service), params, serviceDetails);
     }
 
     protected void assertMapping(String path, String service) {